@@ -1,16 +1,47 @@
 package com.keycloak.event;
 
+import com.keycloak.event.auth.RequestAuth;
 import com.keycloak.event.config.WebhookConfig;
-import com.keycloak.event.exception.WebhookMultiException;
-import java.net.URI;
+import com.keycloak.event.delivery.DeliveryReport;
+import com.keycloak.event.delivery.DeliveryTask;
+import com.keycloak.event.delivery.EndpointBalancer;
+import com.keycloak.event.delivery.Hedger;
+import com.keycloak.event.endpoint.EndpointGroup;
+import com.keycloak.event.endpoint.EndpointRegistry;
+import com.keycloak.event.endpoint.EndpointSnapshot;
+import com.keycloak.event.endpoint.WebhookEndpoint;
+import com.keycloak.event.sink.FileSinkFactory;
+import com.keycloak.event.sink.HttpSink;
+import com.keycloak.event.sink.HttpSinkFactory;
+import com.keycloak.event.sink.UnixSocketSinkFactory;
+import com.keycloak.event.sink.WebhookSink;
+import com.keycloak.event.sink.WebhookSinkFactory;
+import com.keycloak.event.trace.DeliveryTrace;
+import com.keycloak.event.trace.SpanExporter;
+import com.keycloak.event.trace.SpanExporters;
+import java.io.Closeable;
+import java.io.IOException;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.time.Duration;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 
@@ -18,22 +49,39 @@ import lombok.extern.slf4j.Slf4j;
  * Handles the forwarding of Keycloak events to configured webhook endpoints. Uses Java's HttpClient
  * to send POST requests with JSON payloads. Supports multiple webhook URLs and host IP replacement
  * for container environments.
+ *
+ * <p>Endpoints are read from an {@link EndpointRegistry}, which holds them pre-parsed as {@link
+ * WebhookEndpoint} descriptors and may replace them at runtime. Each send works on the snapshot
+ * current when it starts.
+ *
+ * <p>Payloads are delivered through the {@link WebhookSink} of each endpoint, opened on first use
+ * by the {@link WebhookSinkFactory} registered for the URL scheme: {@code http}/{@code https},
+ * {@code file} and {@code unix} are built in, others can be added through {@link
+ * java.util.ServiceLoader}.
+ *
+ * <p>Endpoints in a balanced {@link EndpointGroup} share the events: each event goes to the one
+ * member chosen by the {@link EndpointBalancer}, which also ejects failing members and probes them
+ * until they recover. Groups with a hedge rate may repeat a slow delivery at a second member, see
+ * {@link Hedger}.
  */
 @Slf4j
-public class HttpClientWebHookHandler {
+public class HttpClientWebHookHandler implements Closeable {
 
-  @Getter private final List<String> webhookUrls;
+  @Getter private final EndpointRegistry registry;
+  @Getter private final EndpointBalancer balancer;
+  @Getter private final Hedger hedger;
+  private final Consumer<EndpointSnapshot> snapshotListener;
   private final HttpClient httpClient;
+  private final Map<String, WebhookSinkFactory> sinkFactories = new ConcurrentHashMap<>();
+  private final Map<String, WebhookSink> sinks = new ConcurrentHashMap<>();
+  @Getter private volatile SpanExporter spanExporter;
 
   /**
    * Default constructor that creates a new HttpClient with default settings. Reads webhook URLs
    * from environment variables or system properties.
    */
   public HttpClientWebHookHandler() {
-    this(
-        HttpClient.newBuilder()
-            .connectTimeout(Duration.ofSeconds(WebhookConfig.CONNECTION_TIMEOUT_SECONDS))
-            .build());
+    this(newHttpClient());
   }
 
   /**
@@ -43,41 +91,85 @@ public class HttpClientWebHookHandler {
    * @param httpClient The HTTP client to use for webhook requests
    */
   public HttpClientWebHookHandler(HttpClient httpClient) {
-    String urls = System.getProperty(WebhookConfig.WEBHOOK_URLS);
-    if (urls == null) {
-      urls = System.getenv(WebhookConfig.WEBHOOK_URLS);
-    }
-
-    // Get host IP if specified
-    String hostIp = System.getProperty(WebhookConfig.HOST_IP);
-    if (hostIp == null) {
-      hostIp = System.getenv(WebhookConfig.HOST_IP);
-    }
-
-    if (urls != null && !urls.trim().isEmpty()) {
-      // If host IP is specified, replace localhost with the host IP
-      if (hostIp != null && !hostIp.trim().isEmpty()) {
-        final String finalHostIp = hostIp.trim();
-        webhookUrls =
-            Arrays.stream(urls.split(","))
-                .map(String::trim)
-                .filter(s -> !s.isEmpty())
-                .map(url -> url.replace("localhost", finalHostIp))
-                .collect(Collectors.toList());
-        log.info("Replaced localhost with host IP {} in webhook URLs", finalHostIp);
-      } else {
-        webhookUrls =
-            Arrays.stream(urls.split(","))
-                .map(String::trim)
-                .filter(s -> !s.isEmpty())
-                .collect(Collectors.toList());
-      }
-    } else {
-      webhookUrls = new ArrayList<>();
+    this(httpClient, EndpointRegistry.fromSettings());
+    String hostIp = WebhookConfig.getSetting(WebhookConfig.HOST_IP);
+    if (hostIp != null && !getEndpoints().isEmpty()) {
+      log.info("Replaced localhost with host IP {} in webhook URLs", hostIp);
     }
+  }
+
+  /**
+   * Creates a handler for an explicit list of endpoints.
+   *
+   * @param httpClient The HTTP client to use for webhook requests
+   * @param endpoints The pre-parsed endpoints
+   */
+  public HttpClientWebHookHandler(HttpClient httpClient, List<WebhookEndpoint> endpoints) {
+    this(httpClient, registryOf(endpoints));
+  }
 
+  /**
+   * Creates a handler that follows the endpoints of a registry.
+   *
+   * @param httpClient The HTTP client to use for webhook requests
+   * @param registry The endpoint registry
+   */
+  public HttpClientWebHookHandler(HttpClient httpClient, EndpointRegistry registry) {
     this.httpClient = httpClient;
-    log.info("HttpClientWebHookHandler initialized with webhook URLs: {}", webhookUrls);
+    this.registry = registry;
+    this.balancer = EndpointBalancer.fromConfig(this::probe);
+    this.hedger = Hedger.fromConfig();
+    this.snapshotListener =
+        snapshot -> {
+          balancer.apply(snapshot);
+          hedger.apply(snapshot);
+          openAuthenticatedSinks(snapshot);
+        };
+    registerSinkFactory(new HttpSinkFactory(httpClient));
+    registerSinkFactory(new FileSinkFactory());
+    registerSinkFactory(new UnixSocketSinkFactory());
+    loadSinkFactories();
+    snapshotListener.accept(registry.current());
+    registry.addListener(snapshotListener);
+    this.spanExporter = SpanExporters.fromConfig(getClass().getClassLoader());
+    log.info("HttpClientWebHookHandler initialized with webhook URLs: {}", getWebhookUrls());
+  }
+
+  /**
+   * Creates a handler with a default HttpClient that follows the endpoints of a registry.
+   *
+   * @param registry The endpoint registry
+   */
+  public HttpClientWebHookHandler(EndpointRegistry registry) {
+    this(newHttpClient(), registry);
+  }
+
+  /**
+   * Returns the URLs of the global endpoints.
+   *
+   * @return The current webhook URLs
+   */
+  public List<String> getWebhookUrls() {
+    return registry.current().getUrls();
+  }
+
+  /**
+   * Returns the global endpoints.
+   *
+   * @return The current endpoints
+   */
+  public List<WebhookEndpoint> getEndpoints() {
+    return registry.current().getEndpoints();
+  }
+
+  /**
+   * Returns whether any endpoint takes only some event types, in which case payloads must be sent
+   * with their type through {@link #sendEventToAllWebhooks(DeliveryTask)}.
+   *
+   * @return true if an endpoint has the events option
+   */
+  public boolean hasEventTypeFilters() {
+    return registry.current().isFiltered();
   }
 
   /**
@@ -88,68 +180,546 @@ public class HttpClientWebHookHandler {
    * @throws Exception If any webhook call fails
    */
   public void sendEventToAllWebhooks(String payload) throws Exception {
-    if (webhookUrls.isEmpty()) {
+    sendEventToAllWebhooks(null, payload);
+  }
+
+  /**
+   * Sends an event payload to the global endpoints and to those configured for the event's realm.
+   * Balanced groups receive the payload once, at the member chosen by the balancer. If multiple
+   * webhook calls fail, a WebhookMultiException is thrown with all exceptions as suppressed.
+   *
+   * @param realmId The realm of the event, may be null
+   * @param payload The JSON payload to send to webhooks
+   * @throws Exception If any webhook call fails
+   */
+  public void sendEventToAllWebhooks(String realmId, String payload) throws Exception {
+    throwIfFailed(deliver(realmId, payload));
+  }
+
+  /**
+   * Sends a task to the global endpoints and to those configured for its realm, each endpoint
+   * receiving the payload rendered for its representation policy. Balanced groups receive the task
+   * once, at the member chosen by the balancer. Endpoints that do not accept the task's event type
+   * are skipped.
+   *
+   * @param task The task to send
+   * @throws Exception If any webhook call fails
+   */
+  public void sendEventToAllWebhooks(DeliveryTask task) throws Exception {
+    throwIfFailed(deliver(task));
+  }
+
+  /**
+   * Sends an event payload like {@link #sendEventToAllWebhooks(String, String)}, but reports
+   * failures instead of throwing them.
+   *
+   * @param realmId The realm of the event, may be null
+   * @param payload The JSON payload to send to webhooks
+   * @return The outcome at each endpoint
+   */
+  public DeliveryReport deliver(String realmId, String payload) {
+    return deliver(realmId, null, endpoint -> payload, null);
+  }
+
+  /**
+   * Sends a task like {@link #sendEventToAllWebhooks(DeliveryTask)}, but reports failures instead
+   * of throwing them.
+   *
+   * @param task The task to send
+   * @return The outcome at each endpoint
+   */
+  public DeliveryReport deliver(DeliveryTask task) {
+    DeliveryTrace trace = DeliveryTrace.open(task);
+    try {
+      return deliver(task.getRealmId(), task.getEventType(), task::payloadFor, null);
+    } finally {
+      trace.close();
+    }
+  }
+
+  /**
+   * Sends a task like {@link #deliver(DeliveryTask)}, but only to the destinations that have not
+   * taken it yet, so a retry does not repeat deliveries that succeeded. A destination is the URL of
+   * an endpoint that receives every event, or {@code group:<name>} for a balanced group, which
+   * takes the task once whichever member receives it.
+   *
+   * @param task The task to send
+   * @param delivered The destinations that took the task before; those that take it now are added
+   * @return The outcome at each endpoint the task was sent to
+   */
+  public DeliveryReport deliver(DeliveryTask task, Set<String> delivered) {
+    DeliveryTrace trace = DeliveryTrace.open(task);
+    try {
+      return deliver(task.getRealmId(), task.getEventType(), task::payloadFor, delivered);
+    } finally {
+      trace.close();
+    }
+  }
+
+  private DeliveryReport deliver(
+      String realmId,
+      String eventType,
+      Function<WebhookEndpoint, String> payloads,
+      Set<String> delivered) {
+    List<EndpointGroup> groups = registry.current().groupsFor(realmId);
+    if (groups.isEmpty()) {
       log.info("No webhook URLs configured, skipping webhook notifications");
-      return;
+      return DeliveryReport.EMPTY;
+    }
+    List<WebhookEndpoint> endpoints = new ArrayList<>();
+    List<String> destinations = new ArrayList<>();
+    for (EndpointGroup group : groups) {
+      if (group.isBalanced()) {
+        String destination = "group:" + group.getName();
+        if (group.accepts(eventType) && (delivered == null || !delivered.contains(destination))) {
+          endpoints.add(balancer.choose(group));
+          destinations.add(destination);
+        }
+      } else {
+        for (WebhookEndpoint member : group.getMembers()) {
+          if (member.accepts(eventType)
+              && (delivered == null || !delivered.contains(member.getUrl()))) {
+            endpoints.add(member);
+            destinations.add(member.getUrl());
+          }
+        }
+      }
+    }
+
+    log.debug("Sending payload to {} webhook(s)", endpoints.size());
+    List<DeliveryReport.Result> results = new ArrayList<>(endpoints.size());
+    for (int i = 0; i < endpoints.size(); i++) {
+      WebhookEndpoint endpoint = endpoints.get(i);
+      DeliveryReport.Result result;
+      try {
+        result = attempt(endpoint, payloads.apply(endpoint));
+      } catch (RuntimeException e) {
+        result = new DeliveryReport.Result(endpoint.getUrl(), 0, e);
+      }
+      results.add(result);
+      if (delivered != null && result.isDelivered()) {
+        delivered.add(destinations.get(i));
+      }
+    }
+    return new DeliveryReport(results);
+  }
+
+  /**
+   * Sends an event payload to a single webhook URL. Configured URLs reuse their pre-parsed
+   * descriptor; other URLs are parsed on the fly.
+   *
+   * @param url The webhook URL to post to
+   * @param payload The JSON payload to send
+   * @throws Exception If the request fails or the webhook answers with a non-2xx status
+   */
+  public void sendToWebhook(String url, String payload) throws Exception {
+    WebhookEndpoint endpoint = registry.current().find(url);
+    send(endpoint != null ? endpoint : WebhookEndpoint.parse(url, null), payload);
+  }
+
+  /**
+   * Sends an event payload to a single endpoint through the sink registered for its URL scheme.
+   * Used by the delivery workers, which track failures per endpoint rather than per event. The
+   * outcome is reported to the balancer.
+   *
+   * @param endpoint The endpoint to deliver to
+   * @param payload The JSON payload to send
+   * @throws Exception If the sink fails or the webhook answers with a non-2xx status
+   */
+  public void send(WebhookEndpoint endpoint, String payload) throws Exception {
+    DeliveryReport.Result result = attempt(endpoint, payload);
+    if (!result.isDelivered()) {
+      throw result.getError();
+    }
+  }
+
+  /**
+   * Sends an event payload to a single endpoint like {@link #send(WebhookEndpoint, String)}, but
+   * reports the failure instead of throwing it.
+   *
+   * @param endpoint The endpoint to deliver to
+   * @param payload The JSON payload to send
+   * @return The outcome at the endpoint
+   */
+  public DeliveryReport.Result attempt(WebhookEndpoint endpoint, String payload) {
+    DeliveryTrace trace = DeliveryTrace.current();
+    if (trace != null) {
+      trace.begin();
+    }
+    long start = System.nanoTime();
+    WebhookEndpoint target = endpoint;
+    boolean hedged = false;
+    Exception error = null;
+    try {
+      WebhookSink sink = sinkFor(endpoint);
+      EndpointGroup group = hedger.groupOf(endpoint);
+      long delay = group != null && sink instanceof HttpSink ? hedger.admit(group, endpoint) : -1;
+      if (delay >= 0) {
+        hedged = true;
+        target = sendHedged(group, endpoint, (HttpSink) sink, payload, start, delay);
+      } else {
+        sink.send(payload);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      error = e;
+    } catch (Exception e) {
+      error = e;
+    }
+    long elapsed = System.nanoTime() - start;
+    if (!hedged) {
+      balancer.completed(endpoint, elapsed, error == null);
+      if (error == null) {
+        hedger.record(endpoint, elapsed);
+      }
+    }
+    DeliveryReport.Result result = new DeliveryReport.Result(target.getUrl(), elapsed, error);
+    SpanExporter exporter = spanExporter;
+    if (trace != null && exporter != SpanExporter.NOOP) {
+      try {
+        exporter.export(trace.end(target.getUrl(), result.getCategory()));
+      } catch (RuntimeException e) {
+        log.debug("Span exporter {} failed: {}", exporter.getName(), e.getMessage());
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Sends a payload to a member of a hedged group. If the member has not answered within its recent
+   * latency and the group's hedge budget allows, the payload is also sent to a second member under
+   * the same idempotency key. The first success wins and the other request is cancelled. Both
+   * outcomes are reported to the balancer and the hedger.
+   *
+   * @return The member whose answer was used
+   */
+  private WebhookEndpoint sendHedged(
+      EndpointGroup group,
+      WebhookEndpoint primary,
+      HttpSink sink,
+      String payload,
+      long start,
+      long delay)
+      throws Exception {
+    String key = UUID.randomUUID().toString();
+    Leg first = new Leg(primary, start, sink.sendAsync(payload, key));
+    try {
+      first.future.get(delay, TimeUnit.NANOSECONDS);
+    } catch (TimeoutException | ExecutionException e) {
+      // Slow or failed, handled below
+    } catch (InterruptedException e) {
+      first.cancel();
+      throw e;
     }
+    WebhookEndpoint backup = null;
+    if (!first.future.isDone() && hedger.tryHedge(group)) {
+      backup = balancer.chooseOther(group, primary);
+    }
+    WebhookSink backupSink = null;
+    if (backup != null) {
+      try {
+        backupSink = sinkFor(backup);
+      } catch (IOException e) {
+        log.debug("Cannot hedge delivery to {} at {}: {}", primary, backup, e.getMessage());
+      }
+    }
+    if (!(backupSink instanceof HttpSink)) {
+      if (backup != null) {
+        balancer.release(backup);
+      }
+      first.await();
+      first.settle();
+      first.join();
+      return primary;
+    }
+
+    log.debug("Hedging delivery to {} at {} after {} ms", primary, backup, delay / 1_000_000);
+    Leg second =
+        new Leg(backup, System.nanoTime(), ((HttpSink) backupSink).sendAsync(payload, key));
+    CompletableFuture<Leg> winner = new CompletableFuture<>();
+    AtomicInteger pending = new AtomicInteger(2);
+    for (Leg leg : List.of(first, second)) {
+      leg.future.whenComplete(
+          (ignored, failure) -> {
+            if (failure == null) {
+              winner.complete(leg);
+            } else if (pending.decrementAndGet() == 0) {
+              winner.complete(first);
+            }
+          });
+    }
+    Leg used;
+    try {
+      used = winner.get();
+    } catch (InterruptedException e) {
+      first.cancel();
+      second.cancel();
+      throw e;
+    }
+    Leg other = used == first ? second : first;
+    other.future.cancel(true);
+    used.settle();
+    other.settle();
+    if (used == second) {
+      hedger.won();
+    }
+    used.join();
+    return used.endpoint;
+  }
+
+  /** One request of a hedged delivery. */
+  private final class Leg {
+    private final WebhookEndpoint endpoint;
+    private final long start;
+    private final CompletableFuture<Void> future;
+    private volatile long end;
 
-    log.debug("Sending payload to {} webhook(s): {}", webhookUrls.size(), payload);
-    List<Exception> exceptions = new ArrayList<>();
+    private Leg(WebhookEndpoint endpoint, long start, CompletableFuture<Void> future) {
+      this.endpoint = endpoint;
+      this.start = start;
+      this.future = future;
+      future.whenComplete((ignored, failure) -> end = System.nanoTime());
+    }
 
-    for (String url : webhookUrls) {
+    /** Waits for the request to finish. */
+    private void await() throws InterruptedException {
       try {
-        log.info("Sending webhook to URL: {}", url);
-
-        HttpRequest request =
-            HttpRequest.newBuilder()
-                .uri(URI.create(url.trim()))
-                .header("Content-Type", WebhookConfig.CONTENT_TYPE)
-                .timeout(Duration.ofSeconds(WebhookConfig.REQUEST_TIMEOUT_SECONDS))
-                .POST(HttpRequest.BodyPublishers.ofString(payload))
-                .build();
-
-        log.debug("Webhook request created: {}", request);
-
-        HttpResponse<String> response =
-            httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-
-        log.info(
-            "Webhook response from {}: status={}, body={}",
-            url,
-            response.statusCode(),
-            response.body());
-
-        if (response.statusCode() >= 200 && response.statusCode() < 300) {
-          log.info("Webhook successfully sent to {}", url);
-        } else {
-          String errorMsg =
-              String.format("HTTP error status: %d for URL: %s", response.statusCode(), url);
-          log.error(
-              "Webhook error for {}: status code {}, response: {}",
-              url,
-              response.statusCode(),
-              response.body());
-          exceptions.add(new Exception(errorMsg));
-        }
-      } catch (Exception e) {
-        log.error("Webhook error for {}: {} ({})", url, e.getMessage(), e.getClass().getName(), e);
-        exceptions.add(e);
+        future.get();
+      } catch (ExecutionException | CancellationException e) {
+        // Reported by join
+      } catch (InterruptedException e) {
+        cancel();
+        throw e;
       }
     }
 
-    // Enhanced error handling - throw a multi-exception if multiple failures occurred
-    if (!exceptions.isEmpty()) {
-      if (exceptions.size() == 1) {
-        throw exceptions.get(0);
+    /**
+     * Reports the outcome of a finished request. A cancelled request still counts towards the
+     * member's latency, as a lower bound, so that cancelling slow requests does not make the member
+     * look faster than it is.
+     */
+    private void settle() {
+      long elapsed = (end != 0 ? end : System.nanoTime()) - start;
+      if (future.isCancelled()) {
+        balancer.release(endpoint);
+        hedger.record(endpoint, elapsed);
+      } else if (future.isCompletedExceptionally()) {
+        balancer.completed(endpoint, elapsed, false);
       } else {
-        WebhookMultiException multiException =
-            new WebhookMultiException(
-                String.format(
-                    "Multiple webhook failures occurred (%d/%d failed)",
-                    exceptions.size(), webhookUrls.size()));
-        exceptions.forEach(multiException::addSuppressed);
-        throw multiException;
+        balancer.completed(endpoint, elapsed, true);
+        hedger.record(endpoint, elapsed);
+      }
+    }
+
+    private void cancel() {
+      future.cancel(true);
+      settle();
+    }
+
+    /** Returns if the request succeeded and throws its failure otherwise. */
+    private void join() throws Exception {
+      try {
+        future.get();
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof Exception) {
+          throw (Exception) cause;
+        }
+        throw e;
       }
     }
   }
+
+  /**
+   * Checks whether an ejected group member is reachable again. HTTP endpoints get a HEAD request
+   * and count as reachable unless it fails or answers with a 5xx status. Other sinks cannot be
+   * checked without sending an event, so they are re-admitted on probation.
+   *
+   * @param endpoint The endpoint to check
+   * @return true if the endpoint may receive events again
+   */
+  public boolean probe(WebhookEndpoint endpoint) {
+    if (!endpoint.isHttp()) {
+      return true;
+    }
+    HttpRequest request =
+        endpoint.newRequest().method("HEAD", HttpRequest.BodyPublishers.noBody()).build();
+    try {
+      HttpResponse<Void> response =
+          httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+      return response != null && response.statusCode() < 500;
+    } catch (IOException e) {
+      log.debug("Probe of {} failed: {}", endpoint, e.getMessage());
+      return false;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  /**
+   * Registers a sink factory for its URL schemes, replacing any factory registered before.
+   *
+   * @param factory The sink factory
+   */
+  public void registerSinkFactory(WebhookSinkFactory factory) {
+    factory.getSchemes().forEach(scheme -> sinkFactories.put(scheme, factory));
+  }
+
+  /**
+   * Replaces the exporter that receives the span of every delivery made within a {@link
+   * DeliveryTrace}.
+   *
+   * @param spanExporter The exporter, {@link SpanExporter#NOOP} to discard spans
+   */
+  public void setSpanExporter(SpanExporter spanExporter) {
+    this.spanExporter = spanExporter;
+  }
+
+  /**
+   * Closes the sink of an endpoint, for example after the endpoint was removed and its backlog has
+   * been delivered. A later send opens a new sink.
+   *
+   * @param url The endpoint URL
+   */
+  public synchronized void closeSink(String url) {
+    WebhookSink sink = sinks.remove(url);
+    if (sink != null) {
+      sink.close();
+    }
+  }
+
+  /** Closes all sinks, flushing buffered payloads, and stops probing ejected group members. */
+  @Override
+  public synchronized void close() {
+    registry.removeListener(snapshotListener);
+    balancer.close();
+    sinks.values().forEach(WebhookSink::close);
+    sinks.clear();
+    spanExporter.close();
+  }
+
+  /**
+   * Opens a connection to every endpoint ahead of the first event by sending a HEAD request, so DNS
+   * lookup, TCP and TLS handshakes are not paid by the first login after a deploy. The response
+   * status is ignored; failures are logged and otherwise harmless.
+   *
+   * @param timeoutMillis How long to wait for all endpoints in total
+   * @return The number of endpoints that answered
+   */
+  public int prewarmConnections(long timeoutMillis) {
+    Collection<WebhookEndpoint> endpoints = registry.current().allEndpoints().values();
+    List<CompletableFuture<Boolean>> attempts = new ArrayList<>();
+    for (WebhookEndpoint endpoint : endpoints) {
+      if (!endpoint.isHttp()) {
+        continue;
+      }
+      HttpRequest request =
+          endpoint.newRequest().method("HEAD", HttpRequest.BodyPublishers.noBody()).build();
+      attempts.add(
+          httpClient
+              .sendAsync(request, HttpResponse.BodyHandlers.discarding())
+              .thenApply(response -> true)
+              .exceptionally(
+                  e -> {
+                    log.warn("Could not pre-warm connection to {}: {}", endpoint, e.getMessage());
+                    return false;
+                  }));
+    }
+    try {
+      CompletableFuture.allOf(attempts.toArray(new CompletableFuture<?>[0]))
+          .get(timeoutMillis, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (Exception e) {
+      log.warn("Pre-warming webhook connections did not finish: {}", e.getMessage());
+    }
+    int warmed = (int) attempts.stream().filter(f -> f.getNow(false)).count();
+    log.info("Pre-warmed {}/{} webhook connection(s)", warmed, attempts.size());
+    return warmed;
+  }
+
+  /**
+   * Opens the sinks of HTTP endpoints with an auth option ahead of their first event, so that
+   * credentials that must be fetched, such as OAuth2 tokens, are ready when the first event is.
+   */
+  private void openAuthenticatedSinks(EndpointSnapshot snapshot) {
+    for (WebhookEndpoint endpoint : snapshot.allEndpoints().values()) {
+      if (endpoint.isHttp() && endpoint.option(RequestAuth.OPTION) != null) {
+        try {
+          sinkFor(endpoint);
+        } catch (IOException | IllegalArgumentException e) {
+          log.error("Cannot open webhook sink for {}: {}", endpoint, e.getMessage());
+        }
+      }
+    }
+  }
+
+  /** Returns the open sink of an endpoint, opening it on first use. */
+  private WebhookSink sinkFor(WebhookEndpoint endpoint) throws IOException {
+    WebhookSink sink = sinks.get(endpoint.getUrl());
+    if (sink == null || (sink.getEndpoint() != endpoint && !sink.getEndpoint().equals(endpoint))) {
+      sink = openSink(endpoint);
+    }
+    return sink;
+  }
+
+  /**
+   * Opens the sink of an endpoint, replacing a sink that was opened for different options of the
+   * same URL.
+   */
+  private synchronized WebhookSink openSink(WebhookEndpoint endpoint) throws IOException {
+    WebhookSink sink = sinks.get(endpoint.getUrl());
+    if (sink != null) {
+      if (sink.getEndpoint().equals(endpoint)) {
+        return sink;
+      }
+      log.info("Options of {} changed, reopening its sink", endpoint);
+      sinks.remove(endpoint.getUrl());
+      sink.close();
+    }
+    WebhookSinkFactory factory =
+        endpoint.getScheme() != null ? sinkFactories.get(endpoint.getScheme()) : null;
+    if (factory == null) {
+      log.error("No sink available for {} (scheme {})", endpoint, endpoint.getScheme());
+      throw new IOException("Unsupported webhook URL scheme: " + endpoint.getUrl());
+    }
+    sink = factory.create(endpoint);
+    sinks.put(endpoint.getUrl(), sink);
+    return sink;
+  }
+
+  private void loadSinkFactories() {
+    try {
+      for (WebhookSinkFactory factory :
+          ServiceLoader.load(WebhookSinkFactory.class, getClass().getClassLoader())) {
+        for (String scheme : factory.getSchemes()) {
+          if (sinkFactories.putIfAbsent(scheme, factory) == null) {
+            log.info("Registered {} for {} endpoints", factory.getClass().getName(), scheme);
+          }
+        }
+      }
+    } catch (ServiceConfigurationError e) {
+      log.error("Failed to load webhook sink factories: {}", e.getMessage(), e);
+    }
+  }
+
+  private static void throwIfFailed(DeliveryReport report) throws Exception {
+    Exception failure = report.toException();
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  private static HttpClient newHttpClient() {
+    return HttpClient.newBuilder()
+        .connectTimeout(Duration.ofSeconds(WebhookConfig.CONNECTION_TIMEOUT_SECONDS))
+        .build();
+  }
+
+  private static EndpointRegistry registryOf(List<WebhookEndpoint> endpoints) {
+    EndpointRegistry registry = new EndpointRegistry(null);
+    registry.setEndpoints(EndpointRegistry.ENV_SOURCE, endpoints);
+    return registry;
+  }
 }
@@ -1,12 +1,37 @@
 package com.keycloak.event;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.keycloak.event.delivery.DeliveryTask;
+import com.keycloak.event.delivery.WebhookDispatcher;
+import com.keycloak.event.detect.Alert;
+import com.keycloak.event.detect.EventDetector;
+import com.keycloak.event.endpoint.EndpointRegistry;
+import com.keycloak.event.endpoint.WebhookEndpoint;
+import com.keycloak.event.enrich.EventEnricher;
+import com.keycloak.event.feed.EventFeed;
+import com.keycloak.event.outbox.OutboxStore;
+import com.keycloak.event.representation.RepresentationPolicy;
+import com.keycloak.event.representation.RepresentationRenderer;
+import com.keycloak.event.trace.DeliveryTrace;
+import com.keycloak.event.trace.TraceContext;
 import com.keycloak.event.util.JsonUtil;
+import com.keycloak.event.util.LogLimiter;
+import com.keycloak.event.watchdog.LatencyWatchdog;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
 import lombok.extern.slf4j.Slf4j;
+import org.keycloak.connections.jpa.JpaConnectionProvider;
 import org.keycloak.events.Event;
 import org.keycloak.events.EventListenerProvider;
 import org.keycloak.events.admin.AdminEvent;
+import org.keycloak.events.admin.ResourceType;
+import org.keycloak.models.AbstractKeycloakTransaction;
 import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
 
 /**
  * Keycloak SPI implementation that listens for user and admin events and forwards them to
@@ -15,11 +40,42 @@ import org.keycloak.models.KeycloakSession;
  * <p>This provider captures all Keycloak events and wraps them with an eventType field to
  * distinguish between user events and admin events before sending them as JSON payloads to the
  * configured webhook URLs.
+ *
+ * <p>With an {@link EventEnricher} the payload also carries the names behind the event's ids,
+ * looked up through this provider's session.
+ *
+ * <p>Admin events are serialized once per {@link RepresentationPolicy} of the receiving endpoints,
+ * and the representation is left out for every endpoint when Keycloak asks not to include it.
+ *
+ * <p>When the dispatcher carries a {@link LatencyWatchdog}, every onEvent call is timed and the
+ * watchdog's level decides how much work stays inline: user events are serialized by the delivery
+ * workers, low-priority events are sampled, and producers stop waiting for queue space.
+ *
+ * <p>With an {@link OutboxStore} events are neither queued nor sent: they are written to the outbox
+ * table in the session's transaction, so they are delivered if and only if the change that produced
+ * them commits.
+ *
+ * <p>With an {@link EventFeed} every event is also kept for consumers that pull events. Events
+ * written to the outbox join the feed once the session's transaction has committed.
+ *
+ * <p>With an {@link EventDetector} every user event is also fed to the sliding-window detectors,
+ * and the alerts they raise are delivered like events, with eventType ALERT. Detection sees every
+ * event, including those the watchdog samples out.
  */
 @Slf4j
 public class KeycloakEventListenerProvider implements EventListenerProvider {
+
+  /** Renderer of providers created without one, which sends diff endpoints full representations */
+  private static final RepresentationRenderer DEFAULT_RENDERER = new RepresentationRenderer(0);
+
   private final HttpClientWebHookHandler webHookHandler;
+  private final WebhookDispatcher dispatcher;
   private final KeycloakSession keycloakSession;
+  private final EventEnricher enricher;
+  private final RepresentationRenderer renderer;
+  private final OutboxStore outbox;
+  private final EventFeed feed;
+  private final EventDetector detector;
 
   /**
    * Creates a new KeycloakEventListenerProvider with the specified session. This constructor is
@@ -31,6 +87,12 @@ public class KeycloakEventListenerProvider implements EventListenerProvider {
     log.info("Initializing KeycloakEventListenerProvider with session: {}", keycloakSession);
     this.keycloakSession = keycloakSession;
     this.webHookHandler = new HttpClientWebHookHandler();
+    this.dispatcher = null;
+    this.enricher = null;
+    this.renderer = DEFAULT_RENDERER;
+    this.outbox = null;
+    this.feed = null;
+    this.detector = null;
   }
 
   /**
@@ -47,6 +109,34 @@ public class KeycloakEventListenerProvider implements EventListenerProvider {
         keycloakSession);
     this.keycloakSession = keycloakSession;
     this.webHookHandler = webHookHandler;
+    this.dispatcher = null;
+    this.enricher = null;
+    this.renderer = DEFAULT_RENDERER;
+    this.outbox = null;
+    this.feed = null;
+    this.detector = null;
+  }
+
+  /**
+   * Creates a provider that delivers events through the components shared by all sessions. Used by
+   * the factory so that all sessions share one set of delivery queues.
+   *
+   * @param keycloakSession The Keycloak session, whose transaction the outbox rows join
+   * @param settings The shared components
+   */
+  public KeycloakEventListenerProvider(KeycloakSession keycloakSession, ListenerSettings settings) {
+    log.debug(
+        "Initializing KeycloakEventListenerProvider with session: {} and dispatcher: {}",
+        keycloakSession,
+        settings.getDispatcher());
+    this.keycloakSession = keycloakSession;
+    this.webHookHandler = settings.getWebHookHandler();
+    this.dispatcher = settings.getDispatcher();
+    this.enricher = settings.getEnricher();
+    this.renderer = settings.getRenderer() != null ? settings.getRenderer() : DEFAULT_RENDERER;
+    this.outbox = settings.getOutbox();
+    this.feed = settings.getFeed();
+    this.detector = settings.getDetector();
   }
 
   /**
@@ -61,20 +151,48 @@ public class KeycloakEventListenerProvider implements EventListenerProvider {
       log.warn("Received null Keycloak event");
       return;
     }
-    log.debug("Received Keycloak event: {}", event);
-    log.info(
-        "Keycloak Event: {} - User: {} - Realm: {}",
-        event.getType(),
-        event.getUserId(),
-        event.getRealmId());
-    log.info("Configured Webhook URLs: {}", webHookHandler.getWebhookUrls());
+    long start = System.nanoTime();
+    LatencyWatchdog watchdog = watchdog();
     try {
-      String payload = JsonUtil.createEventWrapper(JsonUtil.USER_EVENT_TYPE, event);
-      webHookHandler.sendEventToAllWebhooks(payload);
+      if (detector != null) {
+        raiseAlerts(event, watchdog);
+      }
+      if (watchdog != null && !watchdog.admit(String.valueOf(event.getType()))) {
+        return;
+      }
+      log.debug("Received Keycloak event: {}", event);
+      log.info(
+          "Keycloak Event: {} - User: {} - Realm: {}",
+          event.getType(),
+          event.getUserId(),
+          event.getRealmId());
+      log.info("Configured Webhook URLs: {}", webHookHandler.getWebhookUrls());
+      Map<String, String> enrichment =
+          enricher != null ? enricher.enrich(keycloakSession, event) : Collections.emptyMap();
+      if (watchdog != null && watchdog.isDeferring()) {
+        deliver(deferred(event.clone(), enrichment), watchdog);
+      } else {
+        long serializeStart = System.nanoTime();
+        String payload = JsonUtil.createEventWrapper(JsonUtil.USER_EVENT_TYPE, event, enrichment);
+        DeliveryTask task =
+            DeliveryTask.builder()
+                .eventType(JsonUtil.USER_EVENT_TYPE)
+                .type(String.valueOf(event.getType()))
+                .realmId(event.getRealmId())
+                .userId(event.getUserId())
+                .payload(payload)
+                .build();
+        task.setSerializationNanos(System.nanoTime() - serializeStart);
+        deliver(task, watchdog);
+      }
     } catch (JsonProcessingException e) {
       log.error("Failed to serialize event to JSON: {}", e.getMessage(), e);
     } catch (Exception e) {
-      log.error("Failed to send event to webhook(s): {}", e.getMessage(), e);
+      logFailure("event", e);
+    } finally {
+      if (watchdog != null) {
+        watchdog.record(System.nanoTime() - start);
+      }
     }
   }
 
@@ -91,21 +209,218 @@ public class KeycloakEventListenerProvider implements EventListenerProvider {
       log.warn("Received null Keycloak admin event");
       return;
     }
-    log.debug("Received Keycloak admin event: {}", adminEvent);
-    log.info(
-        "Keycloak Admin Event: {} - Resource: {} - Realm: {}",
-        adminEvent.getOperationType(),
-        adminEvent.getResourcePath(),
-        adminEvent.getRealmId());
-    log.info("Configured Webhook URLs: {}", webHookHandler.getWebhookUrls());
+    long start = System.nanoTime();
+    LatencyWatchdog watchdog = watchdog();
     try {
-      String payload = JsonUtil.createEventWrapper(JsonUtil.ADMIN_EVENT_TYPE, adminEvent);
-      webHookHandler.sendEventToAllWebhooks(payload);
+      if (watchdog != null && !watchdog.admit(String.valueOf(adminEvent.getOperationType()))) {
+        return;
+      }
+      log.debug("Received Keycloak admin event: {}", adminEvent);
+      log.info(
+          "Keycloak Admin Event: {} - Resource: {} - Realm: {}",
+          adminEvent.getOperationType(),
+          adminEvent.getResourcePath(),
+          adminEvent.getRealmId());
+      log.info("Configured Webhook URLs: {}", webHookHandler.getWebhookUrls());
+      refreshRealmEndpoints(adminEvent);
+      Map<String, String> enrichment = Collections.emptyMap();
+      if (enricher != null) {
+        enricher.invalidate(adminEvent);
+        enrichment = enricher.enrich(keycloakSession, adminEvent);
+      }
+      // Admin events are always rendered inline: representation diffs depend on the order in
+      // which events of a resource are rendered.
+      long serializeStart = System.nanoTime();
+      Map<RepresentationPolicy, String> payloads =
+          renderer.render(
+              adminEvent, includeRepresentation, enrichment, policiesFor(adminEvent.getRealmId()));
+      Iterator<String> rendered = payloads.values().iterator();
+      String payload = rendered.next();
+      DeliveryTask task =
+          DeliveryTask.builder()
+              .eventType(JsonUtil.ADMIN_EVENT_TYPE)
+              .type(String.valueOf(adminEvent.getOperationType()))
+              .realmId(adminEvent.getRealmId())
+              .resourcePath(adminEvent.getResourcePath())
+              .payload(payload)
+              .variants(rendered.hasNext() ? payloads : Collections.emptyMap())
+              .build();
+      task.setSerializationNanos(System.nanoTime() - serializeStart);
+      deliver(task, watchdog);
     } catch (JsonProcessingException e) {
       log.error("Failed to serialize admin event to JSON: {}", e.getMessage(), e);
     } catch (Exception e) {
+      logFailure("admin event", e);
+    } finally {
+      if (watchdog != null) {
+        watchdog.record(System.nanoTime() - start);
+      }
+    }
+  }
+
+  /**
+   * Queues the payload when a dispatcher is configured, otherwise sends it to all webhooks before
+   * returning. Producers do not wait for queue space while the watchdog diverts. With the outbox
+   * the task is only written to the outbox table, in the session's transaction. The task continues
+   * the W3C trace context of the request being served, if it has one.
+   */
+  private void deliver(DeliveryTask task, LatencyWatchdog watchdog) throws Exception {
+    task = task.withTrace(TraceContext.current(keycloakSession));
+    if (feed != null) {
+      publish(task);
+    }
+    if (outbox != null) {
+      outbox.append(
+          keycloakSession.getProvider(JpaConnectionProvider.class).getEntityManager(),
+          task,
+          System.currentTimeMillis());
+    } else if (dispatcher != null) {
+      if (watchdog == null || watchdog.mayWait()) {
+        dispatcher.dispatch(task);
+      } else {
+        dispatcher.dispatch(task, false);
+      }
+    } else if (task.getVariants().isEmpty() && !webHookHandler.hasEventTypeFilters()) {
+      DeliveryTrace trace = DeliveryTrace.open(task);
+      try {
+        webHookHandler.sendEventToAllWebhooks(task.getRealmId(), task.getPayload());
+      } finally {
+        trace.close();
+      }
+    } else {
+      webHookHandler.sendEventToAllWebhooks(task);
+    }
+  }
+
+  /**
+   * Logs a failed delivery. Delivery failures are logged without a stack trace and repeats of the
+   * same failure are collapsed; only unexpected runtime exceptions keep their stack trace.
+   */
+  private static void logFailure(String what, Exception e) {
+    long repeats = LogLimiter.ERRORS.admit(what + " " + e);
+    if (repeats < 0) {
+      return;
+    }
+    if (e instanceof RuntimeException) {
+      log.error("Failed to send {} to webhook(s): {}", what, e.getMessage(), e);
+    } else {
       log.error(
-          "Failed to send admin event to webhook(s): {}: {}", e.getClass().getSimpleName(), e);
+          "Failed to send {} to webhook(s): {}{}",
+          what,
+          e.getMessage(),
+          LogLimiter.repeats(repeats));
+    }
+  }
+
+  /** Feeds the event to the detectors and delivers the alerts it raises. */
+  private void raiseAlerts(Event event, LatencyWatchdog watchdog) {
+    for (Alert alert : detector.observe(event)) {
+      log.warn(
+          "Alert {} in realm {} for {} {}",
+          alert.getType(),
+          alert.getRealmId(),
+          alert.getKey() != null ? alert.getKey() : "userId",
+          alert.getValue() != null ? alert.getValue() : alert.getUserId());
+      try {
+        deliver(
+            DeliveryTask.builder()
+                .eventType(JsonUtil.ALERT_TYPE)
+                .type(alert.getType())
+                .realmId(alert.getRealmId())
+                .userId(alert.getUserId())
+                .payload(JsonUtil.createEventWrapper(JsonUtil.ALERT_TYPE, alert))
+                .build(),
+            watchdog);
+      } catch (Exception e) {
+        logFailure(alert.getType() + " alert", e);
+      }
+    }
+  }
+
+  /**
+   * Appends the task to the feed, after the commit of the session's transaction with the outbox.
+   */
+  private void publish(DeliveryTask task) {
+    if (outbox == null) {
+      feed.append(task);
+      return;
+    }
+    keycloakSession
+        .getTransactionManager()
+        .enlistAfterCompletion(
+            new AbstractKeycloakTransaction() {
+              @Override
+              protected void commitImpl() {
+                feed.append(task);
+              }
+
+              @Override
+              protected void rollbackImpl() {
+                // Events of rolled back changes are not published
+              }
+            });
+  }
+
+  /** The dispatcher's watchdog, or null when events are delivered inline or not watched. */
+  private LatencyWatchdog watchdog() {
+    return dispatcher != null ? dispatcher.getWatchdog() : null;
+  }
+
+  /**
+   * A task that serializes a copy of the event on the delivery worker. The copy keeps the payload
+   * independent of changes Keycloak makes to the event after onEvent returns. A task diverted to a
+   * spool is serialized by onEvent instead, but only after the queue's lock is released, see {@link
+   * com.keycloak.event.delivery.DeliveryQueue}.
+   */
+  private static DeliveryTask deferred(Event event, Map<String, String> enrichment) {
+    return DeliveryTask.builder()
+        .eventType(JsonUtil.USER_EVENT_TYPE)
+        .type(String.valueOf(event.getType()))
+        .realmId(event.getRealmId())
+        .userId(event.getUserId())
+        .deferredPayload(
+            () -> {
+              try {
+                return JsonUtil.createEventWrapper(JsonUtil.USER_EVENT_TYPE, event, enrichment);
+              } catch (JsonProcessingException e) {
+                log.error("Failed to serialize deferred event to JSON: {}", e.getMessage(), e);
+                throw new UncheckedIOException(e);
+              }
+            })
+        .build();
+  }
+
+  /** Distinct representation policies of the endpoints receiving events of a realm. */
+  private Set<RepresentationPolicy> policiesFor(String realmId) {
+    EndpointRegistry registry = webHookHandler.getRegistry();
+    Set<RepresentationPolicy> policies = new LinkedHashSet<>();
+    if (registry != null) {
+      for (WebhookEndpoint endpoint : registry.current().endpointsFor(realmId)) {
+        policies.add(endpoint.getRepresentationPolicy());
+      }
+    }
+    if (policies.isEmpty()) {
+      policies.add(RepresentationPolicy.FULL);
+    }
+    return policies;
+  }
+
+  /**
+   * Reloads the realm's endpoint attribute when the realm itself was changed, so endpoints edited
+   * in the admin console apply without a restart.
+   */
+  private void refreshRealmEndpoints(AdminEvent adminEvent) {
+    EndpointRegistry registry = webHookHandler.getRegistry();
+    if (adminEvent.getResourceType() != ResourceType.REALM
+        || registry == null
+        || keycloakSession == null) {
+      return;
+    }
+    RealmModel realm = keycloakSession.realms().getRealm(adminEvent.getRealmId());
+    if (realm != null) {
+      registry.updateRealm(realm);
+    } else {
+      registry.updateRealm(adminEvent.getRealmId(), null);
     }
   }
 
@@ -1,10 +1,26 @@
 package com.keycloak.event;
 
+import com.keycloak.event.backfill.BackfillJob;
+import com.keycloak.event.config.WebhookConfig;
+import com.keycloak.event.delivery.WebhookDispatcher;
+import com.keycloak.event.detect.EventDetector;
+import com.keycloak.event.endpoint.EndpointFileWatcher;
+import com.keycloak.event.endpoint.EndpointRegistry;
+import com.keycloak.event.enrich.EventEnricher;
+import com.keycloak.event.feed.EventFeed;
+import com.keycloak.event.outbox.OutboxPoller;
+import com.keycloak.event.outbox.OutboxStore;
+import com.keycloak.event.outbox.OutboxTransactions;
+import com.keycloak.event.representation.RepresentationRenderer;
+import com.keycloak.event.util.JsonUtil;
+import java.io.IOException;
 import lombok.extern.slf4j.Slf4j;
 import org.keycloak.events.EventListenerProvider;
 import org.keycloak.events.EventListenerProviderFactory;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.utils.KeycloakModelUtils;
+import org.keycloak.models.utils.PostMigrationEvent;
 
 /**
  * Factory for creating KeycloakEventListenerProvider instances.
@@ -16,6 +32,18 @@ import org.keycloak.models.KeycloakSessionFactory;
 @Slf4j
 public class KeycloakEventListenerProviderFactory implements EventListenerProviderFactory {
 
+  /** Provider ID of the event listener */
+  public static final String ID = "custom-event-listener";
+
+  private HttpClientWebHookHandler webHookHandler;
+  private WebhookDispatcher dispatcher;
+  private EndpointFileWatcher fileWatcher;
+  private OutboxStore outbox;
+  private OutboxPoller outboxPoller;
+  private EventFeed feed;
+  private BackfillJob backfill;
+  private ListenerSettings settings;
+
   /**
    * Creates a new event listener provider for the given session.
    *
@@ -25,21 +53,64 @@ public class KeycloakEventListenerProviderFactory implements EventListenerProvid
   @Override
   public EventListenerProvider create(KeycloakSession session) {
     log.debug("Creating KeycloakEventListenerProvider for session: {}", session);
-    return new KeycloakEventListenerProvider(session);
+    if (settings == null) {
+      return new KeycloakEventListenerProvider(session);
+    }
+    return new KeycloakEventListenerProvider(session, settings);
   }
 
   /**
    * Initializes this factory with the given configuration. Called once when the factory is created.
+   * Creates the endpoint registry from WEBHOOK_URLS, the {@code urls} SPI option and the
+   * WEBHOOK_URLS_FILE file, the shared webhook handler and, unless WEBHOOK_QUEUE_CAPACITY is 0, the
+   * dispatcher that delivers events off the request thread. With WEBHOOK_ENRICH=true an enricher
+   * with caches shared by all sessions is created as well, and so is the renderer of admin event
+   * representations, whose diff cache is shared likewise. With WEBHOOK_OUTBOX=true events go
+   * through the outbox table instead of the dispatcher. A WEBHOOK_FEED_CAPACITY above 0 creates the
+   * pull feed served by the {@code webhook-feed} realm resource.
    *
    * @param config The configuration scope
    */
   @Override
   public void init(org.keycloak.Config.Scope config) {
     log.info("Initializing KeycloakEventListenerProviderFactory with config: {}", config);
+    EndpointRegistry registry = EndpointRegistry.fromConfig(config);
+    fileWatcher = EndpointFileWatcher.fromConfig(registry);
+    webHookHandler = new HttpClientWebHookHandler(registry);
+    EventEnricher enricher = EventEnricher.fromConfig();
+    RepresentationRenderer renderer = RepresentationRenderer.fromConfig();
+    feed = EventFeed.fromConfig();
+    EventDetector detector = EventDetector.fromConfig();
+    outbox = OutboxStore.fromConfig();
+    if (outbox != null) {
+      log.info("Webhook events are delivered through the transactional outbox");
+      dispatcher = null;
+    } else {
+      try {
+        dispatcher = WebhookDispatcher.fromConfig(webHookHandler);
+      } catch (IOException e) {
+        log.error("Failed to open webhook spool, delivering synchronously: {}", e.getMessage(), e);
+        dispatcher = null;
+      }
+    }
+    settings =
+        ListenerSettings.builder()
+            .webHookHandler(webHookHandler)
+            .dispatcher(dispatcher)
+            .enricher(enricher)
+            .renderer(renderer)
+            .outbox(outbox)
+            .feed(feed)
+            .detector(detector)
+            .build();
   }
 
   /**
-   * Called after all provider factories have been initialized.
+   * Called after all provider factories have been initialized. Warms up the delivery path before
+   * the first event arrives: Jackson serializers for Event and AdminEvent are primed and, if
+   * WEBHOOK_PREWARM_CONNECTIONS is true, a connection is opened to every endpoint. Realm endpoints
+   * are loaded from the realm attributes, and the outbox poller and the backfill configured by
+   * WEBHOOK_BACKFILL_URL are started once the database migration has finished.
    *
    * @param factory The Keycloak session factory
    */
@@ -47,12 +118,73 @@ public class KeycloakEventListenerProviderFactory implements EventListenerProvid
   public void postInit(KeycloakSessionFactory factory) {
     log.info(
         "Post-initializing KeycloakEventListenerProviderFactory with session factory: {}", factory);
+    if (webHookHandler != null) {
+      EndpointRegistry registry = webHookHandler.getRegistry();
+      factory.register(
+          event -> {
+            if (event instanceof PostMigrationEvent) {
+              try {
+                KeycloakModelUtils.runJobInTransaction(factory, registry::loadRealms);
+              } catch (RuntimeException e) {
+                log.error("Failed to load realm webhook endpoints: {}", e.getMessage(), e);
+              }
+              if (outbox != null && outboxPoller == null) {
+                outboxPoller =
+                    OutboxPoller.fromConfig(outbox, OutboxTransactions.of(factory), webHookHandler);
+              }
+              if (backfill == null) {
+                try {
+                  backfill = BackfillJob.fromConfig(factory, webHookHandler, dispatcher);
+                } catch (RuntimeException e) {
+                  log.error("Failed to start webhook backfill: {}", e.getMessage(), e);
+                }
+              }
+            }
+          });
+    }
+    JsonUtil.primeSerializers();
+    if (webHookHandler != null
+        && Boolean.parseBoolean(WebhookConfig.getSetting(WebhookConfig.PREWARM_CONNECTIONS))) {
+      webHookHandler.prewarmConnections(WebhookConfig.PREWARM_TIMEOUT_MS);
+    }
   }
 
   /** Closes this factory. Called when the server is shutting down. */
   @Override
   public void close() {
     log.info("Closing KeycloakEventListenerProviderFactory");
+    if (fileWatcher != null) {
+      fileWatcher.close();
+      fileWatcher = null;
+    }
+    if (backfill != null) {
+      backfill.close();
+      backfill = null;
+    }
+    if (outboxPoller != null) {
+      outboxPoller.close();
+      outboxPoller = null;
+    }
+    if (feed != null) {
+      feed.close();
+      feed = null;
+    }
+    if (dispatcher != null) {
+      dispatcher.close();
+      dispatcher = null;
+    }
+    if (webHookHandler != null) {
+      webHookHandler.close();
+    }
+  }
+
+  /**
+   * Returns the pull feed shared by all sessions.
+   *
+   * @return The feed, or null if the feed is disabled
+   */
+  public EventFeed getFeed() {
+    return feed;
   }
 
   /**
@@ -63,6 +195,6 @@ public class KeycloakEventListenerProviderFactory implements EventListenerProvid
    */
   @Override
   public String getId() {
-    return "custom-event-listener";
+    return ID;
   }
 }
@@ -0,0 +1,40 @@
+package com.keycloak.event;
+
+import com.keycloak.event.delivery.WebhookDispatcher;
+import com.keycloak.event.detect.EventDetector;
+import com.keycloak.event.enrich.EventEnricher;
+import com.keycloak.event.feed.EventFeed;
+import com.keycloak.event.outbox.OutboxStore;
+import com.keycloak.event.representation.RepresentationRenderer;
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * Components of the {@link KeycloakEventListenerProvider} that are shared by all sessions, built
+ * once by the factory. Every component except the handler is optional and left null when disabled.
+ */
+@Getter
+@Builder
+public class ListenerSettings {
+
+  /** The webhook handler, used directly when dispatcher and outbox are null */
+  private final HttpClientWebHookHandler webHookHandler;
+
+  /** The asynchronous dispatcher, or null for synchronous delivery */
+  private final WebhookDispatcher dispatcher;
+
+  /** The enricher, or null to send events as they are */
+  private final EventEnricher enricher;
+
+  /** The representation renderer, or null for one without a diff cache */
+  private final RepresentationRenderer renderer;
+
+  /** The outbox store, or null to deliver without the outbox */
+  private final OutboxStore outbox;
+
+  /** The pull feed, or null if the feed is disabled */
+  private final EventFeed feed;
+
+  /** The detectors, or null to raise no alerts */
+  private final EventDetector detector;
+}
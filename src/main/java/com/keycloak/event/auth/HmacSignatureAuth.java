@@ -0,0 +1,109 @@
+package com.keycloak.event.auth;
+
+import com.keycloak.event.endpoint.WebhookEndpoint;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.HexFormat;
+import java.util.function.LongSupplier;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import lombok.Getter;
+
+/**
+ * Signs every request with HMAC-SHA256 and a shared secret, configured with {@code
+ * auth=hmac;hmacSecret=secret}. The signed content is the {@value #TIMESTAMP_HEADER} header, a dot
+ * and the encoded body, so the receiver can reject replayed requests by their age. The signature is
+ * sent as {@code sha256=<hex>} in the header named by the {@code hmacHeader} option, {@value
+ * #DEFAULT_HEADER} by default.
+ */
+public class HmacSignatureAuth implements RequestAuth {
+
+  /** Value of the auth option selecting this authentication */
+  public static final String KIND = "hmac";
+
+  /** Option holding the shared secret */
+  public static final String SECRET_OPTION = "hmacSecret";
+
+  /** Option holding the name of the signature header */
+  public static final String HEADER_OPTION = "hmacHeader";
+
+  /** Signature header sent when no header name is configured */
+  public static final String DEFAULT_HEADER = "X-Webhook-Signature";
+
+  /** Header carrying the signing time in seconds since the epoch */
+  public static final String TIMESTAMP_HEADER = "X-Webhook-Timestamp";
+
+  /** Prefix of the signature, naming its algorithm */
+  public static final String SIGNATURE_PREFIX = "sha256=";
+
+  private static final String ALGORITHM = "HmacSHA256";
+
+  @Getter private final String header;
+  private final Mac prototype;
+  private final LongSupplier clock;
+
+  /**
+   * Creates the authentication.
+   *
+   * @param header The name of the signature header
+   * @param secret The shared secret
+   * @param clock The current time in milliseconds
+   */
+  public HmacSignatureAuth(String header, String secret, LongSupplier clock) {
+    this.header = header;
+    this.clock = clock;
+    try {
+      this.prototype = Mac.getInstance(ALGORITHM);
+      prototype.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM));
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException(ALGORITHM + " is not available", e);
+    }
+  }
+
+  /**
+   * Creates the authentication configured by an endpoint's options.
+   *
+   * @param endpoint The endpoint
+   * @return The authentication
+   * @throws IllegalArgumentException If no secret is configured
+   */
+  public static HmacSignatureAuth of(WebhookEndpoint endpoint) {
+    String header = endpoint.option(HEADER_OPTION);
+    return new HmacSignatureAuth(
+        header != null ? header : DEFAULT_HEADER,
+        RequestAuth.requiredOption(endpoint, SECRET_OPTION),
+        System::currentTimeMillis);
+  }
+
+  @Override
+  public boolean signsBody() {
+    return true;
+  }
+
+  @Override
+  public void authorize(HttpRequest.Builder request, byte[] body) {
+    String timestamp = Long.toString(clock.getAsLong() / 1000);
+    request.setHeader(TIMESTAMP_HEADER, timestamp);
+    request.setHeader(header, SIGNATURE_PREFIX + sign(timestamp, body));
+  }
+
+  /**
+   * Computes the signature of a request.
+   *
+   * @param timestamp The value of the {@value #TIMESTAMP_HEADER} header
+   * @param body The encoded body
+   * @return The signature in lower-case hex
+   */
+  public String sign(String timestamp, byte[] body) {
+    Mac mac;
+    try {
+      mac = (Mac) prototype.clone();
+    } catch (CloneNotSupportedException e) {
+      throw new IllegalStateException(ALGORITHM + " cannot be cloned", e);
+    }
+    mac.update(timestamp.getBytes(StandardCharsets.UTF_8));
+    mac.update((byte) '.');
+    return HexFormat.of().formatHex(mac.doFinal(body));
+  }
+}
@@ -0,0 +1,193 @@
+package com.keycloak.event.auth;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.keycloak.event.endpoint.WebhookEndpoint;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import lombok.Getter;
+
+/**
+ * Sends a bearer token obtained with the OAuth2 client credentials grant (RFC 6749, section 4.4),
+ * configured with {@code
+ * auth=oauth2;tokenUrl=https://idp/token;clientId=webhooks;clientSecret=secret;scope=events}.
+ *
+ * <p>The client authenticates to the token endpoint with HTTP Basic. Tokens are kept in a {@link
+ * TokenCache}, so requests never wait for the token endpoint: the first token is fetched as soon as
+ * the endpoint is opened and every token is replaced in the background {@code tokenRefreshAheadMs}
+ * before it expires. Until a token is available, requests fail without being sent. A 401 from the
+ * endpoint drops the token it refused and fetches a new one.
+ */
+public class OAuth2ClientCredentials implements RequestAuth {
+
+  /** Value of the auth option selecting this authentication */
+  public static final String KIND = "oauth2";
+
+  /** Option holding the URL of the token endpoint */
+  public static final String TOKEN_URL_OPTION = "tokenUrl";
+
+  /** Option holding the client ID */
+  public static final String CLIENT_ID_OPTION = "clientId";
+
+  /** Option holding the client secret */
+  public static final String CLIENT_SECRET_OPTION = "clientSecret";
+
+  /** Option holding the requested scope, space-separated */
+  public static final String SCOPE_OPTION = "scope";
+
+  /** Option holding how long before expiry a token is refreshed, in milliseconds */
+  public static final String REFRESH_AHEAD_OPTION = "tokenRefreshAheadMs";
+
+  /** Default time before expiry at which a token is refreshed */
+  public static final long DEFAULT_REFRESH_AHEAD_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+  /** Lifetime assumed for tokens whose response has no expires_in */
+  public static final long DEFAULT_EXPIRES_IN_SECONDS = 300;
+
+  private static final String AUTHORIZATION = "Authorization";
+  private static final String BEARER = "Bearer ";
+  private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+  @Getter private final URI tokenUrl;
+  @Getter private final TokenCache tokens;
+  private final String clientAuthorization;
+  private final String form;
+  private final Duration timeout;
+  private final HttpClient httpClient;
+  private final LongSupplier clock;
+
+  /**
+   * Creates the authentication and starts fetching the first token.
+   *
+   * @param tokenUrl The token endpoint
+   * @param clientId The client ID
+   * @param clientSecret The client secret
+   * @param scope The requested scope, may be null
+   * @param refreshAheadMillis How long before expiry a token is refreshed
+   * @param timeout The timeout of token requests
+   * @param httpClient The HTTP client used to fetch tokens
+   * @param clock The current time in milliseconds
+   */
+  public OAuth2ClientCredentials(
+      URI tokenUrl,
+      String clientId,
+      String clientSecret,
+      String scope,
+      long refreshAheadMillis,
+      Duration timeout,
+      HttpClient httpClient,
+      LongSupplier clock) {
+    this.tokenUrl = tokenUrl;
+    this.clientAuthorization =
+        "Basic "
+            + Base64.getEncoder()
+                .encodeToString(
+                    (formEncode(clientId) + ":" + formEncode(clientSecret))
+                        .getBytes(StandardCharsets.UTF_8));
+    this.form =
+        "grant_type=client_credentials" + (scope != null ? "&scope=" + formEncode(scope) : "");
+    this.timeout = timeout;
+    this.httpClient = httpClient;
+    this.clock = clock;
+    this.tokens = new TokenCache(tokenUrl.toString(), this::fetch, refreshAheadMillis, clock);
+    tokens.refresh();
+  }
+
+  /**
+   * Creates the authentication configured by an endpoint's options.
+   *
+   * @param endpoint The endpoint
+   * @param httpClient The HTTP client used to fetch tokens
+   * @return The authentication, fetching its first token
+   * @throws IllegalArgumentException If the token URL or the client credentials are missing
+   */
+  public static OAuth2ClientCredentials of(WebhookEndpoint endpoint, HttpClient httpClient) {
+    return new OAuth2ClientCredentials(
+        URI.create(RequestAuth.requiredOption(endpoint, TOKEN_URL_OPTION)),
+        RequestAuth.requiredOption(endpoint, CLIENT_ID_OPTION),
+        RequestAuth.requiredOption(endpoint, CLIENT_SECRET_OPTION),
+        endpoint.option(SCOPE_OPTION),
+        endpoint.longOption(REFRESH_AHEAD_OPTION, DEFAULT_REFRESH_AHEAD_MILLIS),
+        endpoint.getRequestTimeout(),
+        httpClient,
+        System::currentTimeMillis);
+  }
+
+  @Override
+  public void authorize(HttpRequest.Builder request, byte[] body) throws IOException {
+    String token = tokens.current();
+    if (token == null) {
+      throw new IOException("No access token from " + tokenUrl + " yet");
+    }
+    request.setHeader(AUTHORIZATION, BEARER + token);
+  }
+
+  @Override
+  public void rejected(HttpRequest request) {
+    request
+        .headers()
+        .firstValue(AUTHORIZATION)
+        .filter(value -> value.startsWith(BEARER))
+        .ifPresent(value -> tokens.invalidate(value.substring(BEARER.length())));
+  }
+
+  @Override
+  public void close() {
+    tokens.close();
+  }
+
+  private CompletableFuture<TokenCache.Token> fetch() {
+    HttpRequest request =
+        HttpRequest.newBuilder(tokenUrl)
+            .timeout(timeout)
+            .header("Content-Type", "application/x-www-form-urlencoded")
+            .header("Accept", "application/json")
+            .header(AUTHORIZATION, clientAuthorization)
+            .POST(HttpRequest.BodyPublishers.ofString(form))
+            .build();
+    long requested = clock.getAsLong();
+    return httpClient
+        .sendAsync(request, HttpResponse.BodyHandlers.ofString())
+        .thenApply(response -> parse(response, requested));
+  }
+
+  /** Reads a token response; the lifetime counts from when the token was requested. */
+  private TokenCache.Token parse(HttpResponse<String> response, long requested) {
+    try {
+      if (response.statusCode() != 200) {
+        throw new IOException(
+            "Token endpoint " + tokenUrl + " answered with status " + response.statusCode());
+      }
+      JsonNode body = OBJECT_MAPPER.readTree(response.body());
+      JsonNode token = body.get("access_token");
+      if (token == null || !token.isTextual() || token.asText().isEmpty()) {
+        throw new IOException("Token endpoint " + tokenUrl + " returned no access_token");
+      }
+      JsonNode type = body.get("token_type");
+      if (type != null && !"bearer".equalsIgnoreCase(type.asText())) {
+        throw new IOException("Token endpoint " + tokenUrl + " returned a " + type.asText());
+      }
+      JsonNode expiresIn = body.get("expires_in");
+      long seconds = expiresIn != null ? expiresIn.asLong() : 0;
+      long lifetime = TimeUnit.SECONDS.toMillis(seconds > 0 ? seconds : DEFAULT_EXPIRES_IN_SECONDS);
+      return new TokenCache.Token(token.asText(), requested, requested + lifetime);
+    } catch (IOException e) {
+      throw new CompletionException(e);
+    }
+  }
+
+  private static String formEncode(String value) {
+    return URLEncoder.encode(value, StandardCharsets.UTF_8);
+  }
+}
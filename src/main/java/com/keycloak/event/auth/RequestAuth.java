@@ -0,0 +1,105 @@
+package com.keycloak.event.auth;
+
+import com.keycloak.event.endpoint.WebhookEndpoint;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.util.Locale;
+
+/**
+ * Authenticates the requests of one HTTP endpoint, selected by the endpoint's {@value #OPTION}
+ * option:
+ *
+ * <ul>
+ *   <li>{@code header} - a fixed header, see {@link StaticHeaderAuth}
+ *   <li>{@code hmac} - an HMAC signature of the body, see {@link HmacSignatureAuth}
+ *   <li>{@code oauth2} - a bearer token from the OAuth2 client credentials grant, see {@link
+ *       OAuth2ClientCredentials}
+ * </ul>
+ *
+ * Implementations are used by several delivery workers at once and must never wait on the network
+ * in {@link #authorize}.
+ */
+public interface RequestAuth extends Closeable {
+
+  /** Option selecting the authentication of an endpoint */
+  String OPTION = "auth";
+
+  /**
+   * Adds the credentials to a request.
+   *
+   * @param request The request being built
+   * @param body The encoded body if {@link #signsBody()} is true, otherwise null
+   * @throws IOException If no credentials are available, in which case the request is not sent
+   */
+  void authorize(HttpRequest.Builder request, byte[] body) throws IOException;
+
+  /**
+   * Returns whether {@link #authorize} needs the encoded body.
+   *
+   * @return true if the body is signed
+   */
+  default boolean signsBody() {
+    return false;
+  }
+
+  /**
+   * Notes that the endpoint answered a request with 401 Unauthorized.
+   *
+   * @param request The refused request
+   */
+  default void rejected(HttpRequest request) {
+    // Fixed credentials cannot be renewed
+  }
+
+  /** Stops any background work. */
+  @Override
+  default void close() {
+    // Nothing to release
+  }
+
+  /**
+   * Creates the authentication configured by an endpoint's options.
+   *
+   * @param endpoint The endpoint
+   * @param httpClient The HTTP client used to fetch tokens
+   * @return The authentication, or null if the endpoint has none
+   * @throws IllegalArgumentException If the options are invalid
+   */
+  static RequestAuth of(WebhookEndpoint endpoint, HttpClient httpClient) {
+    String kind = endpoint.option(OPTION);
+    if (kind == null) {
+      return null;
+    }
+    switch (kind.toLowerCase(Locale.ROOT)) {
+      case StaticHeaderAuth.KIND:
+        return StaticHeaderAuth.of(endpoint);
+      case HmacSignatureAuth.KIND:
+        return HmacSignatureAuth.of(endpoint);
+      case OAuth2ClientCredentials.KIND:
+        return OAuth2ClientCredentials.of(endpoint, httpClient);
+      default:
+        throw new IllegalArgumentException("Unknown " + OPTION + " '" + kind + "' for " + endpoint);
+    }
+  }
+
+  /**
+   * Returns a required option of an endpoint.
+   *
+   * @param endpoint The endpoint
+   * @param name The option name
+   * @return The option value
+   * @throws IllegalArgumentException If the option is not set
+   */
+  static String requiredOption(WebhookEndpoint endpoint, String name) {
+    String value = endpoint.option(name);
+    if (value == null || value.isEmpty()) {
+      throw new IllegalArgumentException(
+          String.format(
+              "Option %s is required by %s=%s for %s",
+              name, OPTION, endpoint.option(OPTION), endpoint));
+    }
+    return value;
+  }
+}
@@ -0,0 +1,58 @@
+package com.keycloak.event.auth;
+
+import com.keycloak.event.endpoint.WebhookEndpoint;
+import java.net.http.HttpRequest;
+import lombok.Getter;
+
+/**
+ * Sends a fixed header with every request, for example an API key, configured with {@code
+ * auth=header;authHeader=X-Api-Key;authValue=secret}. The header defaults to {@code Authorization},
+ * so {@code auth=header;authValue=Bearer abc123} sends a long-lived bearer token.
+ */
+public class StaticHeaderAuth implements RequestAuth {
+
+  /** Value of the auth option selecting this authentication */
+  public static final String KIND = "header";
+
+  /** Option holding the header name */
+  public static final String HEADER_OPTION = "authHeader";
+
+  /** Option holding the header value */
+  public static final String VALUE_OPTION = "authValue";
+
+  /** Header sent when no header name is configured */
+  public static final String DEFAULT_HEADER = "Authorization";
+
+  @Getter private final String header;
+  private final String value;
+
+  /**
+   * Creates the authentication.
+   *
+   * @param header The header name
+   * @param value The header value
+   */
+  public StaticHeaderAuth(String header, String value) {
+    this.header = header;
+    this.value = value;
+  }
+
+  /**
+   * Creates the authentication configured by an endpoint's options.
+   *
+   * @param endpoint The endpoint
+   * @return The authentication
+   * @throws IllegalArgumentException If no value is configured
+   */
+  public static StaticHeaderAuth of(WebhookEndpoint endpoint) {
+    String header = endpoint.option(HEADER_OPTION);
+    return new StaticHeaderAuth(
+        header != null ? header : DEFAULT_HEADER,
+        RequestAuth.requiredOption(endpoint, VALUE_OPTION));
+  }
+
+  @Override
+  public void authorize(HttpRequest.Builder request, byte[] body) {
+    request.setHeader(header, value);
+  }
+}
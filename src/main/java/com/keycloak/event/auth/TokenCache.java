@@ -0,0 +1,252 @@
+package com.keycloak.event.auth;
+
+import com.keycloak.event.util.LogLimiter;
+import java.io.Closeable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Caches one access token and keeps it fresh without making its users wait.
+ *
+ * <p>Every token is refreshed {@code refreshAheadMillis} before it expires, at most half way
+ * through its lifetime, by a timer in the background. Concurrent refreshes share a single fetch.
+ * {@link #current()} only reads the cache: it returns the token while it is valid, and returns null
+ * while there is none, for example before the first fetch completes or after the token endpoint has
+ * failed for the token's whole remaining lifetime. A failed fetch is retried with exponential
+ * backoff while the old token stays in use.
+ *
+ * <p>Each cache has at most one pending refresh timer: every completed fetch replaces it, so
+ * refreshes started early, for example after a refused token, do not add timers of their own. The
+ * timers of all caches run on one shared daemon thread, which only starts fetches and never waits
+ * for them.
+ */
+@Slf4j
+public class TokenCache implements Closeable {
+
+  /** First wait before a failed fetch is retried */
+  static final long MIN_RETRY_MILLIS = 1000;
+
+  /** Longest wait before a failed fetch is retried */
+  static final long MAX_RETRY_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+  private static final ScheduledThreadPoolExecutor TIMERS = timers();
+
+  @Getter private final String name;
+  @Getter private final long refreshAheadMillis;
+  private final Supplier<CompletableFuture<Token>> fetcher;
+  private final LongSupplier clock;
+  private final AtomicReference<CompletableFuture<Token>> inflight = new AtomicReference<>();
+  private final LongAdder fetches = new LongAdder();
+  private volatile Token token;
+  private volatile boolean closed;
+  private long retryMillis = MIN_RETRY_MILLIS;
+  private ScheduledFuture<?> timer;
+
+  /**
+   * Creates an empty cache. Nothing is fetched until {@link #refresh()} or {@link #current()} is
+   * called.
+   *
+   * @param name Names the token in log messages
+   * @param fetcher Starts fetching a new token
+   * @param refreshAheadMillis How long before expiry a token is refreshed
+   * @param clock The current time in milliseconds
+   */
+  public TokenCache(
+      String name,
+      Supplier<CompletableFuture<Token>> fetcher,
+      long refreshAheadMillis,
+      LongSupplier clock) {
+    this.name = name;
+    this.fetcher = fetcher;
+    this.refreshAheadMillis = Math.max(0, refreshAheadMillis);
+    this.clock = clock;
+  }
+
+  /**
+   * Returns the cached token without waiting. Starts a refresh if the token is missing, expired or
+   * due to be refreshed.
+   *
+   * @return The token value, or null if there is no valid token
+   */
+  public String current() {
+    Token cached = token;
+    long now = clock.getAsLong();
+    if (cached == null || now >= cached.expiresAt) {
+      refresh();
+      return null;
+    }
+    if (now >= refreshAt(cached)) {
+      refresh();
+    }
+    return cached.value;
+  }
+
+  /**
+   * Starts fetching a new token, unless a fetch is already running.
+   *
+   * @return The running fetch, completed with the new token
+   */
+  public CompletableFuture<Token> refresh() {
+    CompletableFuture<Token> running = inflight.get();
+    if (running != null) {
+      return running;
+    }
+    CompletableFuture<Token> fetch = new CompletableFuture<>();
+    if (!inflight.compareAndSet(null, fetch)) {
+      return inflight.get();
+    }
+    fetches.increment();
+    CompletableFuture<Token> started;
+    try {
+      started = fetcher.get();
+    } catch (RuntimeException e) {
+      started = CompletableFuture.failedFuture(e);
+    }
+    started.whenComplete(
+        (fetched, error) -> {
+          if (error == null) {
+            fetched(fetched);
+          } else {
+            failed(error instanceof CompletionException ? error.getCause() : error);
+          }
+          inflight.set(null);
+          if (error == null) {
+            fetch.complete(fetched);
+          } else {
+            fetch.completeExceptionally(error);
+          }
+        });
+    return fetch;
+  }
+
+  /**
+   * Drops a token that the receiver refused and starts fetching a new one. Does nothing if the
+   * token has already been replaced.
+   *
+   * @param value The refused token value
+   */
+  public void invalidate(String value) {
+    Token cached = token;
+    if (cached != null && cached.value.equals(value)) {
+      log.info("Access token from {} was refused, fetching a new one", name);
+      token = null;
+      refresh();
+    }
+  }
+
+  /**
+   * Returns the number of fetches started.
+   *
+   * @return The fetch count
+   */
+  public long getFetchCount() {
+    return fetches.sum();
+  }
+
+  /** Stops refreshing in the background. */
+  @Override
+  public void close() {
+    closed = true;
+    synchronized (this) {
+      if (timer != null) {
+        timer.cancel(false);
+        timer = null;
+      }
+    }
+  }
+
+  private void fetched(Token fetched) {
+    token = fetched;
+    synchronized (this) {
+      retryMillis = MIN_RETRY_MILLIS;
+    }
+    long delay = refreshAt(fetched) - clock.getAsLong();
+    log.debug("Fetched access token from {}, refreshing in {} ms", name, delay);
+    schedule(delay);
+  }
+
+  private void failed(Throwable error) {
+    long delay;
+    synchronized (this) {
+      delay = retryMillis;
+      retryMillis = Math.min(retryMillis * 2, MAX_RETRY_MILLIS);
+    }
+    long repeats = LogLimiter.ERRORS.admit("token:" + name);
+    if (repeats >= 0) {
+      log.warn(
+          "Failed to fetch access token from {}, retrying in {} ms: {}{}",
+          name,
+          delay,
+          error.getMessage(),
+          LogLimiter.repeats(repeats));
+    }
+    schedule(delay);
+  }
+
+  /** Replaces the pending refresh timer. */
+  private synchronized void schedule(long delayMillis) {
+    if (closed) {
+      return;
+    }
+    if (timer != null) {
+      timer.cancel(false);
+    }
+    timer =
+        TIMERS.schedule(
+            () -> {
+              if (!closed) {
+                refresh();
+              }
+            },
+            Math.max(0, delayMillis),
+            TimeUnit.MILLISECONDS);
+  }
+
+  private static ScheduledThreadPoolExecutor timers() {
+    ScheduledThreadPoolExecutor timers =
+        new ScheduledThreadPoolExecutor(
+            1,
+            runnable -> {
+              Thread thread = new Thread(runnable, "webhook-token-refresh");
+              thread.setDaemon(true);
+              return thread;
+            });
+    timers.setRemoveOnCancelPolicy(true);
+    return timers;
+  }
+
+  private long refreshAt(Token cached) {
+    long lifetime = cached.expiresAt - cached.fetchedAt;
+    return cached.expiresAt - Math.min(refreshAheadMillis, lifetime / 2);
+  }
+
+  /** An access token and its lifetime. */
+  @Getter
+  public static final class Token {
+    private final String value;
+    private final long fetchedAt;
+    private final long expiresAt;
+
+    /**
+     * Creates a token.
+     *
+     * @param value The token value
+     * @param fetchedAt When the token was fetched, in milliseconds
+     * @param expiresAt When the token expires, in milliseconds
+     */
+    public Token(String value, long fetchedAt, long expiresAt) {
+      this.value = value;
+      this.fetchedAt = fetchedAt;
+      this.expiresAt = expiresAt;
+    }
+  }
+}
@@ -0,0 +1,101 @@
+package com.keycloak.event.backfill;
+
+import lombok.Getter;
+
+/**
+ * Position of a backfill, saved after every page so that a restarted job resumes where it stopped.
+ *
+ * <p>The position is the time of the last delivered event and the number of delivered events with
+ * that time, rather than an offset into the whole range. Events that expire from the store while
+ * the backfill runs are older than the position and so do not shift it, and the next page is read
+ * from the position's time, which keeps the store's offset scan short.
+ *
+ * <p>User events are backfilled first, then admin events. A checkpoint is immutable; every step
+ * returns a new one.
+ */
+@Getter
+public final class BackfillCheckpoint {
+
+  /** The kind of events being backfilled */
+  public enum Phase {
+    USER_EVENTS,
+    ADMIN_EVENTS,
+    DONE
+  }
+
+  private final Phase phase;
+  private final long fromTime;
+  private final long toTime;
+  private final long time;
+  private final int skip;
+  private final long delivered;
+
+  /**
+   * Creates a checkpoint.
+   *
+   * @param phase The kind of events being backfilled
+   * @param fromTime The start of the backfilled range in milliseconds
+   * @param toTime The end of the backfilled range in milliseconds
+   * @param time The time of the last delivered event of the phase
+   * @param skip The number of delivered events with that time
+   * @param delivered The number of events delivered by the backfill so far
+   */
+  public BackfillCheckpoint(
+      Phase phase, long fromTime, long toTime, long time, int skip, long delivered) {
+    this.phase = phase;
+    this.fromTime = fromTime;
+    this.toTime = toTime;
+    this.time = time;
+    this.skip = skip;
+    this.delivered = delivered;
+  }
+
+  /**
+   * Creates the checkpoint of a backfill that has not started.
+   *
+   * @param fromTime The start of the range to backfill in milliseconds
+   * @param toTime The end of the range to backfill in milliseconds
+   * @return The checkpoint
+   */
+  public static BackfillCheckpoint start(long fromTime, long toTime) {
+    return new BackfillCheckpoint(Phase.USER_EVENTS, fromTime, toTime, fromTime, 0, 0);
+  }
+
+  /**
+   * Returns the checkpoint after an event was delivered or skipped.
+   *
+   * @param eventTime The time of the event
+   * @param counted Whether the event counts as delivered
+   * @return The new checkpoint
+   */
+  public BackfillCheckpoint advance(long eventTime, boolean counted) {
+    int nextSkip = eventTime == time ? skip + 1 : 1;
+    return new BackfillCheckpoint(
+        phase, fromTime, toTime, eventTime, nextSkip, counted ? delivered + 1 : delivered);
+  }
+
+  /**
+   * Returns the checkpoint at the start of the next phase.
+   *
+   * @return The new checkpoint
+   */
+  public BackfillCheckpoint nextPhase() {
+    Phase next = phase == Phase.USER_EVENTS ? Phase.ADMIN_EVENTS : Phase.DONE;
+    return new BackfillCheckpoint(next, fromTime, toTime, fromTime, 0, delivered);
+  }
+
+  /**
+   * Returns whether the backfill has finished.
+   *
+   * @return true if both phases are done
+   */
+  public boolean isDone() {
+    return phase == Phase.DONE;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "%s at %d+%d, %d delivered, range %d..%d", phase, time, skip, delivered, fromTime, toTime);
+  }
+}
@@ -0,0 +1,475 @@
+package com.keycloak.event.backfill;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.keycloak.event.HttpClientWebHookHandler;
+import com.keycloak.event.config.WebhookConfig;
+import com.keycloak.event.delivery.DeliveryReport;
+import com.keycloak.event.delivery.EndpointLanes;
+import com.keycloak.event.delivery.ErrorCategory;
+import com.keycloak.event.delivery.TokenBucket;
+import com.keycloak.event.delivery.WebhookDispatcher;
+import com.keycloak.event.endpoint.WebhookEndpoint;
+import com.keycloak.event.outbox.OutboxTransactions;
+import com.keycloak.event.representation.RepresentationPolicy;
+import com.keycloak.event.representation.RepresentationRenderer;
+import com.keycloak.event.util.JsonUtil;
+import com.keycloak.event.util.LogLimiter;
+import java.io.Closeable;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.keycloak.events.Event;
+import org.keycloak.events.admin.AdminEvent;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.utils.KeycloakModelUtils;
+
+/**
+ * Replays the stored events of one realm to one endpoint, so that a new receiver starts with the
+ * recent history that {@code onEvent} never saw.
+ *
+ * <p>Events are read from Keycloak's event store in pages of {@code pageSize}, oldest first, user
+ * events before admin events, and sent one by one through the handler's sink for the endpoint. Each
+ * event is retried with exponential backoff until the endpoint takes it, so the checkpoint saved
+ * after every page only ever covers delivered events and a restarted job resumes without a gap.
+ * Events the endpoint refuses with a 4xx status, other than 408 and 429, are skipped. Admin events
+ * are rendered with the endpoint's representation policy, like live ones.
+ *
+ * <p>With a {@link BackfillStore}, the checkpoint is kept in the database and only the node that
+ * holds the store's lease delivers; the other nodes of the cluster wait and take over from the last
+ * checkpoint if that node goes away. Without one, the checkpoint is only kept in memory.
+ *
+ * <p>The backfill stays out of the way of live traffic: it never sends faster than {@code rate}
+ * events per second, and it pauses while more than {@code maxBacklog} live events wait in the
+ * endpoint's delivery queue.
+ */
+@Slf4j
+public class BackfillJob implements Closeable {
+
+  /** Longest wait between attempts to deliver one event */
+  static final long MAX_RETRY_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+  /** Wait before looking at the live backlog again */
+  static final long PAUSE_MILLIS = 100;
+
+  /** How long the lease of a backfill lasts without being renewed */
+  static final long LEASE_MILLIS = TimeUnit.MINUTES.toMillis(2);
+
+  private static final long DEFAULT_RETRY_MILLIS = 1000;
+
+  @Getter private final String realmId;
+  @Getter private final WebhookEndpoint endpoint;
+  @Getter private final int pageSize;
+  @Getter private final long maxBacklog;
+  private final EventPages pages;
+  private final HttpClientWebHookHandler webHookHandler;
+  private final TokenBucket rateLimiter;
+  private final LongSupplier liveBacklog;
+  private final BackfillStore store;
+  private final RepresentationRenderer renderer;
+  private final long retryMillis;
+  private volatile BackfillCheckpoint checkpoint;
+  private volatile boolean running = true;
+  private boolean leased;
+  private long savedAt;
+  private Thread thread;
+
+  /**
+   * Creates a job that has not started.
+   *
+   * @param realmId The realm whose events are backfilled
+   * @param endpoint The endpoint that receives them
+   * @param pages Reads the stored events
+   * @param webHookHandler The handler used to deliver events
+   * @param checkpoint Where to start, unless the store holds a checkpoint already
+   * @param store Where the checkpoint is saved, or null to keep it in memory
+   * @param renderer Renders admin events, null for one configured by the WEBHOOK_* settings
+   * @param pageSize The events read per page
+   * @param rate The deliveries per second
+   * @param liveBacklog Counts the live events waiting for the endpoint, or null if there are none
+   * @param maxBacklog The live backlog above which the job pauses
+   * @param retryMillis The first wait before a failed delivery is retried, 0 for the default
+   */
+  @Builder
+  private BackfillJob(
+      String realmId,
+      WebhookEndpoint endpoint,
+      EventPages pages,
+      HttpClientWebHookHandler webHookHandler,
+      BackfillCheckpoint checkpoint,
+      BackfillStore store,
+      RepresentationRenderer renderer,
+      int pageSize,
+      double rate,
+      LongSupplier liveBacklog,
+      long maxBacklog,
+      long retryMillis) {
+    this.realmId = realmId;
+    this.endpoint = endpoint;
+    this.pages = pages;
+    this.webHookHandler = webHookHandler;
+    this.checkpoint = checkpoint;
+    this.store = store;
+    this.renderer = renderer != null ? renderer : RepresentationRenderer.fromConfig();
+    this.pageSize = pageSize > 0 ? pageSize : WebhookConfig.DEFAULT_BACKFILL_PAGE_SIZE;
+    double perSecond = rate > 0 ? rate : WebhookConfig.DEFAULT_BACKFILL_RATE;
+    this.rateLimiter = new TokenBucket(perSecond, 1);
+    this.liveBacklog = liveBacklog != null ? liveBacklog : () -> 0;
+    this.maxBacklog = Math.max(0, maxBacklog);
+    this.retryMillis = retryMillis > 0 ? retryMillis : DEFAULT_RETRY_MILLIS;
+  }
+
+  /**
+   * Creates and starts the job configured by the WEBHOOK_BACKFILL_* settings. Every node of the
+   * cluster starts the job, but only the holder of the lease delivers. The range of the backfill is
+   * fixed when it first starts; a job whose checkpoint is done is not started again.
+   *
+   * @param factory The Keycloak session factory
+   * @param webHookHandler The handler used to deliver events
+   * @param dispatcher The dispatcher whose live backlog the job yields to, may be null
+   * @return The started job, or null if no backfill is configured or it has finished
+   */
+  public static BackfillJob fromConfig(
+      KeycloakSessionFactory factory,
+      HttpClientWebHookHandler webHookHandler,
+      WebhookDispatcher dispatcher) {
+    String url = WebhookConfig.getSetting(WebhookConfig.BACKFILL_URL);
+    if (url == null) {
+      return null;
+    }
+    String realm = WebhookConfig.getSetting(WebhookConfig.BACKFILL_REALM);
+    if (realm == null) {
+      log.error(
+          "{} is set but {} is not, not backfilling",
+          WebhookConfig.BACKFILL_URL,
+          WebhookConfig.BACKFILL_REALM);
+      return null;
+    }
+    String realmId =
+        KeycloakModelUtils.runJobInTransactionWithResult(
+            factory,
+            session -> {
+              RealmModel model = session.realms().getRealmByName(realm);
+              return model != null ? model.getId() : null;
+            });
+    if (realmId == null) {
+      log.error("Realm {} not found, not backfilling", realm);
+      return null;
+    }
+    WebhookEndpoint endpoint = webHookHandler.getRegistry().current().find(url);
+    if (endpoint == null) {
+      endpoint = WebhookEndpoint.parse(url, WebhookConfig.getSetting(WebhookConfig.HOST_IP));
+    }
+
+    BackfillStore store =
+        new BackfillStore(
+            OutboxTransactions.of(factory),
+            storeId(realmId, endpoint.getUrl()),
+            UUID.randomUUID().toString(),
+            LEASE_MILLIS,
+            System::currentTimeMillis);
+    BackfillCheckpoint checkpoint;
+    try {
+      checkpoint = store.read();
+    } catch (RuntimeException e) {
+      log.error("Cannot read backfill checkpoint, not backfilling: {}", e.getMessage());
+      return null;
+    }
+    if (checkpoint == null) {
+      long now = System.currentTimeMillis();
+      long days =
+          WebhookConfig.getLong(WebhookConfig.BACKFILL_DAYS, WebhookConfig.DEFAULT_BACKFILL_DAYS);
+      checkpoint = BackfillCheckpoint.start(now - TimeUnit.DAYS.toMillis(days), now);
+    } else if (checkpoint.isDone()) {
+      log.info(
+          "Backfill of realm {} to {} is complete ({}), delete row {} of WEBHOOK_BACKFILL to run"
+              + " it again",
+          realm,
+          endpoint,
+          checkpoint,
+          store.getId());
+      return null;
+    }
+
+    LongSupplier liveBacklog = null;
+    if (dispatcher != null) {
+      liveBacklog =
+          () -> {
+            EndpointLanes lanes = dispatcher.getEndpoint(url);
+            return lanes != null ? lanes.size() : 0;
+          };
+    }
+    BackfillJob job =
+        BackfillJob.builder()
+            .realmId(realmId)
+            .endpoint(endpoint)
+            .pages(EventPages.of(factory))
+            .webHookHandler(webHookHandler)
+            .checkpoint(checkpoint)
+            .store(store)
+            .pageSize(
+                WebhookConfig.getInt(
+                    WebhookConfig.BACKFILL_PAGE_SIZE, WebhookConfig.DEFAULT_BACKFILL_PAGE_SIZE))
+            .rate(
+                WebhookConfig.getDouble(
+                    WebhookConfig.BACKFILL_RATE, WebhookConfig.DEFAULT_BACKFILL_RATE))
+            .liveBacklog(liveBacklog)
+            .maxBacklog(
+                WebhookConfig.getInt(
+                    WebhookConfig.BACKFILL_MAX_BACKLOG, WebhookConfig.DEFAULT_BACKFILL_MAX_BACKLOG))
+            .build();
+    log.info(
+        "Backfilling realm {} to {} from {}, {} event(s) per second",
+        realm,
+        endpoint,
+        checkpoint,
+        job.rateLimiter.getRate());
+    job.start();
+    return job;
+  }
+
+  /** Runs the job on a background thread. */
+  public synchronized void start() {
+    if (thread == null) {
+      thread = new Thread(this::run, "webhook-backfill");
+      thread.setDaemon(true);
+      thread.start();
+    }
+  }
+
+  /**
+   * Runs the job on the calling thread until the backfill is done or the job is closed.
+   *
+   * @return The last checkpoint
+   */
+  public BackfillCheckpoint run() {
+    long backoff = retryMillis;
+    try {
+      acquire();
+      while (running && leased && !checkpoint.isDone()) {
+        List<Entry> page;
+        try {
+          page = nextPage();
+          backoff = retryMillis;
+        } catch (RuntimeException e) {
+          log.warn("Cannot read backfill events, retrying in {} ms: {}", backoff, e.getMessage());
+          pause(backoff);
+          backoff = Math.min(backoff * 2, MAX_RETRY_MILLIS);
+          continue;
+        }
+        if (page.isEmpty()) {
+          checkpoint = checkpoint.nextPhase();
+          log.info("Backfill to {}: {}", endpoint, checkpoint);
+        }
+        for (Entry entry : page) {
+          boolean delivered = entry.payload != null && deliver(entry.payload);
+          checkpoint = checkpoint.advance(entry.time, delivered);
+        }
+        save();
+      }
+    } catch (InterruptedException e) {
+      log.info("Backfill to {} stopped: {}", endpoint, checkpoint);
+      save();
+    } finally {
+      release();
+    }
+    return checkpoint;
+  }
+
+  /**
+   * Returns where the job is.
+   *
+   * @return The current checkpoint
+   */
+  public BackfillCheckpoint getCheckpoint() {
+    return checkpoint;
+  }
+
+  /** Stops the job. The checkpoint is saved and a new job resumes from it. */
+  @Override
+  public synchronized void close() {
+    running = false;
+    if (thread != null) {
+      thread.interrupt();
+    }
+  }
+
+  private List<Entry> nextPage() {
+    BackfillCheckpoint from = checkpoint;
+    List<Entry> page = new ArrayList<>();
+    if (from.getPhase() == BackfillCheckpoint.Phase.USER_EVENTS) {
+      for (Event event :
+          pages.events(realmId, from.getTime(), from.getToTime(), from.getSkip(), pageSize)) {
+        page.add(new Entry(event.getTime(), payload(JsonUtil.USER_EVENT_TYPE, event)));
+      }
+    } else {
+      for (AdminEvent event :
+          pages.adminEvents(realmId, from.getTime(), from.getToTime(), from.getSkip(), pageSize)) {
+        page.add(new Entry(event.getTime(), payload(JsonUtil.ADMIN_EVENT_TYPE, event)));
+      }
+    }
+    return page;
+  }
+
+  private String payload(String eventType, Object event) {
+    if (!endpoint.accepts(eventType)) {
+      return null;
+    }
+    try {
+      if (event instanceof AdminEvent adminEvent) {
+        RepresentationPolicy policy = endpoint.getRepresentationPolicy();
+        return renderer.render(adminEvent, true, Map.of(), List.of(policy)).get(policy);
+      }
+      return JsonUtil.createEventWrapper(eventType, event);
+    } catch (JsonProcessingException e) {
+      log.warn("Skipping backfill event that cannot be serialized: {}", e.getMessage());
+      return null;
+    }
+  }
+
+  /** Sends one event until the endpoint takes it, returning false if it refused the event. */
+  private boolean deliver(String payload) throws InterruptedException {
+    long backoff = retryMillis;
+    while (true) {
+      while (liveBacklog.getAsLong() > maxBacklog) {
+        pause(PAUSE_MILLIS);
+      }
+      renew();
+      if (!running || !leased) {
+        throw new InterruptedException();
+      }
+      rateLimiter.acquire();
+      DeliveryReport.Result result = webHookHandler.attempt(endpoint, payload);
+      if (result.isDelivered()) {
+        return true;
+      }
+      if (result.getCategory() == ErrorCategory.INTERRUPTED) {
+        throw new InterruptedException();
+      }
+      if (result.getCategory() == ErrorCategory.CLIENT_ERROR
+          && result.getStatus() != 408
+          && result.getStatus() != 429) {
+        log.warn("Backfill event refused by {}, skipping it: {}", endpoint, result);
+        return false;
+      }
+      long repeats = LogLimiter.ERRORS.admit("backfill:" + endpoint.getUrl());
+      if (repeats >= 0) {
+        log.warn(
+            "Backfill delivery to {} failed, retrying in {} ms: {}{}",
+            endpoint,
+            backoff,
+            result.getError().getMessage(),
+            LogLimiter.repeats(repeats));
+      }
+      pause(backoff);
+      backoff = Math.min(backoff * 2, MAX_RETRY_MILLIS);
+    }
+  }
+
+  private void pause(long millis) throws InterruptedException {
+    if (!running) {
+      throw new InterruptedException();
+    }
+    Thread.sleep(millis);
+  }
+
+  /** Waits until this node holds the lease, and resumes from the checkpoint in the store. */
+  private void acquire() throws InterruptedException {
+    if (store == null) {
+      leased = true;
+      return;
+    }
+    long backoff = retryMillis;
+    boolean waiting = false;
+    while (!leased) {
+      BackfillCheckpoint held;
+      try {
+        held = store.acquire(checkpoint);
+        backoff = retryMillis;
+      } catch (RuntimeException e) {
+        log.warn("Cannot take the backfill lease, retrying in {} ms: {}", backoff, e.getMessage());
+        pause(backoff);
+        backoff = Math.min(backoff * 2, MAX_RETRY_MILLIS);
+        continue;
+      }
+      if (held != null) {
+        checkpoint = held;
+        leased = true;
+        savedAt = System.currentTimeMillis();
+      } else {
+        if (!waiting) {
+          log.info("Backfill to {} runs on another node, waiting for its lease", endpoint);
+          waiting = true;
+        }
+        pause(store.getLeaseMillis() / 2);
+      }
+    }
+  }
+
+  /** Saves the checkpoint early when half of the lease has passed since the last save. */
+  private void renew() {
+    if (store != null && System.currentTimeMillis() - savedAt >= store.getLeaseMillis() / 2) {
+      save();
+    }
+  }
+
+  /** Saves the checkpoint and renews the lease, stopping the job if the lease was lost. */
+  private void save() {
+    if (store == null || !leased) {
+      return;
+    }
+    try {
+      if (store.save(checkpoint)) {
+        savedAt = System.currentTimeMillis();
+      } else {
+        leased = false;
+        log.warn("Backfill to {} was taken over by another node at {}", endpoint, checkpoint);
+      }
+    } catch (RuntimeException e) {
+      log.warn("Cannot save backfill checkpoint {}: {}", store.getId(), e.getMessage());
+    }
+  }
+
+  private void release() {
+    if (store == null || !leased) {
+      return;
+    }
+    leased = false;
+    try {
+      store.release();
+    } catch (RuntimeException e) {
+      log.warn("Cannot release backfill lease {}: {}", store.getId(), e.getMessage());
+    }
+  }
+
+  private static String storeId(String realmId, String url) {
+    try {
+      byte[] hash =
+          MessageDigest.getInstance("SHA-256").digest(url.getBytes(StandardCharsets.UTF_8));
+      return realmId + ":" + HexFormat.of().formatHex(hash);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available", e);
+    }
+  }
+
+  /** One stored event, with a null payload if it is skipped. */
+  private static final class Entry {
+    private final long time;
+    private final String payload;
+
+    private Entry(long time, String payload) {
+      this.time = time;
+      this.payload = payload;
+    }
+  }
+}
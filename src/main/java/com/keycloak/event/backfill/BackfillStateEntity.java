@@ -0,0 +1,56 @@
+package com.keycloak.event.backfill;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * The checkpoint of one backfill and the lease of the node running it. There is one row per realm
+ * and endpoint; the node whose lease is current is the only one delivering the backfill.
+ */
+@Getter
+@Setter
+@Entity
+@Table(name = "WEBHOOK_BACKFILL")
+public class BackfillStateEntity {
+
+  /** The realm id and a hash of the endpoint URL */
+  @Id
+  @Column(name = "ID", length = 255)
+  private String id;
+
+  /** Name of the {@link BackfillCheckpoint.Phase} */
+  @Column(name = "PHASE", length = 16, nullable = false)
+  private String phase;
+
+  /** Start of the backfilled range, in epoch milliseconds */
+  @Column(name = "FROM_TIME", nullable = false)
+  private long fromTime;
+
+  /** End of the backfilled range, in epoch milliseconds */
+  @Column(name = "TO_TIME", nullable = false)
+  private long toTime;
+
+  /** Time of the last delivered event of the phase */
+  @Column(name = "EVENT_TIME", nullable = false)
+  private long eventTime;
+
+  /** Number of delivered events with that time */
+  @Column(name = "SKIP_COUNT", nullable = false)
+  private int skipCount;
+
+  /** Events delivered by the backfill so far */
+  @Column(name = "DELIVERED", nullable = false)
+  private long delivered;
+
+  /** The node holding the lease, null if it was released */
+  @Column(name = "OWNER", length = 64)
+  private String owner;
+
+  /** End of the lease, in epoch milliseconds */
+  @Column(name = "LEASE_UNTIL", nullable = false)
+  private long leaseUntil;
+}
@@ -0,0 +1,150 @@
+package com.keycloak.event.backfill;
+
+import com.keycloak.event.outbox.OutboxTransactions;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.LockModeType;
+import java.util.function.LongSupplier;
+import lombok.Getter;
+
+/**
+ * Keeps the checkpoint of one backfill in the WEBHOOK_BACKFILL table, together with a lease that
+ * makes a single node of a cluster run the backfill.
+ *
+ * <p>A node must {@link #acquire} the lease before it delivers, and every {@link #save} renews it
+ * for {@code leaseMillis}. The row is locked for the few statements of each step, never while
+ * events are delivered. A node that stops releases the lease; a node that dies leaves it to expire,
+ * after which another node takes over from the last saved checkpoint.
+ */
+public class BackfillStore {
+
+  @Getter private final String id;
+  @Getter private final String owner;
+  @Getter private final long leaseMillis;
+  private final OutboxTransactions transactions;
+  private final LongSupplier clock;
+
+  /**
+   * Creates a store for one backfill.
+   *
+   * @param transactions Runs each step in a transaction
+   * @param id The id of the backfill's row
+   * @param owner Identifies this node as the holder of the lease
+   * @param leaseMillis How long a lease lasts without being renewed
+   * @param clock The current time in milliseconds
+   */
+  public BackfillStore(
+      OutboxTransactions transactions,
+      String id,
+      String owner,
+      long leaseMillis,
+      LongSupplier clock) {
+    this.transactions = transactions;
+    this.id = id;
+    this.owner = owner;
+    this.leaseMillis = leaseMillis;
+    this.clock = clock;
+  }
+
+  /**
+   * Reads the saved checkpoint, whoever holds the lease.
+   *
+   * @return The checkpoint, or null if the backfill has never run
+   */
+  public BackfillCheckpoint read() {
+    BackfillCheckpoint[] saved = {null};
+    transactions.run(
+        entityManager -> {
+          BackfillStateEntity entity = entityManager.find(BackfillStateEntity.class, id);
+          saved[0] = entity != null ? toCheckpoint(entity) : null;
+          return 0;
+        });
+    return saved[0];
+  }
+
+  /**
+   * Takes the lease unless another node holds a current one. The first node to run the backfill
+   * saves the initial checkpoint; when two nodes do so at once, the transaction of one fails.
+   *
+   * @param initial The checkpoint to save if the backfill has never run
+   * @return The checkpoint to resume from, or null if another node holds the lease
+   */
+  public BackfillCheckpoint acquire(BackfillCheckpoint initial) {
+    BackfillCheckpoint[] held = {null};
+    transactions.run(
+        entityManager -> {
+          long now = clock.getAsLong();
+          BackfillStateEntity entity = lock(entityManager);
+          if (entity == null) {
+            entity = new BackfillStateEntity();
+            entity.setId(id);
+            update(entity, initial);
+            entity.setOwner(owner);
+            entity.setLeaseUntil(now + leaseMillis);
+            entityManager.persist(entity);
+            held[0] = initial;
+          } else if (owner.equals(entity.getOwner()) || entity.getLeaseUntil() <= now) {
+            entity.setOwner(owner);
+            entity.setLeaseUntil(now + leaseMillis);
+            held[0] = toCheckpoint(entity);
+          }
+          return 0;
+        });
+    return held[0];
+  }
+
+  /**
+   * Saves a checkpoint and renews the lease.
+   *
+   * @param checkpoint The checkpoint
+   * @return false if the lease has passed to another node, in which case nothing is saved
+   */
+  public boolean save(BackfillCheckpoint checkpoint) {
+    return transactions.run(
+            entityManager -> {
+              BackfillStateEntity entity = lock(entityManager);
+              if (entity == null || !owner.equals(entity.getOwner())) {
+                return 0;
+              }
+              update(entity, checkpoint);
+              entity.setLeaseUntil(clock.getAsLong() + leaseMillis);
+              return 1;
+            })
+        == 1;
+  }
+
+  /** Gives up the lease, so that another node can take over at once. */
+  public void release() {
+    transactions.run(
+        entityManager -> {
+          BackfillStateEntity entity = lock(entityManager);
+          if (entity != null && owner.equals(entity.getOwner())) {
+            entity.setOwner(null);
+            entity.setLeaseUntil(0);
+          }
+          return 0;
+        });
+  }
+
+  private BackfillStateEntity lock(EntityManager entityManager) {
+    return entityManager.find(BackfillStateEntity.class, id, LockModeType.PESSIMISTIC_WRITE);
+  }
+
+  private static void update(BackfillStateEntity entity, BackfillCheckpoint checkpoint) {
+    entity.setPhase(checkpoint.getPhase().name());
+    entity.setFromTime(checkpoint.getFromTime());
+    entity.setToTime(checkpoint.getToTime());
+    entity.setEventTime(checkpoint.getTime());
+    entity.setSkipCount(checkpoint.getSkip());
+    entity.setDelivered(checkpoint.getDelivered());
+  }
+
+  private static BackfillCheckpoint toCheckpoint(BackfillStateEntity entity) {
+    return new BackfillCheckpoint(
+        BackfillCheckpoint.Phase.valueOf(entity.getPhase()),
+        entity.getFromTime(),
+        entity.getToTime(),
+        entity.getEventTime(),
+        entity.getSkipCount(),
+        entity.getDelivered());
+  }
+}
@@ -0,0 +1,107 @@
+package com.keycloak.event.backfill;
+
+import java.util.List;
+import org.keycloak.events.Event;
+import org.keycloak.events.EventStoreProvider;
+import org.keycloak.events.admin.AdminEvent;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.utils.KeycloakModelUtils;
+
+/**
+ * Reads stored events of a realm in pages, oldest first. Both bounds of the time range are
+ * inclusive, and {@code first} skips that many events of the range.
+ */
+public interface EventPages {
+
+  /**
+   * Reads a page of user events.
+   *
+   * @param realmId The realm ID
+   * @param fromTime The earliest event time in milliseconds
+   * @param toTime The latest event time in milliseconds
+   * @param first The number of events of the range to skip
+   * @param max The maximum number of events to return
+   * @return The events in ascending time order
+   */
+  List<Event> events(String realmId, long fromTime, long toTime, int first, int max);
+
+  /**
+   * Reads a page of admin events.
+   *
+   * @param realmId The realm ID
+   * @param fromTime The earliest event time in milliseconds
+   * @param toTime The latest event time in milliseconds
+   * @param first The number of events of the range to skip
+   * @param max The maximum number of events to return
+   * @return The events in ascending time order
+   */
+  List<AdminEvent> adminEvents(String realmId, long fromTime, long toTime, int first, int max);
+
+  /**
+   * Returns pages of an event store.
+   *
+   * @param store The event store
+   * @return The pages
+   */
+  static EventPages of(EventStoreProvider store) {
+    return new EventPages() {
+      @Override
+      public List<Event> events(String realmId, long fromTime, long toTime, int first, int max) {
+        return store
+            .createQuery()
+            .realm(realmId)
+            .fromDate(fromTime)
+            .toDate(toTime)
+            .orderByAscTime()
+            .firstResult(first)
+            .maxResults(max)
+            .getResultStream()
+            .toList();
+      }
+
+      @Override
+      public List<AdminEvent> adminEvents(
+          String realmId, long fromTime, long toTime, int first, int max) {
+        return store
+            .createAdminQuery()
+            .realm(realmId)
+            .fromTime(fromTime)
+            .toTime(toTime)
+            .orderByAscTime()
+            .firstResult(first)
+            .maxResults(max)
+            .getResultStream()
+            .toList();
+      }
+    };
+  }
+
+  /**
+   * Returns pages of Keycloak's event store, each read in a transaction of its own.
+   *
+   * @param factory The Keycloak session factory
+   * @return The pages
+   */
+  static EventPages of(KeycloakSessionFactory factory) {
+    return new EventPages() {
+      @Override
+      public List<Event> events(String realmId, long fromTime, long toTime, int first, int max) {
+        return KeycloakModelUtils.runJobInTransactionWithResult(
+            factory,
+            session ->
+                of(session.getProvider(EventStoreProvider.class))
+                    .events(realmId, fromTime, toTime, first, max));
+      }
+
+      @Override
+      public List<AdminEvent> adminEvents(
+          String realmId, long fromTime, long toTime, int first, int max) {
+        return KeycloakModelUtils.runJobInTransactionWithResult(
+            factory,
+            session ->
+                of(session.getProvider(EventStoreProvider.class))
+                    .adminEvents(realmId, fromTime, toTime, first, max));
+      }
+    };
+  }
+}
@@ -20,6 +20,356 @@ public class WebhookConfig {
   /** Content type for webhook payloads */
   public static final String CONTENT_TYPE = "application/json";
 
+  /**
+   * Environment variable/system property name for the per-endpoint delivery queue capacity. A value
+   * of 0 disables the queue and delivers synchronously inside onEvent.
+   */
+  public static final String QUEUE_CAPACITY = "WEBHOOK_QUEUE_CAPACITY";
+
+  /** Default number of pending deliveries buffered per endpoint */
+  public static final int DEFAULT_QUEUE_CAPACITY = 10000;
+
+  /** Environment variable/system property name for the queue overflow policy */
+  public static final String OVERFLOW_POLICY = "WEBHOOK_OVERFLOW_POLICY";
+
+  /** Default overflow policy applied when an endpoint queue is full */
+  public static final String DEFAULT_OVERFLOW_POLICY = "DROP_NEWEST";
+
+  /** Environment variable/system property name for the BLOCK policy wait time in milliseconds */
+  public static final String BLOCK_TIMEOUT_MS = "WEBHOOK_BLOCK_TIMEOUT_MS";
+
+  /** Default time onEvent may wait for queue space under the BLOCK policy */
+  public static final long DEFAULT_BLOCK_TIMEOUT_MS = 50;
+
+  /** Environment variable/system property name for the disk spool directory */
+  public static final String SPOOL_DIR = "WEBHOOK_SPOOL_DIR";
+
+  /** Environment variable/system property name for the disk spool size cap in megabytes */
+  public static final String SPOOL_MAX_MB = "WEBHOOK_SPOOL_MAX_MB";
+
+  /** Default disk spool size cap per endpoint in megabytes */
+  public static final long DEFAULT_SPOOL_MAX_MB = 512;
+
+  /**
+   * Environment variable/system property name for the off-heap memory cap of queued payloads in
+   * megabytes
+   */
+  public static final String OFFHEAP_MAX_MB = "WEBHOOK_OFFHEAP_MAX_MB";
+
+  /** Default off-heap memory cap of queued payloads in megabytes, 0 to keep them on the heap */
+  public static final long DEFAULT_OFFHEAP_MAX_MB = 0;
+
+  /**
+   * Environment variable/system property name for the priority class definition, for example {@code
+   * critical:8=LOGIN_ERROR,UPDATE_PASSWORD,DELETE;default:4;bulk:1=REFRESH_TOKEN}
+   */
+  public static final String PRIORITY_CLASSES = "WEBHOOK_PRIORITY_CLASSES";
+
+  /** Environment variable/system property name for the priority scheduler (STRICT or DRR) */
+  public static final String PRIORITY_SCHEDULER = "WEBHOOK_PRIORITY_SCHEDULER";
+
+  /** Default scheduler used to share delivery workers between priority classes */
+  public static final String DEFAULT_PRIORITY_SCHEDULER = "DRR";
+
+  /** Environment variable/system property name for the bulkheads isolating realms in the queues */
+  public static final String BULKHEADS = "WEBHOOK_BULKHEADS";
+
+  /** Environment variable/system property name for the number of serial lanes per endpoint */
+  public static final String DELIVERY_LANES = "WEBHOOK_DELIVERY_LANES";
+
+  /** Default number of serial delivery lanes per endpoint */
+  public static final int DEFAULT_DELIVERY_LANES = 1;
+
+  /**
+   * Environment variable/system property name for the key that keeps events ordered (USER, REALM,
+   * RESOURCE_PATH or NONE)
+   */
+  public static final String ORDERING_KEY = "WEBHOOK_ORDERING_KEY";
+
+  /** Default ordering key used to shard events over delivery lanes */
+  public static final String DEFAULT_ORDERING_KEY = "USER";
+
+  /** Environment variable/system property name to open endpoint connections at startup */
+  public static final String PREWARM_CONNECTIONS = "WEBHOOK_PREWARM_CONNECTIONS";
+
+  /** Time allowed for pre-warming connections at startup, in milliseconds */
+  public static final long PREWARM_TIMEOUT_MS = 5000;
+
+  /** Environment variable/system property name for a local file listing webhook endpoints */
+  public static final String URLS_FILE = "WEBHOOK_URLS_FILE";
+
+  /** Environment variable/system property name for the endpoint file poll interval */
+  public static final String URLS_FILE_POLL_MS = "WEBHOOK_URLS_FILE_POLL_MS";
+
+  /** Default interval between checks of the endpoint file, in milliseconds */
+  public static final long DEFAULT_URLS_FILE_POLL_MS = 5000;
+
+  /** Environment variable/system property name for the most endpoints a realm attribute can add */
+  public static final String REALM_MAX_ENDPOINTS = "WEBHOOK_REALM_MAX_ENDPOINTS";
+
+  /** Default number of endpoints a realm attribute can add */
+  public static final int DEFAULT_REALM_MAX_ENDPOINTS = 10;
+
+  /**
+   * Environment variable/system property name for the number of consecutive failures that eject a
+   * member from its endpoint group
+   */
+  public static final String GROUP_EJECT_AFTER = "WEBHOOK_GROUP_EJECT_AFTER";
+
+  /** Default number of consecutive failures that eject a group member */
+  public static final int DEFAULT_GROUP_EJECT_AFTER = 3;
+
+  /** Environment variable/system property name for the probe interval of ejected group members */
+  public static final String GROUP_PROBE_MS = "WEBHOOK_GROUP_PROBE_MS";
+
+  /** Default interval between probes of ejected group members, in milliseconds */
+  public static final long DEFAULT_GROUP_PROBE_MS = 5000;
+
+  /**
+   * Environment variable/system property name for the window over which the latency that triggers a
+   * hedged request is measured
+   */
+  public static final String HEDGE_WINDOW_MS = "WEBHOOK_HEDGE_WINDOW_MS";
+
+  /** Default latency window of hedged groups, in milliseconds */
+  public static final long DEFAULT_HEDGE_WINDOW_MS = 10000;
+
+  /** Environment variable/system property name to add user, client and realm names to events */
+  public static final String ENRICH = "WEBHOOK_ENRICH";
+
+  /** Environment variable/system property name for the entries of each enrichment cache */
+  public static final String ENRICH_CACHE_SIZE = "WEBHOOK_ENRICH_CACHE_SIZE";
+
+  /** Default number of users, clients and realms cached for enrichment */
+  public static final int DEFAULT_ENRICH_CACHE_SIZE = 10000;
+
+  /** Environment variable/system property name for the lifetime of enrichment cache entries */
+  public static final String ENRICH_CACHE_TTL_MS = "WEBHOOK_ENRICH_CACHE_TTL_MS";
+
+  /** Default lifetime of enrichment cache entries, in milliseconds */
+  public static final long DEFAULT_ENRICH_CACHE_TTL_MS = 60000;
+
+  /** Environment variable/system property name for the onEvent latency budget in microseconds */
+  public static final String LATENCY_BUDGET_US = "WEBHOOK_LATENCY_BUDGET_US";
+
+  /** Environment variable/system property name for the percentile held to the latency budget */
+  public static final String LATENCY_PERCENTILE = "WEBHOOK_LATENCY_PERCENTILE";
+
+  /** Default percentile of onEvent durations held to the latency budget */
+  public static final double DEFAULT_LATENCY_PERCENTILE = 99;
+
+  /** Environment variable/system property name for the latency watchdog window */
+  public static final String LATENCY_WINDOW_MS = "WEBHOOK_LATENCY_WINDOW_MS";
+
+  /** Default length of a latency watchdog window, in milliseconds */
+  public static final long DEFAULT_LATENCY_WINDOW_MS = 1000;
+
+  /** Environment variable/system property name for the fraction of low-priority events kept */
+  public static final String LATENCY_SAMPLE_RATE = "WEBHOOK_LATENCY_SAMPLE_RATE";
+
+  /** Default fraction of low-priority events kept while the latency budget is exceeded */
+  public static final double DEFAULT_LATENCY_SAMPLE_RATE = 0.1;
+
+  /** Environment variable/system property name enabling the transactional outbox */
+  public static final String OUTBOX = "WEBHOOK_OUTBOX";
+
+  /** Environment variable/system property name for the rows claimed per outbox transaction */
+  public static final String OUTBOX_BATCH_SIZE = "WEBHOOK_OUTBOX_BATCH_SIZE";
+
+  /** Default number of outbox rows claimed per transaction */
+  public static final int DEFAULT_OUTBOX_BATCH_SIZE = 100;
+
+  /** Environment variable/system property name for the interval between outbox polls */
+  public static final String OUTBOX_POLL_MS = "WEBHOOK_OUTBOX_POLL_MS";
+
+  /** Default interval between outbox polls, in milliseconds */
+  public static final long DEFAULT_OUTBOX_POLL_MS = 1000;
+
+  /** Environment variable/system property name for the longest wait between delivery attempts */
+  public static final String OUTBOX_MAX_BACKOFF_MS = "WEBHOOK_OUTBOX_MAX_BACKOFF_MS";
+
+  /** Default longest wait between delivery attempts of an outbox row, in milliseconds */
+  public static final long DEFAULT_OUTBOX_MAX_BACKOFF_MS = 300000;
+
+  /**
+   * Environment variable/system property name for how long a poller's claim on outbox rows lasts
+   */
+  public static final String OUTBOX_LEASE_MS = "WEBHOOK_OUTBOX_LEASE_MS";
+
+  /** Default duration of a claim on outbox rows, in milliseconds */
+  public static final long DEFAULT_OUTBOX_LEASE_MS = 300000;
+
+  /** Environment variable/system property name for how long undelivered outbox rows are kept */
+  public static final String OUTBOX_RETENTION_HOURS = "WEBHOOK_OUTBOX_RETENTION_HOURS";
+
+  /** Default retention of undelivered outbox rows, in hours */
+  public static final long DEFAULT_OUTBOX_RETENTION_HOURS = 72;
+
+  /** Environment variable/system property name for the endpoint that receives the backfill */
+  public static final String BACKFILL_URL = "WEBHOOK_BACKFILL_URL";
+
+  /** Environment variable/system property name for the realm whose events are backfilled */
+  public static final String BACKFILL_REALM = "WEBHOOK_BACKFILL_REALM";
+
+  /** Environment variable/system property name for how far back the backfill reaches */
+  public static final String BACKFILL_DAYS = "WEBHOOK_BACKFILL_DAYS";
+
+  /** Default reach of the backfill, in days */
+  public static final long DEFAULT_BACKFILL_DAYS = 30;
+
+  /** Environment variable/system property name for the events read per backfill page */
+  public static final String BACKFILL_PAGE_SIZE = "WEBHOOK_BACKFILL_PAGE_SIZE";
+
+  /** Default number of events read per backfill page */
+  public static final int DEFAULT_BACKFILL_PAGE_SIZE = 500;
+
+  /** Environment variable/system property name for the backfill deliveries per second */
+  public static final String BACKFILL_RATE = "WEBHOOK_BACKFILL_RATE";
+
+  /** Default number of backfill deliveries per second */
+  public static final double DEFAULT_BACKFILL_RATE = 50;
+
+  /** Environment variable/system property name for the live backlog the backfill tolerates */
+  public static final String BACKFILL_MAX_BACKLOG = "WEBHOOK_BACKFILL_MAX_BACKLOG";
+
+  /** Default live backlog at the endpoint above which the backfill pauses */
+  public static final int DEFAULT_BACKFILL_MAX_BACKLOG = 0;
+
+  /** Environment variable/system property name for the events kept per realm by the pull feed */
+  public static final String FEED_CAPACITY = "WEBHOOK_FEED_CAPACITY";
+
+  /** Default events kept per realm by the pull feed, 0 disables the feed */
+  public static final int DEFAULT_FEED_CAPACITY = 0;
+
+  /** Environment variable/system property name enabling the sliding-window detectors */
+  public static final String DETECT = "WEBHOOK_DETECT";
+
+  /** Environment variable/system property name for the window of the failure counters */
+  public static final String DETECT_WINDOW_MS = "WEBHOOK_DETECT_WINDOW_MS";
+
+  /** Default window of the failure counters, in milliseconds */
+  public static final long DEFAULT_DETECT_WINDOW_MS = 300000;
+
+  /** Environment variable/system property name for the login failures per user that raise alerts */
+  public static final String DETECT_USER_FAILURES = "WEBHOOK_DETECT_USER_FAILURES";
+
+  /** Default number of login failures per user and window that raise an alert */
+  public static final int DEFAULT_DETECT_USER_FAILURES = 5;
+
+  /** Environment variable/system property name for the login failures per IP that raise alerts */
+  public static final String DETECT_IP_FAILURES = "WEBHOOK_DETECT_IP_FAILURES";
+
+  /** Default number of login failures per IP address and window that raise an alert */
+  public static final int DEFAULT_DETECT_IP_FAILURES = 20;
+
+  /**
+   * Environment variable/system property name for the login failures per client that raise alerts
+   */
+  public static final String DETECT_CLIENT_FAILURES = "WEBHOOK_DETECT_CLIENT_FAILURES";
+
+  /** Default number of login failures per client and window that raise an alert */
+  public static final int DEFAULT_DETECT_CLIENT_FAILURES = 100;
+
+  /** Environment variable/system property name for the keys tracked by each detector table */
+  public static final String DETECT_MAX_KEYS = "WEBHOOK_DETECT_MAX_KEYS";
+
+  /** Default number of users, IP addresses and clients tracked by each detector table */
+  public static final int DEFAULT_DETECT_MAX_KEYS = 100000;
+
+  /** Environment variable/system property name for the CIDR geolocation file */
+  public static final String DETECT_GEO_FILE = "WEBHOOK_DETECT_GEO_FILE";
+
+  /** Environment variable/system property name for the fastest plausible travel speed */
+  public static final String DETECT_MAX_SPEED_KMH = "WEBHOOK_DETECT_MAX_SPEED_KMH";
+
+  /** Default fastest plausible travel speed between two logins, in km/h */
+  public static final double DEFAULT_DETECT_MAX_SPEED_KMH = 1000;
+
+  /** Environment variable/system property name for the interval between repeats of an error log */
+  public static final String ERROR_LOG_INTERVAL_MS = "WEBHOOK_ERROR_LOG_INTERVAL_MS";
+
+  /** Default interval between repeats of an identical error log, in milliseconds */
+  public static final long DEFAULT_ERROR_LOG_INTERVAL_MS = 60000;
+
+  /** Environment variable/system property name selecting the exporter of delivery spans */
+  public static final String SPAN_EXPORTER = "WEBHOOK_SPAN_EXPORTER";
+
+  /** Environment variable/system property name for the default admin event representation mode */
+  public static final String REPRESENTATION = "WEBHOOK_REPRESENTATION";
+
+  /** Environment variable/system property name for the memory of the representation diff cache */
+  public static final String REPRESENTATION_CACHE_MB = "WEBHOOK_REPRESENTATION_CACHE_MB";
+
+  /** Default memory of the representation diff cache, in megabytes */
+  public static final long DEFAULT_REPRESENTATION_CACHE_MB = 64;
+
+  /**
+   * Reads a setting from system properties first and environment variables second, the same lookup
+   * order used for {@link #WEBHOOK_URLS}.
+   *
+   * @param name The property or environment variable name
+   * @return The trimmed value, or null if it is not set or blank
+   */
+  public static String getSetting(String name) {
+    String value = System.getProperty(name);
+    if (value == null) {
+      value = System.getenv(name);
+    }
+    if (value == null || value.trim().isEmpty()) {
+      return null;
+    }
+    return value.trim();
+  }
+
+  /**
+   * Reads an integer setting, falling back to the default if it is missing or malformed.
+   *
+   * @param name The property or environment variable name
+   * @param defaultValue The value to use when the setting is absent or invalid
+   * @return The configured value or the default
+   */
+  public static int getInt(String name, int defaultValue) {
+    return (int) getLong(name, defaultValue);
+  }
+
+  /**
+   * Reads a long setting, falling back to the default if it is missing or malformed.
+   *
+   * @param name The property or environment variable name
+   * @param defaultValue The value to use when the setting is absent or invalid
+   * @return The configured value or the default
+   */
+  public static long getLong(String name, long defaultValue) {
+    String value = getSetting(name);
+    if (value == null) {
+      return defaultValue;
+    }
+    try {
+      return Long.parseLong(value);
+    } catch (NumberFormatException e) {
+      return defaultValue;
+    }
+  }
+
+  /**
+   * Reads a double setting, falling back to the default if it is missing or malformed.
+   *
+   * @param name The property or environment variable name
+   * @param defaultValue The value to use when the setting is absent or invalid
+   * @return The configured value or the default
+   */
+  public static double getDouble(String name, double defaultValue) {
+    String value = getSetting(name);
+    if (value == null) {
+      return defaultValue;
+    }
+    try {
+      return Double.parseDouble(value);
+    } catch (NumberFormatException e) {
+      return defaultValue;
+    }
+  }
+
   /** Private constructor to prevent instantiation */
   private WebhookConfig() {
     // Utility class, no instantiation
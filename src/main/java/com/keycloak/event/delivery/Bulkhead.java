@@ -0,0 +1,59 @@
+package com.keycloak.event.delivery;
+
+import java.util.Collections;
+import java.util.Set;
+import lombok.Getter;
+
+/**
+ * A compartment of every endpoint queue that holds the events of a group of realms. Each bulkhead
+ * has its own capacity and overflow policy, so a flood of events in one realm only fills its own
+ * bulkhead; the weight sets the share of worker time the bulkhead receives while others have events
+ * waiting.
+ */
+@Getter
+public class Bulkhead {
+
+  /** Name of the bulkhead, used in metrics and for spool directories */
+  private final String name;
+
+  /** Relative share of worker time */
+  private final int weight;
+
+  /** In-memory capacity of each priority lane, 0 to use WEBHOOK_QUEUE_CAPACITY */
+  private final int capacity;
+
+  /** Policy applied when a lane is full, null to use WEBHOOK_OVERFLOW_POLICY */
+  private final OverflowPolicy overflowPolicy;
+
+  /** Ids of the realms whose events this bulkhead holds */
+  private final Set<String> realms;
+
+  /**
+   * Creates a new bulkhead.
+   *
+   * @param name The bulkhead name
+   * @param weight The scheduling weight, at least 1
+   * @param capacity The capacity of each priority lane, 0 for the queue default
+   * @param overflowPolicy The overflow policy, null for the queue default
+   * @param realms The realm ids assigned to this bulkhead
+   */
+  public Bulkhead(
+      String name, int weight, int capacity, OverflowPolicy overflowPolicy, Set<String> realms) {
+    this.name = name;
+    this.weight = Math.max(1, weight);
+    this.capacity = Math.max(0, capacity);
+    this.overflowPolicy = overflowPolicy;
+    this.realms = Collections.unmodifiableSet(realms);
+  }
+
+  /**
+   * Returns a bulkhead with the settings of this one for a single realm.
+   *
+   * @param name The name of the new bulkhead
+   * @param realmId The realm id
+   * @return The new bulkhead
+   */
+  Bulkhead forRealm(String name, String realmId) {
+    return new Bulkhead(name, weight, capacity, overflowPolicy, Collections.singleton(realmId));
+  }
+}
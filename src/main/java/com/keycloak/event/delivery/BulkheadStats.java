@@ -0,0 +1,62 @@
+package com.keycloak.event.delivery;
+
+import lombok.Getter;
+
+/** Point-in-time counters of one {@link Bulkhead}, summed over the queues they were read from. */
+@Getter
+public class BulkheadStats {
+
+  /** Name of the bulkhead */
+  private final String name;
+
+  /** Events waiting in memory and on disk */
+  private final long backlog;
+
+  /** Events accepted into the bulkhead */
+  private final long accepted;
+
+  /** Events handed to a worker for delivery */
+  private final long delivered;
+
+  /** Events dropped by the overflow policy */
+  private final long dropped;
+
+  /**
+   * Creates a new snapshot.
+   *
+   * @param name The bulkhead name
+   * @param backlog The number of waiting events
+   * @param accepted The number of accepted events
+   * @param delivered The number of events handed to a worker
+   * @param dropped The number of dropped events
+   */
+  public BulkheadStats(String name, long backlog, long accepted, long delivered, long dropped) {
+    this.name = name;
+    this.backlog = backlog;
+    this.accepted = accepted;
+    this.delivered = delivered;
+    this.dropped = dropped;
+  }
+
+  /**
+   * Adds the counters of another snapshot of the same bulkhead.
+   *
+   * @param other The other snapshot
+   * @return The sum
+   */
+  public BulkheadStats plus(BulkheadStats other) {
+    return new BulkheadStats(
+        name,
+        backlog + other.backlog,
+        accepted + other.accepted,
+        delivered + other.delivered,
+        dropped + other.dropped);
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "%s[backlog=%d, accepted=%d, delivered=%d, dropped=%d]",
+        name, backlog, accepted, delivered, dropped);
+  }
+}
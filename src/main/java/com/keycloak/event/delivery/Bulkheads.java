@@ -0,0 +1,183 @@
+package com.keycloak.event.delivery;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * The {@link Bulkhead}s events are isolated in and the lookup from realm id to bulkhead. Realms
+ * that are not listed share the default bulkhead, unless a {@link #PER_REALM} entry gives each of
+ * them a bulkhead of its own.
+ *
+ * <p>The configuration format lists bulkheads separated by semicolons. Each entry is {@code
+ * name:weight:capacity:policy=REALM_ID,REALM_ID,...}; everything after the name is optional, and an
+ * empty field keeps the queue default. An entry named {@code default} configures the shared
+ * bulkhead, an entry named {@code *} is the template of per-realm bulkheads. Example:
+ *
+ * <pre>
+ * acme:4:20000:SPOOL=acme-prod,acme-stage;perf:1:500:DROP_OLDEST=loadtest;*:2
+ * </pre>
+ */
+@Slf4j
+public class Bulkheads {
+
+  /** Name of the bulkhead that receives the events of all unassigned realms */
+  public static final String DEFAULT_BULKHEAD = "default";
+
+  /** Name of the entry that gives every unassigned realm its own bulkhead */
+  public static final String PER_REALM = "*";
+
+  /** Prefix of the names of per-realm bulkheads */
+  public static final String REALM_PREFIX = "realm:";
+
+  @Getter private final List<Bulkhead> bulkheads;
+  @Getter private final Bulkhead defaultBulkhead;
+  private final Bulkhead perRealm;
+  private final Map<String, Bulkhead> byRealm = new HashMap<>();
+
+  /**
+   * Creates a bulkhead set.
+   *
+   * @param bulkheads The named bulkheads, exactly one named {@link #DEFAULT_BULKHEAD}
+   * @param perRealm The template of per-realm bulkheads, or null to share the default bulkhead
+   */
+  public Bulkheads(List<Bulkhead> bulkheads, Bulkhead perRealm) {
+    this.bulkheads = Collections.unmodifiableList(new ArrayList<>(bulkheads));
+    this.perRealm = perRealm;
+    Bulkhead defaults = null;
+    for (Bulkhead bulkhead : bulkheads) {
+      if (DEFAULT_BULKHEAD.equals(bulkhead.getName())) {
+        defaults = bulkhead;
+      }
+      for (String realm : bulkhead.getRealms()) {
+        byRealm.putIfAbsent(realm, bulkhead);
+      }
+    }
+    if (defaults == null) {
+      throw new IllegalArgumentException("Bulkheads must include a 'default' bulkhead");
+    }
+    this.defaultBulkhead = defaults;
+  }
+
+  /**
+   * Returns a set with only the default bulkhead, which behaves like a queue without bulkheads.
+   *
+   * @return The single-bulkhead set
+   */
+  public static Bulkheads single() {
+    return new Bulkheads(
+        Collections.singletonList(
+            new Bulkhead(DEFAULT_BULKHEAD, 1, 0, null, Collections.emptySet())),
+        null);
+  }
+
+  /**
+   * Parses a bulkhead definition in the format described on this class.
+   *
+   * @param value The configured definition, may be null
+   * @return The parsed bulkheads, or {@link #single()} if the value is empty
+   */
+  public static Bulkheads parse(String value) {
+    if (value == null || value.trim().isEmpty()) {
+      return single();
+    }
+    List<Bulkhead> bulkheads = new ArrayList<>();
+    Bulkhead perRealm = null;
+    boolean hasDefault = false;
+    for (String entry : value.split(";")) {
+      entry = entry.trim();
+      if (entry.isEmpty()) {
+        continue;
+      }
+      String head = entry;
+      Set<String> realms = new LinkedHashSet<>();
+      int equals = entry.indexOf('=');
+      if (equals >= 0) {
+        head = entry.substring(0, equals).trim();
+        realms =
+            Arrays.stream(entry.substring(equals + 1).split(","))
+                .map(String::trim)
+                .filter(s -> !s.isEmpty())
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+      }
+      String[] fields = head.split(":", -1);
+      String name = fields[0].trim();
+      int weight = intField(fields, 1, 1, entry);
+      int capacity = intField(fields, 2, 0, entry);
+      OverflowPolicy policy =
+          fields.length > 3 && !fields[3].trim().isEmpty()
+              ? OverflowPolicy.fromString(fields[3], null)
+              : null;
+      if (fields.length > 3 && !fields[3].trim().isEmpty() && policy == null) {
+        log.warn("Invalid overflow policy in bulkhead '{}', using the queue default", entry);
+      }
+      Bulkhead bulkhead = new Bulkhead(name, weight, capacity, policy, realms);
+      if (PER_REALM.equals(name)) {
+        perRealm = bulkhead;
+        continue;
+      }
+      hasDefault |= DEFAULT_BULKHEAD.equals(name);
+      bulkheads.add(bulkhead);
+    }
+    if (!hasDefault) {
+      bulkheads.add(new Bulkhead(DEFAULT_BULKHEAD, 1, 0, null, Collections.emptySet()));
+    }
+    return new Bulkheads(bulkheads, perRealm);
+  }
+
+  /**
+   * Returns the bulkhead of a realm. Per-realm bulkheads are created on every call; callers cache
+   * them by name.
+   *
+   * @param realmId The realm id, may be null
+   * @return The listed bulkhead of the realm, its own bulkhead, or the default bulkhead
+   */
+  public Bulkhead resolve(String realmId) {
+    Bulkhead bulkhead = realmId == null ? null : byRealm.get(realmId);
+    if (bulkhead != null) {
+      return bulkhead;
+    }
+    if (perRealm != null && realmId != null) {
+      return perRealm.forRealm(REALM_PREFIX + realmId, realmId);
+    }
+    return defaultBulkhead;
+  }
+
+  /**
+   * Returns whether unassigned realms get a bulkhead of their own.
+   *
+   * @return true if a {@link #PER_REALM} entry is configured
+   */
+  public boolean isPerRealm() {
+    return perRealm != null;
+  }
+
+  /**
+   * Returns the number of named bulkheads, including the default one.
+   *
+   * @return The bulkhead count
+   */
+  public int size() {
+    return bulkheads.size();
+  }
+
+  private static int intField(String[] fields, int index, int defaultValue, String entry) {
+    if (fields.length <= index || fields[index].trim().isEmpty()) {
+      return defaultValue;
+    }
+    try {
+      return Integer.parseInt(fields[index].trim());
+    } catch (NumberFormatException e) {
+      log.warn("Invalid number in bulkhead '{}', using {}", entry, defaultValue);
+      return defaultValue;
+    }
+  }
+}
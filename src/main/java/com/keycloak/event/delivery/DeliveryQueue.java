@@ -0,0 +1,711 @@
+package com.keycloak.event.delivery;
+
+import com.keycloak.event.jfr.DropEvent;
+import com.keycloak.event.jfr.EnqueueEvent;
+import java.io.UncheckedIOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Bounded hand-off queue between onEvent and the delivery worker of one endpoint. When the queue is
+ * full the configured {@link OverflowPolicy} decides what happens to the new event; every event
+ * that is not delivered is counted in {@link DropCounters}.
+ *
+ * <p>Events are split into one lane per {@link PriorityClass}, each with its own capacity and,
+ * under the SPOOL policy, its own disk spool. A flood of bulk events therefore only fills the bulk
+ * lane, and the {@link SchedulingMode} decides how the worker shares its time between lanes.
+ *
+ * <p>Above the priority lanes, events are isolated by realm in {@link Bulkheads}: every bulkhead
+ * has its own set of priority lanes with its own capacity and overflow policy, and the worker
+ * shares its time between bulkheads with events waiting by deficit round robin over payload bytes,
+ * in proportion to their weights. A realm flooding the queue therefore only fills its own bulkhead
+ * and delays other realms by at most their fair share.
+ *
+ * <p>With {@link PayloadSlabs}, the payloads of tasks queued behind the first {@value
+ * #RESIDENT_TASKS} of a lane are moved off the heap and restored when the tasks are polled, so a
+ * long backlog holds little more than the task objects on the heap.
+ *
+ * <p>Under the SPOOL policy, once any task of a lane is bound for disk all newer tasks of that lane
+ * follow it to the spool until the spool is drained, so events of one class are still delivered in
+ * arrival order. The queue's lock is only held to decide where a task goes and to reserve its turn
+ * to write: the task is serialized and written to the spool after the lock is released, in the
+ * order of the reservations, so a slow disk delays only the producers that spool to that lane.
+ */
+@Slf4j
+public class DeliveryQueue {
+
+  /** Bytes of payload a class of weight 1 may send per deficit round robin round */
+  static final int DRR_QUANTUM = 4096;
+
+  /** Tasks at the head of a lane whose payloads stay on the heap */
+  static final int RESIDENT_TASKS = 64;
+
+  @Getter private final String endpoint;
+  @Getter private final int capacity;
+  @Getter private final OverflowPolicy policy;
+  @Getter private final PriorityClasses priorityClasses;
+  @Getter private final Bulkheads bulkheads;
+  private final SchedulingMode schedulingMode;
+  private final long blockTimeoutNanos;
+  private final DropCounters dropCounters;
+  private final Function<String, DiskSpool> spoolFactory;
+  private final Consumer<DeliveryTask> abandoned;
+  private final PayloadSlabs payloadSlabs;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition notEmpty = lock.newCondition();
+  private final Condition notFull = lock.newCondition();
+
+  private final Map<String, Compartment> compartments = new HashMap<>();
+  private final Map<String, Compartment> compartmentsByRealm = new HashMap<>();
+  private final List<Compartment> rotation = new ArrayList<>();
+  private int rotationCurrent;
+
+  /**
+   * Creates a delivery queue with one set of priority lanes per bulkhead. The named bulkheads are
+   * opened right away, so their spools are replayed; per-realm bulkheads are opened with the first
+   * event of their realm or by {@link #openRealm}.
+   *
+   * @param endpoint The endpoint this queue feeds, used for drop accounting
+   * @param settings The capacity and overflow policy of each lane, the block timeout, the priority
+   *     classes and how they are scheduled, the bulkheads and the off-heap payload store
+   * @param dropCounters The shared drop counters
+   * @param spoolFactory Opens the spool for a path relative to the queue's spool directory: the
+   *     class name, below the bulkhead's directory for bulkheads other than the default one. May be
+   *     null if no bulkhead uses the SPOOL policy
+   * @param abandoned Called with every accepted task that leaves the queue without being polled:
+   *     evicted by DROP_OLDEST, or spooled or left behind when the queue closes. May be null
+   */
+  public DeliveryQueue(
+      String endpoint,
+      DeliverySettings settings,
+      DropCounters dropCounters,
+      Function<String, DiskSpool> spoolFactory,
+      Consumer<DeliveryTask> abandoned) {
+    if (settings.getCapacity() <= 0) {
+      throw new IllegalArgumentException(
+          "Queue capacity must be positive: " + settings.getCapacity());
+    }
+    if (settings.getOverflowPolicy() == OverflowPolicy.SPOOL && spoolFactory == null) {
+      throw new IllegalArgumentException("SPOOL overflow policy requires a disk spool");
+    }
+    this.endpoint = endpoint;
+    this.capacity = settings.getCapacity();
+    this.policy = settings.getOverflowPolicy();
+    this.blockTimeoutNanos =
+        TimeUnit.MILLISECONDS.toNanos(Math.max(0, settings.getBlockTimeoutMillis()));
+    this.dropCounters = dropCounters;
+    this.priorityClasses = settings.getPriorityClasses();
+    this.schedulingMode = settings.getSchedulingMode();
+    this.bulkheads = settings.getBulkheads();
+    this.spoolFactory = spoolFactory;
+    this.abandoned = abandoned != null ? abandoned : task -> {};
+    this.payloadSlabs = settings.getPayloadSlabs();
+    for (Bulkhead bulkhead : bulkheads.getBulkheads()) {
+      open(bulkhead);
+    }
+  }
+
+  /**
+   * Returns the spool directory of a bulkhead, relative to the queue's spool directory.
+   *
+   * @param bulkhead The bulkhead name
+   * @return The relative directory, empty for the default bulkhead
+   */
+  public static String spoolDirectory(String bulkhead) {
+    if (Bulkheads.DEFAULT_BULKHEAD.equals(bulkhead)) {
+      return "";
+    }
+    if (bulkhead.startsWith(Bulkheads.REALM_PREFIX)) {
+      return "realm-"
+          + URLEncoder.encode(
+              bulkhead.substring(Bulkheads.REALM_PREFIX.length()), StandardCharsets.UTF_8)
+          + "/";
+    }
+    return "bulkhead-" + bulkhead.replaceAll("[^A-Za-z0-9._-]", "_") + "/";
+  }
+
+  /**
+   * Opens the bulkhead of a realm, for example to replay a spool it left on disk.
+   *
+   * @param realmId The realm id
+   */
+  public void openRealm(String realmId) {
+    lock.lock();
+    try {
+      compartmentOf(realmId);
+      notEmpty.signal();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Hands a task to its priority lane, applying the overflow policy if the lane is full. Never
+   * blocks for longer than the configured block timeout.
+   *
+   * @param task The task to enqueue
+   * @return true if the task was accepted (in memory or on disk), false if it was dropped
+   */
+  public boolean offer(DeliveryTask task) {
+    return offer(task, true);
+  }
+
+  /**
+   * Hands a task to its priority lane, applying the overflow policy if the lane is full. Without
+   * {@code mayWait} the BLOCK policy does not wait for space but diverts the task to the lane's
+   * spool, or drops it if the queue has no spool directory.
+   *
+   * @param task The task to enqueue
+   * @param mayWait Whether the BLOCK policy may wait for space
+   * @return true if the task was accepted (in memory or on disk), false if it was dropped
+   */
+  public boolean offer(DeliveryTask task, boolean mayWait) {
+    EnqueueEvent recording = new EnqueueEvent();
+    recording.begin();
+    boolean accepted = insert(task, mayWait);
+    if (recording.shouldCommit()) {
+      recording.endpoint = endpoint;
+      recording.type = task.getType();
+      recording.realmId = task.getRealmId();
+      recording.accepted = accepted;
+      recording.commit();
+    }
+    return accepted;
+  }
+
+  private boolean insert(DeliveryTask task, boolean mayWait) {
+    int classIndex = priorityClasses.classify(task.getType());
+    Compartment compartment = null;
+    Lane lane;
+    long ticket;
+    lock.lock();
+    try {
+      compartment = compartmentOf(task.getRealmId());
+      lane = compartment.lanes[classIndex];
+      Admission admission = admit(compartment, lane, task, mayWait);
+      if (admission != Admission.SPOOL) {
+        return admission == Admission.QUEUED;
+      }
+      // Reserve the write, so later tasks of the lane follow this one to the spool
+      ticket = lane.spoolTickets++;
+      lane.spoolWrites++;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      drop(compartment, task);
+      return false;
+    } catch (UncheckedIOException e) {
+      log.error("Cannot open the spool of a new bulkhead for {}: {}", endpoint, e.getMessage());
+      drop(compartment, task);
+      return false;
+    } finally {
+      lock.unlock();
+    }
+    // Serializing and writing the task does not hold up the worker or tasks of other lanes
+    boolean spooled = lane.appendInTurn(ticket, task);
+    lock.lock();
+    try {
+      lane.spoolWrites--;
+      if (spooled) {
+        compartment.accepted++;
+        notEmpty.signal();
+      } else {
+        drop(compartment, task);
+      }
+      return spooled;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Queues or drops a task under the lock, or decides that it goes to the lane's spool. */
+  private Admission admit(Compartment compartment, Lane lane, DeliveryTask task, boolean mayWait)
+      throws InterruptedException {
+    if (lane.spool != null && (lane.spoolWrites > 0 || !lane.spool.isEmpty())) {
+      return Admission.SPOOL;
+    }
+    if (lane.tasks.size() < compartment.capacity) {
+      enqueue(compartment, lane, task);
+      return Admission.QUEUED;
+    }
+    switch (compartment.policy) {
+      case BLOCK:
+        if (!mayWait) {
+          if (lane.spool != null) {
+            return Admission.SPOOL;
+          }
+          drop(compartment, task);
+          return Admission.DROPPED;
+        }
+        long remaining = blockTimeoutNanos;
+        while (lane.tasks.size() >= compartment.capacity && remaining > 0) {
+          remaining = notFull.awaitNanos(remaining);
+        }
+        if (lane.tasks.size() < compartment.capacity) {
+          enqueue(compartment, lane, task);
+          return Admission.QUEUED;
+        }
+        drop(compartment, task);
+        return Admission.DROPPED;
+      case DROP_OLDEST:
+        DeliveryTask evicted = lane.tasks.pollFirst().onHeap();
+        drop(compartment, evicted);
+        abandoned.accept(evicted);
+        enqueue(compartment, lane, task);
+        return Admission.QUEUED;
+      case SPOOL:
+        return Admission.SPOOL;
+      case DROP_NEWEST:
+      default:
+        drop(compartment, task);
+        return Admission.DROPPED;
+    }
+  }
+
+  /**
+   * Removes the next task according to the scheduling mode, waiting up to the given time for one to
+   * arrive. Spooled tasks of a lane are replayed once its in-memory backlog is empty.
+   *
+   * @param timeout How long to wait
+   * @param unit The unit of the timeout
+   * @return The next task, or null if none arrived in time
+   * @throws InterruptedException If the worker is interrupted while waiting
+   */
+  public DeliveryTask poll(long timeout, TimeUnit unit) throws InterruptedException {
+    long remaining = unit.toNanos(timeout);
+    lock.lock();
+    try {
+      while (true) {
+        DeliveryTask task = pollFair();
+        if (task != null) {
+          notFull.signalAll();
+          return task;
+        }
+        if (remaining <= 0) {
+          return null;
+        }
+        remaining = notEmpty.awaitNanos(remaining);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Puts a task that was just polled back at the head of its lane, for a worker that could not send
+   * it, for example because it was interrupted while waiting for the rate limiter. The task is
+   * polled again before any other task of its lane and is not counted as accepted twice; the lane
+   * may briefly hold one task over its capacity.
+   *
+   * @param task The task returned by {@link #poll}
+   */
+  public void requeue(DeliveryTask task) {
+    int classIndex = priorityClasses.classify(task.getType());
+    lock.lock();
+    try {
+      Compartment compartment = compartmentOf(task.getRealmId());
+      compartment.lanes[classIndex].tasks.addFirst(task);
+      compartment.delivered--;
+      notEmpty.signal();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns the number of tasks waiting in memory and on disk across all lanes.
+   *
+   * @return The current backlog
+   */
+  public long size() {
+    lock.lock();
+    try {
+      long size = 0;
+      for (Compartment compartment : rotation) {
+        size += compartment.size();
+      }
+      return size;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns the number of tasks waiting in one priority class.
+   *
+   * @param className The priority class name
+   * @return The backlog of that class, 0 if the class is unknown
+   */
+  public long size(String className) {
+    lock.lock();
+    try {
+      long size = 0;
+      for (int i = 0; i < priorityClasses.size(); i++) {
+        if (priorityClasses.getClasses().get(i).getName().equals(className)) {
+          for (Compartment compartment : rotation) {
+            size += compartment.lanes[i].size();
+          }
+        }
+      }
+      return size;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Closes the queue. Under the SPOOL policy the in-memory backlog is written to disk first, so it
+   * is replayed on the next start instead of being lost. Spools of other policies only keep what
+   * was diverted to them. Payloads still queued off the heap are returned to the heap.
+   */
+  public void close() {
+    lock.lock();
+    try {
+      for (Compartment compartment : rotation) {
+        for (Lane lane : compartment.lanes) {
+          if (lane.spool != null) {
+            DeliveryTask task;
+            while (compartment.policy == OverflowPolicy.SPOOL
+                && (task = lane.tasks.pollFirst()) != null) {
+              task = task.onHeap();
+              if (!lane.appendInTurn(lane.spoolTickets++, task)) {
+                drop(compartment, task);
+              }
+              abandoned.accept(task);
+            }
+            // Writes reserved by producers finish before the spool is closed
+            lane.appendInTurn(lane.spoolTickets++, null);
+            lane.spool.close();
+          }
+          for (int i = lane.tasks.size(); i > 0; i--) {
+            DeliveryTask task = lane.tasks.pollFirst().onHeap();
+            lane.tasks.addLast(task);
+            abandoned.accept(task);
+          }
+        }
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns the counters of every bulkhead opened so far.
+   *
+   * @return The counters by bulkhead name
+   */
+  public Map<String, BulkheadStats> bulkheadStats() {
+    lock.lock();
+    try {
+      Map<String, BulkheadStats> stats = new LinkedHashMap<>();
+      for (Compartment compartment : rotation) {
+        stats.put(
+            compartment.name,
+            new BulkheadStats(
+                compartment.name,
+                compartment.size(),
+                compartment.accepted,
+                compartment.delivered,
+                compartment.dropped));
+      }
+      return stats;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private Compartment compartmentOf(String realmId) {
+    Compartment compartment = compartmentsByRealm.get(realmId);
+    if (compartment == null) {
+      Bulkhead bulkhead = bulkheads.resolve(realmId);
+      compartment = compartments.get(bulkhead.getName());
+      if (compartment == null) {
+        compartment = open(bulkhead);
+      }
+      compartmentsByRealm.put(realmId, compartment);
+    }
+    return compartment;
+  }
+
+  private Compartment open(Bulkhead bulkhead) {
+    OverflowPolicy compartmentPolicy = effectivePolicy(bulkhead);
+    Lane[] lanes = new Lane[priorityClasses.size()];
+    String directory = spoolDirectory(bulkhead.getName());
+    for (int i = 0; i < lanes.length; i++) {
+      PriorityClass priorityClass = priorityClasses.getClasses().get(i);
+      // BLOCK opens its spools too, for tasks diverted while producers must not wait
+      boolean spooled =
+          compartmentPolicy == OverflowPolicy.SPOOL
+              || (compartmentPolicy == OverflowPolicy.BLOCK && spoolFactory != null);
+      DiskSpool spool =
+          spooled ? spoolFactory.apply(directory + priorityClass.getSpoolName()) : null;
+      lanes[i] = new Lane(priorityClass.getWeight() * (long) DRR_QUANTUM, spool);
+    }
+    Compartment compartment =
+        new Compartment(
+            bulkhead.getName(),
+            bulkhead.getWeight() * (long) DRR_QUANTUM,
+            bulkhead.getCapacity() > 0 ? bulkhead.getCapacity() : capacity,
+            compartmentPolicy,
+            lanes);
+    compartments.put(compartment.name, compartment);
+    rotation.add(compartment);
+    return compartment;
+  }
+
+  private OverflowPolicy effectivePolicy(Bulkhead bulkhead) {
+    OverflowPolicy bulkheadPolicy = bulkhead.getOverflowPolicy();
+    if (bulkheadPolicy == OverflowPolicy.SPOOL && spoolFactory == null) {
+      log.warn(
+          "Bulkhead {} cannot spool without a spool directory, using {}",
+          bulkhead.getName(),
+          policy);
+      return policy;
+    }
+    return bulkheadPolicy != null ? bulkheadPolicy : policy;
+  }
+
+  /**
+   * Deficit round robin over the bulkheads with events waiting. A bulkhead keeps the worker while
+   * its deficit is positive and is charged the payload size of every task it sends, so bulkheads
+   * share the worker in proportion to their weights whatever their payload sizes.
+   */
+  private DeliveryTask pollFair() {
+    if (rotation.size() == 1) {
+      DeliveryTask task = rotation.get(0).poll();
+      if (task != null) {
+        rotation.get(0).delivered++;
+      }
+      return task;
+    }
+    boolean anyPending = false;
+    for (Compartment compartment : rotation) {
+      if (!compartment.isEmpty()) {
+        anyPending = true;
+        break;
+      }
+    }
+    if (!anyPending) {
+      return null;
+    }
+    while (true) {
+      Compartment compartment = rotation.get(rotationCurrent);
+      if (compartment.isEmpty()) {
+        compartment.deficit = 0;
+      } else if (compartment.deficit > 0) {
+        DeliveryTask task = compartment.poll();
+        compartment.deficit -= Math.max(1, task.getPayloadLength());
+        compartment.delivered++;
+        return task;
+      } else {
+        compartment.deficit += compartment.quantum;
+      }
+      rotationCurrent = (rotationCurrent + 1) % rotation.size();
+    }
+  }
+
+  private void enqueue(Compartment compartment, Lane lane, DeliveryTask task) {
+    if (payloadSlabs != null && lane.tasks.size() >= RESIDENT_TASKS) {
+      task = task.offHeap(payloadSlabs);
+    }
+    lane.tasks.addLast(task);
+    compartment.accepted++;
+    notEmpty.signal();
+  }
+
+  private void drop(Compartment compartment, DeliveryTask task) {
+    dropCounters.record(endpoint, task.getType());
+    OverflowPolicy dropPolicy = policy;
+    if (compartment != null) {
+      compartment.dropped++;
+      dropPolicy = compartment.policy;
+    }
+    DropEvent recording = new DropEvent();
+    if (recording.isEnabled()) {
+      recording.endpoint = endpoint;
+      recording.type = task.getType();
+      recording.reason = String.valueOf(dropPolicy);
+      recording.commit();
+    }
+    log.debug("Dropped {} event for {} under {} policy", task.getType(), endpoint, dropPolicy);
+  }
+
+  /** What {@link #admit} did with a task. */
+  private enum Admission {
+    QUEUED,
+    DROPPED,
+    SPOOL
+  }
+
+  /** The priority lanes, limits, scheduling state and counters of one bulkhead. */
+  private final class Compartment {
+    private final String name;
+    private final long quantum;
+    private final int capacity;
+    private final OverflowPolicy policy;
+    private final Lane[] lanes;
+    private long deficit;
+    private int drrCurrent;
+    private boolean drrCredited;
+    private long accepted;
+    private long delivered;
+    private long dropped;
+
+    private Compartment(
+        String name, long quantum, int capacity, OverflowPolicy policy, Lane[] lanes) {
+      this.name = name;
+      this.quantum = quantum;
+      this.capacity = capacity;
+      this.policy = policy;
+      this.lanes = lanes;
+    }
+
+    private DeliveryTask poll() {
+      return schedulingMode == SchedulingMode.DRR ? pollDrr() : pollStrict();
+    }
+
+    private DeliveryTask pollStrict() {
+      for (Lane lane : lanes) {
+        DeliveryTask task = lane.poll();
+        if (task != null) {
+          return task;
+        }
+      }
+      return null;
+    }
+
+    private DeliveryTask pollDrr() {
+      if (isEmpty()) {
+        return null;
+      }
+      while (true) {
+        Lane lane = lanes[drrCurrent];
+        DeliveryTask head = lane.peek();
+        if (head == null) {
+          lane.deficit = 0;
+          nextDrrLane();
+          continue;
+        }
+        if (!drrCredited) {
+          lane.deficit += lane.quantum;
+          drrCredited = true;
+        }
+        long cost = Math.max(1, head.getPayloadLength());
+        if (cost <= lane.deficit) {
+          lane.deficit -= cost;
+          return lane.poll();
+        }
+        nextDrrLane();
+      }
+    }
+
+    private void nextDrrLane() {
+      drrCurrent = (drrCurrent + 1) % lanes.length;
+      drrCredited = false;
+    }
+
+    private boolean isEmpty() {
+      for (Lane lane : lanes) {
+        if (!lane.isEmpty()) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private long size() {
+      long size = 0;
+      for (Lane lane : lanes) {
+        size += lane.size();
+      }
+      return size;
+    }
+  }
+
+  /**
+   * In-memory backlog, optional spool and deficit counter of one priority class. Spool writes are
+   * reserved under the queue lock and made outside it, in the order of their reservation.
+   */
+  private static final class Lane {
+    private final ArrayDeque<DeliveryTask> tasks = new ArrayDeque<>();
+    private final long quantum;
+    private final DiskSpool spool;
+    private long deficit;
+
+    /** Next spool write to reserve, guarded by the queue lock */
+    private long spoolTickets;
+
+    /** Reserved spool writes that have not finished, guarded by the queue lock */
+    private int spoolWrites;
+
+    /** Spool writes finished, guarded by the lane's monitor */
+    private long spoolTurn;
+
+    private Lane(long quantum, DiskSpool spool) {
+      this.quantum = quantum;
+      this.spool = spool;
+    }
+
+    private DeliveryTask peek() {
+      DeliveryTask task = tasks.peekFirst();
+      return task != null || spool == null ? task : spool.peek();
+    }
+
+    private DeliveryTask poll() {
+      DeliveryTask task = tasks.pollFirst();
+      if (task != null) {
+        return task.onHeap();
+      }
+      return spool == null ? null : spool.poll();
+    }
+
+    private boolean isEmpty() {
+      return tasks.isEmpty() && (spool == null || spool.isEmpty());
+    }
+
+    /**
+     * Appends a task to the spool once every write reserved before it has finished.
+     *
+     * @param ticket The reservation of the write
+     * @param task The task, or null to only wait for the earlier writes
+     * @return true if the task was written
+     */
+    private synchronized boolean appendInTurn(long ticket, DeliveryTask task) {
+      boolean interrupted = false;
+      while (spoolTurn != ticket) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          // Giving up the turn would stall every later write of the lane
+          interrupted = true;
+        }
+      }
+      try {
+        return task != null && spool.append(task);
+      } finally {
+        spoolTurn++;
+        notifyAll();
+        if (interrupted) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+
+    private long size() {
+      return tasks.size() + (spool == null ? 0 : spool.size());
+    }
+  }
+}
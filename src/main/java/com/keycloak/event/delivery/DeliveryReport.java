@@ -0,0 +1,149 @@
+package com.keycloak.event.delivery;
+
+import com.keycloak.event.exception.WebhookDeliveryException;
+import com.keycloak.event.exception.WebhookMultiException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import lombok.Getter;
+
+/**
+ * Outcome of sending one payload to the endpoints it was addressed to, with one {@link Result} per
+ * endpoint. Returned by the non-throwing send methods of the handler, so callers can inspect, count
+ * and log failures without paying for exceptions they do not need.
+ */
+@Getter
+public class DeliveryReport {
+
+  /** Report of a payload that was addressed to no endpoint */
+  public static final DeliveryReport EMPTY = new DeliveryReport(Collections.emptyList());
+
+  /** The outcome at each endpoint, in sending order */
+  private final List<Result> results;
+
+  /**
+   * Creates a report.
+   *
+   * @param results The outcome at each endpoint
+   */
+  public DeliveryReport(List<Result> results) {
+    this.results = Collections.unmodifiableList(results);
+  }
+
+  /**
+   * Returns whether every endpoint took the payload.
+   *
+   * @return true if no endpoint failed, including when there were none
+   */
+  public boolean isDelivered() {
+    return getFailureCount() == 0;
+  }
+
+  /**
+   * Returns the number of endpoints that failed.
+   *
+   * @return The failure count
+   */
+  public int getFailureCount() {
+    int failures = 0;
+    for (Result result : results) {
+      if (!result.isDelivered()) {
+        failures++;
+      }
+    }
+    return failures;
+  }
+
+  /**
+   * Returns the exception the throwing send methods raise for this report: the failure itself if
+   * one endpoint failed, a {@link WebhookMultiException} with the failures as suppressed exceptions
+   * if several did.
+   *
+   * @return The exception, or null if every endpoint took the payload
+   */
+  public Exception toException() {
+    int failures = getFailureCount();
+    if (failures == 0) {
+      return null;
+    }
+    WebhookMultiException multiException =
+        failures > 1
+            ? new WebhookMultiException(
+                String.format(
+                    "Multiple webhook failures occurred (%d/%d failed)", failures, results.size()))
+            : null;
+    for (Result result : results) {
+      if (!result.isDelivered()) {
+        if (multiException == null) {
+          return result.getError();
+        }
+        multiException.addSuppressed(result.getError());
+      }
+    }
+    return multiException;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder text = new StringBuilder();
+    text.append(results.size() - getFailureCount()).append('/').append(results.size());
+    text.append(" delivered");
+    for (int i = 0; i < results.size(); i++) {
+      text.append(i == 0 ? ": " : ", ").append(results.get(i));
+    }
+    return text.toString();
+  }
+
+  /** Outcome at one endpoint. */
+  @Getter
+  public static final class Result {
+
+    /** The endpoint URL */
+    private final String url;
+
+    /** Why the delivery failed, {@link ErrorCategory#NONE} if it succeeded */
+    private final ErrorCategory category;
+
+    /** The HTTP status of a refused payload, 0 if delivered or if there was no response */
+    private final int status;
+
+    /** Time spent sending, in nanoseconds */
+    private final long latencyNanos;
+
+    /** The failure, null if delivered */
+    private final Exception error;
+
+    /**
+     * Creates a result.
+     *
+     * @param url The endpoint URL
+     * @param latencyNanos The time spent sending, in nanoseconds
+     * @param error The failure, or null if the payload was delivered
+     */
+    public Result(String url, long latencyNanos, Exception error) {
+      this.url = url;
+      this.latencyNanos = latencyNanos;
+      this.error = error;
+      this.category = error == null ? ErrorCategory.NONE : ErrorCategory.of(error);
+      this.status =
+          error instanceof WebhookDeliveryException
+              ? ((WebhookDeliveryException) error).getStatus()
+              : 0;
+    }
+
+    /**
+     * Returns whether the endpoint took the payload.
+     *
+     * @return true if delivered
+     */
+    public boolean isDelivered() {
+      return error == null;
+    }
+
+    @Override
+    public String toString() {
+      String outcome = status != 0 ? category + " " + status : category.toString();
+      return url + " " + outcome + " in " + TimeUnit.NANOSECONDS.toMillis(latencyNanos) + " ms";
+    }
+  }
+}
@@ -0,0 +1,99 @@
+package com.keycloak.event.delivery;
+
+import com.keycloak.event.config.WebhookConfig;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import lombok.Builder;
+import lombok.Getter;
+
+/** Tuning parameters of the {@link WebhookDispatcher}, read from WEBHOOK_* settings by default. */
+@Getter
+@Builder
+public class DeliverySettings {
+
+  /** In-memory capacity of each endpoint lane */
+  @Builder.Default private final int capacity = WebhookConfig.DEFAULT_QUEUE_CAPACITY;
+
+  /** Policy applied when a lane is full */
+  @Builder.Default
+  private final OverflowPolicy overflowPolicy =
+      OverflowPolicy.valueOf(WebhookConfig.DEFAULT_OVERFLOW_POLICY);
+
+  /** How long the BLOCK policy waits for space */
+  @Builder.Default private final long blockTimeoutMillis = WebhookConfig.DEFAULT_BLOCK_TIMEOUT_MS;
+
+  /** Base directory for SPOOL policy segments */
+  @Builder.Default
+  private final Path spoolDirectory =
+      Paths.get(System.getProperty("java.io.tmpdir"), "keycloak-webhook-spool");
+
+  /** Disk cap of each spool in bytes */
+  @Builder.Default
+  private final long spoolMaxBytes = WebhookConfig.DEFAULT_SPOOL_MAX_MB * 1024 * 1024;
+
+  /** Off-heap store of queued payloads shared by all lanes, null to keep payloads on the heap */
+  private final PayloadSlabs payloadSlabs;
+
+  /** Classes events are split into, highest priority first */
+  @Builder.Default private final PriorityClasses priorityClasses = PriorityClasses.single();
+
+  /** How workers share their time between priority classes */
+  @Builder.Default
+  private final SchedulingMode schedulingMode =
+      SchedulingMode.valueOf(WebhookConfig.DEFAULT_PRIORITY_SCHEDULER);
+
+  /** Bulkheads isolating the events of realms within every lane */
+  @Builder.Default private final Bulkheads bulkheads = Bulkheads.single();
+
+  /** Number of serial lanes per endpoint */
+  @Builder.Default private final int lanes = WebhookConfig.DEFAULT_DELIVERY_LANES;
+
+  /** Attribute hashed to pick a lane */
+  @Builder.Default
+  private final OrderingKey orderingKey = OrderingKey.valueOf(WebhookConfig.DEFAULT_ORDERING_KEY);
+
+  /**
+   * Reads the settings from system properties and environment variables.
+   *
+   * @return The configured settings
+   */
+  public static DeliverySettings fromConfig() {
+    DeliverySettingsBuilder builder =
+        builder()
+            .capacity(
+                WebhookConfig.getInt(
+                    WebhookConfig.QUEUE_CAPACITY, WebhookConfig.DEFAULT_QUEUE_CAPACITY))
+            .overflowPolicy(
+                OverflowPolicy.fromString(
+                    WebhookConfig.getSetting(WebhookConfig.OVERFLOW_POLICY),
+                    OverflowPolicy.valueOf(WebhookConfig.DEFAULT_OVERFLOW_POLICY)))
+            .blockTimeoutMillis(
+                WebhookConfig.getLong(
+                    WebhookConfig.BLOCK_TIMEOUT_MS, WebhookConfig.DEFAULT_BLOCK_TIMEOUT_MS))
+            .spoolMaxBytes(
+                WebhookConfig.getLong(
+                        WebhookConfig.SPOOL_MAX_MB, WebhookConfig.DEFAULT_SPOOL_MAX_MB)
+                    * 1024
+                    * 1024)
+            .payloadSlabs(PayloadSlabs.fromConfig())
+            .priorityClasses(
+                PriorityClasses.parse(WebhookConfig.getSetting(WebhookConfig.PRIORITY_CLASSES)))
+            .schedulingMode(
+                SchedulingMode.fromString(
+                    WebhookConfig.getSetting(WebhookConfig.PRIORITY_SCHEDULER),
+                    SchedulingMode.valueOf(WebhookConfig.DEFAULT_PRIORITY_SCHEDULER)))
+            .bulkheads(Bulkheads.parse(WebhookConfig.getSetting(WebhookConfig.BULKHEADS)))
+            .lanes(
+                WebhookConfig.getInt(
+                    WebhookConfig.DELIVERY_LANES, WebhookConfig.DEFAULT_DELIVERY_LANES))
+            .orderingKey(
+                OrderingKey.fromString(
+                    WebhookConfig.getSetting(WebhookConfig.ORDERING_KEY),
+                    OrderingKey.valueOf(WebhookConfig.DEFAULT_ORDERING_KEY)));
+    String spoolDir = WebhookConfig.getSetting(WebhookConfig.SPOOL_DIR);
+    if (spoolDir != null) {
+      builder.spoolDirectory(Paths.get(spoolDir));
+    }
+    return builder.build();
+  }
+}
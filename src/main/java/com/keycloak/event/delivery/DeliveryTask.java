@@ -0,0 +1,319 @@
+package com.keycloak.event.delivery;
+
+import com.keycloak.event.endpoint.WebhookEndpoint;
+import com.keycloak.event.representation.RepresentationPolicy;
+import com.keycloak.event.trace.TraceContext;
+import java.util.Collections;
+import java.util.Map;
+import java.util.function.Supplier;
+import lombok.AccessLevel;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * A serialized event waiting for delivery to one endpoint. Instances are immutable and shared
+ * between the queues of all endpoints, so the payload is serialized once per event.
+ *
+ * <p>Admin events whose endpoints render the representation differently carry one payload per
+ * {@link RepresentationPolicy}; {@link #forEndpoint} picks the payload of an endpoint before the
+ * task is queued.
+ *
+ * <p>The payload may also be deferred: it is then serialized by the first thread that needs it,
+ * normally a delivery worker, instead of by onEvent.
+ *
+ * <p>While a task waits deep in a queue, the queue may hold a copy whose payload was moved to
+ * {@link PayloadSlabs}, see {@link #offHeap} and {@link #onHeap}.
+ */
+@Getter
+public class DeliveryTask {
+
+  /** Wrapper type of the event, either USER_EVENT or ADMIN_EVENT */
+  private final String eventType;
+
+  /** Keycloak event type or admin operation type, used for per-type accounting */
+  private final String type;
+
+  /** Realm the event belongs to, may be null */
+  private final String realmId;
+
+  /** User the event is about, may be null for admin events and failed logins */
+  private final String userId;
+
+  /** Admin resource path, null for user events */
+  private final String resourcePath;
+
+  /** Assumed payload length of a deferred task that has not been serialized yet */
+  static final int DEFERRED_LENGTH_ESTIMATE = 1024;
+
+  /** The JSON payload to deliver, null until a deferred payload is serialized */
+  @Getter(AccessLevel.NONE)
+  private volatile String payload;
+
+  @Getter(AccessLevel.NONE)
+  private Supplier<String> deferredPayload;
+
+  /** Payloads of endpoints whose representation policy differs from the one of the payload */
+  private final Map<RepresentationPolicy, String> variants;
+
+  /** Value of {@link System#nanoTime()} when the task was created */
+  private final long createdAtNanos;
+
+  /** Trace context of the request that produced the event, null if it carried none */
+  private final TraceContext trace;
+
+  /** Time spent serializing the payload, 0 until known */
+  @Setter private volatile long serializationNanos;
+
+  @Getter(AccessLevel.NONE)
+  private PayloadSlabs slabs;
+
+  /** Handle of the payload in {@link #slabs} while it is off the heap, otherwise -1 */
+  @Getter(AccessLevel.NONE)
+  private long slabHandle = -1;
+
+  @Getter(AccessLevel.NONE)
+  private int offHeapLength;
+
+  /**
+   * Creates a new delivery task without routing attributes, as restored from a spool of the oldest
+   * format. Tasks with more attributes are created through {@link #builder()}.
+   *
+   * @param eventType The wrapper type (USER_EVENT or ADMIN_EVENT)
+   * @param type The Keycloak event or operation type
+   * @param payload The JSON payload to deliver
+   */
+  public DeliveryTask(String eventType, String type, String payload) {
+    this(
+        eventType,
+        type,
+        null,
+        null,
+        null,
+        payload,
+        Collections.emptyMap(),
+        System.nanoTime(),
+        null);
+  }
+
+  /**
+   * Creates a new delivery task, through {@link #builder()}. Exactly one of payload and
+   * deferredPayload is set.
+   *
+   * @param eventType The wrapper type (USER_EVENT or ADMIN_EVENT)
+   * @param type The Keycloak event or operation type
+   * @param realmId The realm ID, may be null
+   * @param userId The user ID, may be null
+   * @param resourcePath The admin resource path, may be null
+   * @param payload The JSON payload, which is the payload of endpoints whose policy has no variant
+   * @param deferredPayload Serializes the payload when it is first needed, called at most once
+   * @param variants The payload of each representation policy, may be null
+   * @param trace The trace context of the request that produced the event, may be null
+   */
+  @Builder
+  private DeliveryTask(
+      String eventType,
+      String type,
+      String realmId,
+      String userId,
+      String resourcePath,
+      String payload,
+      Supplier<String> deferredPayload,
+      Map<RepresentationPolicy, String> variants,
+      TraceContext trace) {
+    this(
+        eventType,
+        type,
+        realmId,
+        userId,
+        resourcePath,
+        payload,
+        variants != null ? variants : Collections.emptyMap(),
+        System.nanoTime(),
+        trace);
+    this.deferredPayload = deferredPayload;
+  }
+
+  private DeliveryTask(
+      String eventType,
+      String type,
+      String realmId,
+      String userId,
+      String resourcePath,
+      String payload,
+      Map<RepresentationPolicy, String> variants,
+      long createdAtNanos,
+      TraceContext trace) {
+    this.eventType = eventType;
+    this.type = type;
+    this.realmId = realmId;
+    this.userId = userId;
+    this.resourcePath = resourcePath;
+    this.payload = payload;
+    this.variants = variants;
+    this.createdAtNanos = createdAtNanos;
+    this.trace = trace;
+  }
+
+  /**
+   * Returns the payload, serializing a deferred payload first.
+   *
+   * @return The JSON payload to deliver
+   */
+  public String getPayload() {
+    String current = payload;
+    if (current == null) {
+      synchronized (this) {
+        if (payload == null && slabHandle >= 0) {
+          return slabs.read(slabHandle);
+        }
+        if (payload == null && deferredPayload != null) {
+          long start = System.nanoTime();
+          payload = deferredPayload.get();
+          serializationNanos = System.nanoTime() - start;
+          deferredPayload = null;
+        }
+        current = payload;
+      }
+    }
+    return current;
+  }
+
+  /**
+   * Returns the payload length for scheduling, without serializing a deferred payload.
+   *
+   * @return The payload length, or an estimate while the payload is deferred
+   */
+  public int getPayloadLength() {
+    String current = payload;
+    if (current != null) {
+      return current.length();
+    }
+    return slabHandle >= 0 ? offHeapLength : DEFERRED_LENGTH_ESTIMATE;
+  }
+
+  /**
+   * Returns the payload rendered for an endpoint's representation policy.
+   *
+   * @param endpoint The endpoint
+   * @return The payload to deliver to the endpoint
+   */
+  public String payloadFor(WebhookEndpoint endpoint) {
+    if (variants.isEmpty()) {
+      return getPayload();
+    }
+    return variants.getOrDefault(endpoint.getRepresentationPolicy(), payload);
+  }
+
+  /**
+   * Returns the task to queue for an endpoint: this task if it has a single payload, otherwise a
+   * copy holding only the endpoint's payload.
+   *
+   * @param endpoint The endpoint
+   * @return The task carrying the endpoint's payload
+   */
+  public DeliveryTask forEndpoint(WebhookEndpoint endpoint) {
+    if (variants.isEmpty()) {
+      return this;
+    }
+    String selected = payloadFor(endpoint);
+    DeliveryTask copy =
+        new DeliveryTask(
+            eventType,
+            type,
+            realmId,
+            userId,
+            resourcePath,
+            selected,
+            Collections.emptyMap(),
+            createdAtNanos,
+            trace);
+    copy.serializationNanos = serializationNanos;
+    return copy;
+  }
+
+  /**
+   * Returns a copy of this task that continues the trace of the request that produced the event.
+   *
+   * @param context The trace context of the request, may be null
+   * @return The copy, or this task if there is no trace context
+   */
+  public DeliveryTask withTrace(TraceContext context) {
+    if (context == null) {
+      return this;
+    }
+    String current;
+    Supplier<String> deferred;
+    synchronized (this) {
+      current = payload;
+      deferred = current == null ? deferredPayload : null;
+    }
+    DeliveryTask copy =
+        new DeliveryTask(
+            eventType,
+            type,
+            realmId,
+            userId,
+            resourcePath,
+            current,
+            variants,
+            createdAtNanos,
+            context);
+    copy.deferredPayload = deferred;
+    copy.serializationNanos = serializationNanos;
+    return copy;
+  }
+
+  /**
+   * Returns a copy of this task whose payload is moved off the heap. The copy belongs to the queue
+   * that holds it, which must call {@link #onHeap} exactly once when the task leaves the queue.
+   *
+   * @param store The store to move the payload to
+   * @return The copy, or this task if the payload is not serialized yet, has variants or was
+   *     refused by the store
+   */
+  DeliveryTask offHeap(PayloadSlabs store) {
+    String current = payload;
+    if (current == null || !variants.isEmpty() || slabHandle >= 0) {
+      return this;
+    }
+    long handle = store.store(current);
+    if (handle < 0) {
+      return this;
+    }
+    DeliveryTask copy =
+        new DeliveryTask(
+            eventType, type, realmId, userId, resourcePath, null, variants, createdAtNanos, trace);
+    copy.serializationNanos = serializationNanos;
+    copy.slabs = store;
+    copy.slabHandle = handle;
+    copy.offHeapLength = current.length();
+    return copy;
+  }
+
+  /**
+   * Returns a task holding the payload of an off-heap copy on the heap again, and frees the
+   * off-heap memory.
+   *
+   * @return The task with its payload on the heap, or this task if it was not off the heap
+   */
+  DeliveryTask onHeap() {
+    if (slabHandle < 0) {
+      return this;
+    }
+    DeliveryTask copy =
+        new DeliveryTask(
+            eventType,
+            type,
+            realmId,
+            userId,
+            resourcePath,
+            slabs.release(slabHandle),
+            variants,
+            createdAtNanos,
+            trace);
+    copy.serializationNanos = serializationNanos;
+    slabHandle = -1;
+    return copy;
+  }
+}
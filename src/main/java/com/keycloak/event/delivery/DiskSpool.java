@@ -0,0 +1,341 @@
+package com.keycloak.event.delivery;
+
+import com.keycloak.event.representation.RepresentationPolicy;
+import com.keycloak.event.trace.TraceContext;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Append-only disk overflow for one endpoint queue. Tasks are written as tab-separated lines into
+ * numbered segment files and replayed oldest segment first, so spooled events keep their order.
+ * Segments left behind by a previous run are picked up again on startup.
+ *
+ * <p>A line holds every attribute a task is routed and delivered by: its types, realm, user and
+ * resource path, the trace context of its request, its payload and its per-policy payloads. Fields
+ * are escaped so that no value can contain a tab or a line break, and a null value is written as
+ * {@code \N}. Lines of the older format, holding only the types and the payload, are still read.
+ *
+ * <p>Writes are buffered and only flushed when a segment is sealed for replay, which keeps the cost
+ * of spooling close to a memory copy on the event path. The spool is capped at a fixed number of
+ * bytes; appends beyond the cap are refused and the caller counts the event as dropped.
+ */
+@Slf4j
+public class DiskSpool implements Closeable {
+
+  /** Number of records written to a segment before a new one is started */
+  static final int SEGMENT_MAX_RECORDS = 1000;
+
+  private static final String SEGMENT_SUFFIX = ".spool";
+
+  /** First field of a line in the current format */
+  private static final String FORMAT = "2";
+
+  /** Fields of a line before the per-policy payloads */
+  private static final int FIXED_FIELDS = 9;
+
+  private static final String NULL = "\\N";
+
+  private final Path directory;
+  private final long maxBytes;
+  private final ArrayDeque<DeliveryTask> replay = new ArrayDeque<>();
+
+  private BufferedWriter writer;
+  private Path writerSegment;
+  private int writerRecords;
+  private long nextSegment;
+  private long pending;
+  private long bytesOnDisk;
+
+  /**
+   * Opens a spool in the given directory, recovering any segments from a previous run.
+   *
+   * @param directory The directory holding the segment files
+   * @param maxBytes The maximum number of bytes the spool may occupy on disk
+   * @throws IOException If the directory cannot be created or read
+   */
+  public DiskSpool(Path directory, long maxBytes) throws IOException {
+    this.directory = directory;
+    this.maxBytes = maxBytes;
+    Files.createDirectories(directory);
+    for (Path segment : segments()) {
+      bytesOnDisk += Files.size(segment);
+      try (var lines = Files.lines(segment, StandardCharsets.UTF_8)) {
+        pending += lines.count();
+      }
+      nextSegment = Math.max(nextSegment, segmentNumber(segment) + 1);
+    }
+    if (pending > 0) {
+      log.info("Recovered {} spooled webhook event(s) from {}", pending, directory);
+    }
+  }
+
+  /**
+   * Appends a task to the spool. A deferred payload is serialized and the line encoded before the
+   * spool is locked.
+   *
+   * @param task The task to spool
+   * @return true if the task was written, false if the spool is full or unwritable or the payload
+   *     cannot be serialized
+   */
+  public boolean append(DeliveryTask task) {
+    String line;
+    try {
+      line = encode(task);
+    } catch (UncheckedIOException e) {
+      // A deferred payload that cannot be serialized; the task logged why
+      return false;
+    }
+    return write(line);
+  }
+
+  private synchronized boolean write(String line) {
+    long length = line.getBytes(StandardCharsets.UTF_8).length;
+    if (bytesOnDisk + length > maxBytes) {
+      return false;
+    }
+    try {
+      if (writer == null || writerRecords >= SEGMENT_MAX_RECORDS) {
+        sealSegment();
+        writerSegment = directory.resolve(String.format("%020d%s", nextSegment++, SEGMENT_SUFFIX));
+        writer = Files.newBufferedWriter(writerSegment, StandardCharsets.UTF_8);
+        writerRecords = 0;
+      }
+      writer.write(line);
+      writerRecords++;
+      bytesOnDisk += length;
+      pending++;
+      return true;
+    } catch (IOException e) {
+      log.error("Failed to spool webhook event to {}: {}", directory, e.getMessage());
+      return false;
+    }
+  }
+
+  /**
+   * Removes and returns the oldest spooled task.
+   *
+   * @return The oldest task, or null if the spool is empty
+   */
+  public synchronized DeliveryTask poll() {
+    if (replay.isEmpty() && pending > 0) {
+      loadOldestSegment();
+    }
+    DeliveryTask task = replay.poll();
+    if (task != null) {
+      pending--;
+    }
+    return task;
+  }
+
+  /**
+   * Returns the oldest spooled task without removing it.
+   *
+   * @return The oldest task, or null if the spool is empty
+   */
+  public synchronized DeliveryTask peek() {
+    if (replay.isEmpty() && pending > 0) {
+      loadOldestSegment();
+    }
+    return replay.peek();
+  }
+
+  /**
+   * Returns whether the spool holds no tasks.
+   *
+   * @return true if nothing is spooled
+   */
+  public synchronized boolean isEmpty() {
+    return pending == 0;
+  }
+
+  /**
+   * Returns the number of spooled tasks.
+   *
+   * @return The number of tasks waiting on disk
+   */
+  public synchronized long size() {
+    return pending;
+  }
+
+  /** Flushes and closes the current segment. Unreplayed segments stay on disk for the next run. */
+  @Override
+  public synchronized void close() {
+    try {
+      sealSegment();
+    } catch (IOException e) {
+      log.warn("Failed to close webhook spool segment in {}: {}", directory, e.getMessage());
+    }
+  }
+
+  private void loadOldestSegment() {
+    try {
+      List<Path> segments = segments();
+      if (segments.isEmpty()) {
+        pending = 0;
+        return;
+      }
+      Path oldest = segments.get(0);
+      if (oldest.equals(writerSegment)) {
+        sealSegment();
+      }
+      long loaded = 0;
+      for (String line : Files.readAllLines(oldest, StandardCharsets.UTF_8)) {
+        loaded++;
+        DeliveryTask task = decode(line);
+        if (task != null) {
+          replay.add(task);
+        } else {
+          log.warn("Skipping corrupt webhook spool record in {}", oldest);
+        }
+      }
+      bytesOnDisk -= Files.size(oldest);
+      Files.delete(oldest);
+      pending -= loaded - replay.size();
+    } catch (IOException e) {
+      log.error("Failed to replay webhook spool in {}: {}", directory, e.getMessage());
+    }
+  }
+
+  /** Writes a task as one line in the current format, ending with a line break. */
+  static String encode(DeliveryTask task) {
+    String payload = task.getPayload();
+    StringBuilder line = new StringBuilder(payload.length() + 128);
+    line.append(FORMAT);
+    field(line, task.getEventType());
+    field(line, task.getType());
+    field(line, task.getRealmId());
+    field(line, task.getUserId());
+    field(line, task.getResourcePath());
+    TraceContext trace = task.getTrace();
+    field(line, trace != null ? trace.traceparent(trace.getParentId()) : null);
+    field(line, trace != null ? trace.getTraceState() : null);
+    field(line, payload);
+    for (Map.Entry<RepresentationPolicy, String> variant : task.getVariants().entrySet()) {
+      field(line, variant.getKey().toString());
+      field(line, variant.getValue());
+    }
+    return line.append('\n').toString();
+  }
+
+  /** Reads a line written by {@link #encode} or by the older format, null if it is corrupt. */
+  static DeliveryTask decode(String line) {
+    String[] fields = line.split("\t", -1);
+    if (!FORMAT.equals(fields[0])) {
+      String[] parts = line.split("\t", 3);
+      return parts.length == 3 ? new DeliveryTask(parts[0], parts[1], parts[2]) : null;
+    }
+    if (fields.length < FIXED_FIELDS || (fields.length - FIXED_FIELDS) % 2 != 0) {
+      return null;
+    }
+    String[] values = new String[fields.length];
+    for (int i = 1; i < fields.length; i++) {
+      values[i] = unescape(fields[i]);
+    }
+    if (values[1] == null || values[2] == null || values[8] == null) {
+      return null;
+    }
+    Map<RepresentationPolicy, String> variants = new LinkedHashMap<>();
+    for (int i = FIXED_FIELDS; i < values.length; i += 2) {
+      if (values[i] == null || values[i + 1] == null) {
+        return null;
+      }
+      variants.put(RepresentationPolicy.parse(values[i]), values[i + 1]);
+    }
+    return DeliveryTask.builder()
+        .eventType(values[1])
+        .type(values[2])
+        .realmId(values[3])
+        .userId(values[4])
+        .resourcePath(values[5])
+        .payload(values[8])
+        .variants(variants)
+        .trace(TraceContext.parse(values[6], values[7]))
+        .build();
+  }
+
+  private static void field(StringBuilder line, String value) {
+    line.append('\t');
+    if (value == null) {
+      line.append(NULL);
+      return;
+    }
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+        case '\\':
+          line.append("\\\\");
+          break;
+        case '\t':
+          line.append("\\t");
+          break;
+        case '\n':
+          line.append("\\n");
+          break;
+        case '\r':
+          line.append("\\r");
+          break;
+        default:
+          line.append(c);
+      }
+    }
+  }
+
+  private static String unescape(String field) {
+    if (field.equals(NULL)) {
+      return null;
+    }
+    if (field.indexOf('\\') < 0) {
+      return field;
+    }
+    StringBuilder value = new StringBuilder(field.length());
+    for (int i = 0; i < field.length(); i++) {
+      char c = field.charAt(i);
+      if (c != '\\' || i + 1 == field.length()) {
+        value.append(c);
+        continue;
+      }
+      char escaped = field.charAt(++i);
+      value.append(escaped == 't' ? '\t' : escaped == 'n' ? '\n' : escaped == 'r' ? '\r' : escaped);
+    }
+    return value.toString();
+  }
+
+  private void sealSegment() throws IOException {
+    if (writer != null) {
+      writer.close();
+      writer = null;
+      writerSegment = null;
+    }
+  }
+
+  private List<Path> segments() throws IOException {
+    List<Path> segments = new ArrayList<>();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+      stream.forEach(segments::add);
+    }
+    Collections.sort(segments);
+    return segments;
+  }
+
+  private static long segmentNumber(Path segment) {
+    String name = segment.getFileName().toString();
+    try {
+      return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+    } catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+}
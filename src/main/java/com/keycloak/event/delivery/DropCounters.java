@@ -0,0 +1,72 @@
+package com.keycloak.event.delivery;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts events dropped by the overflow policies, keyed by endpoint and event type. Counting uses
+ * {@link LongAdder} so concurrent producers do not contend on a shared counter during a flood.
+ */
+public class DropCounters {
+
+  private final Map<String, Map<String, LongAdder>> counters = new ConcurrentHashMap<>();
+
+  /**
+   * Records one dropped event.
+   *
+   * @param endpoint The endpoint the event was destined for
+   * @param type The Keycloak event or operation type
+   */
+  public void record(String endpoint, String type) {
+    counters
+        .computeIfAbsent(endpoint, e -> new ConcurrentHashMap<>())
+        .computeIfAbsent(String.valueOf(type), t -> new LongAdder())
+        .increment();
+  }
+
+  /**
+   * Returns the number of dropped events for an endpoint and event type.
+   *
+   * @param endpoint The endpoint
+   * @param type The Keycloak event or operation type
+   * @return The drop count, 0 if nothing was dropped
+   */
+  public long get(String endpoint, String type) {
+    Map<String, LongAdder> byType = counters.get(endpoint);
+    if (byType == null) {
+      return 0;
+    }
+    LongAdder adder = byType.get(String.valueOf(type));
+    return adder == null ? 0 : adder.sum();
+  }
+
+  /**
+   * Returns the total number of dropped events across all endpoints and types.
+   *
+   * @return The total drop count
+   */
+  public long total() {
+    return counters.values().stream()
+        .flatMap(byType -> byType.values().stream())
+        .mapToLong(LongAdder::sum)
+        .sum();
+  }
+
+  /**
+   * Returns a sorted point-in-time copy of all counters, suitable for logging or metrics export.
+   *
+   * @return Drop counts by endpoint, then by event type
+   */
+  public Map<String, Map<String, Long>> snapshot() {
+    Map<String, Map<String, Long>> snapshot = new TreeMap<>();
+    counters.forEach(
+        (endpoint, byType) -> {
+          Map<String, Long> copy = new TreeMap<>();
+          byType.forEach((type, adder) -> copy.put(type, adder.sum()));
+          snapshot.put(endpoint, copy);
+        });
+    return snapshot;
+  }
+}
@@ -0,0 +1,391 @@
+package com.keycloak.event.delivery;
+
+import com.keycloak.event.config.WebhookConfig;
+import com.keycloak.event.endpoint.EndpointGroup;
+import com.keycloak.event.endpoint.EndpointSnapshot;
+import com.keycloak.event.endpoint.WebhookEndpoint;
+import java.io.Closeable;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Picks the member of a balanced {@link EndpointGroup} that receives an event, and tracks the
+ * health of every member.
+ *
+ * <p>A member counts as outstanding from the moment it is chosen until its delivery completes, so
+ * with queued delivery the count includes the member's backlog. Latency is tracked as an
+ * exponentially weighted moving average of completed deliveries.
+ *
+ * <p>Members are ejected passively: after {@code ejectAfter} consecutive failed deliveries a member
+ * is no longer chosen, and a background thread probes it every {@code probeMillis} until it answers
+ * again. A re-admitted member is on probation, a single further failure ejects it again. While
+ * every member of a group is ejected, events are spread over all members rather than discarded.
+ */
+@Slf4j
+public class EndpointBalancer implements Closeable {
+
+  /** Weight of the newest sample in the latency average */
+  public static final double EWMA_ALPHA = 0.3;
+
+  private final Predicate<WebhookEndpoint> prober;
+  @Getter private final int ejectAfter;
+  @Getter private final long probeMillis;
+  private final Map<String, Member> members = new ConcurrentHashMap<>();
+  private final Map<String, AtomicLong> cursors = new ConcurrentHashMap<>();
+  private Thread probeThread;
+  private volatile boolean running = true;
+
+  /**
+   * Creates a balancer. The probe thread is started when the first member is ejected.
+   *
+   * @param prober Checks whether an ejected member is reachable again
+   * @param ejectAfter Consecutive failures that eject a member
+   * @param probeMillis Interval between probes of ejected members
+   */
+  public EndpointBalancer(Predicate<WebhookEndpoint> prober, int ejectAfter, long probeMillis) {
+    this.prober = prober;
+    this.ejectAfter = Math.max(1, ejectAfter);
+    this.probeMillis = Math.max(10, probeMillis);
+  }
+
+  /**
+   * Creates a balancer from the WEBHOOK_GROUP_* settings.
+   *
+   * @param prober Checks whether an ejected member is reachable again
+   * @return A new balancer
+   */
+  public static EndpointBalancer fromConfig(Predicate<WebhookEndpoint> prober) {
+    return new EndpointBalancer(
+        prober,
+        WebhookConfig.getInt(
+            WebhookConfig.GROUP_EJECT_AFTER, WebhookConfig.DEFAULT_GROUP_EJECT_AFTER),
+        WebhookConfig.getLong(WebhookConfig.GROUP_PROBE_MS, WebhookConfig.DEFAULT_GROUP_PROBE_MS));
+  }
+
+  /**
+   * Chooses the member of a balanced group that receives the next event and counts it as
+   * outstanding. Every choice must be followed by {@link #completed} or {@link #release}.
+   *
+   * @param group A balanced group
+   * @return The chosen member
+   */
+  public WebhookEndpoint choose(EndpointGroup group) {
+    List<WebhookEndpoint> endpoints = group.getMembers();
+    Member[] candidates = new Member[endpoints.size()];
+    int healthy = 0;
+    for (WebhookEndpoint endpoint : endpoints) {
+      Member member = member(group, endpoint);
+      if (!member.ejected) {
+        candidates[healthy++] = member;
+      }
+    }
+    if (healthy == 0) {
+      // Every member is ejected: keep delivering rather than losing the events
+      for (WebhookEndpoint endpoint : endpoints) {
+        candidates[healthy++] = member(group, endpoint);
+      }
+    }
+    Member chosen;
+    switch (group.getMode()) {
+      case LEAST_OUTSTANDING:
+        chosen = leastOutstanding(group, candidates, healthy);
+        break;
+      case EWMA:
+        chosen = powerOfTwoChoices(candidates, healthy);
+        break;
+      default:
+        chosen = candidates[Math.floorMod(cursor(group).getAndIncrement(), healthy)];
+        break;
+    }
+    chosen.outstanding.incrementAndGet();
+    return chosen.endpoint;
+  }
+
+  /**
+   * Chooses a second member of a group for an event already sent to one member, for example to
+   * hedge a slow delivery, and counts it as outstanding. Like {@link #choose}, the choice must be
+   * followed by {@link #completed} or {@link #release}.
+   *
+   * @param group A balanced group
+   * @param excluded The member that already has the event
+   * @return The healthy member other than {@code excluded} with the fewest outstanding events, or
+   *     null if there is none
+   */
+  public WebhookEndpoint chooseOther(EndpointGroup group, WebhookEndpoint excluded) {
+    Member best = null;
+    for (WebhookEndpoint endpoint : group.getMembers()) {
+      Member member = member(group, endpoint);
+      if (member.ejected || endpoint.getUrl().equals(excluded.getUrl())) {
+        continue;
+      }
+      if (best == null || member.outstanding.get() < best.outstanding.get()) {
+        best = member;
+      }
+    }
+    if (best == null) {
+      return null;
+    }
+    best.outstanding.incrementAndGet();
+    return best.endpoint;
+  }
+
+  /**
+   * Records the outcome of a delivery to a group member. Does nothing for endpoints that are not
+   * members of a balanced group.
+   *
+   * @param endpoint The endpoint delivered to
+   * @param nanos The delivery time in nanoseconds
+   * @param success Whether the delivery succeeded
+   */
+  public void completed(WebhookEndpoint endpoint, long nanos, boolean success) {
+    Member member = members.get(endpoint.getUrl());
+    if (member == null) {
+      return;
+    }
+    member.outstanding.updateAndGet(count -> count > 0 ? count - 1 : 0);
+    member.recordLatency(nanos);
+    if (success) {
+      member.consecutiveFailures.set(0);
+      if (member.ejected) {
+        readmit(member, "a delivery succeeded");
+      }
+    } else if (member.consecutiveFailures.incrementAndGet() >= ejectAfter && !member.ejected) {
+      eject(member);
+    }
+  }
+
+  /**
+   * Releases a choice whose event was never delivered, for example because the member's queue
+   * dropped it. Does not affect the member's health.
+   *
+   * @param endpoint The chosen endpoint
+   */
+  public void release(WebhookEndpoint endpoint) {
+    Member member = members.get(endpoint.getUrl());
+    if (member != null) {
+      member.outstanding.updateAndGet(count -> count > 0 ? count - 1 : 0);
+    }
+  }
+
+  /**
+   * Returns the state of a group member.
+   *
+   * @param url The member URL
+   * @return The member state, or null if the URL is not a member of a balanced group
+   */
+  public Member getMember(String url) {
+    return members.get(url);
+  }
+
+  /**
+   * Follows a new endpoint snapshot: updates the descriptors of members that stay and forgets
+   * members that left their group. Members keep their health and statistics across changes.
+   *
+   * @param snapshot The new snapshot
+   */
+  public void apply(EndpointSnapshot snapshot) {
+    Set<String> urls = new HashSet<>();
+    Set<String> groupNames = new HashSet<>();
+    for (EndpointGroup group : snapshot.allGroups()) {
+      if (!group.isBalanced()) {
+        continue;
+      }
+      groupNames.add(group.getName());
+      for (WebhookEndpoint endpoint : group.getMembers()) {
+        urls.add(endpoint.getUrl());
+        member(group, endpoint).endpoint = endpoint;
+      }
+    }
+    members.keySet().retainAll(urls);
+    cursors.keySet().retainAll(groupNames);
+  }
+
+  /**
+   * Probes every ejected member once and re-admits those that answer.
+   *
+   * @return The number of re-admitted members
+   */
+  public int probe() {
+    int readmitted = 0;
+    for (Member member : members.values()) {
+      if (!member.ejected) {
+        continue;
+      }
+      boolean reachable;
+      try {
+        reachable = prober.test(member.endpoint);
+      } catch (RuntimeException e) {
+        log.debug("Probe of {} failed: {}", member.endpoint, e.getMessage());
+        reachable = false;
+      }
+      if (reachable && member.ejected) {
+        readmit(member, "it answered a probe");
+        readmitted++;
+      }
+    }
+    return readmitted;
+  }
+
+  /** Stops probing. */
+  @Override
+  public synchronized void close() {
+    running = false;
+    if (probeThread != null) {
+      probeThread.interrupt();
+    }
+  }
+
+  private Member member(EndpointGroup group, WebhookEndpoint endpoint) {
+    return members.computeIfAbsent(endpoint.getUrl(), url -> new Member(group.getName(), endpoint));
+  }
+
+  private AtomicLong cursor(EndpointGroup group) {
+    return cursors.computeIfAbsent(group.getName(), name -> new AtomicLong());
+  }
+
+  /** Fewest outstanding events; a rotating start spreads ties evenly. */
+  private Member leastOutstanding(EndpointGroup group, Member[] candidates, int count) {
+    int start = Math.floorMod(cursor(group).getAndIncrement(), count);
+    Member best = candidates[start];
+    for (int i = 1; i < count; i++) {
+      Member candidate = candidates[(start + i) % count];
+      if (candidate.outstanding.get() < best.outstanding.get()) {
+        best = candidate;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * The better of two random candidates by latency times load. Comparing two random members rather
+   * than all avoids herding every event onto the one member that looked fastest a moment ago.
+   */
+  private static Member powerOfTwoChoices(Member[] candidates, int count) {
+    if (count == 1) {
+      return candidates[0];
+    }
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int first = random.nextInt(count);
+    int second = random.nextInt(count - 1);
+    if (second >= first) {
+      second++;
+    }
+    Member a = candidates[first];
+    Member b = candidates[second];
+    return a.score() <= b.score() ? a : b;
+  }
+
+  private void eject(Member member) {
+    synchronized (member) {
+      if (member.ejected) {
+        return;
+      }
+      member.ejected = true;
+      member.ejections++;
+    }
+    log.warn(
+        "Ejected {} from group {} after {} consecutive failure(s), probing every {} ms",
+        member.endpoint,
+        member.group,
+        member.consecutiveFailures.get(),
+        probeMillis);
+    startProbing();
+  }
+
+  private void readmit(Member member, String reason) {
+    synchronized (member) {
+      if (!member.ejected) {
+        return;
+      }
+      member.consecutiveFailures.set(ejectAfter - 1);
+      member.ejected = false;
+    }
+    log.info("Re-admitted {} to group {} because {}", member.endpoint, member.group, reason);
+  }
+
+  private synchronized void startProbing() {
+    if (probeThread != null || !running) {
+      return;
+    }
+    probeThread = new Thread(this::runProber, "webhook-group-prober");
+    probeThread.setDaemon(true);
+    probeThread.start();
+  }
+
+  private void runProber() {
+    while (running) {
+      try {
+        Thread.sleep(probeMillis);
+      } catch (InterruptedException e) {
+        return;
+      }
+      probe();
+    }
+  }
+
+  /** Health and load of one group member. */
+  public static final class Member {
+    @Getter private final String group;
+    @Getter private volatile WebhookEndpoint endpoint;
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final AtomicLong latencyBits = new AtomicLong(Double.doubleToLongBits(-1));
+    private volatile boolean ejected;
+    @Getter private volatile long ejections;
+
+    private Member(String group, WebhookEndpoint endpoint) {
+      this.group = group;
+      this.endpoint = endpoint;
+    }
+
+    /**
+     * Returns the events chosen for this member whose delivery has not completed.
+     *
+     * @return The outstanding event count
+     */
+    public int getOutstanding() {
+      return outstanding.get();
+    }
+
+    /**
+     * Returns the moving average delivery time.
+     *
+     * @return The average in nanoseconds, or -1 before the first delivery
+     */
+    public double getLatencyNanos() {
+      return Double.longBitsToDouble(latencyBits.get());
+    }
+
+    /**
+     * Returns whether the member is currently ejected.
+     *
+     * @return true while the member is not chosen
+     */
+    public boolean isEjected() {
+      return ejected;
+    }
+
+    private void recordLatency(long nanos) {
+      latencyBits.updateAndGet(
+          bits -> {
+            double average = Double.longBitsToDouble(bits);
+            return Double.doubleToLongBits(
+                average < 0 ? nanos : average + EWMA_ALPHA * (nanos - average));
+          });
+    }
+
+    /** Members without samples score 0 so that they are tried soon. */
+    private double score() {
+      return Math.max(0, getLatencyNanos()) * (outstanding.get() + 1);
+    }
+  }
+}
@@ -0,0 +1,305 @@
+package com.keycloak.event.delivery;
+
+import com.keycloak.event.HttpClientWebHookHandler;
+import com.keycloak.event.endpoint.WebhookEndpoint;
+import com.keycloak.event.trace.DeliveryTrace;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Sharded executor for one endpoint: N serial lanes, each a {@link DeliveryQueue} drained by its
+ * own worker thread. The {@link OrderingKey} of a task is hashed to pick its lane, so events for
+ * the same user, realm or resource are delivered one after another while unrelated keys proceed in
+ * parallel. Events without a key value are spread randomly over the lanes.
+ *
+ * <p>With a {@code rate} option the lanes share one {@link TokenBucket}. A worker that has taken a
+ * task waits for a token before sending it, so events over the limit stay in the queue, and under
+ * the SPOOL overflow policy spill to disk, instead of being sent or dropped.
+ *
+ * <p>Each lane isolates realms in the configured {@link Bulkheads}, see {@link DeliveryQueue}.
+ *
+ * <p>Ordering holds within a priority class; with several classes configured an event of a higher
+ * class may overtake an earlier event of the same key in a lower class.
+ */
+@Slf4j
+public class EndpointLanes {
+
+  private static final long POLL_TIMEOUT_MILLIS = 1000;
+  private static final long SHUTDOWN_TIMEOUT_MILLIS = 5000;
+  private static final long DRAIN_CHECK_MILLIS = 10;
+
+  @Getter private volatile WebhookEndpoint endpoint;
+  @Getter private volatile TokenBucket rateLimiter;
+  private final OrderingKey orderingKey;
+  private final HttpClientWebHookHandler webHookHandler;
+  private final DeliveryQueue[] lanes;
+  private final List<Thread> workers = new ArrayList<>();
+  private volatile boolean running = true;
+
+  /**
+   * Creates the lanes of one endpoint and starts a worker per lane.
+   *
+   * @param endpoint The endpoint to deliver to
+   * @param webHookHandler The handler used to deliver payloads
+   * @param settings The queue, priority and sharding settings
+   * @param dropCounters The shared drop counters
+   * @param spoolDirectory The spool directory of this endpoint
+   * @param threadPrefix Prefix of the worker thread names
+   * @throws IOException If a spool directory cannot be opened
+   */
+  public EndpointLanes(
+      WebhookEndpoint endpoint,
+      HttpClientWebHookHandler webHookHandler,
+      DeliverySettings settings,
+      DropCounters dropCounters,
+      Path spoolDirectory,
+      String threadPrefix)
+      throws IOException {
+    this.endpoint = endpoint;
+    this.rateLimiter = TokenBucket.of(endpoint);
+    this.webHookHandler = webHookHandler;
+    this.orderingKey = settings.getOrderingKey();
+    this.lanes = new DeliveryQueue[Math.max(1, settings.getLanes())];
+    try {
+      for (int i = 0; i < lanes.length; i++) {
+        Path laneSpool = spoolDirectory.resolve("lane-" + i);
+        lanes[i] =
+            new DeliveryQueue(
+                endpoint.getUrl(),
+                settings,
+                dropCounters,
+                directory -> openSpool(laneSpool.resolve(directory), settings.getSpoolMaxBytes()),
+                this::abandoned);
+        if (settings.getBulkheads().isPerRealm()) {
+          for (String realmId : spooledRealms(laneSpool)) {
+            lanes[i].openRealm(realmId);
+          }
+        }
+      }
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+    for (int i = 0; i < lanes.length; i++) {
+      DeliveryQueue lane = lanes[i];
+      Thread worker = new Thread(() -> runWorker(lane), threadPrefix + "-" + i);
+      worker.setDaemon(true);
+      worker.start();
+      workers.add(worker);
+    }
+  }
+
+  /**
+   * Hands a task to the lane its ordering key hashes to.
+   *
+   * @param task The task to deliver
+   * @return true if the task was accepted, false if it was dropped
+   */
+  public boolean offer(DeliveryTask task) {
+    return offer(task, true);
+  }
+
+  /**
+   * Hands a task to the lane its ordering key hashes to.
+   *
+   * @param task The task to deliver
+   * @param mayWait Whether the BLOCK policy may wait for space, see {@link DeliveryQueue#offer}
+   * @return true if the task was accepted, false if it was dropped
+   */
+  public boolean offer(DeliveryTask task, boolean mayWait) {
+    return lanes[laneOf(task)].offer(task, mayWait);
+  }
+
+  /**
+   * Returns the lane index a task is routed to.
+   *
+   * @param task The task
+   * @return The lane index
+   */
+  int laneOf(DeliveryTask task) {
+    if (lanes.length == 1) {
+      return 0;
+    }
+    String key = orderingKey.extract(task);
+    if (key == null) {
+      return ThreadLocalRandom.current().nextInt(lanes.length);
+    }
+    int hash = key.hashCode();
+    return Math.floorMod(hash ^ (hash >>> 16), lanes.length);
+  }
+
+  /**
+   * Returns the lanes of this endpoint.
+   *
+   * @return The lane queues, in index order
+   */
+  public List<DeliveryQueue> getLanes() {
+    return Collections.unmodifiableList(Arrays.asList(lanes));
+  }
+
+  /**
+   * Returns the backlog across all lanes.
+   *
+   * @return The number of pending tasks
+   */
+  public long size() {
+    long size = 0;
+    for (DeliveryQueue lane : lanes) {
+      size += lane.size();
+    }
+    return size;
+  }
+
+  /**
+   * Returns the counters of every bulkhead, summed over the lanes.
+   *
+   * @return The counters by bulkhead name
+   */
+  public Map<String, BulkheadStats> bulkheadStats() {
+    Map<String, BulkheadStats> stats = new LinkedHashMap<>();
+    for (DeliveryQueue lane : lanes) {
+      lane.bulkheadStats()
+          .forEach((name, laneStats) -> stats.merge(name, laneStats, BulkheadStats::plus));
+    }
+    return stats;
+  }
+
+  /**
+   * Replaces the endpoint descriptor, for example after its headers or timeout changed. Takes
+   * effect with the next delivery; queued tasks and their order are kept. The rate limiter is only
+   * replaced if its options changed.
+   *
+   * @param endpoint The new descriptor of the same URL
+   */
+  void setEndpoint(WebhookEndpoint endpoint) {
+    TokenBucket limiter = TokenBucket.of(endpoint);
+    if (limiter == null || !limiter.sameLimits(rateLimiter)) {
+      rateLimiter = limiter;
+    }
+    this.endpoint = endpoint;
+  }
+
+  /**
+   * Lets the workers deliver the remaining backlog, then stops them and closes the lanes. Used when
+   * an endpoint is removed from the configuration. Tasks still pending after the timeout are
+   * handled as by {@link #close()}.
+   *
+   * @param timeoutMillis How long to wait for the backlog to drain
+   */
+  public void drainAndClose(long timeoutMillis) {
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    try {
+      while (size() > 0 && System.nanoTime() < deadline) {
+        Thread.sleep(DRAIN_CHECK_MILLIS);
+      }
+      // Let the workers finish the delivery in progress instead of interrupting it
+      running = false;
+      for (Thread worker : workers) {
+        worker.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    close();
+  }
+
+  /** Stops the workers and closes the lanes, spooling any in-memory backlog where possible. */
+  public void close() {
+    running = false;
+    workers.forEach(Thread::interrupt);
+    for (Thread worker : workers) {
+      try {
+        worker.join(SHUTDOWN_TIMEOUT_MILLIS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+    }
+    for (DeliveryQueue lane : lanes) {
+      lane.close();
+    }
+  }
+
+  /** Releases the balancer's choice of this endpoint for a task that will not be delivered. */
+  private void abandoned(DeliveryTask task) {
+    EndpointBalancer balancer = webHookHandler.getBalancer();
+    if (balancer != null) {
+      balancer.release(endpoint);
+    }
+  }
+
+  private void runWorker(DeliveryQueue lane) {
+    while (running) {
+      DeliveryTask task;
+      try {
+        task = lane.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+      if (task == null) {
+        continue;
+      }
+      TokenBucket limiter = rateLimiter;
+      if (limiter != null) {
+        try {
+          limiter.acquire();
+        } catch (InterruptedException e) {
+          // Shutting down: put the task back in front so that closing the lane spools it first
+          lane.requeue(task);
+          Thread.currentThread().interrupt();
+          return;
+        }
+      }
+      WebhookEndpoint target = endpoint;
+      DeliveryTrace trace = DeliveryTrace.open(task);
+      try {
+        webHookHandler.send(target, task.getPayload());
+      } catch (Exception e) {
+        // Already logged by the handler; the event is not retried.
+        log.debug("Delivery of {} event to {} failed", task.getType(), target);
+      } finally {
+        trace.close();
+      }
+    }
+  }
+
+  /** Realms whose per-realm bulkhead left a spool directory in a lane's spool directory. */
+  private static List<String> spooledRealms(Path laneSpool) throws IOException {
+    List<String> realmIds = new ArrayList<>();
+    if (!Files.isDirectory(laneSpool)) {
+      return realmIds;
+    }
+    try (DirectoryStream<Path> directories = Files.newDirectoryStream(laneSpool, "realm-*")) {
+      for (Path directory : directories) {
+        realmIds.add(
+            URLDecoder.decode(
+                directory.getFileName().toString().substring("realm-".length()),
+                StandardCharsets.UTF_8));
+      }
+    }
+    return realmIds;
+  }
+
+  private static DiskSpool openSpool(Path directory, long maxBytes) {
+    try {
+      return new DiskSpool(directory, maxBytes);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
@@ -0,0 +1,75 @@
+package com.keycloak.event.delivery;
+
+import com.keycloak.event.exception.WebhookDeliveryException;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.UnknownHostException;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpTimeoutException;
+
+/** Why a delivery to an endpoint failed, coarse enough to aggregate and alert on. */
+public enum ErrorCategory {
+  /** The payload was delivered */
+  NONE,
+  /** The endpoint could not be reached: refused, unresolved or timed out while connecting */
+  CONNECT,
+  /** The endpoint did not answer in time */
+  TIMEOUT,
+  /** The endpoint answered with a 4xx status */
+  CLIENT_ERROR,
+  /** The endpoint answered with a 5xx status */
+  SERVER_ERROR,
+  /** The endpoint answered with a status that is neither 2xx, 4xx nor 5xx */
+  UNEXPECTED_STATUS,
+  /** Any other I/O failure, including unsupported URL schemes and failing sinks */
+  IO,
+  /** The sending thread was interrupted */
+  INTERRUPTED,
+  /** Anything else */
+  OTHER;
+
+  /**
+   * Returns the category of an HTTP status that is not 2xx.
+   *
+   * @param status The HTTP status code
+   * @return The category
+   */
+  public static ErrorCategory ofStatus(int status) {
+    if (status >= 400 && status < 500) {
+      return CLIENT_ERROR;
+    }
+    if (status >= 500 && status < 600) {
+      return SERVER_ERROR;
+    }
+    return UNEXPECTED_STATUS;
+  }
+
+  /**
+   * Returns the category of a delivery failure.
+   *
+   * @param error The failure
+   * @return The category
+   */
+  public static ErrorCategory of(Throwable error) {
+    if (error instanceof WebhookDeliveryException) {
+      return ((WebhookDeliveryException) error).getCategory();
+    }
+    if (error instanceof HttpConnectTimeoutException
+        || error instanceof ConnectException
+        || error instanceof UnknownHostException
+        || error instanceof NoRouteToHostException) {
+      return CONNECT;
+    }
+    if (error instanceof HttpTimeoutException) {
+      return TIMEOUT;
+    }
+    if (error instanceof IOException) {
+      return IO;
+    }
+    if (error instanceof InterruptedException) {
+      return INTERRUPTED;
+    }
+    return OTHER;
+  }
+}
@@ -0,0 +1,224 @@
+package com.keycloak.event.delivery;
+
+import com.keycloak.event.config.WebhookConfig;
+import com.keycloak.event.endpoint.EndpointGroup;
+import com.keycloak.event.endpoint.EndpointSnapshot;
+import com.keycloak.event.endpoint.WebhookEndpoint;
+import com.keycloak.event.util.LatencyHistogram;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.Getter;
+
+/**
+ * Decides when a delivery to a member of a hedged {@link EndpointGroup} is repeated at a second
+ * member.
+ *
+ * <p>A delivery is hedged once it has taken longer than the {@value #PERCENTILE}th percentile of
+ * the member's recent successful deliveries. Latencies are kept per member in two histograms: the
+ * one being filled and the one of the previous window, whose percentile is used. A member needs
+ * {@value #MIN_SAMPLES} samples before its deliveries are hedged.
+ *
+ * <p>Each group has a budget: every delivery adds the group's hedge rate as credit, up to {@value
+ * #MAX_CREDIT}, and every hedge spends one. Hedges therefore never exceed the hedge rate of the
+ * traffic, even while a member is slow for every request.
+ */
+public class Hedger {
+
+  /** Percentile of recent latency after which a delivery is hedged */
+  public static final double PERCENTILE = 95;
+
+  /** Samples a member needs in a window before its deliveries are hedged */
+  public static final int MIN_SAMPLES = 20;
+
+  /** Largest burst of hedges a group may save up */
+  public static final double MAX_CREDIT = 10;
+
+  @Getter private final long windowMillis;
+  private final long windowNanos;
+  private volatile Map<String, EndpointGroup> groups = Map.of();
+  private final Map<String, Window> windows = new ConcurrentHashMap<>();
+  private final Map<String, Budget> budgets = new ConcurrentHashMap<>();
+  private final LongAdder hedges = new LongAdder();
+  private final LongAdder wins = new LongAdder();
+
+  /**
+   * Creates a hedger.
+   *
+   * @param windowMillis The length of the window over which member latency is measured
+   */
+  public Hedger(long windowMillis) {
+    this.windowMillis = Math.max(1, windowMillis);
+    this.windowNanos = TimeUnit.MILLISECONDS.toNanos(this.windowMillis);
+  }
+
+  /**
+   * Creates a hedger from the WEBHOOK_HEDGE_WINDOW_MS setting.
+   *
+   * @return A new hedger
+   */
+  public static Hedger fromConfig() {
+    return new Hedger(
+        WebhookConfig.getLong(
+            WebhookConfig.HEDGE_WINDOW_MS, WebhookConfig.DEFAULT_HEDGE_WINDOW_MS));
+  }
+
+  /**
+   * Follows a new endpoint snapshot. Members that stay in a hedged group keep their latency
+   * windows.
+   *
+   * @param snapshot The new snapshot
+   */
+  public void apply(EndpointSnapshot snapshot) {
+    Map<String, EndpointGroup> hedged = new HashMap<>();
+    for (EndpointGroup group : snapshot.allGroups()) {
+      if (group.isHedged()) {
+        group.getMembers().forEach(member -> hedged.put(member.getUrl(), group));
+      }
+    }
+    groups = hedged;
+    windows.keySet().retainAll(hedged.keySet());
+    budgets.keySet().retainAll(hedged.values().stream().map(EndpointGroup::getName).toList());
+  }
+
+  /**
+   * Returns the hedged group of an endpoint.
+   *
+   * @param endpoint The endpoint
+   * @return The group, or null if the endpoint is not a member of a hedged group
+   */
+  public EndpointGroup groupOf(WebhookEndpoint endpoint) {
+    return groups.get(endpoint.getUrl());
+  }
+
+  /**
+   * Counts a delivery to a member towards the hedge budget of its group and returns how long to
+   * wait for the member before hedging.
+   *
+   * @param group The hedged group of the member
+   * @param endpoint The member
+   * @return The delay in nanoseconds, or -1 if the member has too few samples to hedge
+   */
+  public long admit(EndpointGroup group, WebhookEndpoint endpoint) {
+    budget(group).add(group.getHedgeRate());
+    return window(endpoint).threshold(System.nanoTime());
+  }
+
+  /**
+   * Spends one hedge from the budget of a group.
+   *
+   * @param group The hedged group
+   * @return true if the budget allowed the hedge
+   */
+  public boolean tryHedge(EndpointGroup group) {
+    if (!budget(group).spend()) {
+      return false;
+    }
+    hedges.increment();
+    return true;
+  }
+
+  /**
+   * Records the latency of a delivery to a member. Does nothing for endpoints outside hedged
+   * groups.
+   *
+   * @param endpoint The member
+   * @param nanos The delivery time in nanoseconds
+   */
+  public void record(WebhookEndpoint endpoint, long nanos) {
+    if (groups.containsKey(endpoint.getUrl())) {
+      window(endpoint).record(nanos, System.nanoTime());
+    }
+  }
+
+  /** Counts a hedge that answered before the original delivery. */
+  public void won() {
+    wins.increment();
+  }
+
+  /**
+   * Returns the number of hedged deliveries.
+   *
+   * @return The hedge count
+   */
+  public long getHedgeCount() {
+    return hedges.sum();
+  }
+
+  /**
+   * Returns the number of hedges that answered before the original delivery.
+   *
+   * @return The win count
+   */
+  public long getWinCount() {
+    return wins.sum();
+  }
+
+  private Window window(WebhookEndpoint endpoint) {
+    return windows.computeIfAbsent(endpoint.getUrl(), url -> new Window(System.nanoTime()));
+  }
+
+  private Budget budget(EndpointGroup group) {
+    return budgets.computeIfAbsent(group.getName(), name -> new Budget());
+  }
+
+  /** Latency of one member over the current and the previous window. */
+  private final class Window {
+    private volatile LatencyHistogram current = new LatencyHistogram();
+    private volatile long start;
+    private volatile long threshold = -1;
+
+    private Window(long now) {
+      this.start = now;
+    }
+
+    private void record(long nanos, long now) {
+      rotate(now);
+      current.record(nanos);
+    }
+
+    private long threshold(long now) {
+      rotate(now);
+      if (threshold >= 0) {
+        return threshold;
+      }
+      // Until the first window closes, use the samples seen so far
+      LatencyHistogram histogram = current;
+      return histogram.count() >= MIN_SAMPLES ? histogram.percentile(PERCENTILE) : -1;
+    }
+
+    private void rotate(long now) {
+      if (now - start < windowNanos) {
+        return;
+      }
+      synchronized (this) {
+        if (now - start < windowNanos) {
+          return;
+        }
+        LatencyHistogram previous = current;
+        current = new LatencyHistogram();
+        start = now;
+        threshold = previous.count() >= MIN_SAMPLES ? previous.percentile(PERCENTILE) : -1;
+      }
+    }
+  }
+
+  /** Hedge credit of one group. */
+  private static final class Budget {
+    private double credit;
+
+    private synchronized void add(double rate) {
+      credit = Math.min(MAX_CREDIT, credit + rate);
+    }
+
+    private synchronized boolean spend() {
+      if (credit < 1) {
+        return false;
+      }
+      credit -= 1;
+      return true;
+    }
+  }
+}
@@ -0,0 +1,57 @@
+package com.keycloak.event.delivery;
+
+import java.util.Locale;
+
+/**
+ * Attribute hashed to pick the delivery lane of an event. Events with equal keys always land on the
+ * same serial lane and are delivered in order; events with different keys are delivered in
+ * parallel.
+ */
+public enum OrderingKey {
+  /** Order per user. Admin events, which have no subject user, are keyed by resource path. */
+  USER,
+  /** Order per realm. */
+  REALM,
+  /** Order per admin resource path. User events are keyed by user ID. */
+  RESOURCE_PATH,
+  /** No ordering; events are spread over all lanes. */
+  NONE;
+
+  /**
+   * Returns the key value of a task.
+   *
+   * @param task The task to key
+   * @return The key, or null if the task has no value for this key
+   */
+  public String extract(DeliveryTask task) {
+    switch (this) {
+      case USER:
+        return task.getUserId() != null ? task.getUserId() : task.getResourcePath();
+      case REALM:
+        return task.getRealmId();
+      case RESOURCE_PATH:
+        return task.getResourcePath() != null ? task.getResourcePath() : task.getUserId();
+      case NONE:
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * Parses a key name, ignoring case.
+   *
+   * @param value The configured key name
+   * @param defaultKey The key to use when the value is missing or unknown
+   * @return The matching key or the default
+   */
+  public static OrderingKey fromString(String value, OrderingKey defaultKey) {
+    if (value == null) {
+      return defaultKey;
+    }
+    try {
+      return valueOf(value.trim().toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      return defaultKey;
+    }
+  }
+}
@@ -0,0 +1,36 @@
+package com.keycloak.event.delivery;
+
+import java.util.Locale;
+
+/**
+ * Backpressure policy applied when an endpoint's delivery queue is full. Every policy bounds the
+ * memory held by the bridge, so an event flood degrades delivery instead of stalling Keycloak.
+ */
+public enum OverflowPolicy {
+  /** Wait up to the configured block timeout for space, then drop the new event. */
+  BLOCK,
+  /** Reject the new event and keep the queued backlog. */
+  DROP_NEWEST,
+  /** Evict the oldest queued event to make room for the new one. */
+  DROP_OLDEST,
+  /** Divert events to a disk spool until the in-memory queue has drained. */
+  SPOOL;
+
+  /**
+   * Parses a policy name, ignoring case.
+   *
+   * @param value The configured policy name
+   * @param defaultPolicy The policy to use when the value is missing or unknown
+   * @return The matching policy or the default
+   */
+  public static OverflowPolicy fromString(String value, OverflowPolicy defaultPolicy) {
+    if (value == null) {
+      return defaultPolicy;
+    }
+    try {
+      return valueOf(value.trim().toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      return defaultPolicy;
+    }
+  }
+}
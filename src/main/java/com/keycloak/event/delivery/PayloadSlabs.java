@@ -0,0 +1,319 @@
+package com.keycloak.event.delivery;
+
+import com.keycloak.event.config.WebhookConfig;
+import com.keycloak.event.util.LogLimiter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Off-heap store for the payloads of queued tasks, so that a large delivery backlog does not live
+ * in Keycloak's old generation and lengthen its GC pauses.
+ *
+ * <p>Payloads are kept as UTF-8 in direct {@link ByteBuffer} slabs of {@value #SLAB_BYTES} bytes.
+ * Each slab is cut into chunks of one size class, a power of two from {@value #MIN_CHUNK_BYTES} to
+ * {@value #MAX_CHUNK_BYTES} bytes, and a payload takes the smallest chunk it fits in. Freed chunks
+ * go to a free list per size class and are reused before a new slab is allocated. Slabs are kept
+ * once allocated; together they never exceed {@code maxBytes}. Each slab counts its live chunks,
+ * and once every slab is allocated, a slab without live chunks is taken from its size class and
+ * re-carved for a class that has no free chunk left, so a shift in payload sizes does not leave the
+ * memory stranded in the old sizes.
+ *
+ * <p>A stored payload is identified by a {@code long} handle holding its slab, offset and length,
+ * so a queue entry costs no object beyond its task. When the store is full or a payload is larger
+ * than the largest chunk, {@link #store} refuses it and the caller keeps the payload on the heap.
+ */
+@Slf4j
+public class PayloadSlabs {
+
+  /** Size of one slab */
+  public static final int SLAB_BYTES = 1 << 20;
+
+  /** Smallest chunk size */
+  public static final int MIN_CHUNK_BYTES = 256;
+
+  /** Largest chunk size, and so the largest payload kept off the heap */
+  public static final int MAX_CHUNK_BYTES = 64 * 1024;
+
+  private static final int OFFSET_BITS = 20;
+  private static final long OFFSET_MASK = (1L << OFFSET_BITS) - 1;
+  private static final int MAX_SLABS = 1 << 23;
+  private static final int CLASSES =
+      Integer.numberOfTrailingZeros(MAX_CHUNK_BYTES / MIN_CHUNK_BYTES) + 1;
+
+  @Getter private final long maxBytes;
+  private int maxSlabs;
+  private final List<ByteBuffer> slabs = new ArrayList<>();
+  private int[] slabClass = new int[16];
+  private int[] slabLive = new int[16];
+  private final long[][] free = new long[CLASSES][];
+  private final int[] freeCount = new int[CLASSES];
+  private long usedBytes;
+  private long payloadBytes;
+  private long entries;
+  private long rejected;
+
+  /**
+   * Creates an empty store. No memory is allocated until the first payload is stored.
+   *
+   * @param maxBytes The hard cap on the memory of all slabs, at least one slab
+   */
+  public PayloadSlabs(long maxBytes) {
+    if (maxBytes < SLAB_BYTES) {
+      throw new IllegalArgumentException(
+          "Off-heap payload store needs at least " + SLAB_BYTES + " bytes: " + maxBytes);
+    }
+    this.maxBytes = maxBytes;
+    this.maxSlabs = (int) Math.min(MAX_SLABS, maxBytes / SLAB_BYTES);
+    for (int i = 0; i < CLASSES; i++) {
+      free[i] = new long[16];
+    }
+  }
+
+  /**
+   * Creates a store from the WEBHOOK_OFFHEAP_MAX_MB setting.
+   *
+   * @return The store, or null if payloads stay on the heap
+   */
+  public static PayloadSlabs fromConfig() {
+    long maxMb =
+        WebhookConfig.getLong(WebhookConfig.OFFHEAP_MAX_MB, WebhookConfig.DEFAULT_OFFHEAP_MAX_MB);
+    if (maxMb <= 0) {
+      return null;
+    }
+    log.info("Queued payloads beyond the resident head are kept off-heap, up to {} MB", maxMb);
+    return new PayloadSlabs(maxMb * 1024 * 1024);
+  }
+
+  /**
+   * Copies a payload into a free chunk.
+   *
+   * @param payload The payload
+   * @return The handle of the stored payload, or -1 if the payload does not fit
+   */
+  public long store(String payload) {
+    byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+    synchronized (this) {
+      long location = bytes.length <= MAX_CHUNK_BYTES ? allocate(classOf(bytes.length)) : -1;
+      if (location < 0) {
+        rejected++;
+        return -1;
+      }
+      int slab = (int) (location >>> OFFSET_BITS);
+      int offset = (int) (location & OFFSET_MASK);
+      slabs.get(slab).put(offset, bytes);
+      slabLive[slab]++;
+      usedBytes += chunkBytes(classOf(bytes.length));
+      payloadBytes += bytes.length;
+      entries++;
+      return location << OFFSET_BITS | bytes.length;
+    }
+  }
+
+  /**
+   * Reads a stored payload, which stays stored.
+   *
+   * @param handle The handle returned by {@link #store}
+   * @return The payload
+   */
+  public synchronized String read(long handle) {
+    byte[] bytes = new byte[length(handle)];
+    slabs.get(slab(handle)).get(offset(handle), bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Reads a stored payload and frees its chunk.
+   *
+   * @param handle The handle returned by {@link #store}
+   * @return The payload
+   */
+  public synchronized String release(long handle) {
+    String payload = read(handle);
+    int length = length(handle);
+    int sizeClass = classOf(length);
+    push(sizeClass, handle >>> OFFSET_BITS);
+    slabLive[slab(handle)]--;
+    usedBytes -= chunkBytes(sizeClass);
+    payloadBytes -= length;
+    entries--;
+    return payload;
+  }
+
+  /**
+   * Returns the number of stored payloads.
+   *
+   * @return The entry count
+   */
+  public synchronized long getEntryCount() {
+    return entries;
+  }
+
+  /**
+   * Returns the number of allocated slabs.
+   *
+   * @return The slab count
+   */
+  public synchronized int getSlabCount() {
+    return slabs.size();
+  }
+
+  /**
+   * Returns the off-heap memory held by the allocated slabs.
+   *
+   * @return The reserved bytes
+   */
+  public synchronized long getReservedBytes() {
+    return (long) slabs.size() * SLAB_BYTES;
+  }
+
+  /**
+   * Returns the size of the chunks holding payloads.
+   *
+   * @return The used bytes, including the unused tail of each chunk
+   */
+  public synchronized long getUsedBytes() {
+    return usedBytes;
+  }
+
+  /**
+   * Returns the size of the stored payloads.
+   *
+   * @return The payload bytes
+   */
+  public synchronized long getPayloadBytes() {
+    return payloadBytes;
+  }
+
+  /**
+   * Returns the number of payloads refused because the store was full or they were too large.
+   *
+   * @return The rejection count
+   */
+  public synchronized long getRejectedCount() {
+    return rejected;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format(
+        "%d payload(s) of %d bytes in %d/%d bytes used of %d slab(s), %d refused",
+        entries, payloadBytes, usedBytes, getReservedBytes(), slabs.size(), rejected);
+  }
+
+  /** Returns the slab and offset of a free chunk, allocating a slab if needed, or -1. */
+  private long allocate(int sizeClass) {
+    if (freeCount[sizeClass] == 0 && !grow(sizeClass)) {
+      return -1;
+    }
+    return free[sizeClass][--freeCount[sizeClass]];
+  }
+
+  private boolean grow(int sizeClass) {
+    if (slabs.size() >= maxSlabs) {
+      if (recarve(sizeClass)) {
+        return true;
+      }
+      long repeats = LogLimiter.ERRORS.admit("offheap-full");
+      if (repeats >= 0) {
+        log.warn(
+            "Off-heap payload store is full at {} bytes, keeping payloads on the heap{}",
+            getReservedBytes(),
+            LogLimiter.repeats(repeats));
+      }
+      return false;
+    }
+    ByteBuffer slab;
+    try {
+      slab = ByteBuffer.allocateDirect(SLAB_BYTES);
+    } catch (OutOfMemoryError e) {
+      maxSlabs = slabs.size();
+      log.warn(
+          "Direct memory exhausted after {} slab(s), capping the off-heap payload store: {}",
+          maxSlabs,
+          e.getMessage());
+      return false;
+    }
+    int index = slabs.size();
+    slabs.add(slab);
+    if (index == slabClass.length) {
+      slabClass = Arrays.copyOf(slabClass, index * 2);
+      slabLive = Arrays.copyOf(slabLive, index * 2);
+    }
+    carve(index, sizeClass);
+    return true;
+  }
+
+  /** Moves an empty slab of another size class to this one, if there is any. */
+  private boolean recarve(int sizeClass) {
+    for (int index = 0; index < slabs.size(); index++) {
+      int previous = slabClass[index];
+      if (slabLive[index] != 0 || previous == sizeClass) {
+        continue;
+      }
+      // All chunks of an empty slab are free; drop them from the free list of their class
+      long[] stack = free[previous];
+      int kept = 0;
+      for (int i = 0; i < freeCount[previous]; i++) {
+        if (stack[i] >>> OFFSET_BITS != index) {
+          stack[kept++] = stack[i];
+        }
+      }
+      freeCount[previous] = kept;
+      carve(index, sizeClass);
+      log.debug(
+          "Re-carved empty off-heap slab {} from {} to {} byte chunks",
+          index,
+          chunkBytes(previous),
+          chunkBytes(sizeClass));
+      return true;
+    }
+    return false;
+  }
+
+  private void carve(int index, int sizeClass) {
+    slabClass[index] = sizeClass;
+    int chunk = chunkBytes(sizeClass);
+    // Pushed in reverse so that chunks are handed out in address order
+    for (int offset = SLAB_BYTES - chunk; offset >= 0; offset -= chunk) {
+      push(sizeClass, (long) index << OFFSET_BITS | offset);
+    }
+  }
+
+  private void push(int sizeClass, long location) {
+    long[] stack = free[sizeClass];
+    if (freeCount[sizeClass] == stack.length) {
+      free[sizeClass] = stack = Arrays.copyOf(stack, stack.length * 2);
+    }
+    stack[freeCount[sizeClass]++] = location;
+  }
+
+  private static int classOf(int length) {
+    if (length <= MIN_CHUNK_BYTES) {
+      return 0;
+    }
+    return 32
+        - Integer.numberOfLeadingZeros(length - 1)
+        - Integer.numberOfTrailingZeros(MIN_CHUNK_BYTES);
+  }
+
+  private static int chunkBytes(int sizeClass) {
+    return MIN_CHUNK_BYTES << sizeClass;
+  }
+
+  private static int slab(long handle) {
+    return (int) (handle >>> (2 * OFFSET_BITS));
+  }
+
+  private static int offset(long handle) {
+    return (int) ((handle >>> OFFSET_BITS) & OFFSET_MASK);
+  }
+
+  private static int length(long handle) {
+    return (int) (handle & OFFSET_MASK);
+  }
+}
@@ -0,0 +1,47 @@
+package com.keycloak.event.delivery;
+
+import java.util.Collections;
+import java.util.Set;
+import lombok.Getter;
+
+/**
+ * A named group of event types that share a delivery lane. Classes are ordered from highest to
+ * lowest priority; the weight sets the share of worker time a class receives under deficit round
+ * robin scheduling.
+ */
+@Getter
+public class PriorityClass {
+
+  /** Name of the class, used in logs and for spool directories */
+  private final String name;
+
+  /** Relative share of delivery capacity under deficit round robin */
+  private final int weight;
+
+  /** Keycloak event types and admin operation types that belong to this class */
+  private final Set<String> types;
+
+  /**
+   * Creates a new priority class.
+   *
+   * @param name The class name
+   * @param weight The scheduling weight, at least 1
+   * @param types The event and operation type names assigned to this class
+   */
+  public PriorityClass(String name, int weight, Set<String> types) {
+    this.name = name;
+    this.weight = Math.max(1, weight);
+    this.types = Collections.unmodifiableSet(types);
+  }
+
+  /**
+   * Returns the name of the class's spool directory: the class name with every character other than
+   * letters, digits, '_' and '-' replaced by '_'.
+   *
+   * @return The directory name
+   */
+  public String getSpoolName() {
+    String spoolName = name.replaceAll("[^A-Za-z0-9_-]", "_");
+    return spoolName.isEmpty() ? "_" : spoolName;
+  }
+}
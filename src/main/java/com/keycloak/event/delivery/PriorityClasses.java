@@ -0,0 +1,146 @@
+package com.keycloak.event.delivery;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Ordered set of {@link PriorityClass}es and the lookup from event type to class. Types that are
+ * not listed in any class fall into the default class.
+ *
+ * <p>The configuration format lists classes from highest to lowest priority, separated by
+ * semicolons. Each entry is {@code name:weight=TYPE,TYPE,...}; the weight and type list are
+ * optional. A class named {@code default} may be listed to place unassigned types at a specific
+ * position, otherwise it is appended last with weight 1. Example:
+ *
+ * <pre>
+ * critical:8=LOGIN_ERROR,UPDATE_PASSWORD,DELETE;default:4;bulk:1=REFRESH_TOKEN,CODE_TO_TOKEN
+ * </pre>
+ */
+@Slf4j
+public class PriorityClasses {
+
+  /** Name of the class that receives all unassigned types */
+  public static final String DEFAULT_CLASS = "default";
+
+  @Getter private final List<PriorityClass> classes;
+  private final Map<String, Integer> indexByType = new HashMap<>();
+  private final int defaultIndex;
+
+  /**
+   * Creates a class set. Exactly one class must be named {@link #DEFAULT_CLASS}, and no two classes
+   * may share a name or a spool directory.
+   *
+   * @param classes The classes, highest priority first
+   * @throws IllegalArgumentException If the default class is missing or a name is repeated
+   */
+  public PriorityClasses(List<PriorityClass> classes) {
+    this.classes = Collections.unmodifiableList(new ArrayList<>(classes));
+    int defaultPosition = -1;
+    Set<String> spoolNames = new HashSet<>();
+    for (int i = 0; i < classes.size(); i++) {
+      PriorityClass priorityClass = classes.get(i);
+      if (!spoolNames.add(priorityClass.getSpoolName())) {
+        throw new IllegalArgumentException(
+            "Duplicate priority class '" + priorityClass.getName() + "'");
+      }
+      if (DEFAULT_CLASS.equals(priorityClass.getName())) {
+        defaultPosition = i;
+      }
+      for (String type : priorityClass.getTypes()) {
+        indexByType.putIfAbsent(type, i);
+      }
+    }
+    if (defaultPosition < 0) {
+      throw new IllegalArgumentException("Priority classes must include a 'default' class");
+    }
+    this.defaultIndex = defaultPosition;
+  }
+
+  /**
+   * Returns a set with only the default class, which behaves like a single FIFO queue.
+   *
+   * @return The single-class set
+   */
+  public static PriorityClasses single() {
+    return new PriorityClasses(
+        Collections.singletonList(new PriorityClass(DEFAULT_CLASS, 1, Collections.emptySet())));
+  }
+
+  /**
+   * Parses a class definition in the format described on this class.
+   *
+   * @param value The configured definition, may be null
+   * @return The parsed classes, or {@link #single()} if the value is empty
+   */
+  public static PriorityClasses parse(String value) {
+    if (value == null || value.trim().isEmpty()) {
+      return single();
+    }
+    List<PriorityClass> classes = new ArrayList<>();
+    boolean hasDefault = false;
+    for (String entry : value.split(";")) {
+      entry = entry.trim();
+      if (entry.isEmpty()) {
+        continue;
+      }
+      String head = entry;
+      Set<String> types = new LinkedHashSet<>();
+      int equals = entry.indexOf('=');
+      if (equals >= 0) {
+        head = entry.substring(0, equals).trim();
+        types =
+            Arrays.stream(entry.substring(equals + 1).split(","))
+                .map(String::trim)
+                .filter(s -> !s.isEmpty())
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+      }
+      String name = head;
+      int weight = 1;
+      int colon = head.indexOf(':');
+      if (colon >= 0) {
+        name = head.substring(0, colon).trim();
+        try {
+          weight = Integer.parseInt(head.substring(colon + 1).trim());
+        } catch (NumberFormatException e) {
+          log.warn("Invalid weight in priority class '{}', using 1", entry);
+        }
+      }
+      hasDefault |= DEFAULT_CLASS.equals(name);
+      classes.add(new PriorityClass(name, weight, types));
+    }
+    if (!hasDefault) {
+      classes.add(new PriorityClass(DEFAULT_CLASS, 1, Collections.emptySet()));
+    }
+    return new PriorityClasses(classes);
+  }
+
+  /**
+   * Returns the index of the class an event type belongs to.
+   *
+   * @param type The Keycloak event or operation type
+   * @return The class index, 0 being the highest priority
+   */
+  public int classify(String type) {
+    Integer index = indexByType.get(type);
+    return index == null ? defaultIndex : index;
+  }
+
+  /**
+   * Returns the number of classes.
+   *
+   * @return The class count
+   */
+  public int size() {
+    return classes.size();
+  }
+}
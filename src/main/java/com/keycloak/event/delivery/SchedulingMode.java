@@ -0,0 +1,32 @@
+package com.keycloak.event.delivery;
+
+import java.util.Locale;
+
+/** How a delivery worker picks the next priority class to serve. */
+public enum SchedulingMode {
+  /** Always serve the highest-priority non-empty class. Lower classes can starve. */
+  STRICT,
+  /**
+   * Deficit round robin: each class earns a byte quantum proportional to its weight per round, so
+   * every class makes progress and high-weight classes get a larger share.
+   */
+  DRR;
+
+  /**
+   * Parses a mode name, ignoring case.
+   *
+   * @param value The configured mode name
+   * @param defaultMode The mode to use when the value is missing or unknown
+   * @return The matching mode or the default
+   */
+  public static SchedulingMode fromString(String value, SchedulingMode defaultMode) {
+    if (value == null) {
+      return defaultMode;
+    }
+    try {
+      return valueOf(value.trim().toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      return defaultMode;
+    }
+  }
+}
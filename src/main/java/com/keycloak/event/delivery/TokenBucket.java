@@ -0,0 +1,134 @@
+package com.keycloak.event.delivery;
+
+import com.keycloak.event.endpoint.WebhookEndpoint;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Lock-free token bucket that caps the delivery rate of one endpoint, configured with the {@code
+ * rate} (events per second) and {@code burst} (bucket size) endpoint options.
+ *
+ * <p>The bucket is kept as a single theoretical arrival time (the generic cell rate algorithm): the
+ * time at which the bucket would be full again. Taking a token advances it by one emission
+ * interval, refilling is implicit in the passing of time, and both happen in one compare-and-set,
+ * so the delivery workers of an endpoint share the bucket without a lock.
+ */
+@Slf4j
+public final class TokenBucket {
+
+  /** Option holding the sustained rate in events per second */
+  public static final String RATE_OPTION = "rate";
+
+  /** Option holding the number of events that may be sent back to back */
+  public static final String BURST_OPTION = "burst";
+
+  @Getter private final double rate;
+  @Getter private final long burst;
+  private final long intervalNanos;
+  private final long toleranceNanos;
+  private final LongSupplier clock;
+  private final AtomicLong arrival;
+
+  /**
+   * Creates a full bucket.
+   *
+   * @param rate Sustained events per second
+   * @param burst Bucket size, at least 1
+   */
+  public TokenBucket(double rate, long burst) {
+    this(rate, burst, System::nanoTime);
+  }
+
+  TokenBucket(double rate, long burst, LongSupplier clock) {
+    if (!(rate > 0)) {
+      throw new IllegalArgumentException("Rate must be positive: " + rate);
+    }
+    this.rate = rate;
+    this.burst = Math.max(1, burst);
+    this.intervalNanos = Math.max(1, Math.round(TimeUnit.SECONDS.toNanos(1) / rate));
+    this.toleranceNanos = intervalNanos * this.burst;
+    this.clock = clock;
+    this.arrival = new AtomicLong(clock.getAsLong());
+  }
+
+  /**
+   * Creates the bucket configured by an endpoint's options.
+   *
+   * @param endpoint The endpoint
+   * @return A new bucket, or null if the endpoint has no valid rate
+   */
+  public static TokenBucket of(WebhookEndpoint endpoint) {
+    String value = endpoint.option(RATE_OPTION);
+    if (value == null) {
+      return null;
+    }
+    double rate;
+    try {
+      rate = Double.parseDouble(value);
+    } catch (NumberFormatException e) {
+      rate = 0;
+    }
+    if (!(rate > 0)) {
+      log.warn("Invalid {} '{}' for {}, not rate limiting", RATE_OPTION, value, endpoint);
+      return null;
+    }
+    return new TokenBucket(
+        rate, endpoint.longOption(BURST_OPTION, Math.max(1, (long) Math.ceil(rate))));
+  }
+
+  /**
+   * Takes a token if one is available.
+   *
+   * @return 0 if a token was taken, otherwise the nanoseconds until the next token, in which case
+   *     nothing was taken
+   */
+  public long tryAcquire() {
+    while (true) {
+      long now = clock.getAsLong();
+      long current = arrival.get();
+      long next = Math.max(current, now) + intervalNanos;
+      long wait = next - now - toleranceNanos;
+      if (wait > 0) {
+        return wait;
+      }
+      if (arrival.compareAndSet(current, next)) {
+        return 0;
+      }
+    }
+  }
+
+  /**
+   * Takes a token, waiting for it if necessary.
+   *
+   * @throws InterruptedException If interrupted while waiting; no token was taken
+   */
+  public void acquire() throws InterruptedException {
+    long wait;
+    while ((wait = tryAcquire()) > 0) {
+      LockSupport.parkNanos(this, wait);
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+    }
+  }
+
+  /**
+   * Returns whether this bucket was configured with the given options, so an unchanged endpoint
+   * keeps its bucket and its state.
+   *
+   * @param other Another bucket, may be null
+   * @return true if rate and burst are equal
+   */
+  boolean sameLimits(TokenBucket other) {
+    return other != null && other.rate == rate && other.burst == burst;
+  }
+
+  @Override
+  public String toString() {
+    return rate + "/s, burst " + burst;
+  }
+}
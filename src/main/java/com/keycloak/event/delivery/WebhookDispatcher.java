@@ -0,0 +1,348 @@
+package com.keycloak.event.delivery;
+
+import com.keycloak.event.HttpClientWebHookHandler;
+import com.keycloak.event.endpoint.EndpointGroup;
+import com.keycloak.event.endpoint.EndpointRegistry;
+import com.keycloak.event.endpoint.EndpointSnapshot;
+import com.keycloak.event.endpoint.WebhookEndpoint;
+import com.keycloak.event.watchdog.LatencyWatchdog;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Decouples onEvent from webhook delivery. Each configured endpoint gets its own {@link
+ * EndpointLanes}: bounded queues drained by dedicated worker threads, so a slow or unreachable
+ * endpoint only fills its own queues and never delays the Keycloak request that produced the event.
+ * Within an endpoint, events are split into priority classes so that security-critical events
+ * overtake bulk traffic, and sharded by ordering key over parallel serial lanes.
+ *
+ * <p>The dispatcher follows the handler's {@link EndpointRegistry}. On every new snapshot it builds
+ * an immutable routing table and swaps it in; {@link #dispatch(DeliveryTask)} reads it with a
+ * single volatile load. Lanes of endpoints that stay configured are reused with their backlog,
+ * lanes of removed endpoints are drained in the background before they are closed.
+ *
+ * <p>Members of a balanced {@link EndpointGroup} each have their own lanes; the handler's {@link
+ * EndpointBalancer} picks the member whose lanes receive an event when it is dispatched.
+ *
+ * <p>An optional {@link LatencyWatchdog} travels with the dispatcher; it watches how long onEvent
+ * takes and tells the caller how much of the work to hand to the workers.
+ */
+@Slf4j
+public class WebhookDispatcher implements Closeable {
+
+  private static final long RETIRE_GRACE_MILLIS = 100;
+  private static final long RETIRE_TIMEOUT_MILLIS = 30000;
+
+  @Getter private final DropCounters dropCounters = new DropCounters();
+  private final HttpClientWebHookHandler webHookHandler;
+  private final DeliverySettings settings;
+  private final EndpointBalancer balancer;
+  @Getter private final LatencyWatchdog watchdog;
+  private final Map<String, EndpointLanes> lanesByUrl = new ConcurrentHashMap<>();
+  private final AtomicInteger threadIndex = new AtomicInteger();
+  private final Consumer<EndpointSnapshot> listener = this::apply;
+  private volatile Routing routing = Routing.EMPTY;
+
+  /**
+   * Creates a dispatcher with one set of lanes per endpoint of the handler's registry and keeps
+   * following the registry.
+   *
+   * @param webHookHandler The handler used to deliver payloads
+   * @param settings The queue, overflow, priority and sharding settings
+   * @throws IOException If a spool directory cannot be opened
+   */
+  public WebhookDispatcher(HttpClientWebHookHandler webHookHandler, DeliverySettings settings)
+      throws IOException {
+    this(webHookHandler, settings, null);
+  }
+
+  /**
+   * Creates a dispatcher with a latency watchdog. The dispatcher closes the watchdog when it is
+   * closed.
+   *
+   * @param webHookHandler The handler used to deliver payloads
+   * @param settings The queue, overflow, priority and sharding settings
+   * @param watchdog The watchdog of onEvent, may be null
+   * @throws IOException If a spool directory cannot be opened
+   */
+  public WebhookDispatcher(
+      HttpClientWebHookHandler webHookHandler, DeliverySettings settings, LatencyWatchdog watchdog)
+      throws IOException {
+    this.watchdog = watchdog;
+    this.webHookHandler = webHookHandler;
+    this.settings = settings;
+    this.balancer = webHookHandler.getBalancer();
+    EndpointRegistry registry = webHookHandler.getRegistry();
+    synchronized (this) {
+      for (WebhookEndpoint endpoint : registry.current().allEndpoints().values()) {
+        lanesByUrl.put(endpoint.getUrl(), newLanes(endpoint));
+      }
+      registry.addListener(listener);
+      apply(registry.current());
+    }
+    log.info(
+        "WebhookDispatcher started for {} endpoint(s) with {} lane(s) keyed by {}, capacity {},"
+            + " {} overflow policy, {} priority class(es) scheduled by {} and bulkheads {}{}",
+        lanesByUrl.size(),
+        settings.getLanes(),
+        settings.getOrderingKey(),
+        settings.getCapacity(),
+        settings.getOverflowPolicy(),
+        settings.getPriorityClasses().size(),
+        settings.getSchedulingMode(),
+        settings.getBulkheads().getBulkheads().stream().map(Bulkhead::getName).toList(),
+        settings.getBulkheads().isPerRealm() ? " plus one per realm" : "");
+  }
+
+  /**
+   * Creates a dispatcher from the WEBHOOK_* settings, or returns null when the queue is disabled
+   * and events should be delivered synchronously.
+   *
+   * @param webHookHandler The handler used to deliver payloads
+   * @return A started dispatcher, or null if WEBHOOK_QUEUE_CAPACITY is 0
+   * @throws IOException If a spool directory cannot be opened
+   */
+  public static WebhookDispatcher fromConfig(HttpClientWebHookHandler webHookHandler)
+      throws IOException {
+    DeliverySettings settings = DeliverySettings.fromConfig();
+    if (settings.getCapacity() <= 0) {
+      return null;
+    }
+    return new WebhookDispatcher(
+        webHookHandler, settings, LatencyWatchdog.fromConfig(settings.getPriorityClasses()));
+  }
+
+  /**
+   * Hands a task to every endpoint, or to one member of each balanced group. Returns as soon as the
+   * task is queued, spooled or dropped.
+   *
+   * @param task The task to deliver
+   */
+  public void dispatch(DeliveryTask task) {
+    dispatch(task, true);
+  }
+
+  /**
+   * Hands a task to every endpoint, or to one member of each balanced group. Endpoints that do not
+   * accept the task's event type are skipped.
+   *
+   * @param task The task to deliver
+   * @param mayWait Whether the BLOCK policy may wait for space; false diverts to the spool instead
+   */
+  public void dispatch(DeliveryTask task, boolean mayWait) {
+    Routing current = routing;
+    for (Route route : current.routesFor(task.getRealmId())) {
+      if (route.group == null) {
+        for (EndpointLanes lanes : route.lanes) {
+          if (lanes.getEndpoint().accepts(task.getEventType())) {
+            lanes.offer(task.forEndpoint(lanes.getEndpoint()), mayWait);
+          }
+        }
+        continue;
+      }
+      if (!route.group.accepts(task.getEventType())) {
+        continue;
+      }
+      WebhookEndpoint member = balancer.choose(route.group);
+      EndpointLanes lanes = current.lanesByUrl.get(member.getUrl());
+      if (lanes == null || !lanes.offer(task.forEndpoint(member), mayWait)) {
+        balancer.release(member);
+      }
+    }
+  }
+
+  /**
+   * Returns the lanes of an endpoint.
+   *
+   * @param endpoint The webhook URL
+   * @return The endpoint's lanes, or null if the endpoint is unknown
+   */
+  public EndpointLanes getEndpoint(String endpoint) {
+    return lanesByUrl.get(endpoint);
+  }
+
+  /**
+   * Returns the counters of every bulkhead, summed over all endpoints.
+   *
+   * @return The counters by bulkhead name
+   */
+  public Map<String, BulkheadStats> getBulkheadStats() {
+    Map<String, BulkheadStats> stats = new TreeMap<>();
+    for (EndpointLanes lanes : lanesByUrl.values()) {
+      lanes
+          .bulkheadStats()
+          .forEach((name, laneStats) -> stats.merge(name, laneStats, BulkheadStats::plus));
+    }
+    return stats;
+  }
+
+  /**
+   * Returns the off-heap store of queued payloads, whose counters report the slab usage.
+   *
+   * @return The store, or null if payloads are kept on the heap
+   */
+  public PayloadSlabs getPayloadSlabs() {
+    return settings.getPayloadSlabs();
+  }
+
+  /** Stops the workers and closes the queues, spooling any in-memory backlog where possible. */
+  @Override
+  public synchronized void close() {
+    webHookHandler.getRegistry().removeListener(listener);
+    routing = Routing.EMPTY;
+    if (watchdog != null) {
+      watchdog.close();
+    }
+    Map<String, BulkheadStats> stats = getBulkheadStats();
+    lanesByUrl.values().forEach(EndpointLanes::close);
+    lanesByUrl.clear();
+    log.info(
+        "WebhookDispatcher stopped, dropped events: {}, bulkheads: {}{}",
+        dropCounters.snapshot(),
+        stats.values(),
+        settings.getPayloadSlabs() != null
+            ? ", off-heap payloads: " + settings.getPayloadSlabs()
+            : "");
+  }
+
+  /**
+   * Applies an endpoint snapshot: creates lanes for new endpoints, hands changed descriptors to
+   * existing lanes, publishes the new routing table and retires lanes of removed endpoints.
+   */
+  private synchronized void apply(EndpointSnapshot snapshot) {
+    Map<String, WebhookEndpoint> endpoints = snapshot.allEndpoints();
+    for (WebhookEndpoint endpoint : endpoints.values()) {
+      EndpointLanes lanes = lanesByUrl.get(endpoint.getUrl());
+      if (lanes != null) {
+        lanes.setEndpoint(endpoint);
+        continue;
+      }
+      try {
+        lanesByUrl.put(endpoint.getUrl(), newLanes(endpoint));
+      } catch (IOException e) {
+        log.error("Cannot deliver to new endpoint {}: {}", endpoint, e.getMessage(), e);
+      }
+    }
+
+    List<Route> global = routesOf(snapshot.getGroups());
+    Map<String, List<Route>> byRealm = new HashMap<>();
+    for (String realmId : snapshot.realmIds()) {
+      byRealm.put(realmId, routesOf(snapshot.groupsFor(realmId)));
+    }
+    routing = new Routing(global, byRealm, new HashMap<>(lanesByUrl));
+
+    List<String> removed = new ArrayList<>(lanesByUrl.keySet());
+    removed.removeAll(endpoints.keySet());
+    for (String url : removed) {
+      retire(lanesByUrl.remove(url));
+    }
+  }
+
+  /**
+   * Drains and closes the lanes of a removed endpoint on a background thread. The grace period
+   * covers dispatches that read the previous routing table just before it was replaced.
+   */
+  private void retire(EndpointLanes lanes) {
+    log.info(
+        "Endpoint {} removed, draining {} pending event(s)", lanes.getEndpoint(), lanes.size());
+    Thread retirer =
+        new Thread(
+            () -> {
+              try {
+                Thread.sleep(settings.getBlockTimeoutMillis() + RETIRE_GRACE_MILLIS);
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+              lanes.drainAndClose(RETIRE_TIMEOUT_MILLIS);
+              if (webHookHandler.getRegistry().current().find(lanes.getEndpoint().getUrl())
+                  == null) {
+                webHookHandler.closeSink(lanes.getEndpoint().getUrl());
+              }
+              log.info("Endpoint {} retired", lanes.getEndpoint());
+            },
+            "webhook-retire");
+    retirer.setDaemon(true);
+    retirer.start();
+  }
+
+  private List<Route> routesOf(List<EndpointGroup> groups) {
+    List<Route> routes = new ArrayList<>(groups.size());
+    for (EndpointGroup group : groups) {
+      List<EndpointLanes> lanes = new ArrayList<>(group.getMembers().size());
+      for (WebhookEndpoint endpoint : group.getMembers()) {
+        EndpointLanes memberLanes = lanesByUrl.get(endpoint.getUrl());
+        if (memberLanes != null) {
+          lanes.add(memberLanes);
+        }
+      }
+      if (!lanes.isEmpty()) {
+        routes.add(new Route(group.isBalanced() ? group : null, lanes));
+      }
+    }
+    return Collections.unmodifiableList(routes);
+  }
+
+  private EndpointLanes newLanes(WebhookEndpoint endpoint) throws IOException {
+    return new EndpointLanes(
+        endpoint,
+        webHookHandler,
+        settings,
+        dropCounters,
+        settings.getSpoolDirectory().resolve(spoolName(endpoint.getUrl())),
+        "webhook-delivery-" + threadIndex.getAndIncrement());
+  }
+
+  private static String spoolName(String url) {
+    return url.replaceAll("[^A-Za-z0-9._-]", "_") + "-" + Integer.toHexString(url.hashCode());
+  }
+
+  /** Where one group's events go: all lanes of a broadcast group, or one balanced member. */
+  private static final class Route {
+    /** The balanced group, or null to deliver to all of the lanes */
+    private final EndpointGroup group;
+
+    private final List<EndpointLanes> lanes;
+
+    private Route(EndpointGroup group, List<EndpointLanes> lanes) {
+      this.group = group;
+      this.lanes = lanes;
+    }
+  }
+
+  /** Immutable routing table: the routes that receive events of each realm. */
+  private static final class Routing {
+    private static final Routing EMPTY =
+        new Routing(Collections.emptyList(), Collections.emptyMap(), Collections.emptyMap());
+
+    private final List<Route> global;
+    private final Map<String, List<Route>> byRealm;
+    private final Map<String, EndpointLanes> lanesByUrl;
+
+    private Routing(
+        List<Route> global,
+        Map<String, List<Route>> byRealm,
+        Map<String, EndpointLanes> lanesByUrl) {
+      this.global = global;
+      this.byRealm = byRealm;
+      this.lanesByUrl = lanesByUrl;
+    }
+
+    private List<Route> routesFor(String realmId) {
+      if (realmId == null || byRealm.isEmpty()) {
+        return global;
+      }
+      return byRealm.getOrDefault(realmId, global);
+    }
+  }
+}
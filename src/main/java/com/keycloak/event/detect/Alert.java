@@ -0,0 +1,60 @@
+package com.keycloak.event.detect;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * An event derived from a pattern of user events, delivered with eventType ALERT. Fields that do
+ * not apply to the alert type are null and left out of the payload.
+ */
+@Getter
+@Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class Alert {
+
+  /** Type of alerts raised when login failures reach a threshold */
+  public static final String BRUTE_FORCE = "BRUTE_FORCE";
+
+  /** Type of alerts raised when two logins of a user are too far apart for the time between */
+  public static final String IMPOSSIBLE_TRAVEL = "IMPOSSIBLE_TRAVEL";
+
+  /** The alert type */
+  private final String type;
+
+  /** The realm of the events */
+  private final String realmId;
+
+  /** Time of the event that raised the alert, in milliseconds since the epoch */
+  private final long time;
+
+  /** What the failures were counted by: user, ipAddress or clientId */
+  private final String key;
+
+  /** The user, IP address or client the failures were counted for */
+  private final String value;
+
+  /** Number of failures in the window */
+  private final Integer count;
+
+  /** Length of the window in milliseconds */
+  private final Long windowMs;
+
+  /** The user of the event that raised the alert */
+  private final String userId;
+
+  /** The IP address of the event that raised the alert */
+  private final String ipAddress;
+
+  /** The client of the event that raised the alert */
+  private final String clientId;
+
+  /** Distance between the two logins in kilometres */
+  private final Long distanceKm;
+
+  /** Time between the two logins in milliseconds */
+  private final Long elapsedMs;
+
+  /** Speed needed to travel between the two logins in km/h */
+  private final Long speedKmh;
+}
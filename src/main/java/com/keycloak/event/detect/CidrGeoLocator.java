@@ -0,0 +1,128 @@
+package com.keycloak.event.detect;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Locates IPv4 addresses through a table of network ranges read from a CSV file with lines of the
+ * form {@code cidr,latitude,longitude}, for example {@code 192.0.2.0/24,52.37,4.89}. Blank lines
+ * and lines starting with {@code #} are ignored. Ranges must not overlap. Lookups are a binary
+ * search over the sorted range starts.
+ */
+@Slf4j
+public class CidrGeoLocator implements GeoLocator {
+
+  private final long[] starts;
+  private final long[] ends;
+  private final double[] latitudes;
+  private final double[] longitudes;
+
+  /**
+   * Creates a locator from CSV lines.
+   *
+   * @param lines The lines
+   */
+  public CidrGeoLocator(List<String> lines) {
+    List<long[]> ranges = new ArrayList<>();
+    List<double[]> locations = new ArrayList<>();
+    for (String line : lines) {
+      line = line.trim();
+      if (line.isEmpty() || line.startsWith("#")) {
+        continue;
+      }
+      String[] fields = line.split(",");
+      try {
+        String[] cidr = fields[0].trim().split("/");
+        int bits = cidr.length > 1 ? Integer.parseInt(cidr[1]) : 32;
+        long address = parse(cidr[0]);
+        if (address < 0 || bits < 0 || bits > 32 || fields.length < 3) {
+          throw new IllegalArgumentException("not an IPv4 range");
+        }
+        long size = 1L << (32 - bits);
+        long start = address & ~(size - 1);
+        ranges.add(new long[] {start, start + size - 1, locations.size()});
+        locations.add(
+            new double[] {
+              Double.parseDouble(fields[1].trim()), Double.parseDouble(fields[2].trim())
+            });
+      } catch (RuntimeException e) {
+        log.warn("Ignoring geolocation line '{}': {}", line, e.getMessage());
+      }
+    }
+    ranges.sort(Comparator.comparingLong(range -> range[0]));
+    starts = new long[ranges.size()];
+    ends = new long[ranges.size()];
+    latitudes = new double[ranges.size()];
+    longitudes = new double[ranges.size()];
+    for (int i = 0; i < ranges.size(); i++) {
+      long[] range = ranges.get(i);
+      starts[i] = range[0];
+      ends[i] = range[1];
+      latitudes[i] = locations.get((int) range[2])[0];
+      longitudes[i] = locations.get((int) range[2])[1];
+    }
+  }
+
+  /**
+   * Creates a locator from a CSV file.
+   *
+   * @param file The file
+   * @return The locator
+   * @throws IOException If the file cannot be read
+   */
+  public static CidrGeoLocator load(Path file) throws IOException {
+    CidrGeoLocator locator = new CidrGeoLocator(Files.readAllLines(file, StandardCharsets.UTF_8));
+    log.info("Loaded {} geolocation range(s) from {}", locator.starts.length, file);
+    return locator;
+  }
+
+  @Override
+  public double[] locate(String ipAddress) {
+    long address = ipAddress != null ? parse(ipAddress) : -1;
+    if (address < 0) {
+      return null;
+    }
+    int index = Arrays.binarySearch(starts, address);
+    if (index < 0) {
+      index = -index - 2;
+    }
+    if (index < 0 || address > ends[index]) {
+      return null;
+    }
+    return new double[] {latitudes[index], longitudes[index]};
+  }
+
+  /** Returns the IPv4 address as an unsigned 32-bit value, or -1 if it is not one. */
+  static long parse(String address) {
+    String[] octets = address.trim().split("\\.", -1);
+    if (octets.length != 4) {
+      return -1;
+    }
+    long value = 0;
+    for (String octet : octets) {
+      if (octet.isEmpty() || octet.length() > 3) {
+        return -1;
+      }
+      int part = 0;
+      for (int i = 0; i < octet.length(); i++) {
+        char c = octet.charAt(i);
+        if (c < '0' || c > '9') {
+          return -1;
+        }
+        part = part * 10 + (c - '0');
+      }
+      if (part > 255) {
+        return -1;
+      }
+      value = (value << 8) | part;
+    }
+    return value;
+  }
+}
@@ -0,0 +1,274 @@
+package com.keycloak.event.detect;
+
+import com.keycloak.event.config.WebhookConfig;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.keycloak.events.Details;
+import org.keycloak.events.Event;
+import org.keycloak.events.EventType;
+
+/**
+ * Derives alerts from the stream of user events, so that receivers interested in attacks need not
+ * receive every raw event.
+ *
+ * <p>Brute force: {@code LOGIN_ERROR} events are counted per user, per IP address and per client
+ * over a sliding window, and an alert is raised when a count reaches its threshold. A count that
+ * stays above its threshold raises no further alerts until it has dropped below it again. Failures
+ * for unknown users are counted under the attempted username.
+ *
+ * <p>Impossible travel: with a {@link GeoLocator}, each {@code LOGIN} is located by IP address and
+ * compared with the user's previous login of the last day. An alert is raised when the logins are
+ * more than {@value #MIN_TRAVEL_KM} km apart and covering the distance would take more than {@code
+ * maxSpeedKmh}.
+ *
+ * <p>Counters and last logins live in {@link LongKeyedTable}s keyed by 64-bit hashes of realm and
+ * value, bounded by {@code maxKeys} entries each. Users, IP addresses and clients are counted in
+ * separate tables, so a flood of one kind of key cannot push out the others, and a full table
+ * evicts its least recently counted keys. Event times drive the windows.
+ */
+@Slf4j
+@Getter
+public class EventDetector {
+
+  /** Number of buckets the failure window is split into */
+  static final int BUCKETS = 10;
+
+  /** Smallest distance between two logins that can raise an impossible travel alert, in km */
+  static final int MIN_TRAVEL_KM = 500;
+
+  /** How long the last login of a user is remembered */
+  static final long TRAVEL_RETENTION_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+  private static final double EARTH_RADIUS_KM = 6371;
+  private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  private final long windowMillis;
+  private final int userThreshold;
+  private final int ipThreshold;
+  private final int clientThreshold;
+  private final double maxSpeedKmh;
+
+  @Getter(AccessLevel.NONE)
+  private final WindowCounters userFailures;
+
+  @Getter(AccessLevel.NONE)
+  private final WindowCounters ipFailures;
+
+  @Getter(AccessLevel.NONE)
+  private final WindowCounters clientFailures;
+
+  @Getter(AccessLevel.NONE)
+  private final GeoLocator locator;
+
+  @Getter(AccessLevel.NONE)
+  private final LastLogins logins;
+
+  /**
+   * Creates a detector.
+   *
+   * @param windowMillis The window over which login failures are counted
+   * @param userThreshold Failures per user that raise an alert, 0 to not count per user
+   * @param ipThreshold Failures per IP address that raise an alert, 0 to not count per address
+   * @param clientThreshold Failures per client that raise an alert, 0 to not count per client
+   * @param maxKeys The maximum number of keys of each table
+   * @param locator Locates IP addresses, or null to not detect impossible travel
+   * @param maxSpeedKmh The fastest plausible travel speed between two logins
+   */
+  public EventDetector(
+      long windowMillis,
+      int userThreshold,
+      int ipThreshold,
+      int clientThreshold,
+      int maxKeys,
+      GeoLocator locator,
+      double maxSpeedKmh) {
+    this.windowMillis = windowMillis;
+    this.userThreshold = userThreshold;
+    this.ipThreshold = ipThreshold;
+    this.clientThreshold = clientThreshold;
+    this.maxSpeedKmh = maxSpeedKmh;
+    this.userFailures = new WindowCounters(windowMillis, BUCKETS, maxKeys);
+    this.ipFailures = new WindowCounters(windowMillis, BUCKETS, maxKeys);
+    this.clientFailures = new WindowCounters(windowMillis, BUCKETS, maxKeys);
+    this.locator = locator;
+    this.logins = locator != null ? new LastLogins(TRAVEL_RETENTION_MILLIS, maxKeys) : null;
+  }
+
+  /**
+   * Creates a detector from the WEBHOOK_DETECT* settings.
+   *
+   * @return A new detector, or null if WEBHOOK_DETECT is not true
+   */
+  public static EventDetector fromConfig() {
+    if (!Boolean.parseBoolean(WebhookConfig.getSetting(WebhookConfig.DETECT))) {
+      return null;
+    }
+    GeoLocator locator = null;
+    String geoFile = WebhookConfig.getSetting(WebhookConfig.DETECT_GEO_FILE);
+    if (geoFile != null && !geoFile.isBlank()) {
+      try {
+        locator = CidrGeoLocator.load(Paths.get(geoFile));
+      } catch (IOException e) {
+        log.error(
+            "Failed to read geolocation file {}, impossible travel is not detected: {}",
+            geoFile,
+            e.getMessage());
+      }
+    }
+    EventDetector detector =
+        new EventDetector(
+            WebhookConfig.getLong(
+                WebhookConfig.DETECT_WINDOW_MS, WebhookConfig.DEFAULT_DETECT_WINDOW_MS),
+            WebhookConfig.getInt(
+                WebhookConfig.DETECT_USER_FAILURES, WebhookConfig.DEFAULT_DETECT_USER_FAILURES),
+            WebhookConfig.getInt(
+                WebhookConfig.DETECT_IP_FAILURES, WebhookConfig.DEFAULT_DETECT_IP_FAILURES),
+            WebhookConfig.getInt(
+                WebhookConfig.DETECT_CLIENT_FAILURES, WebhookConfig.DEFAULT_DETECT_CLIENT_FAILURES),
+            WebhookConfig.getInt(
+                WebhookConfig.DETECT_MAX_KEYS, WebhookConfig.DEFAULT_DETECT_MAX_KEYS),
+            locator,
+            WebhookConfig.getDouble(
+                WebhookConfig.DETECT_MAX_SPEED_KMH, WebhookConfig.DEFAULT_DETECT_MAX_SPEED_KMH));
+    log.info(
+        "Event detectors enabled, alerting at {}/{}/{} login failures per user/IP/client in {}"
+            + " ms{}",
+        detector.userThreshold,
+        detector.ipThreshold,
+        detector.clientThreshold,
+        detector.windowMillis,
+        locator != null ? " and on impossible travel" : "");
+    return detector;
+  }
+
+  /**
+   * Feeds a user event to the detectors.
+   *
+   * @param event The user event
+   * @return The alerts raised by the event, usually none
+   */
+  public List<Alert> observe(Event event) {
+    long time = event.getTime() > 0 ? event.getTime() : System.currentTimeMillis();
+    if (event.getType() == EventType.LOGIN_ERROR) {
+      return failure(event, time);
+    }
+    if (event.getType() == EventType.LOGIN && logins != null) {
+      return login(event, time);
+    }
+    return Collections.emptyList();
+  }
+
+  private List<Alert> failure(Event event, long time) {
+    String user = event.getUserId();
+    if (user == null && event.getDetails() != null) {
+      user = event.getDetails().get(Details.USERNAME);
+    }
+    List<Alert> alerts = new ArrayList<>(0);
+    count(alerts, userFailures, event, time, "userId", user, userThreshold);
+    count(alerts, ipFailures, event, time, "ipAddress", event.getIpAddress(), ipThreshold);
+    count(alerts, clientFailures, event, time, "clientId", event.getClientId(), clientThreshold);
+    return alerts;
+  }
+
+  private void count(
+      List<Alert> alerts,
+      WindowCounters failures,
+      Event event,
+      long time,
+      String key,
+      String value,
+      int threshold) {
+    if (value == null || threshold <= 0) {
+      return;
+    }
+    int count = failures.increment(key(key, event.getRealmId(), value), time);
+    if (count == threshold) {
+      alerts.add(
+          alert(Alert.BRUTE_FORCE, event, time)
+              .key(key)
+              .value(value)
+              .count(count)
+              .windowMs(windowMillis)
+              .build());
+    }
+  }
+
+  private List<Alert> login(Event event, long time) {
+    if (event.getUserId() == null || event.getIpAddress() == null) {
+      return Collections.emptyList();
+    }
+    double[] location = locator.locate(event.getIpAddress());
+    if (location == null) {
+      return Collections.emptyList();
+    }
+    long[] previous =
+        logins.update(
+            key("login", event.getRealmId(), event.getUserId()), time, location[0], location[1]);
+    if (previous == null) {
+      return Collections.emptyList();
+    }
+    double kilometres =
+        distance(
+            Double.longBitsToDouble(previous[1]),
+            Double.longBitsToDouble(previous[2]),
+            location[0],
+            location[1]);
+    long elapsed = Math.max(1, time - previous[0]);
+    double speed = kilometres / elapsed * TimeUnit.HOURS.toMillis(1);
+    if (kilometres < MIN_TRAVEL_KM || speed <= maxSpeedKmh) {
+      return Collections.emptyList();
+    }
+    return Collections.singletonList(
+        alert(Alert.IMPOSSIBLE_TRAVEL, event, time)
+            .distanceKm(Math.round(kilometres))
+            .elapsedMs(elapsed)
+            .speedKmh(Math.round(speed))
+            .build());
+  }
+
+  private static Alert.AlertBuilder alert(String type, Event event, long time) {
+    return Alert.builder()
+        .type(type)
+        .realmId(event.getRealmId())
+        .time(time)
+        .userId(event.getUserId())
+        .ipAddress(event.getIpAddress())
+        .clientId(event.getClientId());
+  }
+
+  /** Great-circle distance in km. */
+  static double distance(double lat1, double lon1, double lat2, double lon2) {
+    double dLat = Math.toRadians(lat2 - lat1);
+    double dLon = Math.toRadians(lon2 - lon1);
+    double a =
+        Math.sin(dLat / 2) * Math.sin(dLat / 2)
+            + Math.cos(Math.toRadians(lat1))
+                * Math.cos(Math.toRadians(lat2))
+                * Math.sin(dLon / 2)
+                * Math.sin(dLon / 2);
+    return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+  }
+
+  /** 64-bit FNV-1a hash of the parts, separated so that ("ab", "c") and ("a", "bc") differ. */
+  static long key(String kind, String realmId, String value) {
+    long hash = FNV_OFFSET;
+    hash = hash(hash, kind);
+    hash = hash(hash, realmId != null ? realmId : "");
+    return hash(hash, value);
+  }
+
+  private static long hash(long hash, String part) {
+    for (int i = 0; i < part.length(); i++) {
+      hash = (hash ^ part.charAt(i)) * FNV_PRIME;
+    }
+    return (hash ^ 0xFFFF) * FNV_PRIME;
+  }
+}
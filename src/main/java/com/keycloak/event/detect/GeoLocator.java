@@ -0,0 +1,14 @@
+package com.keycloak.event.detect;
+
+/** Resolves the approximate location of an IP address. */
+@FunctionalInterface
+public interface GeoLocator {
+
+  /**
+   * Locates an IP address.
+   *
+   * @param ipAddress The IP address
+   * @return {latitude, longitude} in degrees, or null if the address cannot be located
+   */
+  double[] locate(String ipAddress);
+}
@@ -0,0 +1,57 @@
+package com.keycloak.event.detect;
+
+/**
+ * Time and location of the last login of each user, keyed by {@code long}. Coordinates are stored
+ * as the raw bits of doubles. Entries expire {@code retentionMillis} after the login.
+ */
+class LastLogins extends LongKeyedTable {
+
+  private final long retentionMillis;
+
+  /**
+   * Creates an empty table.
+   *
+   * @param retentionMillis How long a login is remembered
+   * @param maxKeys The maximum number of users remembered at once
+   */
+  LastLogins(long retentionMillis, int maxKeys) {
+    super(3, maxKeys);
+    this.retentionMillis = retentionMillis;
+  }
+
+  /**
+   * Records a login and returns the previous one.
+   *
+   * @param key The user key
+   * @param time The time of the login in milliseconds
+   * @param latitude The latitude of the login
+   * @param longitude The longitude of the login
+   * @return The previous login as {time, latitude bits, longitude bits}, or null if there is none
+   *     within the retention period
+   */
+  synchronized long[] update(long key, long time, double latitude, double longitude) {
+    int base = entry(key, time);
+    long[] previous = null;
+    if (values[base] != 0 && values[base] > time - retentionMillis) {
+      if (values[base] > time) {
+        // Out of order; keep the newer login
+        return null;
+      }
+      previous = new long[] {values[base], values[base + 1], values[base + 2]};
+    }
+    values[base] = time;
+    values[base + 1] = Double.doubleToRawLongBits(latitude);
+    values[base + 2] = Double.doubleToRawLongBits(longitude);
+    return previous;
+  }
+
+  @Override
+  protected boolean expired(long[] table, int base, long now) {
+    return table[base] <= now - retentionMillis;
+  }
+
+  @Override
+  protected long lastUsed(long[] table, int base) {
+    return table[base];
+  }
+}
@@ -0,0 +1,181 @@
+package com.keycloak.event.detect;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash table from {@code long} keys to a fixed number of {@code long} values, kept
+ * in two flat arrays so that tracking a key costs no objects.
+ *
+ * <p>Entries are never removed one by one. When the table is half full it is rebuilt at twice the
+ * size, dropping expired entries on the way, until it has room for {@code maxKeys} entries. From
+ * then on a full table is rebuilt in place: expired entries are dropped, and if that frees less
+ * than a quarter of the table, the least recently used entries are evicted to make up the quarter.
+ * New keys are therefore always accepted. Not thread-safe.
+ */
+abstract class LongKeyedTable {
+
+  private static final int INITIAL_CAPACITY = 256;
+
+  /** Number of values per entry */
+  protected final int stride;
+
+  /** Values of the entry in slot {@code s} at {@code values[s * stride]} and after */
+  protected long[] values;
+
+  private final int maxKeys;
+  private long[] keys;
+  private int size;
+
+  /**
+   * Creates an empty table.
+   *
+   * @param stride The number of values per entry
+   * @param maxKeys The maximum number of entries
+   */
+  protected LongKeyedTable(int stride, int maxKeys) {
+    this.stride = stride;
+    this.maxKeys = Math.max(1, maxKeys);
+    allocate(Math.min(INITIAL_CAPACITY, capacityFor(this.maxKeys)));
+  }
+
+  /**
+   * Returns whether an entry has expired and may be dropped.
+   *
+   * @param table The values array holding the entry
+   * @param base The index of the entry's first value
+   * @param now The current time in milliseconds
+   * @return true if the entry has expired
+   */
+  protected abstract boolean expired(long[] table, int base, long now);
+
+  /**
+   * Returns when an entry was last used. Entries with the lowest values are evicted first.
+   *
+   * @param table The values array holding the entry
+   * @param base The index of the entry's first value
+   * @return A value that increases with the time of the entry's last use
+   */
+  protected abstract long lastUsed(long[] table, int base);
+
+  /**
+   * Returns the index of the first value of a key, adding an entry with zeroed values if the key is
+   * new.
+   *
+   * @param key The key
+   * @param now The current time in milliseconds, used to drop expired entries
+   * @return The index of the first value
+   */
+  protected final int entry(long key, long now) {
+    key = key == 0 ? 1 : key;
+    int slot = find(key);
+    if (keys[slot] == key) {
+      return slot * stride;
+    }
+    if ((size + 1) * 2 > keys.length || size >= maxKeys) {
+      if (keys.length < capacityFor(maxKeys)) {
+        rebuild(keys.length * 2, now, 0);
+      } else {
+        rebuild(keys.length, now, maxKeys - Math.max(1, maxKeys / 4));
+      }
+      slot = find(key);
+    }
+    keys[slot] = key;
+    size++;
+    return slot * stride;
+  }
+
+  /**
+   * Returns the index of the first value of a key.
+   *
+   * @param key The key
+   * @return The index of the first value, or -1 if the key is not in the table
+   */
+  protected final int lookup(long key) {
+    key = key == 0 ? 1 : key;
+    int slot = find(key);
+    return keys[slot] == key ? slot * stride : -1;
+  }
+
+  /**
+   * Returns the number of entries, including expired ones not yet dropped.
+   *
+   * @return The number of entries
+   */
+  public int size() {
+    return size;
+  }
+
+  private int find(long key) {
+    int mask = keys.length - 1;
+    long mixed = key * 0x9E3779B97F4A7C15L;
+    int slot = (int) (mixed ^ (mixed >>> 32)) & mask;
+    while (keys[slot] != 0 && keys[slot] != key) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  /**
+   * Rebuilds the table without its expired entries. If more than {@code keep} entries are left and
+   * {@code keep} is positive, the least recently used ones are evicted down to {@code keep}.
+   */
+  private void rebuild(int capacity, long now, int keep) {
+    long[] oldKeys = keys;
+    long[] oldValues = values;
+    int live = 0;
+    for (int slot = 0; slot < oldKeys.length; slot++) {
+      if (oldKeys[slot] != 0 && expired(oldValues, slot * stride, now)) {
+        oldKeys[slot] = 0;
+      } else if (oldKeys[slot] != 0) {
+        live++;
+      }
+    }
+    long cutoff = Long.MIN_VALUE;
+    int ties = 0;
+    if (keep > 0 && live > keep) {
+      long[] used = new long[live];
+      int count = 0;
+      for (int slot = 0; slot < oldKeys.length; slot++) {
+        if (oldKeys[slot] != 0) {
+          used[count++] = lastUsed(oldValues, slot * stride);
+        }
+      }
+      Arrays.sort(used);
+      int evict = live - keep;
+      cutoff = used[evict - 1];
+      // All entries used before the cutoff go, and as many used at the cutoff as make up evict
+      int before = 0;
+      while (used[before] < cutoff) {
+        before++;
+      }
+      ties = evict - before;
+    }
+    allocate(capacity);
+    size = 0;
+    for (int slot = 0; slot < oldKeys.length; slot++) {
+      if (oldKeys[slot] == 0) {
+        continue;
+      }
+      long used = lastUsed(oldValues, slot * stride);
+      if (used < cutoff || (used == cutoff && ties > 0)) {
+        if (used == cutoff) {
+          ties--;
+        }
+        continue;
+      }
+      int target = find(oldKeys[slot]);
+      keys[target] = oldKeys[slot];
+      System.arraycopy(oldValues, slot * stride, values, target * stride, stride);
+      size++;
+    }
+  }
+
+  private void allocate(int capacity) {
+    keys = new long[capacity];
+    values = new long[capacity * stride];
+  }
+
+  private static int capacityFor(int maxKeys) {
+    return Integer.highestOneBit(Math.max(1, maxKeys - 1)) << 2;
+  }
+}
@@ -0,0 +1,80 @@
+package com.keycloak.event.detect;
+
+/**
+ * Sliding-window event counters keyed by {@code long}. The window is split into time buckets; each
+ * key keeps one count per bucket and the index of its newest bucket, and buckets that slide out of
+ * the window are cleared when the key is next counted. A key whose newest bucket has left the
+ * window has expired.
+ */
+class WindowCounters extends LongKeyedTable {
+
+  private final int buckets;
+  private final long bucketMillis;
+
+  /**
+   * Creates empty counters.
+   *
+   * @param windowMillis The length of the window
+   * @param buckets The number of buckets the window is split into
+   * @param maxKeys The maximum number of keys counted at once, the least recently counted are
+   *     evicted beyond it
+   */
+  WindowCounters(long windowMillis, int buckets, int maxKeys) {
+    super(1 + buckets, maxKeys);
+    this.buckets = buckets;
+    this.bucketMillis = Math.max(1, windowMillis / buckets);
+  }
+
+  /**
+   * Counts an event.
+   *
+   * @param key The key
+   * @param time The time of the event in milliseconds
+   * @return The number of events of the key in the window ending at {@code time}
+   */
+  synchronized int increment(long key, long time) {
+    int base = entry(key, time);
+    long bucket = time / bucketMillis;
+    long newest = values[base];
+    if (bucket > newest) {
+      for (long b = Math.max(newest + 1, bucket - buckets + 1); b <= bucket; b++) {
+        values[base + 1 + (int) (b % buckets)] = 0;
+      }
+      values[base] = bucket;
+    } else if (bucket <= newest - buckets) {
+      // Older than the window of the key's newest event
+      return sum(base);
+    }
+    values[base + 1 + (int) (bucket % buckets)]++;
+    return sum(base);
+  }
+
+  /**
+   * Returns the count of a key in the window ending with its newest event.
+   *
+   * @param key The key
+   * @return The count, 0 if the key is not counted
+   */
+  synchronized int count(long key) {
+    int base = lookup(key);
+    return base < 0 ? 0 : sum(base);
+  }
+
+  @Override
+  protected boolean expired(long[] table, int base, long now) {
+    return table[base] <= now / bucketMillis - buckets;
+  }
+
+  @Override
+  protected long lastUsed(long[] table, int base) {
+    return table[base];
+  }
+
+  private int sum(int base) {
+    long total = 0;
+    for (int i = 1; i <= buckets; i++) {
+      total += values[base + i];
+    }
+    return (int) total;
+  }
+}
@@ -0,0 +1,36 @@
+package com.keycloak.event.endpoint;
+
+import java.util.Locale;
+
+/** How an {@link EndpointGroup} spreads events over its members. */
+public enum BalanceMode {
+  /** Every member receives every event, the behavior of ungrouped endpoints */
+  BROADCAST,
+  /** Members take turns */
+  ROUND_ROBIN,
+  /** The member with the fewest queued and in-flight events */
+  LEAST_OUTSTANDING,
+  /**
+   * Latency-weighted: the better of two random members, scored by exponentially weighted moving
+   * average latency times outstanding events
+   */
+  EWMA;
+
+  /**
+   * Parses a mode name, ignoring case and accepting dashes for underscores.
+   *
+   * @param value The configured mode name
+   * @param defaultMode The mode to use when the value is missing or unknown
+   * @return The matching mode or the default
+   */
+  public static BalanceMode fromString(String value, BalanceMode defaultMode) {
+    if (value == null) {
+      return defaultMode;
+    }
+    try {
+      return valueOf(value.trim().replace('-', '_').toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      return defaultMode;
+    }
+  }
+}
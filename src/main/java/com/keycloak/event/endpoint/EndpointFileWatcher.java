@@ -0,0 +1,126 @@
+package com.keycloak.event.endpoint;
+
+import com.keycloak.event.config.WebhookConfig;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.stream.Collectors;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Watches a local endpoint file and feeds it into an {@link EndpointRegistry} as the {@link
+ * EndpointRegistry#FILE_SOURCE} source. The file lists one endpoint entry per line (or several
+ * separated by commas); blank lines and lines starting with {@code #} are ignored.
+ *
+ * <p>The file is polled for a changed modification time or size rather than watched with a {@link
+ * java.nio.file.WatchService}, which does not see updates of bind-mounted or symlinked files such
+ * as Kubernetes config maps. A missing file clears the source.
+ */
+@Slf4j
+public class EndpointFileWatcher implements Closeable {
+
+  @Getter private final Path file;
+  private final EndpointRegistry registry;
+  private final long pollMillis;
+  private final Thread thread;
+  private volatile boolean running = true;
+  private FileTime lastModified;
+  private long lastSize = -1;
+
+  /**
+   * Loads the file once and starts polling it.
+   *
+   * @param file The endpoint file
+   * @param registry The registry to update
+   * @param pollMillis The poll interval in milliseconds
+   */
+  public EndpointFileWatcher(Path file, EndpointRegistry registry, long pollMillis) {
+    this.file = file;
+    this.registry = registry;
+    this.pollMillis = Math.max(10, pollMillis);
+    check();
+    this.thread = new Thread(this::run, "webhook-endpoint-file-watcher");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Starts a watcher for the file named by WEBHOOK_URLS_FILE, if set.
+   *
+   * @param registry The registry to update
+   * @return A started watcher, or null if no file is configured
+   */
+  public static EndpointFileWatcher fromConfig(EndpointRegistry registry) {
+    String file = WebhookConfig.getSetting(WebhookConfig.URLS_FILE);
+    if (file == null) {
+      return null;
+    }
+    return new EndpointFileWatcher(
+        Paths.get(file),
+        registry,
+        WebhookConfig.getLong(
+            WebhookConfig.URLS_FILE_POLL_MS, WebhookConfig.DEFAULT_URLS_FILE_POLL_MS));
+  }
+
+  /**
+   * Reloads the file if its modification time or size changed since the last check.
+   *
+   * @return true if the file was reloaded
+   */
+  public synchronized boolean check() {
+    try {
+      if (!Files.exists(file)) {
+        if (lastSize != -1 || lastModified == null) {
+          log.warn("Webhook endpoint file {} not found", file);
+          registry.update(EndpointRegistry.FILE_SOURCE, null);
+          lastSize = -1;
+          lastModified = FileTime.fromMillis(0);
+          return true;
+        }
+        return false;
+      }
+      FileTime modified = Files.getLastModifiedTime(file);
+      long size = Files.size(file);
+      if (modified.equals(lastModified) && size == lastSize) {
+        return false;
+      }
+      List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+      registry.update(
+          EndpointRegistry.FILE_SOURCE,
+          lines.stream()
+              .map(String::trim)
+              .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+              .collect(Collectors.joining(",")));
+      lastModified = modified;
+      lastSize = size;
+      return true;
+    } catch (IOException e) {
+      log.error("Failed to read webhook endpoint file {}: {}", file, e.getMessage());
+      return false;
+    }
+  }
+
+  /** Stops polling. The endpoints loaded last stay in the registry. */
+  @Override
+  public void close() {
+    running = false;
+    thread.interrupt();
+  }
+
+  private void run() {
+    while (running) {
+      try {
+        Thread.sleep(pollMillis);
+      } catch (InterruptedException e) {
+        return;
+      }
+      check();
+    }
+  }
+}
@@ -0,0 +1,165 @@
+package com.keycloak.event.endpoint;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Immutable set of endpoints that share the events routed to them. Endpoints join a group with the
+ * {@code group=<name>} option; the {@code balance} option of the first member that sets it selects
+ * the {@link BalanceMode}, {@link BalanceMode#ROUND_ROBIN} by default. For example, three replicas
+ * of one consumer that should each get a share of the traffic:
+ *
+ * <pre>
+ * https://r1.example.com/hook;group=orders;balance=least-outstanding,
+ * https://r2.example.com/hook;group=orders,
+ * https://r3.example.com/hook;group=orders
+ * </pre>
+ *
+ * The {@code hedge=<fraction>} option, taken from the first member that sets it, lets a slow
+ * delivery to one member be repeated at a second member; the fraction caps the share of deliveries
+ * that may be hedged, see {@link com.keycloak.event.delivery.Hedger}.
+ *
+ * <p>An endpoint without a group forms a broadcast group of its own, so it receives every event as
+ * before. A balanced group takes the event types of its first member, see {@link
+ * WebhookEndpoint#accepts(String)}.
+ */
+@Slf4j
+@Getter
+public final class EndpointGroup {
+
+  /** Option naming the group an endpoint belongs to */
+  public static final String GROUP_OPTION = "group";
+
+  /** Option selecting the balance mode of the group */
+  public static final String BALANCE_OPTION = "balance";
+
+  /** Option setting the largest fraction of the group's deliveries that may be hedged */
+  public static final String HEDGE_OPTION = "hedge";
+
+  /** Balance mode of groups whose members do not set one */
+  public static final BalanceMode DEFAULT_MODE = BalanceMode.ROUND_ROBIN;
+
+  /** The group name, or null for an ungrouped endpoint */
+  private final String name;
+
+  /** How events are spread over the members */
+  private final BalanceMode mode;
+
+  /** The members in configuration order */
+  private final List<WebhookEndpoint> members;
+
+  /** Largest fraction of deliveries that may be hedged, 0 if hedging is off */
+  private final double hedgeRate;
+
+  private EndpointGroup(
+      String name, BalanceMode mode, List<WebhookEndpoint> members, double hedgeRate) {
+    this.name = name;
+    this.mode = mode;
+    this.members = Collections.unmodifiableList(members);
+    this.hedgeRate = hedgeRate;
+  }
+
+  /**
+   * Groups a list of endpoints. Groups are ordered by the position of their first member.
+   *
+   * @param endpoints The endpoints, in configuration order
+   * @return One group per group name plus one broadcast group per ungrouped endpoint
+   */
+  public static List<EndpointGroup> of(List<WebhookEndpoint> endpoints) {
+    Map<String, List<WebhookEndpoint>> byName = new LinkedHashMap<>();
+    for (WebhookEndpoint endpoint : endpoints) {
+      String name = endpoint.option(GROUP_OPTION);
+      String key = name == null || name.isEmpty() ? "\0" + endpoint.getUrl() : name;
+      byName.computeIfAbsent(key, k -> new ArrayList<>()).add(endpoint);
+    }
+    List<EndpointGroup> groups = new ArrayList<>(byName.size());
+    byName.forEach(
+        (key, members) -> {
+          if (key.charAt(0) == '\0') {
+            groups.add(new EndpointGroup(null, BalanceMode.BROADCAST, members, 0));
+          } else {
+            BalanceMode mode = modeOf(key, members);
+            double hedgeRate = mode != BalanceMode.BROADCAST ? hedgeRateOf(key, members) : 0;
+            groups.add(new EndpointGroup(key, mode, members, hedgeRate));
+          }
+        });
+    return Collections.unmodifiableList(groups);
+  }
+
+  /**
+   * Returns whether each event goes to one member chosen by the balancer rather than to all.
+   *
+   * @return true unless the mode is {@link BalanceMode#BROADCAST}
+   */
+  public boolean isBalanced() {
+    return mode != BalanceMode.BROADCAST;
+  }
+
+  /**
+   * Returns whether slow deliveries to a member may be repeated at another member.
+   *
+   * @return true for balanced groups of at least two members with a hedge rate
+   */
+  public boolean isHedged() {
+    return hedgeRate > 0 && members.size() > 1;
+  }
+
+  /**
+   * Returns whether a balanced group takes events of a type, judged by its first member.
+   *
+   * @param eventType The wrapper type, or null if unknown
+   * @return true if the first member accepts the type
+   */
+  public boolean accepts(String eventType) {
+    return members.get(0).accepts(eventType);
+  }
+
+  private static BalanceMode modeOf(String name, List<WebhookEndpoint> members) {
+    BalanceMode mode = null;
+    for (WebhookEndpoint member : members) {
+      String value = member.option(BALANCE_OPTION);
+      if (value == null) {
+        continue;
+      }
+      BalanceMode parsed = BalanceMode.fromString(value, null);
+      if (parsed == null) {
+        log.warn("Unknown {} '{}' for {} in group {}", BALANCE_OPTION, value, member, name);
+      } else if (mode == null) {
+        mode = parsed;
+      } else if (parsed != mode) {
+        log.warn("Group {} is balanced by {}, ignoring {} of {}", name, mode, parsed, member);
+      }
+    }
+    return mode != null ? mode : DEFAULT_MODE;
+  }
+
+  private static double hedgeRateOf(String name, List<WebhookEndpoint> members) {
+    for (WebhookEndpoint member : members) {
+      String value = member.option(HEDGE_OPTION);
+      if (value == null) {
+        continue;
+      }
+      try {
+        double rate = Double.parseDouble(value);
+        if (rate > 0 && rate <= 1) {
+          return rate;
+        }
+      } catch (NumberFormatException e) {
+        // Reported below
+      }
+      log.warn(
+          "Invalid {} '{}' for {} in group {}, expected (0, 1]", HEDGE_OPTION, value, member, name);
+    }
+    return 0;
+  }
+
+  @Override
+  public String toString() {
+    return name != null ? name + "(" + mode + ")" + members : members.toString();
+  }
+}
@@ -0,0 +1,266 @@
+package com.keycloak.event.endpoint;
+
+import com.keycloak.event.config.WebhookConfig;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import lombok.extern.slf4j.Slf4j;
+import org.keycloak.Config;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
+
+/**
+ * Holds the current set of webhook endpoints and publishes changes as immutable {@link
+ * EndpointSnapshot}s. Readers call {@link #current()}, a single volatile read; writers rebuild the
+ * snapshot under the registry lock and swap it in, so a configuration change never blocks or
+ * partially updates an event that is being dispatched.
+ *
+ * <p>Global endpoints are merged from named sources, in this order:
+ *
+ * <ul>
+ *   <li>{@link #ENV_SOURCE} - the WEBHOOK_URLS environment variable or system property
+ *   <li>{@link #SPI_SOURCE} - the {@code urls} option of the SPI config scope
+ *   <li>{@link #FILE_SOURCE} - the file named by WEBHOOK_URLS_FILE, see {@link EndpointFileWatcher}
+ * </ul>
+ *
+ * A URL listed by several sources is used once, with the options of the first source. Realm
+ * endpoints come from the {@link #REALM_ATTRIBUTE} realm attribute and only receive events of their
+ * realm. Realm administrators can set that attribute, so it only accepts http and https URLs, up to
+ * {@code maxRealmEndpoints} of them; file and socket sinks are reserved to the global sources.
+ */
+@Slf4j
+public class EndpointRegistry {
+
+  /** Source name of the WEBHOOK_URLS setting */
+  public static final String ENV_SOURCE = "env";
+
+  /** Source name of the SPI config scope */
+  public static final String SPI_SOURCE = "spi";
+
+  /** Source name of the watched endpoint file */
+  public static final String FILE_SOURCE = "file";
+
+  /** Option of the SPI config scope holding endpoint URLs */
+  public static final String SPI_URLS_OPTION = "urls";
+
+  /** Realm attribute holding endpoint URLs for that realm */
+  public static final String REALM_ATTRIBUTE = "webhookUrls";
+
+  private static final List<String> SOURCE_ORDER = List.of(ENV_SOURCE, SPI_SOURCE, FILE_SOURCE);
+
+  /** Options that would let a realm endpoint join or reconfigure a group of global endpoints */
+  private static final List<String> GROUP_OPTIONS =
+      List.of(EndpointGroup.GROUP_OPTION, EndpointGroup.BALANCE_OPTION, EndpointGroup.HEDGE_OPTION);
+
+  private final String hostIp;
+  private final int maxRealmEndpoints;
+  private final Map<String, List<WebhookEndpoint>> sources = new LinkedHashMap<>();
+  private final Map<String, List<WebhookEndpoint>> realms = new LinkedHashMap<>();
+  private final List<Consumer<EndpointSnapshot>> listeners = new CopyOnWriteArrayList<>();
+  private volatile EndpointSnapshot snapshot = EndpointSnapshot.EMPTY;
+
+  /**
+   * Creates an empty registry that accepts the default number of endpoints per realm.
+   *
+   * @param hostIp Replacement for "localhost" in endpoint URLs, may be null
+   */
+  public EndpointRegistry(String hostIp) {
+    this(hostIp, WebhookConfig.DEFAULT_REALM_MAX_ENDPOINTS);
+  }
+
+  /**
+   * Creates an empty registry.
+   *
+   * @param hostIp Replacement for "localhost" in endpoint URLs, may be null
+   * @param maxRealmEndpoints The most endpoints the attribute of one realm can add
+   */
+  public EndpointRegistry(String hostIp, int maxRealmEndpoints) {
+    this.hostIp = hostIp;
+    this.maxRealmEndpoints = Math.max(0, maxRealmEndpoints);
+  }
+
+  /**
+   * Creates a registry holding the endpoints of the WEBHOOK_URLS setting.
+   *
+   * @return A new registry
+   */
+  public static EndpointRegistry fromSettings() {
+    EndpointRegistry registry =
+        new EndpointRegistry(
+            WebhookConfig.getSetting(WebhookConfig.HOST_IP),
+            WebhookConfig.getInt(
+                WebhookConfig.REALM_MAX_ENDPOINTS, WebhookConfig.DEFAULT_REALM_MAX_ENDPOINTS));
+    registry.update(ENV_SOURCE, WebhookConfig.getSetting(WebhookConfig.WEBHOOK_URLS));
+    return registry;
+  }
+
+  /**
+   * Creates a registry holding the endpoints of the WEBHOOK_URLS setting and of the SPI config
+   * scope.
+   *
+   * @param config The SPI config scope, may be null
+   * @return A new registry
+   */
+  public static EndpointRegistry fromConfig(Config.Scope config) {
+    EndpointRegistry registry = fromSettings();
+    if (config != null) {
+      registry.update(SPI_SOURCE, config.get(SPI_URLS_OPTION));
+    }
+    return registry;
+  }
+
+  /**
+   * Returns the current snapshot. Never blocks.
+   *
+   * @return The current snapshot
+   */
+  public EndpointSnapshot current() {
+    return snapshot;
+  }
+
+  /**
+   * Replaces the endpoints of a global source.
+   *
+   * @param source The source name
+   * @param specs Comma-separated endpoint entries, null or blank to clear the source
+   */
+  public void update(String source, String specs) {
+    setEndpoints(source, WebhookEndpoint.parseAll(specs, hostIp));
+  }
+
+  /**
+   * Replaces the endpoints of a global source with already parsed endpoints.
+   *
+   * @param source The source name
+   * @param endpoints The endpoints, empty to clear the source
+   */
+  public synchronized void setEndpoints(String source, List<WebhookEndpoint> endpoints) {
+    if (endpoints.equals(sources.getOrDefault(source, Collections.emptyList()))) {
+      return;
+    }
+    if (endpoints.isEmpty()) {
+      sources.remove(source);
+    } else {
+      sources.put(source, new ArrayList<>(endpoints));
+    }
+    publish("source " + source);
+  }
+
+  /**
+   * Replaces the endpoints of a realm. Entries that are not http or https URLs are ignored, and so
+   * are entries that set group options and the entries beyond {@code maxRealmEndpoints}. A realm
+   * endpoint can only add a destination, never join or reconfigure a group of global endpoints.
+   *
+   * @param realmId The realm id
+   * @param specs Comma-separated endpoint entries, null or blank to remove the realm endpoints
+   */
+  public void updateRealm(String realmId, String specs) {
+    List<WebhookEndpoint> parsed = new ArrayList<>();
+    for (WebhookEndpoint endpoint : WebhookEndpoint.parseAll(specs, hostIp)) {
+      if (!endpoint.isHttp()) {
+        log.error(
+            "Ignoring webhook URL {} of realm {}: realm endpoints must use http or https",
+            endpoint.getUrl(),
+            realmId);
+      } else if (GROUP_OPTIONS.stream().anyMatch(option -> endpoint.option(option) != null)) {
+        log.error(
+            "Ignoring webhook URL {} of realm {}: realm endpoints cannot set {}",
+            endpoint.getUrl(),
+            realmId,
+            GROUP_OPTIONS);
+      } else if (parsed.size() == maxRealmEndpoints) {
+        log.error(
+            "Ignoring webhook URL {} of realm {}: a realm can add at most {} endpoints",
+            endpoint.getUrl(),
+            realmId,
+            maxRealmEndpoints);
+      } else {
+        parsed.add(endpoint);
+      }
+    }
+    synchronized (this) {
+      if (parsed.equals(realms.getOrDefault(realmId, Collections.emptyList()))) {
+        return;
+      }
+      if (parsed.isEmpty()) {
+        realms.remove(realmId);
+      } else {
+        realms.put(realmId, parsed);
+      }
+      publish("realm " + realmId);
+    }
+  }
+
+  /**
+   * Reads the {@link #REALM_ATTRIBUTE} attribute of a realm and replaces its endpoints.
+   *
+   * @param realm The realm
+   */
+  public void updateRealm(RealmModel realm) {
+    updateRealm(realm.getId(), realm.getAttribute(REALM_ATTRIBUTE));
+  }
+
+  /**
+   * Reads the endpoints of every realm.
+   *
+   * @param session A session with an active transaction
+   */
+  public void loadRealms(KeycloakSession session) {
+    session.realms().getRealmsStream().forEach(this::updateRealm);
+  }
+
+  /**
+   * Registers a listener called with every new snapshot, after it has been published. Listeners run
+   * on the thread that changed the configuration, one snapshot at a time and in version order.
+   *
+   * @param listener The listener
+   */
+  public void addListener(Consumer<EndpointSnapshot> listener) {
+    listeners.add(listener);
+  }
+
+  /**
+   * Removes a listener.
+   *
+   * @param listener The listener
+   */
+  public void removeListener(Consumer<EndpointSnapshot> listener) {
+    listeners.remove(listener);
+  }
+
+  private void publish(String cause) {
+    Map<String, WebhookEndpoint> global = new LinkedHashMap<>();
+    for (String source : SOURCE_ORDER) {
+      sources
+          .getOrDefault(source, Collections.emptyList())
+          .forEach(endpoint -> global.putIfAbsent(endpoint.getUrl(), endpoint));
+    }
+    sources.forEach(
+        (source, endpoints) -> {
+          if (!SOURCE_ORDER.contains(source)) {
+            endpoints.forEach(endpoint -> global.putIfAbsent(endpoint.getUrl(), endpoint));
+          }
+        });
+    EndpointSnapshot next =
+        new EndpointSnapshot(snapshot.getVersion() + 1, new ArrayList<>(global.values()), realms);
+    snapshot = next;
+    log.info(
+        "Webhook endpoints updated by {} (version {}): {} global, {} realm-specific",
+        cause,
+        next.getVersion(),
+        next.getUrls(),
+        realms.keySet());
+    for (Consumer<EndpointSnapshot> listener : listeners) {
+      try {
+        listener.accept(next);
+      } catch (RuntimeException e) {
+        log.error(
+            "Endpoint listener failed for version {}: {}", next.getVersion(), e.getMessage(), e);
+      }
+    }
+  }
+}
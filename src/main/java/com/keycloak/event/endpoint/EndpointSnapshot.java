@@ -0,0 +1,159 @@
+package com.keycloak.event.endpoint;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import lombok.Getter;
+
+/**
+ * Immutable view of the configured endpoints at one point in time. A snapshot is never modified
+ * after construction; the {@link EndpointRegistry} publishes a new one on every configuration
+ * change, so readers can use a snapshot without locking for as long as they need it.
+ *
+ * <p>Endpoints come in two scopes: global endpoints receive events of every realm, realm endpoints
+ * only events of their realm. The per-realm lists are combined with the global list up front, and
+ * every list is also available split into {@link EndpointGroup}s.
+ */
+public final class EndpointSnapshot {
+
+  /** A snapshot without any endpoints */
+  public static final EndpointSnapshot EMPTY =
+      new EndpointSnapshot(0, Collections.emptyList(), Collections.emptyMap());
+
+  /** Increases with every published snapshot */
+  @Getter private final long version;
+
+  /** Endpoints receiving events of every realm */
+  @Getter private final List<WebhookEndpoint> endpoints;
+
+  /** URLs of the global endpoints, in configuration order */
+  @Getter private final List<String> urls;
+
+  /** Global endpoints split into groups */
+  @Getter private final List<EndpointGroup> groups;
+
+  /** Whether any endpoint takes only some event types */
+  @Getter private final boolean filtered;
+
+  /** Distinct endpoints of every scope, keyed by URL */
+  private final Map<String, WebhookEndpoint> byUrl;
+
+  /** Global plus realm endpoints, keyed by realm id */
+  private final Map<String, List<WebhookEndpoint>> byRealm;
+
+  /** Groups of the global plus realm endpoints, keyed by realm id */
+  private final Map<String, List<EndpointGroup>> groupsByRealm;
+
+  /**
+   * Creates a snapshot.
+   *
+   * @param version The snapshot version
+   * @param endpoints The global endpoints
+   * @param realmEndpoints Additional endpoints per realm id
+   */
+  public EndpointSnapshot(
+      long version,
+      List<WebhookEndpoint> endpoints,
+      Map<String, List<WebhookEndpoint>> realmEndpoints) {
+    this.version = version;
+    this.endpoints = Collections.unmodifiableList(new ArrayList<>(endpoints));
+    List<String> globalUrls = new ArrayList<>();
+    Map<String, WebhookEndpoint> all = new LinkedHashMap<>();
+    for (WebhookEndpoint endpoint : endpoints) {
+      globalUrls.add(endpoint.getUrl());
+      all.putIfAbsent(endpoint.getUrl(), endpoint);
+    }
+    this.urls = Collections.unmodifiableList(globalUrls);
+    this.groups = EndpointGroup.of(this.endpoints);
+
+    Map<String, List<WebhookEndpoint>> combined = new LinkedHashMap<>();
+    Map<String, List<EndpointGroup>> combinedGroups = new LinkedHashMap<>();
+    realmEndpoints.forEach(
+        (realmId, realmList) -> {
+          Map<String, WebhookEndpoint> merged = new LinkedHashMap<>();
+          endpoints.forEach(endpoint -> merged.putIfAbsent(endpoint.getUrl(), endpoint));
+          for (WebhookEndpoint endpoint : realmList) {
+            merged.putIfAbsent(endpoint.getUrl(), endpoint);
+            all.putIfAbsent(endpoint.getUrl(), endpoint);
+          }
+          List<WebhookEndpoint> realmEndpointList = new ArrayList<>(merged.values());
+          combined.put(realmId, Collections.unmodifiableList(realmEndpointList));
+          combinedGroups.put(realmId, EndpointGroup.of(realmEndpointList));
+        });
+    this.byRealm = Collections.unmodifiableMap(combined);
+    this.groupsByRealm = Collections.unmodifiableMap(combinedGroups);
+    this.byUrl = Collections.unmodifiableMap(all);
+    this.filtered = all.values().stream().anyMatch(endpoint -> !endpoint.getEventTypes().isEmpty());
+  }
+
+  /**
+   * Returns the endpoints that receive events of a realm.
+   *
+   * @param realmId The realm id, may be null
+   * @return The global endpoints plus those configured for the realm
+   */
+  public List<WebhookEndpoint> endpointsFor(String realmId) {
+    if (realmId == null) {
+      return endpoints;
+    }
+    List<WebhookEndpoint> realmList = byRealm.get(realmId);
+    return realmList != null ? realmList : endpoints;
+  }
+
+  /**
+   * Returns the groups that receive events of a realm.
+   *
+   * @param realmId The realm id, may be null
+   * @return The groups of the global endpoints plus those configured for the realm
+   */
+  public List<EndpointGroup> groupsFor(String realmId) {
+    if (realmId == null) {
+      return groups;
+    }
+    List<EndpointGroup> realmGroups = groupsByRealm.get(realmId);
+    return realmGroups != null ? realmGroups : groups;
+  }
+
+  /**
+   * Returns the groups of every scope. A realm that adds members to a global group has a group of
+   * its own with the same name.
+   *
+   * @return The global groups followed by the groups of each realm
+   */
+  public List<EndpointGroup> allGroups() {
+    List<EndpointGroup> all = new ArrayList<>(groups);
+    groupsByRealm.values().forEach(all::addAll);
+    return all;
+  }
+
+  /**
+   * Returns the distinct endpoints of every scope.
+   *
+   * @return All endpoints, global ones first
+   */
+  public Map<String, WebhookEndpoint> allEndpoints() {
+    return byUrl;
+  }
+
+  /**
+   * Looks up an endpoint of any scope by URL.
+   *
+   * @param url The endpoint URL
+   * @return The endpoint, or null if it is not configured
+   */
+  public WebhookEndpoint find(String url) {
+    return byUrl.get(url);
+  }
+
+  /**
+   * Returns the realms that have endpoints of their own.
+   *
+   * @return The realm ids
+   */
+  public Set<String> realmIds() {
+    return byRealm.keySet();
+  }
+}
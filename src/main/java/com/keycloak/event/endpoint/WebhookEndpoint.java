@@ -0,0 +1,254 @@
+package com.keycloak.event.endpoint;
+
+import com.keycloak.event.config.WebhookConfig;
+import com.keycloak.event.representation.RepresentationPolicy;
+import com.keycloak.event.util.PayloadFormat;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import lombok.AccessLevel;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Immutable, pre-parsed webhook endpoint. The URI, header set and timeout are resolved once when
+ * the configuration is read, so the delivery path only copies prepared values into each request.
+ *
+ * <p>An endpoint is configured as a URL optionally followed by {@code ;name=value} options, for
+ * example {@code https://siem.example.com/hook;timeoutMs=2000;header.X-Api-Key=secret}. Supported
+ * options:
+ *
+ * <ul>
+ *   <li>{@code timeoutMs} - request timeout in milliseconds
+ *   <li>{@code format} - payload encoding, see {@link PayloadFormat}
+ *   <li>{@code rate}, {@code burst} - delivery rate limit of the queued path, see {@code
+ *       TokenBucket}
+ *   <li>{@code group}, {@code balance} - load-balanced group membership, see {@link EndpointGroup}
+ *   <li>{@code representation}, {@code representationMaxBytes} - admin event representation policy,
+ *       see {@link RepresentationPolicy}
+ *   <li>{@code events} - the event types delivered, separated by {@code |}, for example {@code
+ *       ALERT} or {@code USER_EVENT|ALERT}; all types when absent
+ *   <li>{@code header.<Name>} - an extra request header
+ *   <li>{@code auth} - request authentication of HTTP endpoints, see {@code RequestAuth}
+ * </ul>
+ *
+ * Other options are kept and available through {@link #option(String)}. Two endpoints are equal
+ * when their URL and options are equal.
+ */
+@Slf4j
+@Getter
+@EqualsAndHashCode(onlyExplicitlyIncluded = true)
+public final class WebhookEndpoint {
+
+  /** Option holding the request timeout in milliseconds */
+  public static final String TIMEOUT_OPTION = "timeoutMs";
+
+  /** Option holding the event types delivered to the endpoint */
+  public static final String EVENTS_OPTION = "events";
+
+  /** Prefix of options that add a request header */
+  public static final String HEADER_OPTION_PREFIX = "header.";
+
+  /** The endpoint URL without options, after HOST_IP replacement */
+  @EqualsAndHashCode.Include private final String url;
+
+  /** The parsed URI */
+  private final URI uri;
+
+  /** The lower-case URI scheme, which selects the sink, or null for a relative URI */
+  private final String scheme;
+
+  /** Encoding of the payload, from the format option */
+  private final PayloadFormat format;
+
+  /** Rendering of admin event representations, from the representation option */
+  private final RepresentationPolicy representationPolicy;
+
+  /** Event types delivered to the endpoint, from the events option; empty for all types */
+  private final Set<String> eventTypes;
+
+  /** Headers sent with every request, including Content-Type */
+  private final Map<String, String> headers;
+
+  /** Timeout applied to each request */
+  private final Duration requestTimeout;
+
+  /** All options given after the URL */
+  @EqualsAndHashCode.Include private final Map<String, String> options;
+
+  @Getter(AccessLevel.NONE)
+  private final String[] headerPairs;
+
+  private WebhookEndpoint(String url, Map<String, String> options) {
+    this.url = url;
+    this.uri = URI.create(url);
+    this.scheme = uri.getScheme() != null ? uri.getScheme().toLowerCase(Locale.ROOT) : null;
+    this.options = Collections.unmodifiableMap(options);
+
+    PayloadFormat payloadFormat = PayloadFormat.JSON;
+    try {
+      payloadFormat = PayloadFormat.fromString(options.get(PayloadFormat.OPTION));
+    } catch (IllegalArgumentException e) {
+      log.warn(
+          "Unknown {} '{}' for {}, using JSON",
+          PayloadFormat.OPTION,
+          options.get(PayloadFormat.OPTION),
+          url);
+    }
+    this.format = payloadFormat;
+    this.representationPolicy = RepresentationPolicy.fromOptions(options);
+    Set<String> types = new HashSet<>();
+    if (options.get(EVENTS_OPTION) != null) {
+      for (String type : options.get(EVENTS_OPTION).split("\\|")) {
+        if (!type.isBlank()) {
+          types.add(type.trim().toUpperCase(Locale.ROOT));
+        }
+      }
+    }
+    this.eventTypes = Collections.unmodifiableSet(types);
+
+    Map<String, String> headerMap = new LinkedHashMap<>();
+    headerMap.put("Content-Type", format.getContentType());
+    options.forEach(
+        (name, value) -> {
+          if (name.startsWith(HEADER_OPTION_PREFIX)) {
+            headerMap.put(name.substring(HEADER_OPTION_PREFIX.length()), value);
+          }
+        });
+    this.headers = Collections.unmodifiableMap(headerMap);
+    List<String> pairs = new ArrayList<>();
+    headerMap.forEach(
+        (name, value) -> {
+          pairs.add(name);
+          pairs.add(value);
+        });
+    this.headerPairs = pairs.toArray(new String[0]);
+
+    this.requestTimeout =
+        Duration.ofMillis(
+            longOption(
+                TIMEOUT_OPTION, TimeUnit.SECONDS.toMillis(WebhookConfig.REQUEST_TIMEOUT_SECONDS)));
+  }
+
+  /**
+   * Parses one endpoint entry.
+   *
+   * @param spec The URL with optional {@code ;name=value} options
+   * @param hostIp Replacement for "localhost" in the URL, may be null
+   * @return The parsed endpoint
+   * @throws IllegalArgumentException If the URL is not a valid URI
+   */
+  public static WebhookEndpoint parse(String spec, String hostIp) {
+    String[] parts = spec.trim().split(";");
+    String url = parts[0].trim();
+    if (hostIp != null && !hostIp.trim().isEmpty()) {
+      url = url.replace("localhost", hostIp.trim());
+    }
+    Map<String, String> options = new LinkedHashMap<>();
+    for (int i = 1; i < parts.length; i++) {
+      int equals = parts[i].indexOf('=');
+      if (equals > 0) {
+        options.put(parts[i].substring(0, equals).trim(), parts[i].substring(equals + 1).trim());
+      }
+    }
+    return new WebhookEndpoint(url, options);
+  }
+
+  /**
+   * Parses a comma-separated endpoint list, skipping blank and invalid entries.
+   *
+   * @param specs The comma-separated entries, may be null
+   * @param hostIp Replacement for "localhost" in the URLs, may be null
+   * @return The valid endpoints in configuration order
+   */
+  public static List<WebhookEndpoint> parseAll(String specs, String hostIp) {
+    List<WebhookEndpoint> endpoints = new ArrayList<>();
+    if (specs == null) {
+      return endpoints;
+    }
+    for (String spec : specs.split(",")) {
+      if (spec.trim().isEmpty()) {
+        continue;
+      }
+      try {
+        endpoints.add(parse(spec, hostIp));
+      } catch (IllegalArgumentException e) {
+        log.error("Ignoring invalid webhook URL '{}': {}", spec.trim(), e.getMessage());
+      }
+    }
+    return endpoints;
+  }
+
+  /**
+   * Returns an option value.
+   *
+   * @param name The option name
+   * @return The value, or null if the option is not set
+   */
+  public String option(String name) {
+    return options.get(name);
+  }
+
+  /**
+   * Returns whether events of a type are delivered to this endpoint.
+   *
+   * @param eventType The wrapper type, such as USER_EVENT or ALERT, or null if unknown
+   * @return true if the endpoint takes the type, or takes all types
+   */
+  public boolean accepts(String eventType) {
+    return eventTypes.isEmpty() || eventType == null || eventTypes.contains(eventType);
+  }
+
+  /**
+   * Returns whether this endpoint is delivered over HTTP or HTTPS.
+   *
+   * @return true for http and https URLs
+   */
+  public boolean isHttp() {
+    return "http".equals(scheme) || "https".equals(scheme);
+  }
+
+  /**
+   * Reads a numeric option.
+   *
+   * @param name The option name
+   * @param defaultValue The value to use when the option is absent or invalid
+   * @return The option value or the default
+   */
+  public long longOption(String name, long defaultValue) {
+    String value = options.get(name);
+    if (value == null) {
+      return defaultValue;
+    }
+    try {
+      return Long.parseLong(value);
+    } catch (NumberFormatException e) {
+      log.warn("Invalid {} '{}' for {}, using {}", name, value, url, defaultValue);
+      return defaultValue;
+    }
+  }
+
+  /**
+   * Starts a request with this endpoint's URI, headers and timeout already applied.
+   *
+   * @return A new request builder
+   */
+  public HttpRequest.Builder newRequest() {
+    return HttpRequest.newBuilder(uri).headers(headerPairs).timeout(requestTimeout);
+  }
+
+  @Override
+  public String toString() {
+    return url;
+  }
+}
@@ -0,0 +1,273 @@
+package com.keycloak.event.enrich;
+
+import com.keycloak.event.config.WebhookConfig;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.keycloak.events.Event;
+import org.keycloak.events.EventType;
+import org.keycloak.events.admin.AdminEvent;
+import org.keycloak.events.admin.AuthDetails;
+import org.keycloak.events.admin.OperationType;
+import org.keycloak.models.ClientModel;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.UserModel;
+
+/**
+ * Adds the names behind the ids of an event, so receivers do not have to call back into the admin
+ * API: realm name, username and email, and client id and name. For admin events the user and client
+ * are the ones that performed the change.
+ *
+ * <p>Lookups go through the session of the event and are cached in {@link LookupCache}s bounded by
+ * WEBHOOK_ENRICH_CACHE_SIZE entries and WEBHOOK_ENRICH_CACHE_TTL_MS, so each entity costs at most
+ * one lookup per TTL. Admin events that change a user, client or realm, and user events that change
+ * the user's own profile, invalidate the affected entries. Changes made through another cluster
+ * node are only seen by this node once the TTL has passed.
+ */
+@Slf4j
+public class EventEnricher {
+
+  /** Field of the realm name */
+  public static final String REALM_NAME = "realmName";
+
+  /** Field of the username */
+  public static final String USERNAME = "username";
+
+  /** Field of the user's email address */
+  public static final String EMAIL = "email";
+
+  /** Field of the client id, as shown in the admin console */
+  public static final String CLIENT_ID = "clientId";
+
+  /** Field of the client's display name */
+  public static final String CLIENT_NAME = "clientName";
+
+  private static final Set<EventType> PROFILE_CHANGES =
+      EnumSet.of(EventType.UPDATE_PROFILE, EventType.UPDATE_EMAIL, EventType.DELETE_ACCOUNT);
+
+  @Getter private final LookupCache<Map<String, String>> realms;
+  @Getter private final LookupCache<Map<String, String>> users;
+  @Getter private final LookupCache<Map<String, String>> clients;
+
+  /**
+   * Creates an enricher with empty caches.
+   *
+   * @param maxEntries The maximum number of entries of each cache
+   * @param ttlMillis How long a looked-up entity is reused
+   */
+  public EventEnricher(int maxEntries, long ttlMillis) {
+    this.realms = new LookupCache<>(maxEntries, ttlMillis);
+    this.users = new LookupCache<>(maxEntries, ttlMillis);
+    this.clients = new LookupCache<>(maxEntries, ttlMillis);
+  }
+
+  /**
+   * Creates an enricher from the WEBHOOK_ENRICH* settings.
+   *
+   * @return A new enricher, or null if WEBHOOK_ENRICH is not true
+   */
+  public static EventEnricher fromConfig() {
+    if (!Boolean.parseBoolean(WebhookConfig.getSetting(WebhookConfig.ENRICH))) {
+      return null;
+    }
+    EventEnricher enricher =
+        new EventEnricher(
+            WebhookConfig.getInt(
+                WebhookConfig.ENRICH_CACHE_SIZE, WebhookConfig.DEFAULT_ENRICH_CACHE_SIZE),
+            WebhookConfig.getLong(
+                WebhookConfig.ENRICH_CACHE_TTL_MS, WebhookConfig.DEFAULT_ENRICH_CACHE_TTL_MS));
+    log.info(
+        "Event enrichment enabled, caching up to {} entities per type for {} ms",
+        enricher.users.getMaxEntries(),
+        enricher.users.getTtlMillis());
+    return enricher;
+  }
+
+  /**
+   * Looks up the realm, user and client of a user event. A profile change of the user invalidates
+   * the cached user first.
+   *
+   * @param session The session of the event
+   * @param event The user event
+   * @return The enrichment fields, empty if nothing could be resolved
+   */
+  public Map<String, String> enrich(KeycloakSession session, Event event) {
+    if (event.getUserId() != null && PROFILE_CHANGES.contains(event.getType())) {
+      users.invalidate(key(event.getRealmId(), event.getUserId()));
+    }
+    if (session == null || event.getRealmId() == null) {
+      return Collections.emptyMap();
+    }
+    Lookup lookup = new Lookup(session);
+    Map<String, String> fields = new LinkedHashMap<>();
+    fields.putAll(lookup.realm(event.getRealmId()));
+    fields.putAll(lookup.user(event.getRealmId(), event.getUserId()));
+    fields.putAll(lookup.client(event.getRealmId(), event.getClientId(), false));
+    return fields;
+  }
+
+  /**
+   * Looks up the realm of an admin event and the user and client that performed it. The caller
+   * should {@link #invalidate(AdminEvent)} first so the payload reflects the change.
+   *
+   * @param session The session of the event
+   * @param adminEvent The admin event
+   * @return The enrichment fields, empty if nothing could be resolved
+   */
+  public Map<String, String> enrich(KeycloakSession session, AdminEvent adminEvent) {
+    if (session == null) {
+      return Collections.emptyMap();
+    }
+    Lookup lookup = new Lookup(session);
+    Map<String, String> fields = new LinkedHashMap<>();
+    if (adminEvent.getRealmId() != null) {
+      fields.putAll(lookup.realm(adminEvent.getRealmId()));
+    }
+    AuthDetails auth = adminEvent.getAuthDetails();
+    if (auth != null && auth.getRealmId() != null) {
+      fields.putAll(lookup.user(auth.getRealmId(), auth.getUserId()));
+      fields.putAll(lookup.client(auth.getRealmId(), auth.getClientId(), true));
+    }
+    return fields;
+  }
+
+  /**
+   * Drops the cached entities an admin event may have changed.
+   *
+   * @param adminEvent The admin event
+   */
+  public void invalidate(AdminEvent adminEvent) {
+    String realmId = adminEvent.getRealmId();
+    if (adminEvent.getResourceType() == null || realmId == null) {
+      return;
+    }
+    switch (adminEvent.getResourceType()) {
+      case USER:
+        String userId = resourceId(adminEvent.getResourcePath(), "users/");
+        if (userId != null) {
+          users.invalidate(key(realmId, userId));
+        }
+        break;
+      case CLIENT:
+        // Clients are cached under their id and their client id, which may have been renamed
+        clients.invalidateIf(key -> key.startsWith(realmId + "/"));
+        break;
+      case REALM:
+        realms.invalidate(realmId);
+        if (adminEvent.getOperationType() == OperationType.DELETE) {
+          users.invalidateIf(key -> key.startsWith(realmId + "/"));
+          clients.invalidateIf(key -> key.startsWith(realmId + "/"));
+        }
+        break;
+      default:
+        break;
+    }
+  }
+
+  private static String key(String realmId, String id) {
+    return realmId + "/" + id;
+  }
+
+  /** Extracts the id following a prefix such as {@code users/} from a resource path. */
+  private static String resourceId(String path, String prefix) {
+    if (path == null || !path.startsWith(prefix)) {
+      return null;
+    }
+    int end = path.indexOf('/', prefix.length());
+    return path.substring(prefix.length(), end < 0 ? path.length() : end);
+  }
+
+  /** The lookups of one event, sharing the realm model between them. */
+  private final class Lookup {
+    private final KeycloakSession session;
+    private String realmId;
+    private RealmModel realm;
+
+    private Lookup(KeycloakSession session) {
+      this.session = session;
+    }
+
+    private Map<String, String> realm(String id) {
+      return cached(
+          realms,
+          id,
+          key -> {
+            RealmModel model = realmModel(id);
+            return model == null ? null : fields(REALM_NAME, model.getName());
+          });
+    }
+
+    private Map<String, String> user(String realmId, String userId) {
+      if (userId == null) {
+        return Collections.emptyMap();
+      }
+      return cached(
+          users,
+          key(realmId, userId),
+          key -> {
+            RealmModel model = realmModel(realmId);
+            UserModel user = model == null ? null : session.users().getUserById(model, userId);
+            return user == null
+                ? null
+                : fields(USERNAME, user.getUsername(), EMAIL, user.getEmail());
+          });
+    }
+
+    private Map<String, String> client(String realmId, String clientId, boolean internalId) {
+      if (clientId == null) {
+        return Collections.emptyMap();
+      }
+      return cached(
+          clients,
+          key(realmId, (internalId ? "id:" : "") + clientId),
+          key -> {
+            RealmModel model = realmModel(realmId);
+            if (model == null) {
+              return null;
+            }
+            ClientModel client =
+                internalId ? model.getClientById(clientId) : model.getClientByClientId(clientId);
+            return client == null
+                ? null
+                : fields(CLIENT_ID, client.getClientId(), CLIENT_NAME, client.getName());
+          });
+    }
+
+    private RealmModel realmModel(String id) {
+      if (!id.equals(realmId)) {
+        realmId = id;
+        realm = session.realms().getRealm(id);
+      }
+      return realm;
+    }
+
+    private Map<String, String> cached(
+        LookupCache<Map<String, String>> cache,
+        String key,
+        Function<String, Map<String, String>> loader) {
+      try {
+        Map<String, String> fields = cache.get(key, loader);
+        return fields != null ? fields : Collections.emptyMap();
+      } catch (RuntimeException e) {
+        log.debug("Could not look up {} for enrichment: {}", key, e.getMessage());
+        return Collections.emptyMap();
+      }
+    }
+  }
+
+  private static Map<String, String> fields(String... namesAndValues) {
+    Map<String, String> fields = new LinkedHashMap<>();
+    for (int i = 0; i < namesAndValues.length; i += 2) {
+      if (namesAndValues[i + 1] != null) {
+        fields.put(namesAndValues[i], namesAndValues[i + 1]);
+      }
+    }
+    return Collections.unmodifiableMap(fields);
+  }
+}
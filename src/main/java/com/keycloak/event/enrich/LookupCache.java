@@ -0,0 +1,148 @@
+package com.keycloak.event.enrich;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+import lombok.Getter;
+
+/**
+ * Small least-recently-used cache whose entries also expire a fixed time after they were loaded.
+ * Misses are loaded outside the cache lock, so a slow lookup never blocks readers of other keys;
+ * two threads missing the same key at once may both load it. A value whose load overlapped an
+ * invalidation is returned but not cached, so it cannot outlive the change that invalidated it.
+ *
+ * <p>A loader result of null is cached as well, so an entity that does not exist is not looked up
+ * again on every event.
+ *
+ * @param <V> The value type
+ */
+public class LookupCache<V> {
+
+  @Getter private final int maxEntries;
+  @Getter private final long ttlMillis;
+  private final long ttlNanos;
+  private final LongSupplier clock;
+  private final Map<String, Entry<V>> entries;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private long invalidations;
+
+  /**
+   * Creates an empty cache.
+   *
+   * @param maxEntries The maximum number of entries, the least recently used is evicted beyond it
+   * @param ttlMillis How long an entry is used after it was loaded
+   */
+  public LookupCache(int maxEntries, long ttlMillis) {
+    this(maxEntries, ttlMillis, System::nanoTime);
+  }
+
+  LookupCache(int maxEntries, long ttlMillis, LongSupplier clock) {
+    this.maxEntries = Math.max(1, maxEntries);
+    this.ttlMillis = ttlMillis;
+    this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+    this.clock = clock;
+    this.entries =
+        new LinkedHashMap<>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<String, Entry<V>> eldest) {
+            return size() > LookupCache.this.maxEntries;
+          }
+        };
+  }
+
+  /**
+   * Returns the cached value of a key, loading it on a miss or after it expired.
+   *
+   * @param key The key
+   * @param loader Loads the value, may return null
+   * @return The value, may be null
+   */
+  public V get(String key, Function<String, V> loader) {
+    long now = clock.getAsLong();
+    long generation;
+    synchronized (entries) {
+      Entry<V> entry = entries.get(key);
+      if (entry != null && now - entry.loadedAt < ttlNanos) {
+        hits.incrementAndGet();
+        return entry.value;
+      }
+      generation = invalidations;
+    }
+    misses.incrementAndGet();
+    V value = loader.apply(key);
+    synchronized (entries) {
+      if (generation == invalidations) {
+        entries.put(key, new Entry<>(value, now));
+      }
+    }
+    return value;
+  }
+
+  /**
+   * Removes a key.
+   *
+   * @param key The key
+   */
+  public void invalidate(String key) {
+    synchronized (entries) {
+      invalidations++;
+      entries.remove(key);
+    }
+  }
+
+  /**
+   * Removes every key that matches a condition.
+   *
+   * @param condition Selects the keys to remove
+   */
+  public void invalidateIf(Predicate<String> condition) {
+    synchronized (entries) {
+      invalidations++;
+      entries.keySet().removeIf(condition);
+    }
+  }
+
+  /**
+   * Returns the number of cached entries, including expired ones not yet replaced.
+   *
+   * @return The entry count
+   */
+  public int size() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+
+  /**
+   * Returns the number of lookups answered from the cache.
+   *
+   * @return The hit count
+   */
+  public long getHits() {
+    return hits.get();
+  }
+
+  /**
+   * Returns the number of lookups that called the loader.
+   *
+   * @return The miss count
+   */
+  public long getMisses() {
+    return misses.get();
+  }
+
+  private static final class Entry<V> {
+    private final V value;
+    private final long loadedAt;
+
+    private Entry(V value, long loadedAt) {
+      this.value = value;
+      this.loadedAt = loadedAt;
+    }
+  }
+}
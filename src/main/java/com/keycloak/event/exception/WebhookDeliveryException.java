@@ -0,0 +1,44 @@
+package com.keycloak.event.exception;
+
+import com.keycloak.event.delivery.ErrorCategory;
+import lombok.Getter;
+
+/**
+ * Exception thrown when an endpoint refuses a payload, for example with a non-2xx HTTP status. It
+ * carries no stack trace: the failure is fully described by its message, category and status, and
+ * during an outage it is thrown for every event.
+ */
+@Getter
+public class WebhookDeliveryException extends Exception {
+
+  private static final long serialVersionUID = 1L;
+
+  /** Why the delivery failed */
+  private final ErrorCategory category;
+
+  /** The HTTP status code, 0 if the endpoint did not answer with one */
+  private final int status;
+
+  /**
+   * Creates a new WebhookDeliveryException for an HTTP status.
+   *
+   * @param message The error message
+   * @param status The HTTP status code
+   */
+  public WebhookDeliveryException(String message, int status) {
+    this(message, ErrorCategory.ofStatus(status), status);
+  }
+
+  /**
+   * Creates a new WebhookDeliveryException.
+   *
+   * @param message The error message
+   * @param category Why the delivery failed
+   * @param status The HTTP status code, 0 if there is none
+   */
+  public WebhookDeliveryException(String message, ErrorCategory category, int status) {
+    super(message, null, false, false);
+    this.category = category;
+    this.status = status;
+  }
+}
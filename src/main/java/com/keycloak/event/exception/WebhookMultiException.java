@@ -2,7 +2,8 @@ package com.keycloak.event.exception;
 
 /**
  * Exception thrown when multiple webhook calls fail. Contains all individual exceptions as
- * suppressed exceptions.
+ * suppressed exceptions. It carries no stack trace of its own, as the failures it collects are
+ * described by the suppressed exceptions.
  */
 public class WebhookMultiException extends Exception {
 
@@ -12,7 +13,7 @@ public class WebhookMultiException extends Exception {
    * @param message The error message
    */
   public WebhookMultiException(String message) {
-    super(message);
+    super(message, null, true, false);
   }
 
   /**
@@ -22,6 +23,6 @@ public class WebhookMultiException extends Exception {
    * @param cause The cause of this exception
    */
   public WebhookMultiException(String message, Throwable cause) {
-    super(message, cause);
+    super(message, cause, true, false);
   }
 }
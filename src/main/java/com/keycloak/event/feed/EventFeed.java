@@ -0,0 +1,221 @@
+package com.keycloak.event.feed;
+
+import com.keycloak.event.config.WebhookConfig;
+import com.keycloak.event.delivery.DeliveryTask;
+import java.io.Closeable;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * In-memory feed of the latest events of each realm, read by consumers that pull events instead of
+ * receiving webhooks.
+ *
+ * <p>Each realm has a ring of the latest {@code capacity} events. Consumers read pages after an
+ * opaque cursor and keep the cursor of the last page, so every consumer reads at its own pace and
+ * the feed keeps no state per consumer. A consumer that falls behind by more than the capacity
+ * resumes from the oldest retained event, and the page reports the gap.
+ *
+ * <p>Cursors hold the sequence number of an event and an epoch that changes on every start. A
+ * cursor of a previous epoch is treated like one that fell behind.
+ *
+ * <p>The feed is local to one node: each node keeps the events it observed in its own rings under
+ * its own epoch, so a cursor read from one node means nothing to another. In a cluster, consumers
+ * must be routed to the same node for every request, and a consumer that moves to another node
+ * resumes there from the oldest retained event with a gap.
+ *
+ * <p>Long-polls and streams are served by {@link Subscriber}s. A single notifier thread polls them
+ * when events arrive and at least every {@value #TICK_MILLIS} ms, so waiting consumers hold no
+ * thread of their own.
+ */
+@Slf4j
+public class EventFeed implements Closeable {
+
+  /** Interval at which subscribers are polled when no events arrive */
+  static final long TICK_MILLIS = 250;
+
+  private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+  private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+  @Getter private final int capacity;
+  private final String epoch = UUID.randomUUID().toString().substring(0, 8);
+  private final Map<String, EventRing> rings = new ConcurrentHashMap<>();
+  private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+  private final Thread notifier;
+  private volatile boolean running = true;
+
+  /** A consumer waiting for events, polled by the notifier thread. */
+  public interface Subscriber {
+
+    /**
+     * Reads the events that arrived since the last poll and hands them to the consumer. Must not
+     * block.
+     *
+     * @return false once the subscription is finished and should be dropped
+     */
+    boolean poll();
+
+    /** Ends the subscription because the feed is closing. */
+    void close();
+  }
+
+  /**
+   * Creates a feed and starts its notifier thread.
+   *
+   * @param capacity The number of events kept per realm
+   */
+  public EventFeed(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Feed capacity must be positive: " + capacity);
+    }
+    this.capacity = capacity;
+    this.notifier = new Thread(this::run, "webhook-feed-notifier");
+    notifier.setDaemon(true);
+    notifier.start();
+  }
+
+  /**
+   * Creates a feed from the WEBHOOK_FEED_CAPACITY setting.
+   *
+   * @return The feed, or null if the feed is disabled
+   */
+  public static EventFeed fromConfig() {
+    int capacity =
+        WebhookConfig.getInt(WebhookConfig.FEED_CAPACITY, WebhookConfig.DEFAULT_FEED_CAPACITY);
+    if (capacity <= 0) {
+      return null;
+    }
+    log.info("Event feed enabled, keeping {} event(s) per realm", capacity);
+    return new EventFeed(capacity);
+  }
+
+  /**
+   * Appends an event to the feed of its realm. Events without a realm are not kept.
+   *
+   * @param task The event
+   */
+  public void append(DeliveryTask task) {
+    String realmId = task.getRealmId();
+    if (realmId == null) {
+      return;
+    }
+    rings.computeIfAbsent(realmId, id -> new EventRing(capacity)).add(task);
+    if (!subscribers.isEmpty()) {
+      LockSupport.unpark(notifier);
+    }
+  }
+
+  /**
+   * Reads the events of a realm after a cursor.
+   *
+   * @param realmId The realm
+   * @param cursor The cursor of the last page read, or null to read from the oldest event
+   * @param limit The maximum number of events
+   * @return The page
+   */
+  public FeedPage read(String realmId, String cursor, int limit) {
+    long after = 0;
+    boolean unknown = false;
+    if (cursor != null) {
+      Long sequence = decode(cursor);
+      if (sequence == null) {
+        unknown = true;
+      } else {
+        after = sequence;
+      }
+    }
+    EventRing ring = rings.get(realmId);
+    if (ring == null) {
+      return new FeedPage(List.of(), encode(after), unknown);
+    }
+    FeedPage page = ring.read(after, Math.max(1, limit), cursor != null, this::encode);
+    if (unknown && !page.isGap()) {
+      return new FeedPage(page.getEntries(), page.getCursor(), true);
+    }
+    return page;
+  }
+
+  /**
+   * Registers a subscriber and polls it once right away.
+   *
+   * @param subscriber The subscriber
+   */
+  public void subscribe(Subscriber subscriber) {
+    if (!running) {
+      subscriber.close();
+      return;
+    }
+    subscribers.add(subscriber);
+    LockSupport.unpark(notifier);
+  }
+
+  /**
+   * Returns the number of registered subscribers.
+   *
+   * @return The number of subscribers
+   */
+  public int getSubscriberCount() {
+    return subscribers.size();
+  }
+
+  /** Stops the notifier thread and ends all subscriptions. */
+  @Override
+  public void close() {
+    running = false;
+    LockSupport.unpark(notifier);
+    for (Subscriber subscriber : subscribers) {
+      subscribers.remove(subscriber);
+      try {
+        subscriber.close();
+      } catch (RuntimeException e) {
+        log.debug("Failed to close feed subscriber: {}", e.getMessage());
+      }
+    }
+  }
+
+  String encode(long sequence) {
+    return ENCODER.encodeToString((epoch + "." + sequence).getBytes(StandardCharsets.US_ASCII));
+  }
+
+  /** Returns the sequence number of a cursor of this epoch, or null. */
+  Long decode(String cursor) {
+    try {
+      String value = new String(DECODER.decode(cursor), StandardCharsets.US_ASCII);
+      int dot = value.indexOf('.');
+      if (dot < 0 || !epoch.equals(value.substring(0, dot))) {
+        return null;
+      }
+      long sequence = Long.parseLong(value.substring(dot + 1));
+      return sequence >= 0 ? sequence : null;
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  private void run() {
+    long tick = TimeUnit.MILLISECONDS.toNanos(TICK_MILLIS);
+    while (running) {
+      LockSupport.parkNanos(this, tick);
+      for (Subscriber subscriber : subscribers) {
+        boolean keep;
+        try {
+          keep = subscriber.poll();
+        } catch (RuntimeException e) {
+          log.debug("Dropping feed subscriber after failure: {}", e.getMessage());
+          keep = false;
+        }
+        if (!keep) {
+          subscribers.remove(subscriber);
+        }
+      }
+    }
+  }
+}
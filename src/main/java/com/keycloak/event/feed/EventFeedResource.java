@@ -0,0 +1,258 @@
+package com.keycloak.event.feed;
+
+import jakarta.ws.rs.ForbiddenException;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.HeaderParam;
+import jakarta.ws.rs.NotAuthorizedException;
+import jakarta.ws.rs.NotFoundException;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.container.AsyncResponse;
+import jakarta.ws.rs.container.Suspended;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.sse.Sse;
+import jakarta.ws.rs.sse.SseEventSink;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import org.keycloak.models.AdminRoles;
+import org.keycloak.models.Constants;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.representations.AccessToken;
+import org.keycloak.services.managers.AppAuthManager;
+import org.keycloak.services.managers.AuthenticationManager;
+
+/**
+ * REST resource serving the {@link EventFeed} of a realm, mounted at {@code
+ * /realms/{realm}/webhook-feed}.
+ *
+ * <p>{@code GET} returns a JSON page of events after the {@code cursor} query parameter. With
+ * {@code wait}, an empty page is held back until events arrive or the given number of seconds
+ * passes. {@code GET /stream} streams events as Server-Sent Events whose ids are cursors, so a
+ * reconnecting client resumes through the {@code Last-Event-ID} header.
+ *
+ * <p>Callers need a bearer token with the {@code view-events} role of the realm-management client.
+ */
+public class EventFeedResource {
+
+  /** Default number of events per page */
+  static final int DEFAULT_LIMIT = 100;
+
+  /** Maximum number of events per page or stream batch */
+  static final int MAX_LIMIT = 1000;
+
+  /** Maximum long-poll wait in seconds */
+  static final int MAX_WAIT_SECONDS = 30;
+
+  /** Interval of keepalive comments on idle streams */
+  static final long KEEPALIVE_MILLIS = 15000;
+
+  /** Name of stream events that carry an event */
+  static final String EVENT = "event";
+
+  /** Name of the stream event sent when events were missed */
+  static final String GAP = "gap";
+
+  private final KeycloakSession session;
+  private final EventFeed feed;
+
+  /**
+   * Creates the resource.
+   *
+   * @param session The Keycloak session of the request
+   * @param feed The feed, or null if the feed is disabled
+   */
+  public EventFeedResource(KeycloakSession session, EventFeed feed) {
+    this.session = session;
+    this.feed = feed;
+  }
+
+  /**
+   * Returns a page of events.
+   *
+   * @param cursor The cursor of the last page read, absent to read from the oldest event
+   * @param limit The maximum number of events
+   * @param wait Seconds to wait for events if there are none yet
+   * @param response The suspended response, resumed with the page
+   */
+  @GET
+  @Produces(MediaType.APPLICATION_JSON)
+  public void events(
+      @QueryParam("cursor") String cursor,
+      @QueryParam("limit") Integer limit,
+      @QueryParam("wait") Integer wait,
+      @Suspended AsyncResponse response) {
+    String realmId = authorize();
+    int max = clamp(limit, DEFAULT_LIMIT, MAX_LIMIT);
+    int seconds = clamp(wait, 0, MAX_WAIT_SECONDS);
+    FeedPage page = feed.read(realmId, cursor, max);
+    if (!page.isEmpty() || seconds == 0) {
+      response.resume(page.toJson());
+      return;
+    }
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+    feed.subscribe(new LongPoll(realmId, page.getCursor(), page.isGap(), max, deadline, response));
+  }
+
+  /**
+   * Streams events as Server-Sent Events.
+   *
+   * @param cursor The cursor to start after, absent to start from the oldest event
+   * @param lastEventId The id of the last event received before reconnecting
+   * @param sink The event sink of the stream
+   * @param sse The SSE context
+   */
+  @GET
+  @Path("stream")
+  @Produces(MediaType.SERVER_SENT_EVENTS)
+  public void stream(
+      @QueryParam("cursor") String cursor,
+      @HeaderParam(HttpHeaders.LAST_EVENT_ID_HEADER) String lastEventId,
+      @Context SseEventSink sink,
+      @Context Sse sse) {
+    String realmId = authorize();
+    feed.subscribe(new Stream(realmId, lastEventId != null ? lastEventId : cursor, sink, sse));
+  }
+
+  /**
+   * Checks that the caller may read the events of the realm.
+   *
+   * @return The id of the realm
+   */
+  protected String authorize() {
+    if (feed == null) {
+      throw new NotFoundException("Event feed is disabled");
+    }
+    AuthenticationManager.AuthResult auth =
+        new AppAuthManager.BearerTokenAuthenticator(session).authenticate();
+    if (auth == null) {
+      throw new NotAuthorizedException("Bearer");
+    }
+    AccessToken.Access access =
+        auth.getToken().getResourceAccess(Constants.REALM_MANAGEMENT_CLIENT_ID);
+    if (access == null || !access.isUserInRole(AdminRoles.VIEW_EVENTS)) {
+      throw new ForbiddenException("Missing role " + AdminRoles.VIEW_EVENTS);
+    }
+    return session.getContext().getRealm().getId();
+  }
+
+  private static int clamp(Integer value, int defaultValue, int max) {
+    if (value == null) {
+      return defaultValue;
+    }
+    return Math.max(0, Math.min(value, max));
+  }
+
+  /** A long-poll waiting for the first events after its cursor. */
+  private final class LongPoll implements EventFeed.Subscriber {
+    private final String realmId;
+    private final String cursor;
+    private final boolean gap;
+    private final int limit;
+    private final long deadline;
+    private final AsyncResponse response;
+
+    private LongPoll(
+        String realmId,
+        String cursor,
+        boolean gap,
+        int limit,
+        long deadline,
+        AsyncResponse response) {
+      this.realmId = realmId;
+      this.cursor = cursor;
+      this.gap = gap;
+      this.limit = limit;
+      this.deadline = deadline;
+      this.response = response;
+    }
+
+    @Override
+    public boolean poll() {
+      if (response.isDone() || response.isCancelled()) {
+        return false;
+      }
+      FeedPage page = feed.read(realmId, cursor, limit);
+      if (page.isEmpty() && System.nanoTime() - deadline < 0) {
+        return true;
+      }
+      if (gap && !page.isGap()) {
+        page = new FeedPage(page.getEntries(), page.getCursor(), true);
+      }
+      response.resume(page.toJson());
+      return false;
+    }
+
+    @Override
+    public void close() {
+      response.resume(new FeedPage(List.of(), cursor, gap).toJson());
+    }
+  }
+
+  /**
+   * A stream that sends the next batch only once the client has taken the previous one, so a slow
+   * client is never buffered more than one batch ahead.
+   */
+  private final class Stream implements EventFeed.Subscriber {
+    private final String realmId;
+    private final SseEventSink sink;
+    private final Sse sse;
+    private String cursor;
+    private CompletionStage<?> pending = CompletableFuture.completedFuture(null);
+    private long lastSent = System.nanoTime();
+
+    private Stream(String realmId, String cursor, SseEventSink sink, Sse sse) {
+      this.realmId = realmId;
+      this.cursor = cursor;
+      this.sink = sink;
+      this.sse = sse;
+    }
+
+    @Override
+    public boolean poll() {
+      if (sink.isClosed()) {
+        return false;
+      }
+      CompletableFuture<?> previous = pending.toCompletableFuture();
+      if (!previous.isDone()) {
+        return true;
+      }
+      if (previous.isCompletedExceptionally()) {
+        sink.close();
+        return false;
+      }
+      FeedPage page = feed.read(realmId, cursor, MAX_LIMIT);
+      long now = System.nanoTime();
+      if (page.isGap()) {
+        pending = sink.send(sse.newEventBuilder().name(GAP).data("").build());
+      }
+      for (FeedPage.Entry entry : page.getEntries()) {
+        pending =
+            sink.send(
+                sse.newEventBuilder()
+                    .id(entry.getCursor())
+                    .name(EVENT)
+                    .mediaType(MediaType.APPLICATION_JSON_TYPE)
+                    .data(String.class, entry.getPayload())
+                    .build());
+      }
+      if (!page.isEmpty() || page.isGap()) {
+        lastSent = now;
+      } else if (now - lastSent >= TimeUnit.MILLISECONDS.toNanos(KEEPALIVE_MILLIS)) {
+        pending = sink.send(sse.newEventBuilder().comment("keepalive").build());
+        lastSent = now;
+      }
+      cursor = page.getCursor();
+      return true;
+    }
+
+    @Override
+    public void close() {
+      sink.close();
+    }
+  }
+}
@@ -0,0 +1,32 @@
+package com.keycloak.event.feed;
+
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.services.resource.RealmResourceProvider;
+
+/** Provides the {@link EventFeedResource} of a request. */
+public class EventFeedResourceProvider implements RealmResourceProvider {
+
+  private final KeycloakSession session;
+  private final EventFeed feed;
+
+  /**
+   * Creates the provider.
+   *
+   * @param session The Keycloak session of the request
+   * @param feed The feed, or null if the feed is disabled
+   */
+  public EventFeedResourceProvider(KeycloakSession session, EventFeed feed) {
+    this.session = session;
+    this.feed = feed;
+  }
+
+  @Override
+  public Object getResource() {
+    return new EventFeedResource(session, feed);
+  }
+
+  @Override
+  public void close() {
+    // Nothing to release
+  }
+}
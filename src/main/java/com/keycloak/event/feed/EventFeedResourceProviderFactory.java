@@ -0,0 +1,53 @@
+package com.keycloak.event.feed;
+
+import com.keycloak.event.KeycloakEventListenerProviderFactory;
+import org.keycloak.Config;
+import org.keycloak.events.EventListenerProvider;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.provider.ProviderFactory;
+import org.keycloak.services.resource.RealmResourceProvider;
+import org.keycloak.services.resource.RealmResourceProviderFactory;
+
+/**
+ * Factory of the {@link EventFeedResourceProvider}, registered with Keycloak through the Service
+ * Provider Interface (SPI) mechanism. The resource serves the feed of the event listener, so it
+ * answers 404 unless WEBHOOK_FEED_CAPACITY is set.
+ */
+public class EventFeedResourceProviderFactory implements RealmResourceProviderFactory {
+
+  /** Provider ID, which is also the path of the resource below the realm */
+  public static final String ID = "webhook-feed";
+
+  private EventFeed feed;
+
+  @Override
+  public RealmResourceProvider create(KeycloakSession session) {
+    return new EventFeedResourceProvider(session, feed);
+  }
+
+  @Override
+  public void init(Config.Scope config) {
+    // No configuration
+  }
+
+  @Override
+  public void postInit(KeycloakSessionFactory factory) {
+    ProviderFactory<EventListenerProvider> listener =
+        factory.getProviderFactory(
+            EventListenerProvider.class, KeycloakEventListenerProviderFactory.ID);
+    if (listener instanceof KeycloakEventListenerProviderFactory) {
+      feed = ((KeycloakEventListenerProviderFactory) listener).getFeed();
+    }
+  }
+
+  @Override
+  public void close() {
+    // The feed is closed by the event listener factory
+  }
+
+  @Override
+  public String getId() {
+    return ID;
+  }
+}
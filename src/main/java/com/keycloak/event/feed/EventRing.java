@@ -0,0 +1,116 @@
+package com.keycloak.event.feed;
+
+import com.keycloak.event.delivery.DeliveryTask;
+import com.keycloak.event.representation.RepresentationPolicy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.LongFunction;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Fixed-size ring of the latest events of one realm. Every event gets the next sequence number;
+ * once the ring is full, each new event overwrites the oldest.
+ *
+ * <p>Appending takes no lock: a writer reserves a sequence number and then fills its slot. Readers
+ * stop at a slot that is still being filled, so they never skip an event that is about to become
+ * visible, and detect slots that were overwritten while they read.
+ */
+@Slf4j
+final class EventRing {
+
+  private final int capacity;
+  private final AtomicReferenceArray<Slot> slots;
+  private final AtomicLong head = new AtomicLong();
+
+  /**
+   * Creates an empty ring.
+   *
+   * @param capacity The number of events kept
+   */
+  EventRing(int capacity) {
+    this.capacity = capacity;
+    this.slots = new AtomicReferenceArray<>(capacity);
+  }
+
+  /**
+   * Appends an event. The payload of a deferred task is serialized when it is first read.
+   *
+   * @param task The event
+   */
+  void add(DeliveryTask task) {
+    long sequence = head.incrementAndGet();
+    slots.set(index(sequence), new Slot(sequence, task));
+  }
+
+  /**
+   * Returns the sequence number of the newest event.
+   *
+   * @return The sequence number, 0 if the ring is empty
+   */
+  long head() {
+    return head.get();
+  }
+
+  /**
+   * Reads the events after a sequence number.
+   *
+   * @param after The sequence number of the last event already read, 0 to read from the oldest
+   * @param limit The maximum number of events
+   * @param reportGap Whether to flag events between {@code after} and the oldest event as missed
+   * @param cursors Encodes sequence numbers as cursors
+   * @return The page
+   */
+  FeedPage read(long after, int limit, boolean reportGap, LongFunction<String> cursors) {
+    long last = head.get();
+    long oldest = Math.max(1, last - capacity + 1);
+    after = Math.min(after, last);
+    boolean gap = reportGap && after + 1 < oldest;
+    long position = Math.max(after, oldest - 1);
+    List<FeedPage.Entry> entries = new ArrayList<>(Math.min(limit, (int) (last - position)));
+    for (long sequence = position + 1; sequence <= last && entries.size() < limit; sequence++) {
+      Slot slot = slots.get(index(sequence));
+      if (slot == null || slot.sequence < sequence) {
+        // Reserved but not filled yet; continue from here next time
+        break;
+      }
+      position = sequence;
+      if (slot.sequence > sequence) {
+        // Overwritten while reading
+        gap = true;
+        continue;
+      }
+      String payload = payload(slot.task);
+      if (payload != null) {
+        entries.add(new FeedPage.Entry(cursors.apply(sequence), payload));
+      }
+    }
+    return new FeedPage(entries, cursors.apply(position), gap);
+  }
+
+  private int index(long sequence) {
+    return (int) (sequence % capacity);
+  }
+
+  /** Consumers of the feed see the full representation when one was rendered. */
+  private static String payload(DeliveryTask task) {
+    try {
+      String full = task.getVariants().get(RepresentationPolicy.FULL);
+      return full != null ? full : task.getPayload();
+    } catch (RuntimeException e) {
+      log.debug("Skipping {} event whose payload failed to serialize", task.getType());
+      return null;
+    }
+  }
+
+  private static final class Slot {
+    private final long sequence;
+    private final DeliveryTask task;
+
+    private Slot(long sequence, DeliveryTask task) {
+      this.sequence = sequence;
+      this.task = task;
+    }
+  }
+}
@@ -0,0 +1,86 @@
+package com.keycloak.event.feed;
+
+import java.util.Collections;
+import java.util.List;
+import lombok.Getter;
+
+/** A page of events read from the feed of a realm, with the cursor to continue from. */
+@Getter
+public class FeedPage {
+
+  /** The events, oldest first */
+  private final List<Entry> entries;
+
+  /** Cursor of the last event of the page, or the cursor the page was read from if it is empty */
+  private final String cursor;
+
+  /** Whether events between the requested cursor and the first event were evicted */
+  private final boolean gap;
+
+  /**
+   * Creates a page.
+   *
+   * @param entries The events, oldest first
+   * @param cursor The cursor to continue from
+   * @param gap Whether events were skipped because they were evicted
+   */
+  public FeedPage(List<Entry> entries, String cursor, boolean gap) {
+    this.entries = Collections.unmodifiableList(entries);
+    this.cursor = cursor;
+    this.gap = gap;
+  }
+
+  /**
+   * Returns whether the page holds no events.
+   *
+   * @return true if there are no events
+   */
+  public boolean isEmpty() {
+    return entries.isEmpty();
+  }
+
+  /**
+   * Renders the page as {@code {"cursor":...,"gap":...,"events":[...]}}. The events are the JSON
+   * payloads as they would be pushed to a webhook, embedded without being parsed again.
+   *
+   * @return The JSON document
+   */
+  public String toJson() {
+    int length = 64;
+    for (Entry entry : entries) {
+      length += entry.payload.length() + 1;
+    }
+    StringBuilder json = new StringBuilder(length);
+    json.append("{\"cursor\":\"").append(cursor).append("\",\"gap\":").append(gap);
+    json.append(",\"events\":[");
+    for (int i = 0; i < entries.size(); i++) {
+      if (i > 0) {
+        json.append(',');
+      }
+      json.append(entries.get(i).payload);
+    }
+    return json.append("]}").toString();
+  }
+
+  /** One event of a page. */
+  @Getter
+  public static final class Entry {
+
+    /** Cursor positioned after this event */
+    private final String cursor;
+
+    /** The JSON payload */
+    private final String payload;
+
+    /**
+     * Creates an entry.
+     *
+     * @param cursor The cursor positioned after this event
+     * @param payload The JSON payload
+     */
+    public Entry(String cursor, String payload) {
+      this.cursor = cursor;
+      this.payload = payload;
+    }
+  }
+}
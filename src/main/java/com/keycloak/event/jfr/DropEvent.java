@@ -0,0 +1,31 @@
+package com.keycloak.event.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/** Flight Recorder event for an event that is not delivered because the bridge is overloaded. */
+@Name("com.keycloak.event.Drop")
+@Label("Webhook Drop")
+@Description("Event dropped by an overflow policy or sampled out under load")
+@Category({"Keycloak", "Webhook"})
+@StackTrace(false)
+@Threshold("0 ms")
+public class DropEvent extends Event {
+
+  /** The endpoint URL, null if the event was dropped before reaching any queue */
+  @Label("Endpoint")
+  public String endpoint;
+
+  /** The Keycloak event or operation type */
+  @Label("Type")
+  public String type;
+
+  /** Why the event was dropped: an overflow policy, or SAMPLE for the latency watchdog */
+  @Label("Reason")
+  public String reason;
+}
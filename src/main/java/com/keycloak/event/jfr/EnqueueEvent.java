@@ -0,0 +1,38 @@
+package com.keycloak.event.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight Recorder event for handing an event to the delivery queue of an endpoint. Its duration
+ * includes the time a producer waited for queue space.
+ */
+@Name("com.keycloak.event.Enqueue")
+@Label("Webhook Enqueue")
+@Description("Hand-off of an event to the delivery queue of an endpoint")
+@Category({"Keycloak", "Webhook"})
+@StackTrace(false)
+@Threshold("0 ms")
+public class EnqueueEvent extends Event {
+
+  /** The endpoint URL */
+  @Label("Endpoint")
+  public String endpoint;
+
+  /** The Keycloak event or operation type */
+  @Label("Type")
+  public String type;
+
+  /** The realm of the event */
+  @Label("Realm")
+  public String realmId;
+
+  /** Whether the queue took the event, in memory or on disk */
+  @Label("Accepted")
+  public boolean accepted;
+}
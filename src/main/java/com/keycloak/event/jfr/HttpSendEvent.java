@@ -0,0 +1,37 @@
+package com.keycloak.event.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/** Flight Recorder event for one POST of a payload to an HTTP endpoint. */
+@Name("com.keycloak.event.HttpSend")
+@Label("Webhook HTTP Send")
+@Description("POST of a webhook payload to an HTTP endpoint")
+@Category({"Keycloak", "Webhook"})
+@StackTrace(false)
+@Threshold("0 ms")
+public class HttpSendEvent extends Event {
+
+  /** The endpoint URL */
+  @Label("Endpoint")
+  public String endpoint;
+
+  /** The HTTP status, 0 if the request failed without a response */
+  @Label("Status")
+  public int status;
+
+  /** The size of the request body */
+  @Label("Size")
+  @DataAmount
+  public long bytes;
+
+  /** The exception class of a request that failed without a response */
+  @Label("Error")
+  public String error;
+}
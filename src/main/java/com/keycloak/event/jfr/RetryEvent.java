@@ -0,0 +1,33 @@
+package com.keycloak.event.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+/** Flight Recorder event for a failed delivery that is scheduled to be attempted again. */
+@Name("com.keycloak.event.Retry")
+@Label("Webhook Retry")
+@Description("Failed delivery scheduled for another attempt")
+@Category({"Keycloak", "Webhook"})
+@StackTrace(false)
+@Threshold("0 ms")
+public class RetryEvent extends Event {
+
+  /** The Keycloak event or operation type */
+  @Label("Type")
+  public String type;
+
+  /** The failed attempts so far */
+  @Label("Attempts")
+  public int attempts;
+
+  /** The wait before the next attempt */
+  @Label("Backoff")
+  @Timespan(Timespan.MILLISECONDS)
+  public long backoff;
+}
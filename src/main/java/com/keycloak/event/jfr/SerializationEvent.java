@@ -0,0 +1,27 @@
+package com.keycloak.event.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/** Flight Recorder event for the serialization of an event into its JSON payload. */
+@Name("com.keycloak.event.Serialization")
+@Label("Webhook Serialization")
+@Description("Serialization of a Keycloak event into its webhook payload")
+@Category({"Keycloak", "Webhook"})
+@StackTrace(false)
+@Threshold("0 ms")
+public class SerializationEvent extends Event {
+
+  /** The payload type, such as USER_EVENT or ADMIN_EVENT */
+  @Label("Event Type")
+  public String eventType;
+
+  /** The length of the payload in characters */
+  @Label("Length")
+  public long length;
+}
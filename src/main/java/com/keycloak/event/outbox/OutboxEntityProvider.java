@@ -0,0 +1,36 @@
+package com.keycloak.event.outbox;
+
+import com.keycloak.event.backfill.BackfillStateEntity;
+import java.util.List;
+import org.keycloak.connections.jpa.entityprovider.JpaEntityProvider;
+
+/**
+ * Registers the {@link OutboxEventEntity} and the {@link BackfillStateEntity} with Keycloak's
+ * persistence unit and creates their tables through a Liquibase changelog when Keycloak migrates
+ * its database.
+ */
+public class OutboxEntityProvider implements JpaEntityProvider {
+
+  /** Classpath location of the outbox changelog */
+  public static final String CHANGELOG = "META-INF/webhook-outbox-changelog.xml";
+
+  @Override
+  public List<Class<?>> getEntities() {
+    return List.of(OutboxEventEntity.class, BackfillStateEntity.class);
+  }
+
+  @Override
+  public String getChangelogLocation() {
+    return CHANGELOG;
+  }
+
+  @Override
+  public String getFactoryId() {
+    return OutboxEntityProviderFactory.ID;
+  }
+
+  @Override
+  public void close() {
+    // Nothing to release
+  }
+}
@@ -0,0 +1,45 @@
+package com.keycloak.event.outbox;
+
+import org.keycloak.Config;
+import org.keycloak.connections.jpa.entityprovider.JpaEntityProvider;
+import org.keycloak.connections.jpa.entityprovider.JpaEntityProviderFactory;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+
+/**
+ * Factory of the {@link OutboxEntityProvider}, registered with Keycloak through the Service
+ * Provider Interface (SPI) mechanism. The outbox table is created whether or not WEBHOOK_OUTBOX is
+ * enabled, so that the outbox can be switched on without a schema change.
+ */
+public class OutboxEntityProviderFactory implements JpaEntityProviderFactory {
+
+  /** Provider ID of the outbox entity provider */
+  public static final String ID = "webhook-outbox";
+
+  private static final OutboxEntityProvider PROVIDER = new OutboxEntityProvider();
+
+  @Override
+  public JpaEntityProvider create(KeycloakSession session) {
+    return PROVIDER;
+  }
+
+  @Override
+  public void init(Config.Scope config) {
+    // No configuration
+  }
+
+  @Override
+  public void postInit(KeycloakSessionFactory factory) {
+    // Nothing to do
+  }
+
+  @Override
+  public void close() {
+    // Nothing to release
+  }
+
+  @Override
+  public String getId() {
+    return ID;
+  }
+}
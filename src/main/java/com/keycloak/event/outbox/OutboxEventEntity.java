@@ -0,0 +1,77 @@
+package com.keycloak.event.outbox;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * An event waiting in the outbox table. Rows are written in the transaction of the change that
+ * produced the event and deleted once the event has been delivered.
+ *
+ * <p>The generated id increases with insertion order, which the poller uses as its keyset cursor.
+ */
+@Getter
+@Setter
+@Entity
+@Table(name = "WEBHOOK_OUTBOX")
+public class OutboxEventEntity {
+
+  /** Identity key, increasing with insertion order */
+  @Id
+  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  @Column(name = "ID")
+  private Long id;
+
+  /** Wrapper type of the event, either USER_EVENT or ADMIN_EVENT */
+  @Column(name = "EVENT_TYPE", length = 32, nullable = false)
+  private String eventType;
+
+  /** Keycloak event type or admin operation type */
+  @Column(name = "TYPE", length = 64)
+  private String type;
+
+  /** Realm the event belongs to, may be null */
+  @Column(name = "REALM_ID", length = 255)
+  private String realmId;
+
+  /** User the event is about, may be null */
+  @Column(name = "USER_ID", length = 255)
+  private String userId;
+
+  /** Admin resource path, null for user events */
+  @Column(name = "RESOURCE_PATH", length = 2550)
+  private String resourcePath;
+
+  /** The JSON payload */
+  @Column(name = "PAYLOAD", length = 25500, nullable = false)
+  private String payload;
+
+  /** Payloads of other representation policies as a JSON object keyed by policy, may be null */
+  @Column(name = "VARIANTS", length = 25500)
+  private String variants;
+
+  /** Time the event was written, in epoch milliseconds */
+  @Column(name = "CREATED_AT", nullable = false)
+  private long createdAt;
+
+  /** Failed delivery attempts so far */
+  @Column(name = "ATTEMPTS", nullable = false)
+  private int attempts;
+
+  /** Earliest time of the next delivery attempt, in epoch milliseconds */
+  @Column(name = "NEXT_ATTEMPT_AT", nullable = false)
+  private long nextAttemptAt;
+
+  /** Destinations that took the event in earlier attempts, as a JSON array, may be null */
+  @Column(name = "DELIVERED_TO", length = 25500)
+  private String deliveredTo;
+
+  /** End of the claim of the poller delivering the row, in epoch milliseconds, 0 if unclaimed */
+  @Column(name = "CLAIMED_UNTIL", nullable = false)
+  private long claimedUntil;
+}
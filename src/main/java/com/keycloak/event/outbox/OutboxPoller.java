@@ -0,0 +1,226 @@
+package com.keycloak.event.outbox;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.keycloak.event.HttpClientWebHookHandler;
+import com.keycloak.event.config.WebhookConfig;
+import com.keycloak.event.delivery.DeliveryReport;
+import java.io.Closeable;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Drains the outbox table and delivers its rows to the webhooks.
+ *
+ * <p>Every {@code pollMillis} the poller makes a pass over the rows that are due. A pass claims
+ * batches of rows in id order, see {@link OutboxStore}: a short transaction claims a batch, the
+ * rows are delivered with no transaction open, and a second short transaction deletes the delivered
+ * rows and reschedules the failed ones with exponential backoff. Rows claimed by another node are
+ * skipped, so every node of a cluster can run a poller.
+ *
+ * <p>A failed row is only retried at the destinations that did not take it. Delivery is still at
+ * least once: a row is delivered again if the transaction after its delivery fails, or if its
+ * delivery outlasts the claim and another node claims it. Rows that cannot be delivered within
+ * {@code retentionMillis} are purged.
+ */
+@Slf4j
+public class OutboxPoller implements Closeable {
+
+  private static final long PURGE_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+  private final OutboxStore store;
+  private final OutboxTransactions transactions;
+  private final HttpClientWebHookHandler webHookHandler;
+  @Getter private final int batchSize;
+  @Getter private final long pollMillis;
+  @Getter private final long retentionMillis;
+  private final Thread thread;
+  private volatile boolean running = true;
+  private long lastPurge;
+
+  /**
+   * Creates a poller and starts polling.
+   *
+   * @param store The outbox store
+   * @param transactions Runs the claim and the completion of each batch in a transaction
+   * @param webHookHandler The handler used to deliver rows
+   * @param batchSize The rows claimed per transaction
+   * @param pollMillis The interval between passes in milliseconds
+   * @param retentionMillis How long undelivered rows are kept, in milliseconds
+   */
+  public OutboxPoller(
+      OutboxStore store,
+      OutboxTransactions transactions,
+      HttpClientWebHookHandler webHookHandler,
+      int batchSize,
+      long pollMillis,
+      long retentionMillis) {
+    this.store = store;
+    this.transactions = transactions;
+    this.webHookHandler = webHookHandler;
+    this.batchSize = Math.max(1, batchSize);
+    this.pollMillis = Math.max(10, pollMillis);
+    this.retentionMillis = retentionMillis;
+    this.lastPurge = System.currentTimeMillis();
+    this.thread = new Thread(this::run, "webhook-outbox-poller");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Creates a poller from the WEBHOOK_OUTBOX_* settings.
+   *
+   * @param store The outbox store
+   * @param transactions Runs each batch in a transaction
+   * @param webHookHandler The handler used to deliver rows
+   * @return A started poller
+   */
+  public static OutboxPoller fromConfig(
+      OutboxStore store, OutboxTransactions transactions, HttpClientWebHookHandler webHookHandler) {
+    OutboxPoller poller =
+        new OutboxPoller(
+            store,
+            transactions,
+            webHookHandler,
+            WebhookConfig.getInt(
+                WebhookConfig.OUTBOX_BATCH_SIZE, WebhookConfig.DEFAULT_OUTBOX_BATCH_SIZE),
+            WebhookConfig.getLong(
+                WebhookConfig.OUTBOX_POLL_MS, WebhookConfig.DEFAULT_OUTBOX_POLL_MS),
+            TimeUnit.HOURS.toMillis(
+                WebhookConfig.getLong(
+                    WebhookConfig.OUTBOX_RETENTION_HOURS,
+                    WebhookConfig.DEFAULT_OUTBOX_RETENTION_HOURS)));
+    log.info(
+        "Outbox poller started, {} row(s) per batch every {} ms",
+        poller.batchSize,
+        poller.pollMillis);
+    return poller;
+  }
+
+  /**
+   * Makes one pass over the rows that are due.
+   *
+   * @return The number of delivered rows
+   */
+  public int drain() {
+    long cursor = 0;
+    int delivered = 0;
+    List<OutboxEventEntity> rows;
+    do {
+      rows = claim(cursor);
+      if (rows.isEmpty()) {
+        break;
+      }
+      cursor = rows.get(rows.size() - 1).getId();
+      List<Set<String>> progress = new ArrayList<>(rows.size());
+      boolean[] complete = new boolean[rows.size()];
+      for (int i = 0; i < rows.size(); i++) {
+        Set<String> deliveredTo = store.deliveredTo(rows.get(i));
+        complete[i] = deliver(rows.get(i), deliveredTo);
+        progress.add(deliveredTo);
+      }
+      delivered += complete(rows, complete, progress);
+    } while (rows.size() == batchSize && running);
+    return delivered;
+  }
+
+  /**
+   * Deletes rows older than the retention period.
+   *
+   * @return The number of purged rows
+   */
+  public int purge() {
+    long cutoff = System.currentTimeMillis() - retentionMillis;
+    int purged = transactions.run(entityManager -> store.purge(entityManager, cutoff));
+    if (purged > 0) {
+      log.error(
+          "Purged {} outbox event(s) that could not be delivered within {} ms",
+          purged,
+          retentionMillis);
+    }
+    return purged;
+  }
+
+  /** Stops polling. Rows left in the table are delivered after the next start. */
+  @Override
+  public void close() {
+    running = false;
+    thread.interrupt();
+  }
+
+  private List<OutboxEventEntity> claim(long afterId) {
+    long now = System.currentTimeMillis();
+    List<OutboxEventEntity> claimed = new ArrayList<>();
+    transactions.run(
+        entityManager -> {
+          claimed.addAll(store.claim(entityManager, afterId, now, batchSize));
+          return claimed.size();
+        });
+    return claimed;
+  }
+
+  /** Delivers a row to the destinations missing from its progress, which is updated. */
+  private boolean deliver(OutboxEventEntity row, Set<String> deliveredTo) {
+    DeliveryReport report;
+    try {
+      report = webHookHandler.deliver(store.toTask(row), deliveredTo);
+    } catch (RuntimeException e) {
+      log.warn("Delivery of outbox event {} failed: {}", row.getId(), e.getMessage());
+      return false;
+    }
+    if (!report.isDelivered()) {
+      log.warn(
+          "Delivery of outbox event {} ({}) failed on attempt {}: {}",
+          row.getId(),
+          row.getType(),
+          row.getAttempts() + 1,
+          report);
+    }
+    return report.isDelivered();
+  }
+
+  /** Deletes the delivered rows of a batch and reschedules the others in one transaction. */
+  private int complete(
+      List<OutboxEventEntity> rows, boolean[] complete, List<Set<String>> progress) {
+    long now = System.currentTimeMillis();
+    return transactions.run(
+        entityManager -> {
+          int delivered = 0;
+          for (int i = 0; i < rows.size(); i++) {
+            if (complete[i]) {
+              delivered += store.delivered(entityManager, rows.get(i)) ? 1 : 0;
+            } else {
+              try {
+                store.failed(entityManager, rows.get(i), progress.get(i), now);
+              } catch (JsonProcessingException e) {
+                throw new UncheckedIOException(e);
+              }
+            }
+          }
+          return delivered;
+        });
+  }
+
+  private void run() {
+    while (running) {
+      try {
+        Thread.sleep(pollMillis);
+      } catch (InterruptedException e) {
+        return;
+      }
+      try {
+        drain();
+        if (System.currentTimeMillis() - lastPurge >= PURGE_INTERVAL_MILLIS) {
+          lastPurge = System.currentTimeMillis();
+          purge();
+        }
+      } catch (RuntimeException e) {
+        log.error("Failed to drain the webhook outbox: {}", e.getMessage(), e);
+      }
+    }
+  }
+}
@@ -0,0 +1,282 @@
+package com.keycloak.event.outbox;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.keycloak.event.config.WebhookConfig;
+import com.keycloak.event.delivery.DeliveryTask;
+import com.keycloak.event.jfr.RetryEvent;
+import com.keycloak.event.representation.RepresentationPolicy;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.TypedQuery;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.LockMode;
+import org.hibernate.query.Query;
+
+/**
+ * Reads and writes the outbox table through the entity manager of the caller's transaction.
+ *
+ * <p>Rows are claimed in batches ordered by id, starting after the last id of the previous batch
+ * (keyset pagination, so a pass over a long backlog never re-reads rows with an offset). A claim is
+ * a short transaction that locks the rows with {@code SELECT ... FOR UPDATE SKIP LOCKED} and marks
+ * them claimed for {@code leaseMillis}: rows another node is claiming are skipped instead of waited
+ * for, and claimed rows are not due for anyone else until the claim ends. The rows are delivered
+ * outside any transaction, and a second short transaction deletes or reschedules them, provided the
+ * claim is still the one that delivered them. Several nodes therefore drain the table in parallel
+ * without delivering a row twice, unless a delivery outlasts its claim.
+ *
+ * <p>Each row records the destinations that took it, so a retry only goes to the ones that failed.
+ */
+@Slf4j
+public class OutboxStore {
+
+  /** Shortest wait before retrying a row whose delivery failed */
+  public static final long MIN_BACKOFF_MILLIS = 1000;
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+  private static final TypeReference<LinkedHashMap<String, String>> VARIANTS_TYPE =
+      new TypeReference<>() {};
+  private static final TypeReference<LinkedHashSet<String>> DESTINATIONS_TYPE =
+      new TypeReference<>() {};
+
+  @Getter private final long maxBackoffMillis;
+  @Getter private final long leaseMillis;
+
+  /**
+   * Creates a store.
+   *
+   * @param maxBackoffMillis The longest wait between delivery attempts of a row
+   * @param leaseMillis How long a claim keeps rows from other pollers
+   */
+  public OutboxStore(long maxBackoffMillis, long leaseMillis) {
+    this.maxBackoffMillis = Math.max(MIN_BACKOFF_MILLIS, maxBackoffMillis);
+    this.leaseMillis = Math.max(MIN_BACKOFF_MILLIS, leaseMillis);
+  }
+
+  /**
+   * Creates a store from the WEBHOOK_OUTBOX_* settings.
+   *
+   * @return A store, or null if WEBHOOK_OUTBOX is not true
+   */
+  public static OutboxStore fromConfig() {
+    if (!Boolean.parseBoolean(WebhookConfig.getSetting(WebhookConfig.OUTBOX))) {
+      return null;
+    }
+    return new OutboxStore(
+        WebhookConfig.getLong(
+            WebhookConfig.OUTBOX_MAX_BACKOFF_MS, WebhookConfig.DEFAULT_OUTBOX_MAX_BACKOFF_MS),
+        WebhookConfig.getLong(
+            WebhookConfig.OUTBOX_LEASE_MS, WebhookConfig.DEFAULT_OUTBOX_LEASE_MS));
+  }
+
+  /**
+   * Writes a task to the outbox. The row becomes visible to pollers when the caller's transaction
+   * commits, and disappears with it if the transaction rolls back.
+   *
+   * @param entityManager The entity manager of the current transaction
+   * @param task The task to deliver
+   * @param now The current time in epoch milliseconds
+   * @return The persisted row
+   * @throws JsonProcessingException If the payload variants cannot be serialized
+   */
+  public OutboxEventEntity append(EntityManager entityManager, DeliveryTask task, long now)
+      throws JsonProcessingException {
+    OutboxEventEntity entity = new OutboxEventEntity();
+    entity.setEventType(task.getEventType());
+    entity.setType(task.getType());
+    entity.setRealmId(task.getRealmId());
+    entity.setUserId(task.getUserId());
+    entity.setResourcePath(task.getResourcePath());
+    entity.setPayload(task.getPayload());
+    if (!task.getVariants().isEmpty()) {
+      Map<String, String> variants = new LinkedHashMap<>();
+      task.getVariants().forEach((policy, payload) -> variants.put(policy.toString(), payload));
+      entity.setVariants(MAPPER.writeValueAsString(variants));
+    }
+    entity.setCreatedAt(now);
+    entity.setNextAttemptAt(now);
+    entityManager.persist(entity);
+    return entity;
+  }
+
+  /**
+   * Claims the next rows that are due and not claimed, skipping rows locked by other transactions.
+   * The claim lasts {@code leaseMillis} and takes effect when the caller's transaction commits.
+   *
+   * @param entityManager The entity manager of the current transaction
+   * @param afterId Only rows with a greater id are claimed; 0 to start from the beginning
+   * @param now The current time in epoch milliseconds
+   * @param limit The maximum number of rows
+   * @return The claimed rows in id order
+   */
+  public List<OutboxEventEntity> claim(
+      EntityManager entityManager, long afterId, long now, int limit) {
+    TypedQuery<OutboxEventEntity> query =
+        entityManager
+            .createQuery(
+                "SELECT e FROM OutboxEventEntity e WHERE e.id > :afterId AND e.nextAttemptAt <="
+                    + " :now AND e.claimedUntil <= :now ORDER BY e.id",
+                OutboxEventEntity.class)
+            .setParameter("afterId", afterId)
+            .setParameter("now", now)
+            .setMaxResults(limit);
+    query.unwrap(Query.class).setHibernateLockMode(LockMode.UPGRADE_SKIPLOCKED);
+    List<OutboxEventEntity> rows = query.getResultList();
+    for (OutboxEventEntity row : rows) {
+      row.setClaimedUntil(now + leaseMillis);
+    }
+    return rows;
+  }
+
+  /**
+   * Removes a delivered row, unless its claim has ended and another poller has claimed it since.
+   *
+   * @param entityManager The entity manager of the current transaction
+   * @param claimed The row as claimed
+   * @return true if the row was removed
+   */
+  public boolean delivered(EntityManager entityManager, OutboxEventEntity claimed) {
+    OutboxEventEntity entity = reclaim(entityManager, claimed);
+    if (entity == null) {
+      return false;
+    }
+    entityManager.remove(entity);
+    return true;
+  }
+
+  /**
+   * Ends the claim of a row whose delivery failed at some destination, recording the destinations
+   * that took it and scheduling the next attempt with exponential backoff. Does nothing if the
+   * claim has ended and another poller has claimed the row since.
+   *
+   * @param entityManager The entity manager of the current transaction
+   * @param claimed The row as claimed
+   * @param deliveredTo Every destination that has taken the row so far
+   * @param now The current time in epoch milliseconds
+   * @return true if the row was rescheduled
+   * @throws JsonProcessingException If the destinations cannot be serialized
+   */
+  public boolean failed(
+      EntityManager entityManager, OutboxEventEntity claimed, Set<String> deliveredTo, long now)
+      throws JsonProcessingException {
+    OutboxEventEntity entity = reclaim(entityManager, claimed);
+    if (entity == null) {
+      return false;
+    }
+    entity.setDeliveredTo(deliveredTo.isEmpty() ? null : MAPPER.writeValueAsString(deliveredTo));
+    entity.setClaimedUntil(0);
+    reschedule(entity, now);
+    return true;
+  }
+
+  /**
+   * Returns the destinations that took a row in earlier attempts.
+   *
+   * @param entity The row
+   * @return A modifiable set of destinations, empty if none took the row
+   */
+  public Set<String> deliveredTo(OutboxEventEntity entity) {
+    if (entity.getDeliveredTo() == null) {
+      return new LinkedHashSet<>();
+    }
+    try {
+      return MAPPER.readValue(entity.getDeliveredTo(), DESTINATIONS_TYPE);
+    } catch (JsonProcessingException e) {
+      // Every destination receives the row again
+      log.warn("Ignoring unreadable delivery progress of outbox row {}", entity.getId());
+      return new LinkedHashSet<>();
+    }
+  }
+
+  /** Locks a claimed row again, returning null if it is gone or claimed by someone else. */
+  private OutboxEventEntity reclaim(EntityManager entityManager, OutboxEventEntity claimed) {
+    OutboxEventEntity entity =
+        entityManager.find(
+            OutboxEventEntity.class, claimed.getId(), LockModeType.PESSIMISTIC_WRITE);
+    if (entity == null || entity.getClaimedUntil() != claimed.getClaimedUntil()) {
+      log.warn(
+          "Outbox row {} was claimed again while it was delivered; it may be delivered twice",
+          claimed.getId());
+      return null;
+    }
+    return entity;
+  }
+
+  private void reschedule(OutboxEventEntity entity, long now) {
+    entity.setAttempts(entity.getAttempts() + 1);
+    long backoff = backoffMillis(entity.getAttempts());
+    entity.setNextAttemptAt(now + backoff);
+    RetryEvent recording = new RetryEvent();
+    if (recording.isEnabled()) {
+      recording.type = entity.getType();
+      recording.attempts = entity.getAttempts();
+      recording.backoff = backoff;
+      recording.commit();
+    }
+  }
+
+  /**
+   * Returns the wait before the next attempt of a row.
+   *
+   * @param attempts The failed attempts so far, at least 1
+   * @return The wait in milliseconds
+   */
+  public long backoffMillis(int attempts) {
+    int doublings = Math.min(30, Math.max(0, attempts - 1));
+    return Math.min(maxBackoffMillis, MIN_BACKOFF_MILLIS << doublings);
+  }
+
+  /**
+   * Deletes rows that were written before a point in time and never delivered.
+   *
+   * @param entityManager The entity manager of the current transaction
+   * @param createdBefore The cutoff in epoch milliseconds
+   * @return The number of deleted rows
+   */
+  public int purge(EntityManager entityManager, long createdBefore) {
+    return entityManager
+        .createQuery("DELETE FROM OutboxEventEntity e WHERE e.createdAt < :createdBefore")
+        .setParameter("createdBefore", createdBefore)
+        .executeUpdate();
+  }
+
+  /**
+   * Rebuilds the task stored in a row.
+   *
+   * @param entity The row
+   * @return The task, with its payload variants
+   */
+  public DeliveryTask toTask(OutboxEventEntity entity) {
+    Map<RepresentationPolicy, String> variants = Collections.emptyMap();
+    if (entity.getVariants() != null) {
+      variants = new LinkedHashMap<>();
+      try {
+        for (Map.Entry<String, String> variant :
+            MAPPER.readValue(entity.getVariants(), VARIANTS_TYPE).entrySet()) {
+          variants.put(RepresentationPolicy.parse(variant.getKey()), variant.getValue());
+        }
+      } catch (JsonProcessingException e) {
+        // Every endpoint receives the main payload
+        log.warn("Ignoring unreadable payload variants of outbox row {}", entity.getId());
+        variants = Collections.emptyMap();
+      }
+    }
+    return DeliveryTask.builder()
+        .eventType(entity.getEventType())
+        .type(entity.getType())
+        .realmId(entity.getRealmId())
+        .userId(entity.getUserId())
+        .resourcePath(entity.getResourcePath())
+        .payload(entity.getPayload())
+        .variants(variants)
+        .build();
+  }
+}
@@ -0,0 +1,35 @@
+package com.keycloak.event.outbox;
+
+import jakarta.persistence.EntityManager;
+import java.util.function.ToIntFunction;
+import org.keycloak.connections.jpa.JpaConnectionProvider;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.utils.KeycloakModelUtils;
+
+/** Runs outbox work in a transaction of its own, committed when the work returns. */
+@FunctionalInterface
+public interface OutboxTransactions {
+
+  /**
+   * Runs work in a new transaction. The transaction is rolled back if the work throws.
+   *
+   * @param work The work, given the entity manager of the transaction
+   * @return The result of the work
+   */
+  int run(ToIntFunction<EntityManager> work);
+
+  /**
+   * Returns transactions of Keycloak sessions, using Keycloak's persistence unit.
+   *
+   * @param factory The Keycloak session factory
+   * @return The transactions
+   */
+  static OutboxTransactions of(KeycloakSessionFactory factory) {
+    return work ->
+        KeycloakModelUtils.runJobInTransactionWithResult(
+            factory,
+            session ->
+                work.applyAsInt(
+                    session.getProvider(JpaConnectionProvider.class).getEntityManager()));
+  }
+}
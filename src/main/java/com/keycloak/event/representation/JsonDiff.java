@@ -0,0 +1,78 @@
+package com.keycloak.event.representation;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Computes a JSON Patch (RFC 6902) that turns one document into another. Objects are compared field
+ * by field; arrays of equal length element by element, arrays whose length changed are replaced as
+ * a whole. The patch is not minimal, but applying it to the source always yields the target.
+ */
+public final class JsonDiff {
+
+  private JsonDiff() {
+    // Utility class, no instantiation
+  }
+
+  /**
+   * Computes the patch from one document to another.
+   *
+   * @param source The previous document
+   * @param target The new document
+   * @return The patch operations, empty if the documents are equal
+   */
+  public static ArrayNode diff(JsonNode source, JsonNode target) {
+    ArrayNode patch = JsonNodeFactory.instance.arrayNode();
+    diff("", source, target, patch);
+    return patch;
+  }
+
+  private static void diff(String path, JsonNode source, JsonNode target, ArrayNode patch) {
+    if (source.equals(target)) {
+      return;
+    }
+    if (source.isObject() && target.isObject()) {
+      Iterator<String> names = source.fieldNames();
+      while (names.hasNext()) {
+        String name = names.next();
+        if (!target.has(name)) {
+          patch.addObject().put("op", "remove").put("path", path + "/" + escape(name));
+        }
+      }
+      Iterator<Map.Entry<String, JsonNode>> fields = target.fields();
+      while (fields.hasNext()) {
+        Map.Entry<String, JsonNode> field = fields.next();
+        String fieldPath = path + "/" + escape(field.getKey());
+        JsonNode previous = source.get(field.getKey());
+        if (previous == null) {
+          add(patch, "add", fieldPath, field.getValue());
+        } else {
+          diff(fieldPath, previous, field.getValue(), patch);
+        }
+      }
+      return;
+    }
+    if (source.isArray() && target.isArray() && source.size() == target.size()) {
+      for (int i = 0; i < target.size(); i++) {
+        diff(path + "/" + i, source.get(i), target.get(i), patch);
+      }
+      return;
+    }
+    add(patch, "replace", path, target);
+  }
+
+  private static void add(ArrayNode patch, String op, String path, JsonNode value) {
+    ObjectNode operation = patch.addObject();
+    operation.put("op", op).put("path", path);
+    operation.set("value", value);
+  }
+
+  /** Escapes a field name as a JSON Pointer reference token (RFC 6901). */
+  private static String escape(String name) {
+    return name.replace("~", "~0").replace("/", "~1");
+  }
+}
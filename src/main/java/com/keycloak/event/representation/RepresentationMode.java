@@ -0,0 +1,35 @@
+package com.keycloak.event.representation;
+
+import java.util.Locale;
+
+/** What an endpoint receives in place of the representation of an admin event. */
+public enum RepresentationMode {
+  /** The representation as Keycloak provided it */
+  FULL,
+  /** No representation */
+  OMIT,
+  /** The first bytes of the representation */
+  TRUNCATE,
+  /** A SHA-256 hash of the representation, to detect changes without shipping the content */
+  HASH,
+  /** A JSON Patch against the previous representation of the same resource */
+  DIFF;
+
+  /**
+   * Parses a mode name, ignoring case.
+   *
+   * @param value The configured mode name
+   * @param defaultMode The mode to use when the value is missing or unknown
+   * @return The matching mode or the default
+   */
+  public static RepresentationMode fromString(String value, RepresentationMode defaultMode) {
+    if (value == null) {
+      return defaultMode;
+    }
+    try {
+      return valueOf(value.trim().toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      return defaultMode;
+    }
+  }
+}
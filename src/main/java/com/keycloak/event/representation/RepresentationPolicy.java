@@ -0,0 +1,106 @@
+package com.keycloak.event.representation;
+
+import com.keycloak.event.config.WebhookConfig;
+import java.util.Map;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+/**
+ * How the representation of admin events is rendered for one endpoint, set with the {@code
+ * representation} endpoint option ({@code full}, {@code omit}, {@code truncate}, {@code hash} or
+ * {@code diff}) and, for {@code truncate}, {@code representationMaxBytes}. Endpoints without the
+ * option use WEBHOOK_REPRESENTATION, {@code full} by default.
+ */
+@Getter
+@EqualsAndHashCode
+public final class RepresentationPolicy {
+
+  /** Endpoint option selecting the mode */
+  public static final String OPTION = "representation";
+
+  /** Endpoint option holding the truncation limit in bytes */
+  public static final String MAX_BYTES_OPTION = "representationMaxBytes";
+
+  /** Default truncation limit in bytes */
+  public static final int DEFAULT_MAX_BYTES = 4096;
+
+  /** The representation as Keycloak provided it */
+  public static final RepresentationPolicy FULL =
+      new RepresentationPolicy(RepresentationMode.FULL, DEFAULT_MAX_BYTES);
+
+  /** What replaces the representation */
+  private final RepresentationMode mode;
+
+  /** Truncation limit in bytes, only used by {@link RepresentationMode#TRUNCATE} */
+  private final int maxBytes;
+
+  /**
+   * Creates a policy.
+   *
+   * @param mode The mode
+   * @param maxBytes The truncation limit in bytes
+   */
+  public RepresentationPolicy(RepresentationMode mode, int maxBytes) {
+    this.mode = mode;
+    this.maxBytes = Math.max(0, maxBytes);
+  }
+
+  /**
+   * Reads the policy from endpoint options, falling back to the WEBHOOK_REPRESENTATION setting.
+   *
+   * @param options The endpoint options
+   * @return The policy
+   */
+  public static RepresentationPolicy fromOptions(Map<String, String> options) {
+    String value = options.get(OPTION);
+    if (value == null) {
+      value = WebhookConfig.getSetting(WebhookConfig.REPRESENTATION);
+    }
+    RepresentationMode mode = RepresentationMode.fromString(value, RepresentationMode.FULL);
+    int maxBytes = DEFAULT_MAX_BYTES;
+    if (mode == RepresentationMode.TRUNCATE && options.get(MAX_BYTES_OPTION) != null) {
+      try {
+        maxBytes = Integer.parseInt(options.get(MAX_BYTES_OPTION).trim());
+      } catch (NumberFormatException e) {
+        // Keep the default
+      }
+    }
+    if (mode == RepresentationMode.FULL) {
+      return FULL;
+    }
+    // The limit only distinguishes truncating policies
+    return new RepresentationPolicy(
+        mode, mode == RepresentationMode.TRUNCATE ? maxBytes : DEFAULT_MAX_BYTES);
+  }
+
+  /**
+   * Parses the form written by {@link #toString()}, for example {@code OMIT} or {@code
+   * truncate:4096}.
+   *
+   * @param value The policy as written by toString
+   * @return The policy, {@link #FULL} for unknown modes
+   */
+  public static RepresentationPolicy parse(String value) {
+    int colon = value.indexOf(':');
+    RepresentationMode mode =
+        RepresentationMode.fromString(
+            colon < 0 ? value : value.substring(0, colon), RepresentationMode.FULL);
+    if (mode == RepresentationMode.FULL) {
+      return FULL;
+    }
+    int maxBytes = DEFAULT_MAX_BYTES;
+    if (mode == RepresentationMode.TRUNCATE && colon >= 0) {
+      try {
+        maxBytes = Integer.parseInt(value.substring(colon + 1).trim());
+      } catch (NumberFormatException e) {
+        // Keep the default
+      }
+    }
+    return new RepresentationPolicy(mode, maxBytes);
+  }
+
+  @Override
+  public String toString() {
+    return mode == RepresentationMode.TRUNCATE ? "truncate:" + maxBytes : mode.name();
+  }
+}
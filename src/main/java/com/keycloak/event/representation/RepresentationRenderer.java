@@ -0,0 +1,224 @@
+package com.keycloak.event.representation;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.keycloak.event.config.WebhookConfig;
+import com.keycloak.event.util.JsonUtil;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.keycloak.events.admin.AdminEvent;
+import org.keycloak.events.admin.OperationType;
+
+/**
+ * Serializes an admin event once per {@link RepresentationPolicy} used by its endpoints. The event
+ * is converted to a tree once; each policy works on a shallow copy in which only the representation
+ * differs, and policies other than {@code full} never write the complete representation.
+ *
+ * <p>For the {@code diff} policy the last representation of every resource path is kept, bounded by
+ * WEBHOOK_REPRESENTATION_CACHE_MB with the least recently changed resources evicted first. The
+ * first event of a resource, and one whose previous representation was evicted or is not valid
+ * JSON, carries the full representation.
+ */
+@Slf4j
+public class RepresentationRenderer {
+
+  /** Field set to true when the representation was truncated */
+  public static final String TRUNCATED_FIELD = "representationTruncated";
+
+  /** Field holding the size in bytes of a truncated representation */
+  public static final String SIZE_FIELD = "representationSize";
+
+  /** Field holding the hash of the representation */
+  public static final String HASH_FIELD = "representationHash";
+
+  /** Field holding the JSON Patch from the previous representation */
+  public static final String DIFF_FIELD = "representationDiff";
+
+  private static final String REPRESENTATION_FIELD = "representation";
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  @Getter private final long maxCacheBytes;
+  private final LinkedHashMap<String, byte[]> previous = new LinkedHashMap<>(16, 0.75f, true);
+  private long cachedBytes;
+
+  /**
+   * Creates a renderer.
+   *
+   * @param maxCacheBytes Memory for previous representations, 0 to disable diffs
+   */
+  public RepresentationRenderer(long maxCacheBytes) {
+    this.maxCacheBytes = Math.max(0, maxCacheBytes);
+  }
+
+  /**
+   * Creates a renderer from the WEBHOOK_REPRESENTATION_CACHE_MB setting.
+   *
+   * @return A new renderer
+   */
+  public static RepresentationRenderer fromConfig() {
+    return new RepresentationRenderer(
+        WebhookConfig.getLong(
+                WebhookConfig.REPRESENTATION_CACHE_MB,
+                WebhookConfig.DEFAULT_REPRESENTATION_CACHE_MB)
+            * 1024
+            * 1024);
+  }
+
+  /**
+   * Serializes an admin event for each policy.
+   *
+   * @param adminEvent The admin event
+   * @param includeRepresentation false to drop the representation for every endpoint
+   * @param enrichment Fields added by enrichment, may be empty
+   * @param policies The distinct policies of the receiving endpoints
+   * @return The payload of each policy, in the order given
+   * @throws JsonProcessingException If the event cannot be serialized
+   */
+  public Map<RepresentationPolicy, String> render(
+      AdminEvent adminEvent,
+      boolean includeRepresentation,
+      Map<String, String> enrichment,
+      Collection<RepresentationPolicy> policies)
+      throws JsonProcessingException {
+    ObjectNode wrapper =
+        JsonUtil.createEventTree(JsonUtil.ADMIN_EVENT_TYPE, adminEvent, enrichment);
+    ObjectNode event = (ObjectNode) wrapper.get("event");
+    String representation = adminEvent.getRepresentation();
+    Map<RepresentationPolicy, String> payloads = new LinkedHashMap<>();
+    if (!includeRepresentation) {
+      event.putNull(REPRESENTATION_FIELD);
+    }
+    if (!includeRepresentation || representation == null) {
+      String payload = JsonUtil.toJson(wrapper);
+      policies.forEach(policy -> payloads.put(policy, payload));
+      return payloads;
+    }
+
+    byte[] before = null;
+    boolean diffRequested =
+        policies.stream().anyMatch(policy -> policy.getMode() == RepresentationMode.DIFF);
+    if (diffRequested) {
+      before = remember(adminEvent, representation.getBytes(StandardCharsets.UTF_8));
+    }
+    for (RepresentationPolicy policy : policies) {
+      if (policy.getMode() == RepresentationMode.FULL) {
+        payloads.put(policy, JsonUtil.toJson(wrapper));
+        continue;
+      }
+      // Policies only replace fields of the event node, so copying the two objects is enough
+      ObjectNode eventCopy = wrapper.objectNode().setAll(event);
+      ObjectNode copy = wrapper.objectNode().setAll(wrapper);
+      copy.set("event", eventCopy);
+      apply(policy, eventCopy, representation, before);
+      payloads.put(policy, JsonUtil.toJson(copy));
+    }
+    return payloads;
+  }
+
+  /**
+   * Returns the number of resources whose previous representation is cached.
+   *
+   * @return The cached resource count
+   */
+  public synchronized int cachedResources() {
+    return previous.size();
+  }
+
+  private void apply(
+      RepresentationPolicy policy, ObjectNode event, String representation, byte[] before) {
+    switch (policy.getMode()) {
+      case OMIT:
+        event.putNull(REPRESENTATION_FIELD);
+        break;
+      case TRUNCATE:
+        byte[] bytes = representation.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > policy.getMaxBytes()) {
+          event.put(REPRESENTATION_FIELD, truncate(bytes, policy.getMaxBytes()));
+          event.put(TRUNCATED_FIELD, true);
+          event.put(SIZE_FIELD, bytes.length);
+        }
+        break;
+      case HASH:
+        event.putNull(REPRESENTATION_FIELD);
+        event.put(HASH_FIELD, "sha256:" + sha256(representation));
+        break;
+      case DIFF:
+        JsonNode patch = before != null ? diff(before, representation) : null;
+        if (patch != null) {
+          event.putNull(REPRESENTATION_FIELD);
+          event.set(DIFF_FIELD, patch);
+        }
+        break;
+      default:
+        break;
+    }
+  }
+
+  /**
+   * Stores the new representation of the event's resource and returns the previous one.
+   * Representations are kept as UTF-8, so the cache is bounded by their size in bytes.
+   */
+  private synchronized byte[] remember(AdminEvent adminEvent, byte[] representation) {
+    String key = adminEvent.getRealmId() + " " + adminEvent.getResourcePath();
+    byte[] before;
+    if (adminEvent.getOperationType() == OperationType.DELETE
+        || representation.length > maxCacheBytes) {
+      before = previous.remove(key);
+    } else {
+      before = previous.put(key, representation);
+      cachedBytes += representation.length;
+    }
+    if (before != null) {
+      cachedBytes -= before.length;
+    }
+    Iterator<byte[]> eldest = previous.values().iterator();
+    while (cachedBytes > maxCacheBytes && eldest.hasNext()) {
+      cachedBytes -= eldest.next().length;
+      eldest.remove();
+    }
+    return before;
+  }
+
+  private static JsonNode diff(byte[] before, String after) {
+    try {
+      return JsonDiff.diff(MAPPER.readTree(before), MAPPER.readTree(after));
+    } catch (IOException e) {
+      log.debug("Representation is not JSON, sending it in full: {}", e.getMessage());
+      return null;
+    }
+  }
+
+  /** Cuts UTF-8 bytes to a limit without splitting a character. */
+  private static String truncate(byte[] bytes, int maxBytes) {
+    CharsetDecoder decoder =
+        StandardCharsets.UTF_8.newDecoder().onMalformedInput(CodingErrorAction.IGNORE);
+    CharBuffer chars = CharBuffer.allocate(maxBytes);
+    decoder.decode(ByteBuffer.wrap(bytes, 0, maxBytes), chars, true);
+    return chars.flip().toString();
+  }
+
+  private static String sha256(String representation) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      return HexFormat.of()
+          .formatHex(digest.digest(representation.getBytes(StandardCharsets.UTF_8)));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available", e);
+    }
+  }
+}
@@ -0,0 +1,415 @@
+package com.keycloak.event.sink;
+
+import com.keycloak.event.endpoint.WebhookEndpoint;
+import com.keycloak.event.util.PayloadFormat;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.GZIPOutputStream;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Sink that appends payloads as NDJSON (one JSON document per line) to a local file, configured as
+ * {@code file:///var/log/keycloak/events.ndjson} with optional {@code ;name=value} options.
+ *
+ * <p>Writes use group commit: {@link #send(String)} only copies the payload into a shared buffer
+ * and a single writer thread flushes everything that accumulated with one {@link
+ * FileChannel#write(ByteBuffer)} and one {@link FileChannel#force(boolean)} per batch. With {@code
+ * sync=true} a sender waits until its batch is on disk; many senders are released by the same
+ * fsync. The buffer is bounded, so a slow disk pushes back on the delivery queue.
+ *
+ * <p>The file is rotated when it reaches {@code maxBytes} or is older than {@code rotateMs}. The
+ * rotated file is renamed with a UTC timestamp and, unless {@code compress=none}, gzipped in the
+ * background.
+ */
+@Slf4j
+public class FileSink implements WebhookSink {
+
+  /** Option holding the file size that triggers rotation */
+  public static final String MAX_BYTES_OPTION = "maxBytes";
+
+  /** Option holding the file age that triggers rotation, 0 to rotate by size only */
+  public static final String ROTATE_MS_OPTION = "rotateMs";
+
+  /** Option holding the longest time a payload waits in the buffer before it is written */
+  public static final String COMMIT_MS_OPTION = "commitMs";
+
+  /** Option holding the buffer size that makes senders wait for the writer */
+  public static final String BUFFER_BYTES_OPTION = "bufferBytes";
+
+  /** Option that makes senders wait until their payload is written */
+  public static final String SYNC_OPTION = "sync";
+
+  /** Option that disables fsync after each batch when false */
+  public static final String FSYNC_OPTION = "fsync";
+
+  /** Option selecting the compression of rotated files, gzip or none */
+  public static final String COMPRESS_OPTION = "compress";
+
+  private static final long DEFAULT_MAX_BYTES = 100L * 1024 * 1024;
+  private static final long DEFAULT_ROTATE_MS = TimeUnit.HOURS.toMillis(1);
+  private static final long DEFAULT_COMMIT_MS = 10;
+  private static final long DEFAULT_BUFFER_BYTES = 1024 * 1024;
+  private static final long SHUTDOWN_TIMEOUT_MILLIS = 30000;
+  private static final DateTimeFormatter ROTATION_FORMAT =
+      DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS").withZone(ZoneOffset.UTC);
+
+  @Getter private final WebhookEndpoint endpoint;
+  @Getter private final Path file;
+  private final long maxBytes;
+  private final long rotateMillis;
+  private final long commitNanos;
+  private final int bufferBytes;
+  private final boolean sync;
+  private final boolean fsync;
+  private final boolean compress;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition dataAvailable = lock.newCondition();
+  private final Condition spaceAvailable = lock.newCondition();
+  private final Condition committed = lock.newCondition();
+  private Batch pending;
+  private Batch spare;
+  private long appendedSeq;
+  private long committedSeq;
+  private long failedSeq;
+  private IOException lastFailure;
+  private boolean closed;
+
+  private final Thread writer;
+  private final ExecutorService compressor;
+  private FileChannel channel;
+  private long fileBytes;
+  private long openedAtMillis;
+
+  /**
+   * Opens the file for appending and starts the writer thread.
+   *
+   * @param endpoint A {@code file:} endpoint
+   * @throws IOException If the file cannot be opened
+   */
+  public FileSink(WebhookEndpoint endpoint) throws IOException {
+    this.endpoint = endpoint;
+    this.file = Paths.get(endpoint.getUri());
+    this.maxBytes = endpoint.longOption(MAX_BYTES_OPTION, DEFAULT_MAX_BYTES);
+    this.rotateMillis = endpoint.longOption(ROTATE_MS_OPTION, DEFAULT_ROTATE_MS);
+    this.commitNanos =
+        TimeUnit.MILLISECONDS.toNanos(
+            Math.max(1, endpoint.longOption(COMMIT_MS_OPTION, DEFAULT_COMMIT_MS)));
+    this.bufferBytes =
+        (int)
+            Math.min(
+                Integer.MAX_VALUE / 2,
+                Math.max(1024, endpoint.longOption(BUFFER_BYTES_OPTION, DEFAULT_BUFFER_BYTES)));
+    this.sync = Boolean.parseBoolean(endpoint.option(SYNC_OPTION));
+    this.fsync = !"false".equalsIgnoreCase(endpoint.option(FSYNC_OPTION));
+    this.compress = !"none".equalsIgnoreCase(endpoint.option(COMPRESS_OPTION));
+    if (endpoint.getFormat() != PayloadFormat.JSON) {
+      log.warn("File sink {} writes NDJSON, ignoring format {}", endpoint, endpoint.getFormat());
+    }
+    this.pending = new Batch(bufferBytes);
+    this.spare = new Batch(bufferBytes);
+
+    if (file.getParent() != null) {
+      Files.createDirectories(file.getParent());
+    }
+    openFile();
+    this.compressor =
+        Executors.newSingleThreadExecutor(
+            runnable -> {
+              Thread thread = new Thread(runnable, "webhook-file-compress");
+              thread.setDaemon(true);
+              return thread;
+            });
+    this.writer = new Thread(this::runWriter, "webhook-file-writer");
+    writer.setDaemon(true);
+    writer.start();
+    log.info(
+        "File sink writing to {} (rotate at {} bytes or {} ms, sync={}, fsync={}, compress={})",
+        file,
+        maxBytes,
+        rotateMillis,
+        sync,
+        fsync,
+        compress);
+  }
+
+  /**
+   * Appends a payload as one line. Returns once the payload is buffered, or once it is written when
+   * {@code sync=true}. Waits while the buffer is full.
+   *
+   * @param payload The JSON payload, which must not contain line breaks
+   * @throws IOException If the sink is closed or, in sync mode, the write failed
+   * @throws InterruptedException If interrupted while waiting for buffer space or the commit
+   */
+  @Override
+  public void send(String payload) throws IOException, InterruptedException {
+    byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+    long seq;
+    lock.lock();
+    try {
+      while (!closed && pending.size() > 0 && pending.size() + bytes.length + 1 > bufferBytes) {
+        spaceAvailable.await();
+      }
+      if (closed) {
+        throw new IOException("File sink is closed: " + file);
+      }
+      pending.write(bytes, 0, bytes.length);
+      pending.write('\n');
+      seq = ++appendedSeq;
+      if (pending.size() >= bufferBytes / 2) {
+        dataAvailable.signal();
+      }
+      if (!sync) {
+        return;
+      }
+      while (committedSeq < seq && failedSeq < seq) {
+        committed.await();
+      }
+      if (committedSeq < seq) {
+        throw new IOException("Write to " + file + " failed", lastFailure);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns the sequence number of the last payload written to disk.
+   *
+   * @return The committed sequence number
+   */
+  public long getCommitted() {
+    lock.lock();
+    try {
+      return committedSeq;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Writes the remaining buffer, closes the file and waits for pending compressions. */
+  @Override
+  public void close() {
+    lock.lock();
+    try {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      dataAvailable.signalAll();
+      spaceAvailable.signalAll();
+    } finally {
+      lock.unlock();
+    }
+    try {
+      writer.join(SHUTDOWN_TIMEOUT_MILLIS);
+      compressor.shutdown();
+      compressor.awaitTermination(SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    log.info("File sink for {} closed after {} event(s)", file, getCommitted());
+  }
+
+  private void runWriter() {
+    while (true) {
+      Batch batch;
+      long seq;
+      lock.lock();
+      try {
+        long remaining = commitNanos;
+        while (!closed && pending.size() < bufferBytes / 2 && remaining > 0) {
+          remaining = dataAvailable.awaitNanos(remaining);
+        }
+        if (pending.size() == 0) {
+          if (closed) {
+            break;
+          }
+          batch = null;
+          seq = committedSeq;
+        } else {
+          batch = pending;
+          pending = spare;
+          spare = null;
+          seq = appendedSeq;
+          spaceAvailable.signalAll();
+        }
+      } catch (InterruptedException e) {
+        // Only close() stops the writer, so that buffered events are not lost
+        continue;
+      } finally {
+        lock.unlock();
+      }
+
+      if (batch != null) {
+        writeBatch(batch, seq);
+      }
+      try {
+        if (rotationDue()) {
+          rotate();
+        }
+      } catch (IOException e) {
+        log.error("Failed to rotate {}: {}", file, e.getMessage(), e);
+      }
+    }
+    try {
+      channel.close();
+    } catch (IOException e) {
+      log.warn("Failed to close {}: {}", file, e.getMessage());
+    }
+  }
+
+  /**
+   * Writes one batch, retrying after a failure until it succeeds or the sink is closed. A retry
+   * continues where the failed write stopped, so no line is written twice.
+   */
+  private void writeBatch(Batch batch, long seq) {
+    ByteBuffer buffer = batch.buffer();
+    IOException failure;
+    while (true) {
+      try {
+        while (buffer.hasRemaining()) {
+          fileBytes += channel.write(buffer);
+        }
+        if (fsync) {
+          channel.force(false);
+        }
+        failure = null;
+        break;
+      } catch (IOException e) {
+        failure = e;
+        log.error("Failed to write {} bytes to {}: {}", batch.size(), file, e.getMessage());
+        if (isClosed()) {
+          break;
+        }
+        reopenAfterFailure();
+      }
+    }
+    lock.lock();
+    try {
+      batch.reset();
+      spare = batch;
+      if (failure == null) {
+        committedSeq = seq;
+      } else {
+        failedSeq = seq;
+        lastFailure = failure;
+      }
+      committed.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void reopenAfterFailure() {
+    try {
+      Thread.sleep(TimeUnit.NANOSECONDS.toMillis(commitNanos) * 10);
+    } catch (InterruptedException e) {
+      // Keep retrying; only close() stops the writer
+    }
+    try {
+      channel.close();
+      openFile();
+    } catch (IOException e) {
+      log.debug("Reopening {} failed: {}", file, e.getMessage());
+    }
+  }
+
+  private boolean isClosed() {
+    lock.lock();
+    try {
+      return closed;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private boolean rotationDue() {
+    if (fileBytes == 0) {
+      return false;
+    }
+    return fileBytes >= maxBytes
+        || (rotateMillis > 0 && System.currentTimeMillis() - openedAtMillis >= rotateMillis);
+  }
+
+  private void rotate() throws IOException {
+    channel.close();
+    Path rotated = rotatedPath();
+    Files.move(file, rotated);
+    log.info("Rotated {} to {} after {} bytes", file, rotated, fileBytes);
+    openFile();
+    if (compress) {
+      compressor.execute(() -> gzip(rotated));
+    }
+  }
+
+  private Path rotatedPath() {
+    String name = file.getFileName().toString();
+    int dot = name.lastIndexOf('.');
+    String base = dot > 0 ? name.substring(0, dot) : name;
+    String extension = dot > 0 ? name.substring(dot) : "";
+    String stamp = ROTATION_FORMAT.format(Instant.now());
+    Path rotated = file.resolveSibling(base + "-" + stamp + extension);
+    for (int i = 1; Files.exists(rotated) || Files.exists(gzipPath(rotated)); i++) {
+      rotated = file.resolveSibling(base + "-" + stamp + "-" + i + extension);
+    }
+    return rotated;
+  }
+
+  private void openFile() throws IOException {
+    channel =
+        FileChannel.open(
+            file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    fileBytes = channel.size();
+    openedAtMillis = System.currentTimeMillis();
+  }
+
+  private static void gzip(Path source) {
+    Path target = gzipPath(source);
+    try (InputStream in = Files.newInputStream(source);
+        OutputStream out = new GZIPOutputStream(Files.newOutputStream(target), 64 * 1024)) {
+      in.transferTo(out);
+    } catch (IOException e) {
+      log.error("Failed to compress {}: {}", source, e.getMessage(), e);
+      return;
+    }
+    try {
+      Files.delete(source);
+    } catch (IOException e) {
+      log.warn("Failed to delete {} after compression: {}", source, e.getMessage());
+    }
+  }
+
+  private static Path gzipPath(Path source) {
+    return source.resolveSibling(source.getFileName() + ".gz");
+  }
+
+  /** Byte buffer whose content can be written without copying. */
+  private static final class Batch extends ByteArrayOutputStream {
+    private Batch(int size) {
+      super(size);
+    }
+
+    private ByteBuffer buffer() {
+      return ByteBuffer.wrap(buf, 0, count);
+    }
+  }
+}
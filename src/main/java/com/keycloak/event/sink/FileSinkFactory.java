@@ -0,0 +1,19 @@
+package com.keycloak.event.sink;
+
+import com.keycloak.event.endpoint.WebhookEndpoint;
+import java.io.IOException;
+import java.util.List;
+
+/** Creates {@link FileSink}s for {@code file:} endpoints. */
+public class FileSinkFactory implements WebhookSinkFactory {
+
+  @Override
+  public List<String> getSchemes() {
+    return List.of("file");
+  }
+
+  @Override
+  public WebhookSink create(WebhookEndpoint endpoint) throws IOException {
+    return new FileSink(endpoint);
+  }
+}
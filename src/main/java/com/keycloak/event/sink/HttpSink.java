@@ -0,0 +1,249 @@
+package com.keycloak.event.sink;
+
+import com.keycloak.event.auth.RequestAuth;
+import com.keycloak.event.endpoint.WebhookEndpoint;
+import com.keycloak.event.exception.WebhookDeliveryException;
+import com.keycloak.event.jfr.HttpSendEvent;
+import com.keycloak.event.trace.DeliveryTrace;
+import com.keycloak.event.trace.TraceContext;
+import com.keycloak.event.util.LogLimiter;
+import com.keycloak.event.util.PayloadFormat;
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Sink that POSTs each payload to an http or https endpoint, encoded in the endpoint's {@link
+ * PayloadFormat}. All HTTP sinks share one {@link HttpClient} and its connection pool; the sink
+ * itself only holds the prepared endpoint.
+ *
+ * <p>Requests made within a {@link DeliveryTrace} carry the W3C {@code traceparent} and {@code
+ * tracestate} headers of the event, and report the time to the response headers and the status.
+ *
+ * <p>Endpoints with an {@code auth} option have their requests authenticated by the {@link
+ * RequestAuth} the sink creates when it is opened, and which it closes with the sink.
+ *
+ * <p>Failures are logged without stack traces, and repeats of the same failure at the same endpoint
+ * are collapsed by {@link LogLimiter#ERRORS}.
+ */
+@Slf4j
+public class HttpSink implements WebhookSink {
+
+  /** Header carrying a key shared by all copies of one delivery */
+  public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
+  @Getter private final WebhookEndpoint endpoint;
+  @Getter private final RequestAuth auth;
+  private final HttpClient httpClient;
+
+  /**
+   * Creates a sink for an HTTP endpoint.
+   *
+   * @param endpoint The endpoint to post to
+   * @param httpClient The shared HTTP client
+   * @throws IllegalArgumentException If the endpoint's auth options are invalid
+   */
+  public HttpSink(WebhookEndpoint endpoint, HttpClient httpClient) {
+    this.endpoint = endpoint;
+    this.httpClient = httpClient;
+    this.auth = RequestAuth.of(endpoint, httpClient);
+  }
+
+  /**
+   * Posts a payload to the endpoint.
+   *
+   * @param payload The JSON payload to send
+   * @throws Exception If the request fails or the webhook answers with a non-2xx status
+   */
+  @Override
+  public void send(String payload) throws Exception {
+    Exchange exchange = new Exchange();
+    HttpResponse<String> response;
+    try {
+      HttpRequest request = exchange.build(payload, null);
+      response = httpClient.send(request, exchange.bodyHandler);
+    } catch (Exception e) {
+      throw exchange.failed(e);
+    }
+    exchange.completed(response);
+  }
+
+  /**
+   * Posts a payload to the endpoint without waiting for the response. Cancelling the returned
+   * future aborts the request.
+   *
+   * @param payload The JSON payload to send
+   * @param idempotencyKey Sent as the {@value #IDEMPOTENCY_KEY_HEADER} header so the receiver can
+   *     recognize copies of the same delivery, may be null
+   * @return A future completed when the endpoint accepted the payload, or completed exceptionally
+   *     with the failure or a {@link WebhookDeliveryException} for a non-2xx status
+   */
+  public CompletableFuture<Void> sendAsync(String payload, String idempotencyKey) {
+    Exchange exchange = new Exchange();
+    CompletableFuture<HttpResponse<String>> pending;
+    try {
+      pending = httpClient.sendAsync(exchange.build(payload, idempotencyKey), exchange.bodyHandler);
+    } catch (Exception e) {
+      return CompletableFuture.failedFuture(exchange.failed(e));
+    }
+    CompletableFuture<Void> result =
+        pending.handle(
+            (response, error) -> {
+              if (error != null) {
+                Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                if (cause instanceof CancellationException) {
+                  throw (CancellationException) cause;
+                }
+                throw new CompletionException(
+                    cause instanceof Exception ? exchange.failed((Exception) cause) : cause);
+              }
+              try {
+                exchange.completed(response);
+              } catch (WebhookDeliveryException e) {
+                throw new CompletionException(e);
+              }
+              return null;
+            });
+    result.whenComplete(
+        (ignored, error) -> {
+          if (result.isCancelled()) {
+            pending.cancel(true);
+          }
+        });
+    return result;
+  }
+
+  /** Stops the background work of the endpoint's authentication. */
+  @Override
+  public void close() {
+    if (auth != null) {
+      auth.close();
+    }
+  }
+
+  /** Notes the arrival of the response headers, which may happen on another thread. */
+  private static HttpResponse.BodyHandler<String> timed(
+      DeliveryTrace trace, HttpResponse.BodyHandler<String> bodyHandler) {
+    return info -> {
+      trace.firstByte();
+      return bodyHandler.apply(info);
+    };
+  }
+
+  /** One request to the endpoint, from building it to checking the response. */
+  private final class Exchange {
+    private final String url = endpoint.getUrl();
+    private final DeliveryTrace trace = DeliveryTrace.current();
+    private final HttpSendEvent recording = new HttpSendEvent();
+    private HttpRequest request;
+    private HttpRequest.BodyPublisher body;
+    private HttpResponse.BodyHandler<String> bodyHandler = HttpResponse.BodyHandlers.ofString();
+
+    private Exchange() {
+      recording.begin();
+    }
+
+    /** Builds the request and sets up the body handler. */
+    private HttpRequest build(String payload, String idempotencyKey) throws IOException {
+      log.info("Sending webhook to URL: {}", url);
+
+      byte[] encoded = null;
+      if (endpoint.getFormat() != PayloadFormat.JSON) {
+        encoded = endpoint.getFormat().encode(payload);
+      } else if (auth != null && auth.signsBody()) {
+        encoded = payload.getBytes(StandardCharsets.UTF_8);
+      }
+      body =
+          encoded == null
+              ? HttpRequest.BodyPublishers.ofString(payload)
+              : HttpRequest.BodyPublishers.ofByteArray(encoded);
+      HttpRequest.Builder builder = endpoint.newRequest().POST(body);
+      if (auth != null) {
+        auth.authorize(builder, auth.signsBody() ? encoded : null);
+      }
+      if (idempotencyKey != null) {
+        builder.setHeader(IDEMPOTENCY_KEY_HEADER, idempotencyKey);
+      }
+      if (trace != null) {
+        String traceparent = trace.traceparent();
+        if (traceparent != null) {
+          builder.setHeader(TraceContext.TRACEPARENT, traceparent);
+          String tracestate = trace.tracestate();
+          if (tracestate != null) {
+            builder.setHeader(TraceContext.TRACESTATE, tracestate);
+          }
+        }
+        bodyHandler = timed(trace, bodyHandler);
+      }
+      request = builder.build();
+
+      log.debug("Webhook request created: {}", request);
+      return request;
+    }
+
+    /** Records and logs a request that failed without a response. */
+    private Exception failed(Exception e) {
+      record(0, e);
+      long repeats = LogLimiter.ERRORS.admit(url + " " + e);
+      if (repeats >= 0) {
+        log.error(
+            "Webhook error for {}: {} ({}){}",
+            url,
+            e.getMessage(),
+            e.getClass().getName(),
+            LogLimiter.repeats(repeats));
+      }
+      return e;
+    }
+
+    /** Records and checks a response. */
+    private void completed(HttpResponse<String> response) throws WebhookDeliveryException {
+      record(response.statusCode(), null);
+      if (trace != null) {
+        trace.status(response.statusCode());
+      }
+      if (response.statusCode() == 401 && auth != null) {
+        auth.rejected(request);
+      }
+      log.info(
+          "Webhook response from {}: status={}, body={}",
+          url,
+          response.statusCode(),
+          response.body());
+
+      if (response.statusCode() >= 200 && response.statusCode() < 300) {
+        log.info("Webhook successfully sent to {}", url);
+      } else {
+        String errorMsg =
+            String.format("HTTP error status: %d for URL: %s", response.statusCode(), url);
+        long repeats = LogLimiter.ERRORS.admit(url + " " + response.statusCode());
+        if (repeats >= 0) {
+          log.error(
+              "Webhook error for {}: status code {}, response: {}{}",
+              url,
+              response.statusCode(),
+              response.body(),
+              LogLimiter.repeats(repeats));
+        }
+        throw new WebhookDeliveryException(errorMsg, response.statusCode());
+      }
+    }
+
+    private void record(int status, Exception error) {
+      if (recording.shouldCommit()) {
+        recording.endpoint = url;
+        recording.status = status;
+        recording.bytes = body != null ? Math.max(0, body.contentLength()) : 0;
+        recording.error = error != null ? error.getClass().getName() : null;
+        recording.commit();
+      }
+    }
+  }
+}
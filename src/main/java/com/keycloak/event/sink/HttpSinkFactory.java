@@ -0,0 +1,30 @@
+package com.keycloak.event.sink;
+
+import com.keycloak.event.endpoint.WebhookEndpoint;
+import java.net.http.HttpClient;
+import java.util.List;
+
+/** Creates {@link HttpSink}s for http and https endpoints, all sharing one HTTP client. */
+public class HttpSinkFactory implements WebhookSinkFactory {
+
+  private final HttpClient httpClient;
+
+  /**
+   * Creates the factory.
+   *
+   * @param httpClient The HTTP client shared by all HTTP sinks
+   */
+  public HttpSinkFactory(HttpClient httpClient) {
+    this.httpClient = httpClient;
+  }
+
+  @Override
+  public List<String> getSchemes() {
+    return List.of("http", "https");
+  }
+
+  @Override
+  public WebhookSink create(WebhookEndpoint endpoint) {
+    return new HttpSink(endpoint, httpClient);
+  }
+}
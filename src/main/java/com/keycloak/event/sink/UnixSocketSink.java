@@ -0,0 +1,307 @@
+package com.keycloak.event.sink;
+
+import com.keycloak.event.endpoint.WebhookEndpoint;
+import com.keycloak.event.util.PayloadFormat;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Sink that streams payloads over a Unix domain socket to a receiver on the same host, configured
+ * as {@code unix:///run/receiver/events.sock}. Avoids TCP loopback and HTTP framing for sidecar
+ * receivers.
+ *
+ * <p>Each payload is framed as a line ({@code framing=ndjson}, the default) or as a 4-byte
+ * big-endian length followed by the payload bytes ({@code framing=length}). Binary {@link
+ * PayloadFormat}s are always length-prefixed. Without {@code batchMs} every send writes its frame
+ * before returning. With {@code batchMs} set, sends only buffer the frame and a writer thread sends
+ * everything buffered with one write at most every {@code batchMs}; frames that could not be
+ * written are kept and sent after reconnecting, the bounded buffer pushes back on the delivery
+ * queue meanwhile.
+ *
+ * <p>A broken connection is reopened on the next write. Failed attempts back off exponentially up
+ * to {@link #MAX_BACKOFF_MILLIS}; while backing off, unbatched sends fail fast instead of waiting.
+ */
+@Slf4j
+public class UnixSocketSink implements WebhookSink {
+
+  /** Option selecting the frame format, ndjson or length */
+  public static final String FRAMING_OPTION = "framing";
+
+  /** Option enabling batched writes with the given maximum delay in milliseconds */
+  public static final String BATCH_MS_OPTION = "batchMs";
+
+  /** Option holding the batch buffer size that makes senders wait for the writer */
+  public static final String BUFFER_BYTES_OPTION = "bufferBytes";
+
+  /** Shortest wait before reconnecting after a failure */
+  public static final long MIN_BACKOFF_MILLIS = 100;
+
+  /** Longest wait before reconnecting after repeated failures */
+  public static final long MAX_BACKOFF_MILLIS = 5000;
+
+  private static final long DEFAULT_BUFFER_BYTES = 1024 * 1024;
+  private static final long SHUTDOWN_TIMEOUT_MILLIS = 10000;
+
+  @Getter private final WebhookEndpoint endpoint;
+  @Getter private final Path socketPath;
+  private final boolean lengthPrefixed;
+  private final long batchNanos;
+  private final int bufferBytes;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition dataAvailable = lock.newCondition();
+  private final Condition spaceAvailable = lock.newCondition();
+  private final ByteArrayOutputStream pending;
+  private final Thread writer;
+  private boolean closed;
+
+  private final Object connectionLock = new Object();
+  private SocketChannel channel;
+  private long backoffMillis;
+  private long nextAttemptNanos;
+  @Getter private volatile long connects;
+
+  /**
+   * Creates the sink. The connection is opened lazily by the first write.
+   *
+   * @param endpoint A {@code unix:} endpoint
+   */
+  public UnixSocketSink(WebhookEndpoint endpoint) {
+    this.endpoint = endpoint;
+    this.socketPath = Paths.get(endpoint.getUri().getPath());
+    boolean binary = endpoint.getFormat() != PayloadFormat.JSON;
+    this.lengthPrefixed = binary || "length".equalsIgnoreCase(endpoint.option(FRAMING_OPTION));
+    if (binary && "ndjson".equalsIgnoreCase(endpoint.option(FRAMING_OPTION))) {
+      log.warn("{} payloads cannot be framed as lines, using length framing", endpoint.getFormat());
+    }
+    this.batchNanos = TimeUnit.MILLISECONDS.toNanos(endpoint.longOption(BATCH_MS_OPTION, 0));
+    this.bufferBytes =
+        (int)
+            Math.min(
+                Integer.MAX_VALUE / 2,
+                Math.max(1024, endpoint.longOption(BUFFER_BYTES_OPTION, DEFAULT_BUFFER_BYTES)));
+    if (batchNanos > 0) {
+      this.pending = new ByteArrayOutputStream(bufferBytes);
+      this.writer = new Thread(this::runWriter, "webhook-unix-writer");
+      writer.setDaemon(true);
+      writer.start();
+    } else {
+      this.pending = null;
+      this.writer = null;
+    }
+    log.info(
+        "Unix socket sink for {} ({} framing, {})",
+        socketPath,
+        lengthPrefixed ? "length" : "ndjson",
+        batchNanos > 0 ? "batched" : "unbatched");
+  }
+
+  /**
+   * Sends a payload as one frame, or buffers it when batching is enabled.
+   *
+   * @param payload The JSON payload
+   * @throws IOException If the socket is unreachable (unbatched) or the sink is closed
+   * @throws InterruptedException If interrupted while waiting for buffer space
+   */
+  @Override
+  public void send(String payload) throws IOException, InterruptedException {
+    byte[] frame = frame(payload);
+    if (pending == null) {
+      synchronized (connectionLock) {
+        write(ByteBuffer.wrap(frame));
+      }
+      return;
+    }
+    lock.lock();
+    try {
+      while (!closed && pending.size() > 0 && pending.size() + frame.length > bufferBytes) {
+        spaceAvailable.await();
+      }
+      if (closed) {
+        throw new IOException("Unix socket sink is closed: " + socketPath);
+      }
+      pending.write(frame, 0, frame.length);
+      if (pending.size() >= bufferBytes / 2) {
+        dataAvailable.signal();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Sends the remaining buffer if the receiver is reachable and closes the connection. */
+  @Override
+  public void close() {
+    if (writer != null) {
+      lock.lock();
+      try {
+        closed = true;
+        dataAvailable.signalAll();
+        spaceAvailable.signalAll();
+      } finally {
+        lock.unlock();
+      }
+      try {
+        writer.join(SHUTDOWN_TIMEOUT_MILLIS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    synchronized (connectionLock) {
+      disconnect();
+    }
+  }
+
+  private byte[] frame(String payload) throws IOException {
+    byte[] bytes = endpoint.getFormat().encode(payload);
+    byte[] frame = new byte[bytes.length + (lengthPrefixed ? 4 : 1)];
+    if (lengthPrefixed) {
+      ByteBuffer.wrap(frame).putInt(bytes.length).put(bytes);
+    } else {
+      System.arraycopy(bytes, 0, frame, 0, bytes.length);
+      frame[bytes.length] = '\n';
+    }
+    return frame;
+  }
+
+  /**
+   * Writes a buffer completely, connecting first if needed. On failure the connection is dropped
+   * and the buffer is rewound: a retry resends it whole on the new connection, so the receiver
+   * never sees a frame cut in half, at the price of possibly receiving some frames twice. Callers
+   * hold the connection lock.
+   */
+  private void write(ByteBuffer buffer) throws IOException {
+    SocketChannel connected = connect();
+    try {
+      while (buffer.hasRemaining()) {
+        connected.write(buffer);
+      }
+      backoffMillis = 0;
+    } catch (IOException e) {
+      log.warn("Lost connection to {}: {}", socketPath, e.getMessage());
+      buffer.rewind();
+      disconnect();
+      scheduleReconnect();
+      throw e;
+    }
+  }
+
+  private SocketChannel connect() throws IOException {
+    if (channel != null) {
+      return channel;
+    }
+    long wait = nextAttemptNanos - System.nanoTime();
+    if (wait > 0) {
+      throw new IOException(
+          "Not connected to " + socketPath + ", retrying in " + (wait / 1_000_000) + " ms");
+    }
+    SocketChannel opened = SocketChannel.open(StandardProtocolFamily.UNIX);
+    try {
+      opened.connect(UnixDomainSocketAddress.of(socketPath));
+    } catch (IOException e) {
+      opened.close();
+      scheduleReconnect();
+      log.warn("Cannot connect to {}: {}", socketPath, e.getMessage());
+      throw e;
+    }
+    channel = opened;
+    connects++;
+    log.info("Connected to {}", socketPath);
+    return channel;
+  }
+
+  private void scheduleReconnect() {
+    backoffMillis =
+        backoffMillis == 0 ? MIN_BACKOFF_MILLIS : Math.min(MAX_BACKOFF_MILLIS, backoffMillis * 2);
+    nextAttemptNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoffMillis);
+  }
+
+  private void disconnect() {
+    if (channel != null) {
+      try {
+        channel.close();
+      } catch (IOException e) {
+        log.debug("Failed to close connection to {}: {}", socketPath, e.getMessage());
+      }
+      channel = null;
+    }
+  }
+
+  private void runWriter() {
+    ByteBuffer batch = null;
+    while (true) {
+      lock.lock();
+      try {
+        if (batch == null) {
+          long remaining = batchNanos;
+          while (!closed && pending.size() < bufferBytes / 2 && remaining > 0) {
+            remaining = dataAvailable.awaitNanos(remaining);
+          }
+          if (pending.size() == 0) {
+            if (closed) {
+              return;
+            }
+            continue;
+          }
+          batch = ByteBuffer.wrap(pending.toByteArray());
+          pending.reset();
+          spaceAvailable.signalAll();
+        }
+      } catch (InterruptedException e) {
+        continue;
+      } finally {
+        lock.unlock();
+      }
+
+      synchronized (connectionLock) {
+        try {
+          write(batch);
+          batch = null;
+        } catch (IOException e) {
+          if (isClosed()) {
+            log.error(
+                "Discarding {} unsent bytes for {} on shutdown", batch.remaining(), socketPath);
+            return;
+          }
+        }
+      }
+      if (batch != null) {
+        sleepUntilReconnect();
+      }
+    }
+  }
+
+  private void sleepUntilReconnect() {
+    long wait;
+    synchronized (connectionLock) {
+      wait = nextAttemptNanos - System.nanoTime();
+    }
+    if (wait > 0) {
+      try {
+        TimeUnit.NANOSECONDS.sleep(wait);
+      } catch (InterruptedException e) {
+        // Retry right away
+      }
+    }
+  }
+
+  private boolean isClosed() {
+    lock.lock();
+    try {
+      return closed;
+    } finally {
+      lock.unlock();
+    }
+  }
+}
@@ -0,0 +1,18 @@
+package com.keycloak.event.sink;
+
+import com.keycloak.event.endpoint.WebhookEndpoint;
+import java.util.List;
+
+/** Creates {@link UnixSocketSink}s for {@code unix:} endpoints. */
+public class UnixSocketSinkFactory implements WebhookSinkFactory {
+
+  @Override
+  public List<String> getSchemes() {
+    return List.of("unix");
+  }
+
+  @Override
+  public WebhookSink create(WebhookEndpoint endpoint) {
+    return new UnixSocketSink(endpoint);
+  }
+}
@@ -0,0 +1,33 @@
+package com.keycloak.event.sink;
+
+import com.keycloak.event.endpoint.WebhookEndpoint;
+import java.io.Closeable;
+
+/**
+ * Transport that delivers event payloads to one endpoint. A sink is created by the {@link
+ * WebhookSinkFactory} registered for the endpoint's URL scheme and is used by several delivery
+ * workers at once, so implementations must be thread-safe.
+ */
+public interface WebhookSink extends Closeable {
+
+  /**
+   * Returns the endpoint this sink delivers to.
+   *
+   * @return The endpoint the sink was created for
+   */
+  WebhookEndpoint getEndpoint();
+
+  /**
+   * Delivers one JSON payload.
+   *
+   * @param payload The JSON payload
+   * @throws Exception If the payload could not be delivered
+   */
+  void send(String payload) throws Exception;
+
+  /** Releases the sink's resources, delivering anything it has buffered. */
+  @Override
+  default void close() {
+    // Nothing to release
+  }
+}
@@ -0,0 +1,29 @@
+package com.keycloak.event.sink;
+
+import com.keycloak.event.endpoint.WebhookEndpoint;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Creates {@link WebhookSink}s for the URL schemes it supports. Besides the built-in HTTP and file
+ * sinks, additional factories are discovered with {@link java.util.ServiceLoader} from {@code
+ * META-INF/services/com.keycloak.event.sink.WebhookSinkFactory}.
+ */
+public interface WebhookSinkFactory {
+
+  /**
+   * Returns the URL schemes handled by this factory.
+   *
+   * @return Lower-case scheme names, for example {@code file}
+   */
+  List<String> getSchemes();
+
+  /**
+   * Creates a sink for an endpoint.
+   *
+   * @param endpoint The endpoint, with a scheme returned by {@link #getSchemes()}
+   * @return A new sink
+   * @throws IOException If the sink cannot be opened
+   */
+  WebhookSink create(WebhookEndpoint endpoint) throws IOException;
+}
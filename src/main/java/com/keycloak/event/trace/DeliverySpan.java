@@ -0,0 +1,82 @@
+package com.keycloak.event.trace;
+
+import com.keycloak.event.delivery.ErrorCategory;
+import java.util.concurrent.TimeUnit;
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * Timing of one delivery of an event to one endpoint, handed to the {@link SpanExporter}. Durations
+ * are in nanoseconds.
+ */
+@Getter
+@Builder
+public class DeliverySpan {
+
+  /** The trace id of the request that produced the event, null if it carried no trace context */
+  private final String traceId;
+
+  /** The span id of this delivery, sent in its traceparent header */
+  private final String spanId;
+
+  /** The span id of the request that produced the event, null if it carried no trace context */
+  private final String parentSpanId;
+
+  /** The endpoint URL */
+  private final String endpoint;
+
+  /** The wrapper type, such as USER_EVENT */
+  private final String eventType;
+
+  /** The Keycloak event or operation type */
+  private final String type;
+
+  /** The realm of the event */
+  private final String realmId;
+
+  /** Wall-clock start of the delivery in epoch milliseconds */
+  private final long startEpochMillis;
+
+  /**
+   * Time from the creation of the task to the start of the delivery, including the serialization of
+   * a deferred payload
+   */
+  private final long queueWaitNanos;
+
+  /** Time spent serializing the payload */
+  private final long serializationNanos;
+
+  /** Time from the start of the delivery to the response headers, -1 if there was no response */
+  private final long firstByteNanos;
+
+  /** Time spent delivering */
+  private final long totalNanos;
+
+  /** The HTTP status, 0 for other sinks or if there was no response */
+  private final int status;
+
+  /** Why the delivery failed, NONE if it succeeded */
+  private final ErrorCategory category;
+
+  @Override
+  public String toString() {
+    return String.format(
+        "span trace=%s span=%s parent=%s endpoint=%s type=%s status=%d category=%s"
+            + " queue=%.3fms serialization=%.3fms ttfb=%s total=%.3fms",
+        traceId,
+        spanId,
+        parentSpanId,
+        endpoint,
+        type,
+        status,
+        category,
+        millis(queueWaitNanos),
+        millis(serializationNanos),
+        firstByteNanos < 0 ? "-" : String.format("%.3fms", millis(firstByteNanos)),
+        millis(totalNanos));
+  }
+
+  private static double millis(long nanos) {
+    return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+  }
+}
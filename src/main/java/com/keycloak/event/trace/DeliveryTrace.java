@@ -0,0 +1,134 @@
+package com.keycloak.event.trace;
+
+import com.keycloak.event.delivery.DeliveryTask;
+import com.keycloak.event.delivery.ErrorCategory;
+
+/**
+ * Trace state of the task a thread is delivering. Whoever delivers a task opens its trace around
+ * the sends, so that the sinks can propagate the trace context and report timings without the task
+ * being passed through their signatures. Each send to an endpoint is one attempt with a span id of
+ * its own.
+ *
+ * <p>Traces nest: opening one while another is open hides the outer one until it is closed.
+ */
+public final class DeliveryTrace implements AutoCloseable {
+
+  private static final ThreadLocal<DeliveryTrace> CURRENT = new ThreadLocal<>();
+
+  private final DeliveryTask task;
+  private final DeliveryTrace outer;
+  private String spanId;
+  private long startNanos;
+  private volatile long firstByteNanos;
+  private volatile int status;
+
+  private DeliveryTrace(DeliveryTask task, DeliveryTrace outer) {
+    this.task = task;
+    this.outer = outer;
+  }
+
+  /**
+   * Opens the trace of a task on the current thread.
+   *
+   * @param task The task about to be delivered
+   * @return The trace, to be closed once the task is delivered
+   */
+  public static DeliveryTrace open(DeliveryTask task) {
+    DeliveryTrace trace = new DeliveryTrace(task, CURRENT.get());
+    CURRENT.set(trace);
+    return trace;
+  }
+
+  /**
+   * Returns the trace open on the current thread.
+   *
+   * @return The trace, or null if the thread is not delivering a task
+   */
+  public static DeliveryTrace current() {
+    return CURRENT.get();
+  }
+
+  /** Starts an attempt, giving it a new span id. */
+  public void begin() {
+    spanId = TraceContext.newSpanId();
+    startNanos = System.nanoTime();
+    firstByteNanos = 0;
+    status = 0;
+  }
+
+  /**
+   * Returns the traceparent header of the current attempt.
+   *
+   * @return The header value, or null if the task carries no trace context
+   */
+  public String traceparent() {
+    TraceContext context = task.getTrace();
+    return context != null && spanId != null ? context.traceparent(spanId) : null;
+  }
+
+  /**
+   * Returns the tracestate header to pass on.
+   *
+   * @return The header value, or null if there is none
+   */
+  public String tracestate() {
+    TraceContext context = task.getTrace();
+    return context != null ? context.getTraceState() : null;
+  }
+
+  /**
+   * Notes that the response headers of the current attempt arrived. May be called on any thread.
+   */
+  public void firstByte() {
+    firstByteNanos = System.nanoTime();
+  }
+
+  /**
+   * Notes the HTTP status of the current attempt.
+   *
+   * @param status The HTTP status code
+   */
+  public void status(int status) {
+    this.status = status;
+  }
+
+  /**
+   * Ends the current attempt.
+   *
+   * @param endpoint The endpoint URL
+   * @param category Why the attempt failed, NONE if it succeeded
+   * @return The span of the attempt
+   */
+  public DeliverySpan end(String endpoint, ErrorCategory category) {
+    long now = System.nanoTime();
+    long total = now - startNanos;
+    long firstByte = firstByteNanos;
+    TraceContext context = task.getTrace();
+    return DeliverySpan.builder()
+        .traceId(context != null ? context.getTraceId() : null)
+        .spanId(spanId)
+        .parentSpanId(context != null ? context.getParentId() : null)
+        .endpoint(endpoint)
+        .eventType(task.getEventType())
+        .type(task.getType())
+        .realmId(task.getRealmId())
+        .startEpochMillis(System.currentTimeMillis() - total / 1_000_000)
+        .queueWaitNanos(Math.max(0, startNanos - task.getCreatedAtNanos()))
+        .serializationNanos(task.getSerializationNanos())
+        .firstByteNanos(firstByte != 0 ? firstByte - startNanos : -1)
+        .totalNanos(total)
+        .status(status)
+        .category(category)
+        .build();
+  }
+
+  /** Closes the trace, restoring the trace that was open before it. */
+  @Override
+  public void close() {
+    if (outer != null) {
+      CURRENT.set(outer);
+    } else {
+      CURRENT.remove();
+    }
+  }
+}
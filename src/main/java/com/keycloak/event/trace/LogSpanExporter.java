@@ -0,0 +1,21 @@
+package com.keycloak.event.trace;
+
+import lombok.extern.slf4j.Slf4j;
+
+/** Exporter that writes every span to the log, selected with {@code WEBHOOK_SPAN_EXPORTER=log}. */
+@Slf4j
+public class LogSpanExporter implements SpanExporter {
+
+  /** Name of this exporter */
+  public static final String NAME = "log";
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  @Override
+  public void export(DeliverySpan span) {
+    log.info("{}", span);
+  }
+}
@@ -0,0 +1,42 @@
+package com.keycloak.event.trace;
+
+/**
+ * Receives the {@link DeliverySpan} of every webhook delivery, for example to forward it to a
+ * tracing backend. Implementations are discovered through {@link java.util.ServiceLoader} and
+ * selected by name with the WEBHOOK_SPAN_EXPORTER setting.
+ *
+ * <p>{@link #export} is called on the delivering thread right after each delivery, so it must be
+ * fast and must not block; exporters that talk to a remote backend should buffer and send in the
+ * background.
+ */
+public interface SpanExporter {
+
+  /** Exporter that discards all spans, used when no exporter is configured */
+  SpanExporter NOOP =
+      new SpanExporter() {
+        @Override
+        public String getName() {
+          return "none";
+        }
+
+        @Override
+        public void export(DeliverySpan span) {}
+      };
+
+  /**
+   * Returns the name that selects this exporter in the WEBHOOK_SPAN_EXPORTER setting.
+   *
+   * @return The exporter name
+   */
+  String getName();
+
+  /**
+   * Exports the span of one delivery.
+   *
+   * @param span The span
+   */
+  void export(DeliverySpan span);
+
+  /** Flushes buffered spans and releases resources. */
+  default void close() {}
+}
@@ -0,0 +1,41 @@
+package com.keycloak.event.trace;
+
+import com.keycloak.event.config.WebhookConfig;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import lombok.extern.slf4j.Slf4j;
+
+/** Selects the {@link SpanExporter} named by the WEBHOOK_SPAN_EXPORTER setting. */
+@Slf4j
+public final class SpanExporters {
+
+  private SpanExporters() {}
+
+  /**
+   * Returns the configured exporter.
+   *
+   * @param classLoader The class loader to discover exporters with
+   * @return The exporter, {@link SpanExporter#NOOP} if none is configured or it cannot be found
+   */
+  public static SpanExporter fromConfig(ClassLoader classLoader) {
+    String name = WebhookConfig.getSetting(WebhookConfig.SPAN_EXPORTER);
+    if (name == null || name.equalsIgnoreCase(SpanExporter.NOOP.getName())) {
+      return SpanExporter.NOOP;
+    }
+    if (name.equalsIgnoreCase(LogSpanExporter.NAME)) {
+      return new LogSpanExporter();
+    }
+    try {
+      for (SpanExporter exporter : ServiceLoader.load(SpanExporter.class, classLoader)) {
+        if (name.equalsIgnoreCase(exporter.getName())) {
+          log.info("Exporting webhook delivery spans with {}", exporter.getClass().getName());
+          return exporter;
+        }
+      }
+    } catch (ServiceConfigurationError e) {
+      log.error("Failed to load span exporters: {}", e.getMessage(), e);
+    }
+    log.warn("Unknown {} '{}', not exporting spans", WebhookConfig.SPAN_EXPORTER, name);
+    return SpanExporter.NOOP;
+  }
+}
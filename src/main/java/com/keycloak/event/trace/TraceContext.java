@@ -0,0 +1,154 @@
+package com.keycloak.event.trace;
+
+import jakarta.ws.rs.core.HttpHeaders;
+import java.util.concurrent.ThreadLocalRandom;
+import lombok.Getter;
+import org.keycloak.models.KeycloakContext;
+import org.keycloak.models.KeycloakSession;
+
+/**
+ * W3C Trace Context of the request that produced an event, as received in its {@code traceparent}
+ * and {@code tracestate} headers. Webhook calls for the event continue the trace: each call is sent
+ * as a child span of the request, with a span id of its own.
+ */
+@Getter
+public final class TraceContext {
+
+  /** Name of the header carrying the trace and parent span ids */
+  public static final String TRACEPARENT = "traceparent";
+
+  /** Name of the header carrying vendor-specific trace state */
+  public static final String TRACESTATE = "tracestate";
+
+  /** Longest tracestate value passed on, as recommended by the specification */
+  static final int MAX_TRACESTATE_LENGTH = 512;
+
+  private static final String VERSION = "00";
+  private static final int TRACEPARENT_LENGTH = 55;
+
+  /** The trace id, 32 lowercase hex digits */
+  private final String traceId;
+
+  /** The span id of the incoming request, 16 lowercase hex digits */
+  private final String parentId;
+
+  /** The trace flags, 2 lowercase hex digits */
+  private final String flags;
+
+  /** The tracestate header, null if absent */
+  private final String traceState;
+
+  private TraceContext(String traceId, String parentId, String flags, String traceState) {
+    this.traceId = traceId;
+    this.parentId = parentId;
+    this.flags = flags;
+    this.traceState = traceState;
+  }
+
+  /**
+   * Parses the trace context headers of a request.
+   *
+   * @param traceparent The traceparent header, may be null
+   * @param tracestate The tracestate header, may be null
+   * @return The trace context, or null if the traceparent header is absent or invalid
+   */
+  public static TraceContext parse(String traceparent, String tracestate) {
+    if (traceparent == null) {
+      return null;
+    }
+    String value = traceparent.trim();
+    if (value.length() < TRACEPARENT_LENGTH
+        || value.charAt(2) != '-'
+        || value.charAt(35) != '-'
+        || value.charAt(52) != '-') {
+      return null;
+    }
+    String version = value.substring(0, 2);
+    if (!isHex(version) || version.equals("ff")) {
+      return null;
+    }
+    // Version 00 has exactly four fields; later versions may append more
+    if (value.length() > TRACEPARENT_LENGTH
+        && (version.equals(VERSION) || value.charAt(TRACEPARENT_LENGTH) != '-')) {
+      return null;
+    }
+    String traceId = value.substring(3, 35);
+    String parentId = value.substring(36, 52);
+    String flags = value.substring(53, 55);
+    if (!isHex(traceId) || isZero(traceId) || !isHex(parentId) || isZero(parentId)) {
+      return null;
+    }
+    if (!isHex(flags)) {
+      return null;
+    }
+    String state = tracestate != null ? tracestate.trim() : "";
+    return new TraceContext(
+        traceId,
+        parentId,
+        flags,
+        state.isEmpty() || state.length() > MAX_TRACESTATE_LENGTH ? null : state);
+  }
+
+  /**
+   * Reads the trace context of the HTTP request a session is serving.
+   *
+   * @param session The Keycloak session
+   * @return The trace context, or null if there is no request or it carries no valid trace context
+   */
+  public static TraceContext current(KeycloakSession session) {
+    try {
+      KeycloakContext context = session.getContext();
+      HttpHeaders headers = context != null ? context.getRequestHeaders() : null;
+      if (headers == null) {
+        return null;
+      }
+      return parse(headers.getHeaderString(TRACEPARENT), headers.getHeaderString(TRACESTATE));
+    } catch (RuntimeException e) {
+      // Sessions of background tasks have no request
+      return null;
+    }
+  }
+
+  /**
+   * Returns the traceparent header of a call made as a child span of the request.
+   *
+   * @param spanId The span id of the call
+   * @return The header value
+   */
+  public String traceparent(String spanId) {
+    return VERSION + "-" + traceId + "-" + spanId + "-" + flags;
+  }
+
+  /**
+   * Generates a random span id.
+   *
+   * @return 16 lowercase hex digits, not all zero
+   */
+  public static String newSpanId() {
+    long id;
+    do {
+      id = ThreadLocalRandom.current().nextLong();
+    } while (id == 0);
+    String hex = Long.toHexString(id);
+    return "0".repeat(16 - hex.length()) + hex;
+  }
+
+  private static boolean isHex(String value) {
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isZero(String value) {
+    for (int i = 0; i < value.length(); i++) {
+      if (value.charAt(i) != '0') {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -1,9 +1,19 @@
 package com.keycloak.event.util;
 
+import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.keycloak.event.jfr.SerializationEvent;
+import java.util.Collections;
+import java.util.Map;
 import lombok.extern.slf4j.Slf4j;
+import org.keycloak.events.Event;
+import org.keycloak.events.EventType;
+import org.keycloak.events.admin.AdminEvent;
+import org.keycloak.events.admin.AuthDetails;
+import org.keycloak.events.admin.OperationType;
+import org.keycloak.events.admin.ResourceType;
 
 /**
  * Utility class for JSON operations. Provides methods for serializing objects to JSON and creating
@@ -20,11 +30,43 @@ public class JsonUtil {
   /** Event type for admin events */
   public static final String ADMIN_EVENT_TYPE = "ADMIN_EVENT";
 
+  /** Event type for alerts derived from other events */
+  public static final String ALERT_TYPE = "ALERT";
+
+  /** Field of the wrapper holding the fields added by enrichment */
+  public static final String ENRICHMENT_FIELD = "enrichment";
+
   /** Private constructor to prevent instantiation */
   private JsonUtil() {
     // Utility class, no instantiation
   }
 
+  /**
+   * Returns a copy of the JSON object mapper, with all its configuration, that writes through
+   * another factory. Used by the binary {@link PayloadFormat}s so every format serializes events
+   * the same way.
+   *
+   * @param factory The factory of the target format
+   * @return A new mapper
+   */
+  static ObjectMapper copyMapper(JsonFactory factory) {
+    return OBJECT_MAPPER.copyWith(factory);
+  }
+
+  /**
+   * Creates the event wrapper as a tree: an object with the eventType field and the event.
+   *
+   * @param eventType The type of event (USER_EVENT or ADMIN_EVENT)
+   * @param event The event object to wrap
+   * @return The wrapper node
+   */
+  public static ObjectNode createEventTree(String eventType, Object event) {
+    ObjectNode wrapper = OBJECT_MAPPER.createObjectNode();
+    wrapper.put("eventType", eventType);
+    wrapper.set("event", OBJECT_MAPPER.valueToTree(event));
+    return wrapper;
+  }
+
   /**
    * Creates a JSON wrapper for a Keycloak event. The wrapper includes an eventType field to
    * distinguish between user and admin events.
@@ -36,11 +78,42 @@ public class JsonUtil {
    */
   public static String createEventWrapper(String eventType, Object event)
       throws JsonProcessingException {
-    ObjectNode wrapper = OBJECT_MAPPER.createObjectNode();
-    wrapper.put("eventType", eventType);
-    wrapper.set("event", OBJECT_MAPPER.valueToTree(event));
+    return serialize(eventType, createEventTree(eventType, event));
+  }
 
-    return OBJECT_MAPPER.writeValueAsString(wrapper);
+  /**
+   * Creates a JSON wrapper for a Keycloak event with an additional {@value #ENRICHMENT_FIELD}
+   * object, which is omitted when there is nothing to add.
+   *
+   * @param eventType The type of event (USER_EVENT or ADMIN_EVENT)
+   * @param event The event object to wrap
+   * @param enrichment Names looked up for the ids of the event, may be empty
+   * @return JSON string representation of the wrapped event
+   * @throws JsonProcessingException If the event cannot be serialized to JSON
+   */
+  public static String createEventWrapper(
+      String eventType, Object event, Map<String, String> enrichment)
+      throws JsonProcessingException {
+    return serialize(eventType, createEventTree(eventType, event, enrichment));
+  }
+
+  /**
+   * Creates the event wrapper as a tree with an additional {@value #ENRICHMENT_FIELD} object, which
+   * is omitted when there is nothing to add.
+   *
+   * @param eventType The type of event (USER_EVENT or ADMIN_EVENT)
+   * @param event The event object to wrap
+   * @param enrichment Names looked up for the ids of the event, may be empty
+   * @return The wrapper node
+   */
+  public static ObjectNode createEventTree(
+      String eventType, Object event, Map<String, String> enrichment) {
+    ObjectNode wrapper = createEventTree(eventType, event);
+    if (!enrichment.isEmpty()) {
+      ObjectNode fields = wrapper.putObject(ENRICHMENT_FIELD);
+      enrichment.forEach(fields::put);
+    }
+    return wrapper;
   }
 
   /**
@@ -53,4 +126,53 @@ public class JsonUtil {
   public static String toJson(Object object) throws JsonProcessingException {
     return OBJECT_MAPPER.writeValueAsString(object);
   }
+
+  /**
+   * Serializes a representative {@link Event} and {@link AdminEvent} so Jackson introspects and
+   * caches their serializers at startup instead of during the first logins.
+   *
+   * @return The time spent priming, in milliseconds
+   */
+  public static long primeSerializers() {
+    long start = System.nanoTime();
+    Event event = new Event();
+    event.setType(EventType.LOGIN);
+    event.setTime(System.currentTimeMillis());
+    event.setRealmId("warm-up");
+    event.setUserId("warm-up");
+    event.setDetails(Collections.singletonMap("warm-up", "true"));
+
+    AuthDetails authDetails = new AuthDetails();
+    authDetails.setRealmId("warm-up");
+    AdminEvent adminEvent = new AdminEvent();
+    adminEvent.setOperationType(OperationType.UPDATE);
+    adminEvent.setResourceType(ResourceType.USER);
+    adminEvent.setAuthDetails(authDetails);
+    adminEvent.setRealmId("warm-up");
+    adminEvent.setResourcePath("users/warm-up");
+    adminEvent.setRepresentation("{}");
+    try {
+      createEventWrapper(USER_EVENT_TYPE, event);
+      createEventWrapper(ADMIN_EVENT_TYPE, adminEvent);
+    } catch (JsonProcessingException e) {
+      log.warn("Failed to prime JSON serializers: {}", e.getMessage());
+    }
+    long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+    log.info("Primed JSON serializers for Event and AdminEvent in {} ms", elapsedMillis);
+    return elapsedMillis;
+  }
+
+  /** Writes a wrapper tree, recorded as a {@link SerializationEvent}. */
+  private static String serialize(String eventType, ObjectNode tree)
+      throws JsonProcessingException {
+    SerializationEvent recording = new SerializationEvent();
+    recording.begin();
+    String json = OBJECT_MAPPER.writeValueAsString(tree);
+    if (recording.shouldCommit()) {
+      recording.eventType = eventType;
+      recording.length = json.length();
+      recording.commit();
+    }
+    return json;
+  }
 }
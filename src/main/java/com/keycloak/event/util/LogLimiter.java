@@ -0,0 +1,93 @@
+package com.keycloak.event.util;
+
+import com.keycloak.event.config.WebhookConfig;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collapses repeated identical log messages. The first message of a key is logged, repeats within
+ * the interval are only counted, and the next message after the interval is logged with the number
+ * of repeats it stands for. During an outage every event fails the same way, so this keeps one line
+ * per endpoint and error per interval instead of one per event.
+ *
+ * <p>At most {@value #MAX_KEYS} keys are tracked; when more appear the counts start over.
+ */
+public class LogLimiter {
+
+  /** Limiter shared by the error logs of the delivery path */
+  public static final LogLimiter ERRORS =
+      new LogLimiter(
+          WebhookConfig.getLong(
+              WebhookConfig.ERROR_LOG_INTERVAL_MS, WebhookConfig.DEFAULT_ERROR_LOG_INTERVAL_MS));
+
+  /** Maximum number of keys tracked */
+  static final int MAX_KEYS = 1024;
+
+  private final long intervalNanos;
+  private final Map<String, Window> windows = new ConcurrentHashMap<>();
+
+  /**
+   * Creates a limiter.
+   *
+   * @param intervalMillis The minimum interval between two logs of the same key, 0 to log all
+   */
+  public LogLimiter(long intervalMillis) {
+    this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, intervalMillis));
+  }
+
+  /**
+   * Decides whether a message should be logged now.
+   *
+   * @param key Identifies identical messages, such as the endpoint and the error
+   * @return The number of repeats suppressed since the key was last logged, or -1 if this message
+   *     should be suppressed as well
+   */
+  public long admit(String key) {
+    return admit(key, System.nanoTime());
+  }
+
+  long admit(String key, long now) {
+    if (intervalNanos == 0) {
+      return 0;
+    }
+    Window window = windows.get(key);
+    if (window == null) {
+      if (windows.size() >= MAX_KEYS) {
+        windows.clear();
+      }
+      window = new Window(now + intervalNanos);
+      Window existing = windows.putIfAbsent(key, window);
+      if (existing == null) {
+        return 0;
+      }
+      window = existing;
+    }
+    long next = window.next.get();
+    if (now - next >= 0 && window.next.compareAndSet(next, now + intervalNanos)) {
+      return window.suppressed.getAndSet(0);
+    }
+    window.suppressed.incrementAndGet();
+    return -1;
+  }
+
+  /**
+   * Describes a count returned by {@link #admit(String)} for appending to the logged message.
+   *
+   * @param suppressed The number of suppressed repeats
+   * @return An empty string if nothing was suppressed, otherwise the count in parentheses
+   */
+  public static String repeats(long suppressed) {
+    return suppressed > 0 ? " (repeated " + suppressed + " more time(s))" : "";
+  }
+
+  private static final class Window {
+    private final AtomicLong next;
+    private final AtomicLong suppressed = new AtomicLong();
+
+    private Window(long next) {
+      this.next = new AtomicLong(next);
+    }
+  }
+}
@@ -0,0 +1,82 @@
+package com.keycloak.event.util;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.keycloak.event.config.WebhookConfig;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import lombok.Getter;
+
+/**
+ * Wire format of the event payload sent to an endpoint, selected with the {@code format} endpoint
+ * option. Every format carries the same envelope produced by {@link JsonUtil} and uses an {@link
+ * ObjectMapper} with the same configuration; only the encoding differs.
+ *
+ * <p>Events are serialized to JSON once and queued as JSON text. Binary formats are produced at
+ * delivery time by a streaming copy from a JSON parser to a Smile or CBOR generator, which builds
+ * no intermediate tree.
+ */
+public enum PayloadFormat {
+  /** JSON text, the default */
+  JSON(WebhookConfig.CONTENT_TYPE, new JsonFactory()),
+
+  /** Jackson Smile, a binary JSON encoding with back-references for repeated names and values */
+  SMILE("application/x-jackson-smile", new SmileFactory()),
+
+  /** CBOR (RFC 8949) */
+  CBOR("application/cbor", new CBORFactory());
+
+  /** Endpoint option selecting the format */
+  public static final String OPTION = "format";
+
+  /** The Content-Type header value of this format */
+  @Getter private final String contentType;
+
+  /** Object mapper writing this format, configured like the JSON mapper */
+  @Getter private final ObjectMapper mapper;
+
+  PayloadFormat(String contentType, JsonFactory factory) {
+    this.contentType = contentType;
+    this.mapper = JsonUtil.copyMapper(factory);
+  }
+
+  /**
+   * Parses a format name, case-insensitively.
+   *
+   * @param value The format name, may be null
+   * @return The format, {@link #JSON} if the value is null
+   * @throws IllegalArgumentException If the name is unknown
+   */
+  public static PayloadFormat fromString(String value) {
+    if (value == null || value.trim().isEmpty()) {
+      return JSON;
+    }
+    return valueOf(value.trim().toUpperCase(Locale.ROOT));
+  }
+
+  /**
+   * Encodes a JSON payload in this format.
+   *
+   * @param json The JSON payload
+   * @return The encoded bytes
+   * @throws IOException If the payload is not valid JSON
+   */
+  public byte[] encode(String json) throws IOException {
+    if (this == JSON) {
+      return json.getBytes(StandardCharsets.UTF_8);
+    }
+    ByteArrayOutputStream out = new ByteArrayOutputStream(json.length());
+    try (JsonParser parser = JSON.mapper.getFactory().createParser(json);
+        JsonGenerator generator = mapper.getFactory().createGenerator(out)) {
+      parser.nextToken();
+      generator.copyCurrentStructure(parser);
+    }
+    return out.toByteArray();
+  }
+}
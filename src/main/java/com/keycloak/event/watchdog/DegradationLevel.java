@@ -0,0 +1,34 @@
+package com.keycloak.event.watchdog;
+
+/**
+ * How much work onEvent hands off while the bridge is over its latency budget. Each level includes
+ * the measures of the levels before it.
+ */
+public enum DegradationLevel {
+  /** Events are serialized and queued inside onEvent. */
+  NORMAL,
+  /** User events are serialized by the delivery workers instead of inside onEvent. */
+  DEFER,
+  /** Additionally, only a sample of the low-priority event types is kept. */
+  SAMPLE,
+  /** Additionally, producers never wait for queue space: BLOCK diverts to the spool. */
+  DIVERT;
+
+  /**
+   * Returns the next more degraded level.
+   *
+   * @return The next level, or this level if it is the last
+   */
+  DegradationLevel worse() {
+    return this == DIVERT ? DIVERT : values()[ordinal() + 1];
+  }
+
+  /**
+   * Returns the next less degraded level.
+   *
+   * @return The previous level, or this level if it is the first
+   */
+  DegradationLevel better() {
+    return this == NORMAL ? NORMAL : values()[ordinal() - 1];
+  }
+}
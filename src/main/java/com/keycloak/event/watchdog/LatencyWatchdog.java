@@ -0,0 +1,255 @@
+package com.keycloak.event.watchdog;
+
+import com.keycloak.event.config.WebhookConfig;
+import com.keycloak.event.delivery.PriorityClass;
+import com.keycloak.event.delivery.PriorityClasses;
+import com.keycloak.event.jfr.DropEvent;
+import com.keycloak.event.util.LatencyHistogram;
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keeps the time spent inside onEvent within a latency budget. onEvent records its duration in a
+ * rolling histogram; at the end of every window a background thread compares the configured
+ * percentile of the window with the budget and moves one {@link DegradationLevel} up when it is
+ * exceeded.
+ *
+ * <p>Recovery uses hysteresis so the level does not flap: the level only moves one step down after
+ * {@link #RECOVERY_WINDOWS} consecutive windows below {@link #RECOVERY_FRACTION} of the budget, or
+ * without any events. Windows with fewer than {@link #MIN_SAMPLES} events never raise the level.
+ *
+ * <p>Recording costs a few uncontended atomic increments. The rolling histogram is a pair of {@link
+ * LatencyHistogram}s that swap roles every window; values recorded while the previous one is being
+ * read may be counted in either window.
+ */
+@Slf4j
+public class LatencyWatchdog implements Closeable {
+
+  /** Fraction of the budget a window must stay below to count towards recovery */
+  public static final double RECOVERY_FRACTION = 0.5;
+
+  /** Consecutive windows with headroom needed to move one level down */
+  public static final int RECOVERY_WINDOWS = 3;
+
+  /** Events a window needs before it can raise the level */
+  public static final int MIN_SAMPLES = 20;
+
+  @Getter private final long budgetNanos;
+  @Getter private final double percentile;
+  @Getter private final long windowMillis;
+  @Getter private final double sampleRate;
+  @Getter private final Set<String> sampledTypes;
+
+  private final LatencyHistogram[] windows = {new LatencyHistogram(), new LatencyHistogram()};
+  private final LongAdder sampledOut = new LongAdder();
+  private final Thread thread;
+  private volatile int current;
+  private volatile DegradationLevel level = DegradationLevel.NORMAL;
+  private volatile long lastPercentileNanos;
+  private int goodWindows;
+  private volatile boolean running = true;
+
+  /**
+   * Creates a watchdog and starts evaluating windows.
+   *
+   * @param budgetNanos The budget for the percentile of onEvent, in nanoseconds
+   * @param percentile The percentile compared with the budget, for example 99
+   * @param windowMillis The length of a window in milliseconds
+   * @param sampleRate The fraction of low-priority events kept at {@link DegradationLevel#SAMPLE}
+   * @param sampledTypes The low-priority event and operation types
+   */
+  public LatencyWatchdog(
+      long budgetNanos,
+      double percentile,
+      long windowMillis,
+      double sampleRate,
+      Set<String> sampledTypes) {
+    this.budgetNanos = budgetNanos;
+    this.percentile = Math.min(100, Math.max(0, percentile));
+    this.windowMillis = Math.max(10, windowMillis);
+    this.sampleRate = Math.min(1, Math.max(0, sampleRate));
+    this.sampledTypes = Collections.unmodifiableSet(sampledTypes);
+    this.thread = new Thread(this::run, "webhook-latency-watchdog");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Creates a watchdog from the WEBHOOK_LATENCY_* settings. The low-priority types are those of the
+   * lowest priority class, unless that is the default class.
+   *
+   * @param priorityClasses The configured priority classes
+   * @return A started watchdog, or null if WEBHOOK_LATENCY_BUDGET_US is not set
+   */
+  public static LatencyWatchdog fromConfig(PriorityClasses priorityClasses) {
+    long budgetMicros = WebhookConfig.getLong(WebhookConfig.LATENCY_BUDGET_US, 0);
+    if (budgetMicros <= 0) {
+      return null;
+    }
+    List<PriorityClass> classes = priorityClasses.getClasses();
+    PriorityClass lowest = classes.get(classes.size() - 1);
+    Set<String> sampledTypes =
+        PriorityClasses.DEFAULT_CLASS.equals(lowest.getName())
+            ? Collections.emptySet()
+            : lowest.getTypes();
+    LatencyWatchdog watchdog =
+        new LatencyWatchdog(
+            TimeUnit.MICROSECONDS.toNanos(budgetMicros),
+            WebhookConfig.getDouble(
+                WebhookConfig.LATENCY_PERCENTILE, WebhookConfig.DEFAULT_LATENCY_PERCENTILE),
+            WebhookConfig.getLong(
+                WebhookConfig.LATENCY_WINDOW_MS, WebhookConfig.DEFAULT_LATENCY_WINDOW_MS),
+            WebhookConfig.getDouble(
+                WebhookConfig.LATENCY_SAMPLE_RATE, WebhookConfig.DEFAULT_LATENCY_SAMPLE_RATE),
+            sampledTypes);
+    log.info(
+        "Latency watchdog keeps p{} of onEvent under {} us, sampling {} at {}",
+        watchdog.percentile,
+        budgetMicros,
+        sampledTypes,
+        watchdog.sampleRate);
+    return watchdog;
+  }
+
+  /**
+   * Records the time spent in one onEvent call.
+   *
+   * @param nanos The duration in nanoseconds
+   */
+  public void record(long nanos) {
+    windows[current].record(nanos);
+  }
+
+  /**
+   * Returns the current level.
+   *
+   * @return The degradation level
+   */
+  public DegradationLevel getLevel() {
+    return level;
+  }
+
+  /**
+   * Returns whether user events should be serialized by the delivery workers.
+   *
+   * @return true from {@link DegradationLevel#DEFER} on
+   */
+  public boolean isDeferring() {
+    return level.compareTo(DegradationLevel.DEFER) >= 0;
+  }
+
+  /**
+   * Returns whether producers may wait for queue space.
+   *
+   * @return false at {@link DegradationLevel#DIVERT}
+   */
+  public boolean mayWait() {
+    return level != DegradationLevel.DIVERT;
+  }
+
+  /**
+   * Decides whether an event is processed or sampled out.
+   *
+   * @param type The Keycloak event or operation type
+   * @return false if the event should be skipped
+   */
+  public boolean admit(String type) {
+    if (level.compareTo(DegradationLevel.SAMPLE) < 0 || !sampledTypes.contains(type)) {
+      return true;
+    }
+    if (ThreadLocalRandom.current().nextDouble() < sampleRate) {
+      return true;
+    }
+    sampledOut.increment();
+    DropEvent recording = new DropEvent();
+    if (recording.isEnabled()) {
+      recording.type = type;
+      recording.reason = DegradationLevel.SAMPLE.name();
+      recording.commit();
+    }
+    return false;
+  }
+
+  /**
+   * Returns the number of events skipped by sampling.
+   *
+   * @return The sampled-out count
+   */
+  public long getSampledOut() {
+    return sampledOut.sum();
+  }
+
+  /**
+   * Returns the percentile measured in the last completed window.
+   *
+   * @return The percentile in nanoseconds, 0 if the window was empty
+   */
+  public long getLastPercentileNanos() {
+    return lastPercentileNanos;
+  }
+
+  /**
+   * Ends the current window, compares it with the budget and adjusts the level. Called by the
+   * watchdog thread every window.
+   *
+   * @return The new level
+   */
+  public synchronized DegradationLevel evaluate() {
+    int finished = current;
+    current = 1 - finished;
+    LatencyHistogram window = windows[finished];
+    long count = window.count();
+    long measured = window.percentile(percentile);
+    window.reset();
+    lastPercentileNanos = measured;
+
+    DegradationLevel previous = level;
+    if (count >= MIN_SAMPLES && measured > budgetNanos) {
+      goodWindows = 0;
+      level = previous.worse();
+    } else if (count == 0 || measured <= budgetNanos * RECOVERY_FRACTION) {
+      if (++goodWindows >= RECOVERY_WINDOWS) {
+        goodWindows = 0;
+        level = previous.better();
+      }
+    } else {
+      goodWindows = 0;
+    }
+    if (level != previous) {
+      log.warn(
+          "onEvent p{} was {} us against a budget of {} us over {} event(s), level {} -> {}",
+          percentile,
+          TimeUnit.NANOSECONDS.toMicros(measured),
+          TimeUnit.NANOSECONDS.toMicros(budgetNanos),
+          count,
+          previous,
+          level);
+    }
+    return level;
+  }
+
+  /** Stops evaluating windows. */
+  @Override
+  public void close() {
+    running = false;
+    thread.interrupt();
+  }
+
+  private void run() {
+    while (running) {
+      try {
+        Thread.sleep(windowMillis);
+      } catch (InterruptedException e) {
+        return;
+      }
+      evaluate();
+    }
+  }
+}
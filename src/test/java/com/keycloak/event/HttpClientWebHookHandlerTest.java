@@ -4,19 +4,42 @@ import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
 
+import com.keycloak.event.auth.HmacSignatureAuth;
 import com.keycloak.event.config.WebhookConfig;
+import com.keycloak.event.delivery.DeliveryReport;
+import com.keycloak.event.delivery.DeliveryTask;
+import com.keycloak.event.delivery.ErrorCategory;
+import com.keycloak.event.delivery.Hedger;
+import com.keycloak.event.endpoint.WebhookEndpoint;
 import com.keycloak.event.exception.WebhookMultiException;
+import com.keycloak.event.sink.HttpSink;
+import com.keycloak.event.sink.WebhookSink;
+import com.keycloak.event.sink.WebhookSinkFactory;
+import com.keycloak.event.trace.DeliverySpan;
+import com.keycloak.event.trace.DeliveryTrace;
+import com.keycloak.event.trace.SpanExporter;
+import com.keycloak.event.trace.TraceContext;
+import com.keycloak.event.util.PayloadFormat;
 import java.io.IOException;
+import java.net.ConnectException;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
@@ -78,6 +101,261 @@ public class HttpClientWebHookHandlerTest {
     assertEquals(expectedUrls, webHookHandler.getWebhookUrls());
   }
 
+  @Test
+  public void testConstructorParsesEndpointOptions() {
+    System.setProperty(
+        WebhookConfig.WEBHOOK_URLS, "http://example.com/webhook;header.X-Api-Key=secret");
+    webHookHandler = new HttpClientWebHookHandler(httpClient);
+
+    assertEquals(Arrays.asList("http://example.com/webhook"), webHookHandler.getWebhookUrls());
+    assertEquals("secret", webHookHandler.getEndpoints().get(0).getHeaders().get("X-Api-Key"));
+  }
+
+  @Test
+  public void testSendUsesPreparedEndpointHeaders() throws Exception {
+    System.setProperty(
+        WebhookConfig.WEBHOOK_URLS, "http://example.com/webhook;header.X-Api-Key=secret");
+    webHookHandler = new HttpClientWebHookHandler(httpClient);
+    when(httpResponse.statusCode()).thenReturn(200);
+    when(httpClient.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class)))
+        .thenReturn(httpResponse);
+
+    webHookHandler.sendToWebhook("http://example.com/webhook", testPayload);
+
+    ArgumentCaptor<HttpRequest> requestCaptor = ArgumentCaptor.forClass(HttpRequest.class);
+    verify(httpClient).send(requestCaptor.capture(), any());
+    assertEquals("secret", requestCaptor.getValue().headers().firstValue("X-Api-Key").orElse(null));
+  }
+
+  @Test
+  public void testSmileEndpointSendsBinaryBody() throws Exception {
+    webHookHandler =
+        new HttpClientWebHookHandler(
+            httpClient, WebhookEndpoint.parseAll("http://example.com/webhook;format=smile", null));
+    when(httpResponse.statusCode()).thenReturn(200);
+    when(httpClient.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class)))
+        .thenReturn(httpResponse);
+
+    webHookHandler.sendEventToAllWebhooks(testPayload);
+
+    ArgumentCaptor<HttpRequest> requestCaptor = ArgumentCaptor.forClass(HttpRequest.class);
+    verify(httpClient).send(requestCaptor.capture(), any());
+    HttpRequest request = requestCaptor.getValue();
+    assertEquals(
+        "application/x-jackson-smile", request.headers().firstValue("Content-Type").orElse(null));
+    assertEquals(
+        PayloadFormat.SMILE.encode(testPayload).length,
+        request.bodyPublisher().orElseThrow().contentLength());
+  }
+
+  @Test
+  public void testAuthenticatedEndpointsSignOrCarryTheirHeader() throws Exception {
+    webHookHandler =
+        new HttpClientWebHookHandler(
+            httpClient,
+            WebhookEndpoint.parseAll(
+                "http://keyed.example.com;auth=header;authHeader=X-Api-Key;authValue=k1,"
+                    + "http://signed.example.com;auth=hmac;hmacSecret=s3cret",
+                null));
+    when(httpResponse.statusCode()).thenReturn(200);
+    when(httpClient.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class)))
+        .thenReturn(httpResponse);
+
+    webHookHandler.sendEventToAllWebhooks(testPayload);
+
+    ArgumentCaptor<HttpRequest> requestCaptor = ArgumentCaptor.forClass(HttpRequest.class);
+    verify(httpClient, times(2)).send(requestCaptor.capture(), any());
+    HttpRequest keyed = requestCaptor.getAllValues().get(0);
+    assertEquals("k1", keyed.headers().firstValue("X-Api-Key").orElse(null));
+    HttpRequest signed = requestCaptor.getAllValues().get(1);
+    String timestamp =
+        signed.headers().firstValue(HmacSignatureAuth.TIMESTAMP_HEADER).orElseThrow();
+    assertEquals(
+        HmacSignatureAuth.SIGNATURE_PREFIX
+            + new HmacSignatureAuth("unused", "s3cret", System::currentTimeMillis)
+                .sign(timestamp, testPayload.getBytes(StandardCharsets.UTF_8)),
+        signed.headers().firstValue(HmacSignatureAuth.DEFAULT_HEADER).orElse(null));
+    assertFalse(keyed.headers().firstValue(HmacSignatureAuth.DEFAULT_HEADER).isPresent());
+  }
+
+  @Test
+  public void testBalancedGroupEjectsFailingMember() throws Exception {
+    webHookHandler =
+        new HttpClientWebHookHandler(
+            httpClient,
+            WebhookEndpoint.parseAll(
+                "http://r1.example.com;group=g,http://r2.example.com;group=g", null));
+    when(httpResponse.statusCode()).thenReturn(200);
+    when(httpClient.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class)))
+        .thenAnswer(
+            invocation -> {
+              HttpRequest request = invocation.getArgument(0);
+              if (request.uri().getHost().equals("r1.example.com")) {
+                throw new IOException("Connection refused");
+              }
+              return httpResponse;
+            });
+
+    // Each event goes to one member; r1 is ejected after three failures
+    int failures = 0;
+    for (int i = 0; i < 10; i++) {
+      try {
+        webHookHandler.sendEventToAllWebhooks(testPayload);
+      } catch (IOException e) {
+        failures++;
+      }
+    }
+
+    assertEquals(WebhookConfig.DEFAULT_GROUP_EJECT_AFTER, failures);
+    assertTrue(webHookHandler.getBalancer().getMember("http://r1.example.com").isEjected());
+    verify(httpClient, times(10)).send(any(HttpRequest.class), any());
+    assertFalse(webHookHandler.probe(WebhookEndpoint.parse("http://r1.example.com", null)));
+  }
+
+  @Test
+  public void testSlowMemberIsHedgedAtAnotherMember() throws Exception {
+    webHookHandler =
+        new HttpClientWebHookHandler(
+            httpClient,
+            WebhookEndpoint.parseAll(
+                "http://r1.example.com;group=g;hedge=1,http://r2.example.com;group=g", null));
+    WebhookEndpoint r1 = webHookHandler.getRegistry().current().find("http://r1.example.com");
+    when(httpResponse.statusCode()).thenReturn(200);
+    when(httpClient.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class)))
+        .thenReturn(httpResponse);
+    // Without enough samples, deliveries are not hedged
+    for (int i = 0; i < Hedger.MIN_SAMPLES; i++) {
+      webHookHandler.send(r1, testPayload);
+    }
+    verify(httpClient, never()).sendAsync(any(), any());
+
+    // r1 never answers now, r2 answers at once
+    CompletableFuture<HttpResponse<String>> stalled = new CompletableFuture<>();
+    List<HttpRequest> requests = new ArrayList<>();
+    when(httpClient.sendAsync(any(HttpRequest.class), any(HttpResponse.BodyHandler.class)))
+        .thenAnswer(
+            invocation -> {
+              HttpRequest request = invocation.getArgument(0);
+              requests.add(request);
+              return request.uri().getHost().equals("r1.example.com")
+                  ? stalled
+                  : CompletableFuture.completedFuture(httpResponse);
+            });
+
+    DeliveryReport.Result result = webHookHandler.attempt(r1, testPayload);
+
+    assertTrue(result.isDelivered());
+    assertEquals("http://r2.example.com", result.getUrl());
+    assertTrue(stalled.isCancelled());
+    assertEquals(2, requests.size());
+    String key =
+        requests.get(0).headers().firstValue(HttpSink.IDEMPOTENCY_KEY_HEADER).orElseThrow();
+    assertEquals(
+        key, requests.get(1).headers().firstValue(HttpSink.IDEMPOTENCY_KEY_HEADER).orElseThrow());
+    assertEquals(1, webHookHandler.getHedger().getHedgeCount());
+    assertEquals(1, webHookHandler.getHedger().getWinCount());
+    assertEquals(
+        0, webHookHandler.getBalancer().getMember("http://r1.example.com").getOutstanding());
+    assertEquals(
+        0, webHookHandler.getBalancer().getMember("http://r2.example.com").getOutstanding());
+  }
+
+  @Test
+  public void testTaskSkipsEndpointsNotTakingEventType() throws Exception {
+    webHookHandler =
+        new HttpClientWebHookHandler(
+            httpClient,
+            WebhookEndpoint.parseAll(
+                "http://all.example.com,http://alerts.example.com;events=ALERT", null));
+    when(httpResponse.statusCode()).thenReturn(200);
+    when(httpClient.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class)))
+        .thenReturn(httpResponse);
+
+    assertTrue(webHookHandler.hasEventTypeFilters());
+    webHookHandler.sendEventToAllWebhooks(new DeliveryTask("USER_EVENT", "LOGIN", testPayload));
+
+    ArgumentCaptor<HttpRequest> requestCaptor = ArgumentCaptor.forClass(HttpRequest.class);
+    verify(httpClient).send(requestCaptor.capture(), any());
+    assertEquals("all.example.com", requestCaptor.getValue().uri().getHost());
+  }
+
+  @Test
+  public void testPrewarmConnections() {
+    System.setProperty(
+        WebhookConfig.WEBHOOK_URLS, "http://example.com/webhook,http://example.org/webhook");
+    webHookHandler = new HttpClientWebHookHandler(httpClient);
+    when(httpClient.sendAsync(any(HttpRequest.class), any(HttpResponse.BodyHandler.class)))
+        .thenAnswer(
+            invocation -> {
+              HttpRequest request = invocation.getArgument(0);
+              return request.uri().getHost().equals("example.com")
+                  ? CompletableFuture.completedFuture(null)
+                  : CompletableFuture.failedFuture(new IOException("Connection refused"));
+            });
+
+    // One endpoint answers, the failure of the other is tolerated
+    assertEquals(1, webHookHandler.prewarmConnections(1000));
+
+    ArgumentCaptor<HttpRequest> requestCaptor = ArgumentCaptor.forClass(HttpRequest.class);
+    verify(httpClient, times(2)).sendAsync(requestCaptor.capture(), any());
+    assertEquals("HEAD", requestCaptor.getValue().method());
+  }
+
+  @Test
+  public void testFileEndpointUsesFileSink(@TempDir Path dir) throws Exception {
+    Path file = dir.resolve("events.ndjson");
+    webHookHandler =
+        new HttpClientWebHookHandler(
+            httpClient, WebhookEndpoint.parseAll(file.toUri() + ";sync=true", null));
+
+    webHookHandler.sendEventToAllWebhooks(testPayload);
+    webHookHandler.close();
+
+    assertEquals(List.of(testPayload), Files.readAllLines(file));
+    verifyNoInteractions(httpClient);
+  }
+
+  @Test
+  public void testCustomSinkFactory() throws Exception {
+    List<String> received = new ArrayList<>();
+    webHookHandler =
+        new HttpClientWebHookHandler(httpClient, WebhookEndpoint.parseAll("memory://queue", null));
+    webHookHandler.registerSinkFactory(
+        new WebhookSinkFactory() {
+          @Override
+          public List<String> getSchemes() {
+            return List.of("memory");
+          }
+
+          @Override
+          public WebhookSink create(WebhookEndpoint endpoint) {
+            return new WebhookSink() {
+              @Override
+              public WebhookEndpoint getEndpoint() {
+                return endpoint;
+              }
+
+              @Override
+              public void send(String payload) {
+                received.add(payload);
+              }
+            };
+          }
+        });
+
+    webHookHandler.sendEventToAllWebhooks(testPayload);
+
+    assertEquals(List.of(testPayload), received);
+  }
+
+  @Test
+  public void testUnsupportedSchemeFails() {
+    webHookHandler =
+        new HttpClientWebHookHandler(httpClient, WebhookEndpoint.parseAll("ftp://files", null));
+
+    assertThrows(IOException.class, () -> webHookHandler.sendEventToAllWebhooks(testPayload));
+  }
+
   @Test
   public void testSendEventToAllWebhooksWithNoUrls() throws Exception {
     webHookHandler = new HttpClientWebHookHandler(httpClient);
@@ -178,13 +456,28 @@ public class HttpClientWebHookHandlerTest {
 
     // First URL succeeds, second fails with HTTP error, third fails with network error
     when(httpClient.send(
-            argThat(req -> req != null && req.uri() != null && req.uri().toString().equals("http://example.com/webhook1")), any()))
+            argThat(
+                req ->
+                    req != null
+                        && req.uri() != null
+                        && req.uri().toString().equals("http://example.com/webhook1")),
+            any()))
         .thenAnswer(invocation -> successResponse);
     when(httpClient.send(
-            argThat(req -> req != null && req.uri() != null && req.uri().toString().equals("http://example.com/webhook2")), any()))
+            argThat(
+                req ->
+                    req != null
+                        && req.uri() != null
+                        && req.uri().toString().equals("http://example.com/webhook2")),
+            any()))
         .thenAnswer(invocation -> errorResponse);
     when(httpClient.send(
-            argThat(req -> req != null && req.uri() != null && req.uri().toString().equals("http://example.com/webhook3")), any()))
+            argThat(
+                req ->
+                    req != null
+                        && req.uri() != null
+                        && req.uri().toString().equals("http://example.com/webhook3")),
+            any()))
         .thenThrow(new IOException("Connection refused"));
 
     // Send event and expect WebhookMultiException
@@ -201,4 +494,143 @@ public class HttpClientWebHookHandlerTest {
     assertTrue(
         multiException.getMessage().contains("Multiple webhook failures occurred (2/3 failed)"));
   }
+
+  @Test
+  public void testDeliverReportsEachEndpointWithoutThrowing() throws Exception {
+    System.setProperty(
+        WebhookConfig.WEBHOOK_URLS,
+        "http://example.com/ok,http://example.com/missing,http://example.com/down");
+    webHookHandler = new HttpClientWebHookHandler(httpClient);
+
+    HttpResponse<String> okResponse = mock(HttpResponse.class);
+    when(okResponse.statusCode()).thenReturn(204);
+    HttpResponse<String> missingResponse = mock(HttpResponse.class);
+    when(missingResponse.statusCode()).thenReturn(404);
+    when(httpClient.send(any(HttpRequest.class), any()))
+        .thenAnswer(
+            invocation -> {
+              String uri = invocation.<HttpRequest>getArgument(0).uri().toString();
+              if (uri.endsWith("/down")) {
+                throw new ConnectException("Connection refused");
+              }
+              return uri.endsWith("/ok") ? okResponse : missingResponse;
+            });
+
+    DeliveryReport report = webHookHandler.deliver("realm", testPayload);
+
+    assertFalse(report.isDelivered());
+    assertEquals(2, report.getFailureCount());
+    List<DeliveryReport.Result> results = report.getResults();
+    assertEquals(ErrorCategory.NONE, results.get(0).getCategory());
+    assertTrue(results.get(0).isDelivered());
+    assertEquals(ErrorCategory.CLIENT_ERROR, results.get(1).getCategory());
+    assertEquals(404, results.get(1).getStatus());
+    assertEquals(0, results.get(1).getError().getStackTrace().length);
+    assertEquals(ErrorCategory.CONNECT, results.get(2).getCategory());
+    assertEquals("http://example.com/down", results.get(2).getUrl());
+    assertTrue(results.get(2).getLatencyNanos() >= 0);
+  }
+
+  @Test
+  public void testDeliverSkipsDestinationsThatTookTheTask() throws Exception {
+    System.setProperty(WebhookConfig.WEBHOOK_URLS, "http://example.com/ok,http://example.com/down");
+    webHookHandler = new HttpClientWebHookHandler(httpClient);
+    when(httpResponse.statusCode()).thenReturn(204);
+    List<String> sent = new ArrayList<>();
+    when(httpClient.send(any(HttpRequest.class), any()))
+        .thenAnswer(
+            invocation -> {
+              String uri = invocation.<HttpRequest>getArgument(0).uri().toString();
+              sent.add(uri);
+              if (uri.endsWith("/down")) {
+                throw new ConnectException("Connection refused");
+              }
+              return httpResponse;
+            });
+    DeliveryTask task = new DeliveryTask("USER_EVENT", "LOGIN", testPayload);
+    Set<String> delivered = new HashSet<>();
+
+    assertFalse(webHookHandler.deliver(task, delivered).isDelivered());
+    assertEquals(Set.of("http://example.com/ok"), delivered);
+    DeliveryReport retry = webHookHandler.deliver(task, delivered);
+
+    assertEquals(1, retry.getResults().size());
+    assertEquals("http://example.com/down", retry.getResults().get(0).getUrl());
+    assertEquals(
+        List.of("http://example.com/ok", "http://example.com/down", "http://example.com/down"),
+        sent);
+  }
+
+  @Test
+  public void testDeliverWithoutEndpointsReturnsEmptyReport() {
+    webHookHandler = new HttpClientWebHookHandler(httpClient);
+
+    DeliveryReport report = webHookHandler.deliver(null, testPayload);
+
+    assertTrue(report.isDelivered());
+    assertTrue(report.getResults().isEmpty());
+  }
+
+  @Test
+  public void testDeliverPropagatesTraceContextAndExportsSpan() throws Exception {
+    System.setProperty(WebhookConfig.WEBHOOK_URLS, "http://example.com/webhook");
+    webHookHandler = new HttpClientWebHookHandler(httpClient);
+    List<DeliverySpan> spans = new ArrayList<>();
+    webHookHandler.setSpanExporter(
+        new SpanExporter() {
+          @Override
+          public String getName() {
+            return "test";
+          }
+
+          @Override
+          public void export(DeliverySpan span) {
+            spans.add(span);
+          }
+        });
+    when(httpResponse.statusCode()).thenReturn(200);
+    ArgumentCaptor<HttpRequest> requestCaptor = ArgumentCaptor.forClass(HttpRequest.class);
+    when(httpClient.send(requestCaptor.capture(), any(HttpResponse.BodyHandler.class)))
+        .thenReturn(httpResponse);
+    DeliveryTask task =
+        DeliveryTask.builder()
+            .eventType("USER_EVENT")
+            .type("LOGIN")
+            .realmId("realm")
+            .payload(testPayload)
+            .build()
+            .withTrace(
+                TraceContext.parse(
+                    "00-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-01", "vendor=1"));
+
+    assertTrue(webHookHandler.deliver(task).isDelivered());
+
+    HttpRequest request = requestCaptor.getValue();
+    String traceparent = request.headers().firstValue(TraceContext.TRACEPARENT).orElseThrow();
+    assertTrue(traceparent.startsWith("00-4bf92f3577b34da6a3ce929d0e0e4736-"));
+    assertFalse(traceparent.contains("00f067aa0ba902b7"));
+    assertEquals("vendor=1", request.headers().firstValue(TraceContext.TRACESTATE).orElseThrow());
+    assertEquals(1, spans.size());
+    DeliverySpan span = spans.get(0);
+    assertEquals(traceparent.substring(36, 52), span.getSpanId());
+    assertEquals("00f067aa0ba902b7", span.getParentSpanId());
+    assertEquals(200, span.getStatus());
+    assertEquals(ErrorCategory.NONE, span.getCategory());
+    assertNull(DeliveryTrace.current());
+  }
+
+  @Test
+  public void testUntracedDeliverySendsNoTraceHeaders() throws Exception {
+    System.setProperty(WebhookConfig.WEBHOOK_URLS, "http://example.com/webhook");
+    webHookHandler = new HttpClientWebHookHandler(httpClient);
+    when(httpResponse.statusCode()).thenReturn(200);
+    ArgumentCaptor<HttpRequest> requestCaptor = ArgumentCaptor.forClass(HttpRequest.class);
+    when(httpClient.send(requestCaptor.capture(), any(HttpResponse.BodyHandler.class)))
+        .thenReturn(httpResponse);
+
+    webHookHandler.deliver(new DeliveryTask("USER_EVENT", "LOGIN", testPayload));
+
+    assertTrue(requestCaptor.getValue().headers().firstValue(TraceContext.TRACEPARENT).isEmpty());
+    assertSame(SpanExporter.NOOP, webHookHandler.getSpanExporter());
+  }
 }
@@ -44,6 +44,21 @@ class KeycloakEventListenerProviderFactoryTest {
         assertDoesNotThrow(() -> factory.init(config));
     }
 
+    @Test
+    void testCreateAfterInitUsesSharedDispatcher() {
+        System.setProperty("WEBHOOK_URLS", "http://localhost:9999/webhook");
+        try {
+            factory.init(config);
+
+            // Providers created after init share the factory's handler and dispatcher
+            EventListenerProvider provider = factory.create(session);
+            assertTrue(provider instanceof KeycloakEventListenerProvider);
+            assertDoesNotThrow(() -> factory.close());
+        } finally {
+            System.clearProperty("WEBHOOK_URLS");
+        }
+    }
+
     @Test
     void testPostInit() {
         // This method doesn't do much besides logging, so just verify it doesn't throw
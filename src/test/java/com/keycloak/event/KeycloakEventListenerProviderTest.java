@@ -5,15 +5,35 @@ import static org.mockito.Mockito.*;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.keycloak.event.delivery.DeliveryTask;
+import com.keycloak.event.delivery.WebhookDispatcher;
+import com.keycloak.event.detect.EventDetector;
+import com.keycloak.event.endpoint.EndpointRegistry;
+import com.keycloak.event.enrich.EventEnricher;
+import com.keycloak.event.feed.EventFeed;
+import com.keycloak.event.outbox.OutboxEventEntity;
+import com.keycloak.event.outbox.OutboxStore;
+import com.keycloak.event.trace.TraceContext;
+import com.keycloak.event.watchdog.LatencyWatchdog;
+import jakarta.persistence.EntityManager;
+import jakarta.ws.rs.core.HttpHeaders;
 import java.util.HashMap;
 import java.util.Map;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.keycloak.connections.jpa.JpaConnectionProvider;
 import org.keycloak.events.Event;
 import org.keycloak.events.EventType;
 import org.keycloak.events.admin.AdminEvent;
 import org.keycloak.events.admin.OperationType;
+import org.keycloak.events.admin.ResourceType;
+import org.keycloak.models.KeycloakContext;
 import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakTransaction;
+import org.keycloak.models.KeycloakTransactionManager;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.RealmProvider;
+import org.keycloak.models.UserProvider;
 import org.mockito.ArgumentCaptor;
 
 class KeycloakEventListenerProviderTest {
@@ -41,7 +61,7 @@ class KeycloakEventListenerProviderTest {
 
     // Capture the JSON payload sent to the webhook handler
     ArgumentCaptor<String> payloadCaptor = ArgumentCaptor.forClass(String.class);
-    verify(webHookHandler).sendEventToAllWebhooks(payloadCaptor.capture());
+    verify(webHookHandler).sendEventToAllWebhooks(any(), payloadCaptor.capture());
 
     // Verify the JSON structure
     String payload = payloadCaptor.getValue();
@@ -69,7 +89,7 @@ class KeycloakEventListenerProviderTest {
 
     // Capture the JSON payload sent to the webhook handler
     ArgumentCaptor<String> payloadCaptor = ArgumentCaptor.forClass(String.class);
-    verify(webHookHandler).sendEventToAllWebhooks(payloadCaptor.capture());
+    verify(webHookHandler).sendEventToAllWebhooks(any(), payloadCaptor.capture());
 
     // Verify the JSON structure
     String payload = payloadCaptor.getValue();
@@ -93,7 +113,7 @@ class KeycloakEventListenerProviderTest {
     provider.onEvent((Event) null);
 
     // Verify webhook handler was not called
-    verify(webHookHandler, never()).sendEventToAllWebhooks(anyString());
+    verify(webHookHandler, never()).sendEventToAllWebhooks(any(), anyString());
   }
 
   @Test
@@ -102,7 +122,7 @@ class KeycloakEventListenerProviderTest {
     provider.onEvent((AdminEvent) null, true);
 
     // Verify webhook handler was not called
-    verify(webHookHandler, never()).sendEventToAllWebhooks(anyString());
+    verify(webHookHandler, never()).sendEventToAllWebhooks(any(), anyString());
   }
 
   @Test
@@ -110,7 +130,7 @@ class KeycloakEventListenerProviderTest {
     // Setup webhook handler to throw exception
     doThrow(new RuntimeException("Test webhook error"))
         .when(webHookHandler)
-        .sendEventToAllWebhooks(anyString());
+        .sendEventToAllWebhooks(any(), anyString());
 
     // Create a real Event with some data
     Event event = createTestEvent();
@@ -119,7 +139,7 @@ class KeycloakEventListenerProviderTest {
     provider.onEvent(event);
 
     // Verify webhook handler was called
-    verify(webHookHandler).sendEventToAllWebhooks(anyString());
+    verify(webHookHandler).sendEventToAllWebhooks(any(), anyString());
   }
 
   @Test
@@ -127,7 +147,7 @@ class KeycloakEventListenerProviderTest {
     // Setup webhook handler to throw exception
     doThrow(new RuntimeException("Test webhook error"))
         .when(webHookHandler)
-        .sendEventToAllWebhooks(anyString());
+        .sendEventToAllWebhooks(any(), anyString());
 
     // Create a real AdminEvent with some data
     AdminEvent adminEvent = createTestAdminEvent();
@@ -136,7 +156,66 @@ class KeycloakEventListenerProviderTest {
     provider.onEvent(adminEvent, true);
 
     // Verify webhook handler was called
-    verify(webHookHandler).sendEventToAllWebhooks(anyString());
+    verify(webHookHandler).sendEventToAllWebhooks(any(), anyString());
+  }
+
+  @Test
+  void testDispatchedTaskContinuesRequestTrace() throws Exception {
+    WebhookDispatcher dispatcher = mock(WebhookDispatcher.class);
+    provider =
+        new KeycloakEventListenerProvider(
+            session,
+            ListenerSettings.builder()
+                .webHookHandler(webHookHandler)
+                .dispatcher(dispatcher)
+                .build());
+    KeycloakContext context = mock(KeycloakContext.class);
+    HttpHeaders headers = mock(HttpHeaders.class);
+    when(session.getContext()).thenReturn(context);
+    when(context.getRequestHeaders()).thenReturn(headers);
+    when(headers.getHeaderString(TraceContext.TRACEPARENT))
+        .thenReturn("00-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-01");
+
+    provider.onEvent(createTestEvent());
+
+    ArgumentCaptor<DeliveryTask> taskCaptor = ArgumentCaptor.forClass(DeliveryTask.class);
+    verify(dispatcher).dispatch(taskCaptor.capture());
+    DeliveryTask task = taskCaptor.getValue();
+    assertEquals("4bf92f3577b34da6a3ce929d0e0e4736", task.getTrace().getTraceId());
+    assertTrue(task.getSerializationNanos() > 0);
+    assertEquals("LOGIN", objectMapper.readTree(task.getPayload()).at("/event/type").asText());
+  }
+
+  @Test
+  void testOnEventWithDispatcherQueuesInsteadOfSending() throws Exception {
+    WebhookDispatcher dispatcher = mock(WebhookDispatcher.class);
+    provider =
+        new KeycloakEventListenerProvider(
+            session,
+            ListenerSettings.builder()
+                .webHookHandler(webHookHandler)
+                .dispatcher(dispatcher)
+                .build());
+
+    provider.onEvent(createTestEvent());
+    provider.onEvent(createTestAdminEvent(), true);
+
+    // Events are handed to the dispatcher and never sent inline
+    ArgumentCaptor<DeliveryTask> taskCaptor = ArgumentCaptor.forClass(DeliveryTask.class);
+    verify(dispatcher, times(2)).dispatch(taskCaptor.capture());
+    verify(webHookHandler, never()).sendEventToAllWebhooks(any(), anyString());
+
+    DeliveryTask userTask = taskCaptor.getAllValues().get(0);
+    assertEquals("USER_EVENT", userTask.getEventType());
+    assertEquals("LOGIN", userTask.getType());
+    assertEquals("test-user-id", userTask.getUserId());
+    assertEquals("test-realm", userTask.getRealmId());
+    assertEquals("LOGIN", objectMapper.readTree(userTask.getPayload()).at("/event/type").asText());
+
+    DeliveryTask adminTask = taskCaptor.getAllValues().get(1);
+    assertEquals("ADMIN_EVENT", adminTask.getEventType());
+    assertEquals("CREATE", adminTask.getType());
+    assertEquals("/admin/users/123", adminTask.getResourcePath());
   }
 
   @Test
@@ -145,6 +224,235 @@ class KeycloakEventListenerProviderTest {
     provider.close();
   }
 
+  @Test
+  void testRealmUpdateRefreshesRealmEndpoints() {
+    EndpointRegistry registry = new EndpointRegistry(null);
+    when(webHookHandler.getRegistry()).thenReturn(registry);
+    RealmModel realm = mock(RealmModel.class);
+    when(realm.getId()).thenReturn("test-realm");
+    when(realm.getAttribute(EndpointRegistry.REALM_ATTRIBUTE)).thenReturn("http://realm-hook");
+    RealmProvider realms = mock(RealmProvider.class);
+    when(realms.getRealm("test-realm")).thenReturn(realm);
+    when(session.realms()).thenReturn(realms);
+
+    AdminEvent adminEvent = createTestAdminEvent();
+    adminEvent.setOperationType(OperationType.UPDATE);
+    adminEvent.setResourceType(ResourceType.REALM);
+    provider.onEvent(adminEvent, false);
+
+    assertEquals(
+        "http://realm-hook", registry.current().endpointsFor("test-realm").get(0).getUrl());
+  }
+
+  @Test
+  void testEnricherAddsNamesToPayload() throws Exception {
+    RealmModel realm = mock(RealmModel.class);
+    when(realm.getName()).thenReturn("Test Realm");
+    RealmProvider realms = mock(RealmProvider.class);
+    when(realms.getRealm("test-realm")).thenReturn(realm);
+    when(session.realms()).thenReturn(realms);
+    when(session.users()).thenReturn(mock(UserProvider.class));
+    provider =
+        new KeycloakEventListenerProvider(
+            session,
+            ListenerSettings.builder()
+                .webHookHandler(webHookHandler)
+                .enricher(new EventEnricher(100, 60000))
+                .build());
+
+    provider.onEvent(createTestEvent());
+
+    ArgumentCaptor<String> payloadCaptor = ArgumentCaptor.forClass(String.class);
+    verify(webHookHandler).sendEventToAllWebhooks(any(), payloadCaptor.capture());
+    JsonNode root = objectMapper.readTree(payloadCaptor.getValue());
+    assertEquals("Test Realm", root.get("enrichment").get("realmName").asText());
+    assertFalse(root.get("enrichment").has("username"));
+    assertEquals("test-user-id", root.get("event").get("userId").asText());
+  }
+
+  @Test
+  void testAdminEventRenderedPerRepresentationPolicy() throws Exception {
+    EndpointRegistry registry = new EndpointRegistry(null);
+    registry.update(EndpointRegistry.ENV_SOURCE, "http://full,http://hashed;representation=hash");
+    when(webHookHandler.getRegistry()).thenReturn(registry);
+
+    provider.onEvent(createTestAdminEvent(), true);
+
+    ArgumentCaptor<DeliveryTask> taskCaptor = ArgumentCaptor.forClass(DeliveryTask.class);
+    verify(webHookHandler).sendEventToAllWebhooks(taskCaptor.capture());
+    DeliveryTask task = taskCaptor.getValue();
+    JsonNode full = objectMapper.readTree(task.payloadFor(registry.current().find("http://full")));
+    JsonNode hashed =
+        objectMapper.readTree(
+            task.forEndpoint(registry.current().find("http://hashed")).getPayload());
+    assertEquals(
+        "{\"username\":\"newuser\",\"enabled\":true}", full.at("/event/representation").asText());
+    assertTrue(hashed.at("/event/representation").isNull());
+    assertTrue(hashed.at("/event/representationHash").asText().startsWith("sha256:"));
+  }
+
+  @Test
+  void testDegradedOnEventDefersSerializationAndDoesNotWait() throws Exception {
+    WebhookDispatcher dispatcher = mock(WebhookDispatcher.class);
+    LatencyWatchdog watchdog = mock(LatencyWatchdog.class);
+    when(dispatcher.getWatchdog()).thenReturn(watchdog);
+    when(watchdog.admit(anyString())).thenReturn(true);
+    when(watchdog.isDeferring()).thenReturn(true);
+    when(watchdog.mayWait()).thenReturn(false);
+    provider =
+        new KeycloakEventListenerProvider(
+            session,
+            ListenerSettings.builder()
+                .webHookHandler(webHookHandler)
+                .dispatcher(dispatcher)
+                .build());
+
+    Event event = createTestEvent();
+    provider.onEvent(event);
+    // Keycloak may reuse the event once onEvent returns
+    event.setType(EventType.LOGOUT);
+
+    ArgumentCaptor<DeliveryTask> taskCaptor = ArgumentCaptor.forClass(DeliveryTask.class);
+    verify(dispatcher).dispatch(taskCaptor.capture(), eq(false));
+    verify(watchdog).record(anyLong());
+    DeliveryTask task = taskCaptor.getValue();
+    assertEquals("LOGIN", task.getType());
+    assertEquals("LOGIN", objectMapper.readTree(task.getPayload()).at("/event/type").asText());
+  }
+
+  @Test
+  void testSampledOutEventIsNotDispatched() {
+    WebhookDispatcher dispatcher = mock(WebhookDispatcher.class);
+    LatencyWatchdog watchdog = mock(LatencyWatchdog.class);
+    when(dispatcher.getWatchdog()).thenReturn(watchdog);
+    when(watchdog.admit("LOGIN")).thenReturn(false);
+    provider =
+        new KeycloakEventListenerProvider(
+            session,
+            ListenerSettings.builder()
+                .webHookHandler(webHookHandler)
+                .dispatcher(dispatcher)
+                .build());
+
+    provider.onEvent(createTestEvent());
+
+    verify(dispatcher, never()).dispatch(any());
+    verify(dispatcher, never()).dispatch(any(), anyBoolean());
+    verify(watchdog).record(anyLong());
+  }
+
+  @Test
+  void testOutboxWritesEventInSessionTransaction() throws Exception {
+    WebhookDispatcher dispatcher = mock(WebhookDispatcher.class);
+    JpaConnectionProvider jpa = mock(JpaConnectionProvider.class);
+    EntityManager entityManager = mock(EntityManager.class);
+    when(session.getProvider(JpaConnectionProvider.class)).thenReturn(jpa);
+    when(jpa.getEntityManager()).thenReturn(entityManager);
+    provider =
+        new KeycloakEventListenerProvider(
+            session,
+            ListenerSettings.builder()
+                .webHookHandler(webHookHandler)
+                .dispatcher(dispatcher)
+                .outbox(new OutboxStore(60000, 60000))
+                .build());
+
+    provider.onEvent(createTestEvent());
+
+    ArgumentCaptor<OutboxEventEntity> rowCaptor = ArgumentCaptor.forClass(OutboxEventEntity.class);
+    verify(entityManager).persist(rowCaptor.capture());
+    verify(dispatcher, never()).dispatch(any());
+    verify(webHookHandler, never()).sendEventToAllWebhooks(any(), anyString());
+    OutboxEventEntity row = rowCaptor.getValue();
+    assertEquals("LOGIN", row.getType());
+    assertEquals("test-realm", row.getRealmId());
+    assertEquals("LOGIN", objectMapper.readTree(row.getPayload()).at("/event/type").asText());
+  }
+
+  @Test
+  void testEventIsAppendedToFeed() throws Exception {
+    EventFeed feed = new EventFeed(10);
+    try {
+      provider =
+          new KeycloakEventListenerProvider(
+              session,
+              ListenerSettings.builder().webHookHandler(webHookHandler).feed(feed).build());
+
+      provider.onEvent(createTestEvent());
+
+      verify(webHookHandler).sendEventToAllWebhooks(any(), anyString());
+      assertEquals(1, feed.read("test-realm", null, 10).getEntries().size());
+    } finally {
+      feed.close();
+    }
+  }
+
+  @Test
+  void testOutboxEventJoinsFeedAfterCommit() throws Exception {
+    EventFeed feed = new EventFeed(10);
+    try {
+      JpaConnectionProvider jpa = mock(JpaConnectionProvider.class);
+      KeycloakTransactionManager transactions = mock(KeycloakTransactionManager.class);
+      when(session.getProvider(JpaConnectionProvider.class)).thenReturn(jpa);
+      when(jpa.getEntityManager()).thenReturn(mock(EntityManager.class));
+      when(session.getTransactionManager()).thenReturn(transactions);
+      provider =
+          new KeycloakEventListenerProvider(
+              session,
+              ListenerSettings.builder()
+                  .webHookHandler(webHookHandler)
+                  .outbox(new OutboxStore(60000, 60000))
+                  .feed(feed)
+                  .build());
+
+      provider.onEvent(createTestEvent());
+
+      ArgumentCaptor<KeycloakTransaction> afterCommit =
+          ArgumentCaptor.forClass(KeycloakTransaction.class);
+      verify(transactions).enlistAfterCompletion(afterCommit.capture());
+      assertTrue(feed.read("test-realm", null, 10).isEmpty());
+      afterCommit.getValue().begin();
+      afterCommit.getValue().commit();
+      assertEquals(1, feed.read("test-realm", null, 10).getEntries().size());
+    } finally {
+      feed.close();
+    }
+  }
+
+  @Test
+  void testDetectorAlertIsDeliveredAlongsideEvent() throws Exception {
+    provider =
+        new KeycloakEventListenerProvider(
+            session,
+            ListenerSettings.builder()
+                .webHookHandler(webHookHandler)
+                .detector(new EventDetector(60000, 2, 0, 0, 100, null, 1000))
+                .build());
+    Event event = createTestEvent();
+    event.setType(EventType.LOGIN_ERROR);
+
+    provider.onEvent(event);
+    provider.onEvent(event);
+
+    ArgumentCaptor<String> payloadCaptor = ArgumentCaptor.forClass(String.class);
+    verify(webHookHandler, times(3)).sendEventToAllWebhooks(any(), payloadCaptor.capture());
+    JsonNode alert = objectMapper.readTree(payloadCaptor.getAllValues().get(1));
+    assertEquals("ALERT", alert.get("eventType").asText());
+    assertEquals("BRUTE_FORCE", alert.at("/event/type").asText());
+    assertEquals(2, alert.at("/event/count").asInt());
+    assertTrue(alert.at("/event/distanceKm").isMissingNode());
+  }
+
+  @Test
+  void testAdminEventWithoutRepresentation() throws Exception {
+    provider.onEvent(createTestAdminEvent(), false);
+
+    ArgumentCaptor<String> payloadCaptor = ArgumentCaptor.forClass(String.class);
+    verify(webHookHandler).sendEventToAllWebhooks(any(), payloadCaptor.capture());
+    assertTrue(
+        objectMapper.readTree(payloadCaptor.getValue()).at("/event/representation").isNull());
+  }
+
   private Event createTestEvent() {
     Event event = new Event();
     event.setType(EventType.LOGIN);
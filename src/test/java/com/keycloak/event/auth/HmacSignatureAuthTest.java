@@ -0,0 +1,51 @@
+package com.keycloak.event.auth;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.util.HexFormat;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import org.junit.jupiter.api.Test;
+
+/** Tests for the HmacSignatureAuth class. */
+public class HmacSignatureAuthTest {
+
+  @Test
+  public void testSignsTimestampAndBody() throws Exception {
+    HmacSignatureAuth auth =
+        new HmacSignatureAuth("X-Signature", "s3cret", () -> 1_700_000_000_123L);
+    byte[] body = "{\"eventType\":\"USER_EVENT\"}".getBytes(StandardCharsets.UTF_8);
+    HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create("http://receiver/hook"));
+
+    auth.authorize(builder, body);
+
+    HttpRequest request = builder.build();
+    assertEquals(
+        "1700000000",
+        request.headers().firstValue(HmacSignatureAuth.TIMESTAMP_HEADER).orElse(null));
+    Mac mac = Mac.getInstance("HmacSHA256");
+    mac.init(new SecretKeySpec("s3cret".getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+    String expected =
+        HexFormat.of()
+            .formatHex(
+                mac.doFinal(
+                    ("1700000000." + new String(body, StandardCharsets.UTF_8))
+                        .getBytes(StandardCharsets.UTF_8)));
+    assertEquals("sha256=" + expected, request.headers().firstValue("X-Signature").orElse(null));
+    assertTrue(auth.signsBody());
+  }
+
+  @Test
+  public void testSignatureDependsOnBodyAndTime() {
+    HmacSignatureAuth auth = new HmacSignatureAuth("X-Signature", "s3cret", () -> 0);
+    byte[] body = "a".getBytes(StandardCharsets.UTF_8);
+
+    String signature = auth.sign("1", body);
+    assertEquals(signature, auth.sign("1", body));
+    assertNotEquals(signature, auth.sign("2", body));
+    assertNotEquals(signature, auth.sign("1", "b".getBytes(StandardCharsets.UTF_8)));
+  }
+}
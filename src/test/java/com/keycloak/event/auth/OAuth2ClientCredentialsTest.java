@@ -0,0 +1,159 @@
+package com.keycloak.event.auth;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.keycloak.event.endpoint.WebhookEndpoint;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/** Tests for the OAuth2ClientCredentials class, against a local stand-in token endpoint. */
+public class OAuth2ClientCredentialsTest {
+
+  private final HttpClient httpClient = HttpClient.newHttpClient();
+  private final List<String> forms = new CopyOnWriteArrayList<>();
+  private final List<String> authorizations = new CopyOnWriteArrayList<>();
+  private final AtomicInteger issued = new AtomicInteger();
+  private volatile int status = 200;
+  private volatile long expiresIn = 3600;
+  private HttpServer server;
+  private OAuth2ClientCredentials auth;
+
+  @BeforeEach
+  public void setUp() throws IOException {
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext("/token", this::token);
+    server.start();
+  }
+
+  @AfterEach
+  public void tearDown() {
+    if (auth != null) {
+      auth.close();
+    }
+    server.stop(0);
+  }
+
+  @Test
+  public void testFetchesTokenWithClientCredentials() throws Exception {
+    auth =
+        OAuth2ClientCredentials.of(
+            WebhookEndpoint.parse(
+                "http://receiver/hook;auth=oauth2;tokenUrl="
+                    + tokenUrl()
+                    + ";clientId=webhooks;clientSecret=s3cret;scope=events write",
+                null),
+            httpClient);
+    auth.getTokens().refresh().get(5, TimeUnit.SECONDS);
+
+    HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://receiver/hook"));
+    auth.authorize(request, null);
+
+    assertEquals(
+        "Bearer token-1", request.build().headers().firstValue("Authorization").orElse(null));
+    assertEquals(1, issued.get());
+    assertEquals("grant_type=client_credentials&scope=events+write", forms.get(0));
+    assertEquals(
+        "Basic "
+            + Base64.getEncoder()
+                .encodeToString("webhooks:s3cret".getBytes(StandardCharsets.UTF_8)),
+        authorizations.get(0));
+  }
+
+  @Test
+  public void testRequestFailsFastWithoutToken() {
+    status = 503;
+    auth = newAuth(60_000);
+
+    HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://receiver/hook"));
+    long start = System.nanoTime();
+    assertThrows(IOException.class, () -> auth.authorize(request, null));
+    assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+  }
+
+  @Test
+  public void testTokenIsReplacedInTheBackgroundBeforeExpiry() throws Exception {
+    expiresIn = 1;
+    auth = newAuth(60_000);
+    auth.getTokens().refresh().get(5, TimeUnit.SECONDS);
+
+    // Refreshed half way through its one second lifetime without any request asking for it
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (issued.get() < 3 && System.nanoTime() < deadline) {
+      Thread.sleep(50);
+    }
+
+    assertTrue(issued.get() >= 3, "Tokens issued: " + issued.get());
+    HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://receiver/hook"));
+    auth.authorize(request, null);
+    assertTrue(
+        request.build().headers().firstValue("Authorization").orElseThrow().startsWith("Bearer "));
+  }
+
+  @Test
+  public void testRefusedTokenIsReplaced() throws Exception {
+    auth = newAuth(60_000);
+    auth.getTokens().refresh().get(5, TimeUnit.SECONDS);
+    HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create("http://receiver/hook"));
+    auth.authorize(builder, null);
+
+    auth.rejected(builder.build());
+    auth.getTokens().refresh().get(5, TimeUnit.SECONDS);
+
+    HttpRequest.Builder retry = HttpRequest.newBuilder(URI.create("http://receiver/hook"));
+    auth.authorize(retry, null);
+    assertEquals(
+        "Bearer token-2", retry.build().headers().firstValue("Authorization").orElse(null));
+  }
+
+  private OAuth2ClientCredentials newAuth(long refreshAheadMillis) {
+    return new OAuth2ClientCredentials(
+        URI.create(tokenUrl()),
+        "webhooks",
+        "s3cret",
+        null,
+        refreshAheadMillis,
+        Duration.ofSeconds(5),
+        httpClient,
+        System::currentTimeMillis);
+  }
+
+  private String tokenUrl() {
+    return "http://127.0.0.1:" + server.getAddress().getPort() + "/token";
+  }
+
+  private void token(HttpExchange exchange) throws IOException {
+    forms.add(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+    authorizations.add(exchange.getRequestHeaders().getFirst("Authorization"));
+    byte[] body;
+    int code = status;
+    if (code == 200) {
+      body =
+          String.format(
+                  "{\"access_token\":\"token-%d\",\"token_type\":\"Bearer\",\"expires_in\":%d}",
+                  issued.incrementAndGet(), expiresIn)
+              .getBytes(StandardCharsets.UTF_8);
+    } else {
+      body = "{\"error\":\"temporarily_unavailable\"}".getBytes(StandardCharsets.UTF_8);
+    }
+    exchange.getResponseHeaders().set("Content-Type", "application/json");
+    exchange.sendResponseHeaders(code, body.length);
+    exchange.getResponseBody().write(body);
+    exchange.close();
+  }
+}
@@ -0,0 +1,65 @@
+package com.keycloak.event.auth;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+import com.keycloak.event.endpoint.WebhookEndpoint;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import org.junit.jupiter.api.Test;
+
+/** Tests for the RequestAuth interface and StaticHeaderAuth class. */
+public class RequestAuthTest {
+
+  private final HttpClient httpClient = mock(HttpClient.class);
+
+  @Test
+  public void testEndpointWithoutAuthHasNone() {
+    assertNull(RequestAuth.of(WebhookEndpoint.parse("http://receiver/hook", null), httpClient));
+  }
+
+  @Test
+  public void testStaticHeaderDefaultsToAuthorization() throws Exception {
+    RequestAuth auth =
+        RequestAuth.of(
+            WebhookEndpoint.parse("http://receiver/hook;auth=HEADER;authValue=Bearer abc", null),
+            httpClient);
+    HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create("http://receiver/hook"));
+
+    auth.authorize(builder, null);
+
+    assertInstanceOf(StaticHeaderAuth.class, auth);
+    assertFalse(auth.signsBody());
+    assertEquals("Bearer abc", builder.build().headers().firstValue("Authorization").orElse(null));
+  }
+
+  @Test
+  public void testKindsAreSelectedByOption() {
+    assertInstanceOf(
+        HmacSignatureAuth.class,
+        RequestAuth.of(
+            WebhookEndpoint.parse("http://receiver/hook;auth=hmac;hmacSecret=s", null),
+            httpClient));
+  }
+
+  @Test
+  public void testInvalidOptionsAreRejected() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () ->
+            RequestAuth.of(
+                WebhookEndpoint.parse("http://receiver/hook;auth=kerberos", null), httpClient));
+    assertThrows(
+        IllegalArgumentException.class,
+        () ->
+            RequestAuth.of(
+                WebhookEndpoint.parse("http://receiver/hook;auth=hmac", null), httpClient));
+    assertThrows(
+        IllegalArgumentException.class,
+        () ->
+            RequestAuth.of(
+                WebhookEndpoint.parse("http://receiver/hook;auth=oauth2;clientId=c", null),
+                httpClient));
+  }
+}
@@ -0,0 +1,151 @@
+package com.keycloak.event.auth;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/** Tests for the TokenCache class. */
+public class TokenCacheTest {
+
+  private final AtomicLong clock = new AtomicLong(1_000_000);
+  private final List<CompletableFuture<TokenCache.Token>> fetches = new ArrayList<>();
+  private final TokenCache cache =
+      new TokenCache(
+          "test",
+          () -> {
+            CompletableFuture<TokenCache.Token> fetch = new CompletableFuture<>();
+            synchronized (fetches) {
+              fetches.add(fetch);
+            }
+            return fetch;
+          },
+          30_000,
+          clock::get);
+
+  @AfterEach
+  public void tearDown() {
+    cache.close();
+  }
+
+  @Test
+  public void testNoTokenReturnsNullWithoutWaiting() {
+    assertNull(cache.current());
+    assertNull(cache.current());
+
+    assertEquals(1, cache.getFetchCount());
+    complete(0, "t1", 100_000);
+    assertEquals("t1", cache.current());
+  }
+
+  @Test
+  public void testConcurrentRefreshesShareOneFetch() throws Exception {
+    int threads = 8;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    CountDownLatch start = new CountDownLatch(1);
+    List<CompletableFuture<TokenCache.Token>> refreshes = new ArrayList<>();
+    try {
+      List<Future<CompletableFuture<TokenCache.Token>>> results = new ArrayList<>();
+      for (int i = 0; i < threads; i++) {
+        results.add(
+            executor.submit(
+                () -> {
+                  start.await();
+                  return cache.refresh();
+                }));
+      }
+      start.countDown();
+      for (Future<CompletableFuture<TokenCache.Token>> result : results) {
+        refreshes.add(result.get(5, TimeUnit.SECONDS));
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertEquals(1, cache.getFetchCount());
+    complete(0, "t1", 100_000);
+    for (CompletableFuture<TokenCache.Token> refresh : refreshes) {
+      assertEquals("t1", refresh.getNow(null).getValue());
+    }
+  }
+
+  @Test
+  public void testTokenIsRefreshedAheadOfExpiry() {
+    cache.refresh();
+    complete(0, "t1", 100_000);
+
+    clock.addAndGet(60_000);
+    assertEquals("t1", cache.current());
+    assertEquals(1, cache.getFetchCount());
+
+    // Within 30 s of expiry the old token is still used while a new one is fetched
+    clock.addAndGet(15_000);
+    assertEquals("t1", cache.current());
+    assertEquals("t1", cache.current());
+    assertEquals(2, cache.getFetchCount());
+
+    complete(1, "t2", 100_000);
+    assertEquals("t2", cache.current());
+  }
+
+  @Test
+  public void testFailedRefreshKeepsTokenUntilExpiry() {
+    cache.refresh();
+    complete(0, "t1", 100_000);
+    clock.addAndGet(80_000);
+    assertEquals("t1", cache.current());
+
+    fetches.get(1).completeExceptionally(new IOException("Token endpoint down"));
+    assertEquals("t1", cache.current());
+
+    clock.addAndGet(20_000);
+    assertNull(cache.current());
+  }
+
+  @Test
+  public void testInvalidateDropsOnlyTheRefusedToken() {
+    cache.refresh();
+    complete(0, "t1", 100_000);
+
+    cache.invalidate("stale");
+    assertEquals("t1", cache.current());
+    assertEquals(1, cache.getFetchCount());
+
+    cache.invalidate("t1");
+    assertNull(cache.current());
+    assertEquals(2, cache.getFetchCount());
+    complete(1, "t2", 100_000);
+    assertEquals("t2", cache.current());
+  }
+
+  @Test
+  public void testEarlyRefreshReplacesThePendingTimer() throws Exception {
+    cache.refresh();
+    // Due for refresh 200 ms from now
+    complete(0, "t1", 400);
+
+    cache.invalidate("t1");
+    complete(1, "t2", 100_000);
+    Thread.sleep(500);
+
+    assertEquals(2, cache.getFetchCount(), "The timer of the first token should be gone");
+    assertEquals("t2", cache.current());
+  }
+
+  private void complete(int fetch, String value, long lifetime) {
+    long now = clock.get();
+    synchronized (fetches) {
+      fetches.get(fetch).complete(new TokenCache.Token(value, now, now + lifetime));
+    }
+  }
+}
@@ -0,0 +1,40 @@
+package com.keycloak.event.backfill;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+/** Tests for the BackfillCheckpoint class. */
+public class BackfillCheckpointTest {
+
+  @Test
+  public void testAdvanceCountsEventsWithTheSameTime() {
+    BackfillCheckpoint checkpoint = BackfillCheckpoint.start(100, 900);
+    assertEquals(BackfillCheckpoint.Phase.USER_EVENTS, checkpoint.getPhase());
+    assertEquals(100, checkpoint.getTime());
+    assertEquals(0, checkpoint.getSkip());
+
+    checkpoint = checkpoint.advance(100, true).advance(100, false);
+    assertEquals(100, checkpoint.getTime());
+    assertEquals(2, checkpoint.getSkip());
+    assertEquals(1, checkpoint.getDelivered());
+
+    checkpoint = checkpoint.advance(150, true);
+    assertEquals(150, checkpoint.getTime());
+    assertEquals(1, checkpoint.getSkip());
+    assertEquals(2, checkpoint.getDelivered());
+  }
+
+  @Test
+  public void testNextPhaseRestartsAtTheStartOfTheRange() {
+    BackfillCheckpoint checkpoint = BackfillCheckpoint.start(100, 900).advance(500, true);
+
+    BackfillCheckpoint admin = checkpoint.nextPhase();
+    assertEquals(BackfillCheckpoint.Phase.ADMIN_EVENTS, admin.getPhase());
+    assertEquals(100, admin.getTime());
+    assertEquals(0, admin.getSkip());
+    assertEquals(1, admin.getDelivered());
+    assertFalse(admin.isDone());
+    assertTrue(admin.nextPhase().isDone());
+  }
+}
@@ -0,0 +1,320 @@
+package com.keycloak.event.backfill;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.keycloak.event.HttpClientWebHookHandler;
+import com.keycloak.event.delivery.DeliveryReport;
+import com.keycloak.event.endpoint.WebhookEndpoint;
+import com.keycloak.event.exception.WebhookDeliveryException;
+import com.keycloak.event.outbox.OutboxDatabase;
+import com.keycloak.event.representation.RepresentationRenderer;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.keycloak.events.Event;
+import org.keycloak.events.EventType;
+import org.keycloak.events.admin.AdminEvent;
+import org.keycloak.events.admin.OperationType;
+
+/** Tests for the BackfillJob class. */
+public class BackfillJobTest {
+
+  private static final String REALM = "realm-1";
+  private static final WebhookEndpoint ENDPOINT =
+      WebhookEndpoint.parse("http://receiver/hook", null);
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private final StoredEvents store = new StoredEvents();
+  private final List<String> delivered = new ArrayList<>();
+  private HttpClientWebHookHandler webHookHandler;
+
+  @BeforeEach
+  public void setUp() {
+    webHookHandler = mock(HttpClientWebHookHandler.class);
+    when(webHookHandler.attempt(any(WebhookEndpoint.class), anyString()))
+        .thenAnswer(
+            invocation -> {
+              delivered.add(marker(invocation.getArgument(1)));
+              return new DeliveryReport.Result(ENDPOINT.getUrl(), 0, null);
+            });
+  }
+
+  @Test
+  public void testDeliversUserThenAdminEventsOldestFirst() {
+    store.user(300, "u3");
+    store.user(100, "u1");
+    store.user(200, "u2a");
+    store.user(200, "u2b");
+    store.user(200, "u2c");
+    store.user(50, "too-old");
+    store.admin(150, "/a1");
+    store.admin(250, "/a2");
+
+    BackfillCheckpoint checkpoint = newJob(BackfillCheckpoint.start(100, 1000), null, 2).run();
+
+    assertEquals(List.of("u1", "u2a", "u2b", "u2c", "u3", "/a1", "/a2"), delivered);
+    assertTrue(checkpoint.isDone());
+    assertEquals(7, checkpoint.getDelivered());
+  }
+
+  @Test
+  public void testResumesFromSavedCheckpoint() throws Exception {
+    store.user(100, "u1");
+    store.user(200, "u2a");
+    store.user(200, "u2b");
+    store.user(200, "u2c");
+    store.admin(150, "/a1");
+    try (OutboxDatabase database = new OutboxDatabase()) {
+      BackfillStore first = newStore(database, "node-1", 60_000);
+      BackfillStore second = newStore(database, "node-2", 60_000);
+      resume(first, second);
+    }
+  }
+
+  private void resume(BackfillStore firstStore, BackfillStore secondStore) {
+    BackfillJob[] first = new BackfillJob[1];
+    AtomicInteger sent = new AtomicInteger();
+    when(webHookHandler.attempt(any(WebhookEndpoint.class), anyString()))
+        .thenAnswer(
+            invocation -> {
+              delivered.add(marker(invocation.getArgument(1)));
+              if (sent.incrementAndGet() == 2) {
+                first[0].close();
+              }
+              return new DeliveryReport.Result(ENDPOINT.getUrl(), 0, null);
+            });
+    first[0] = newJob(BackfillCheckpoint.start(0, 1000), firstStore, 3);
+
+    BackfillCheckpoint stopped = first[0].run();
+    assertFalse(stopped.isDone());
+    assertEquals(List.of("u1", "u2a"), delivered);
+
+    BackfillCheckpoint saved = secondStore.read();
+    assertEquals(200, saved.getTime());
+    assertEquals(1, saved.getSkip());
+    // Events that expire from the store before the resume do not shift the position
+    store.expireBefore(150);
+
+    // The stopped job released its lease, so another node resumes at once
+    BackfillCheckpoint done = newJob(BackfillCheckpoint.start(0, 1000), secondStore, 3).run();
+    assertEquals(List.of("u1", "u2a", "u2b", "u2c", "/a1"), delivered);
+    assertTrue(done.isDone());
+    assertEquals(5, done.getDelivered());
+    assertTrue(secondStore.read().isDone());
+  }
+
+  @Test
+  public void testOnlyTheHolderOfTheLeaseDelivers() throws Exception {
+    store.user(100, "u1");
+    try (OutboxDatabase database = new OutboxDatabase()) {
+      BackfillStore other = newStore(database, "node-1", 60_000);
+      assertNotNull(other.acquire(BackfillCheckpoint.start(0, 1000)));
+      // The waiting node looks at the lease again every half lease
+      BackfillJob job =
+          newJob(BackfillCheckpoint.start(0, 1000), newStore(database, "node-2", 200), 3);
+      Thread thread = new Thread(job::run);
+      thread.start();
+
+      Thread.sleep(200);
+      assertEquals(List.of(), delivered);
+
+      other.release();
+      thread.join(5000);
+      assertFalse(thread.isAlive());
+      assertEquals(List.of("u1"), delivered);
+      assertTrue(other.read().isDone());
+    }
+  }
+
+  @Test
+  public void testAdminEventsFollowTheRepresentationPolicy() throws IOException {
+    AdminEvent event = new AdminEvent();
+    event.setTime(100);
+    event.setOperationType(OperationType.UPDATE);
+    event.setRealmId(REALM);
+    event.setResourcePath("/users/1");
+    event.setRepresentation("{\"username\":\"alice\"}");
+    store.adminEvents.add(event);
+    WebhookEndpoint hashing =
+        WebhookEndpoint.parse("http://receiver/hook;representation=hash", null);
+    List<String> payloads = new ArrayList<>();
+    when(webHookHandler.attempt(any(WebhookEndpoint.class), anyString()))
+        .thenAnswer(
+            invocation -> {
+              payloads.add(invocation.getArgument(1));
+              return new DeliveryReport.Result(ENDPOINT.getUrl(), 0, null);
+            });
+
+    BackfillJob.builder()
+        .realmId(REALM)
+        .endpoint(hashing)
+        .pages(store)
+        .webHookHandler(webHookHandler)
+        .checkpoint(BackfillCheckpoint.start(0, 1000))
+        .renderer(new RepresentationRenderer(0))
+        .rate(1000)
+        .build()
+        .run();
+
+    assertEquals(1, payloads.size());
+    JsonNode sent = objectMapper.readTree(payloads.get(0)).get("event");
+    assertEquals("/users/1", sent.get("resourcePath").asText());
+    assertTrue(sent.get("representation").isNull());
+    assertTrue(sent.has(RepresentationRenderer.HASH_FIELD));
+  }
+
+  @Test
+  public void testFailedDeliveryIsRetriedAndRefusedEventSkipped() {
+    store.user(100, "u1");
+    store.user(200, "u2");
+    store.user(300, "u3");
+    AtomicInteger calls = new AtomicInteger();
+    when(webHookHandler.attempt(any(WebhookEndpoint.class), anyString()))
+        .thenAnswer(
+            invocation -> {
+              String marker = marker(invocation.getArgument(1));
+              Exception error = null;
+              if ("u1".equals(marker) && calls.incrementAndGet() < 3) {
+                error = new WebhookDeliveryException("Unavailable", 503);
+              } else if ("u2".equals(marker)) {
+                error = new WebhookDeliveryException("Bad request", 400);
+              } else {
+                delivered.add(marker);
+              }
+              return new DeliveryReport.Result(ENDPOINT.getUrl(), 0, error);
+            });
+
+    BackfillCheckpoint checkpoint = newJob(BackfillCheckpoint.start(0, 1000), null, 10).run();
+
+    assertEquals(List.of("u1", "u3"), delivered);
+    assertEquals(3, calls.get());
+    verify(webHookHandler, times(5)).attempt(any(WebhookEndpoint.class), anyString());
+    assertEquals(2, checkpoint.getDelivered());
+  }
+
+  @Test
+  public void testPausesWhileLiveEventsAreQueued() {
+    store.user(100, "u1");
+    AtomicInteger polls = new AtomicInteger();
+    BackfillJob job =
+        BackfillJob.builder()
+            .realmId(REALM)
+            .endpoint(ENDPOINT)
+            .pages(store)
+            .webHookHandler(webHookHandler)
+            .checkpoint(BackfillCheckpoint.start(0, 1000))
+            .rate(1000)
+            .liveBacklog(() -> polls.incrementAndGet() < 3 ? 5 : 0)
+            .maxBacklog(2)
+            .build();
+
+    job.run();
+
+    assertEquals(List.of("u1"), delivered);
+    assertEquals(3, polls.get());
+  }
+
+  @Test
+  public void testEventTypesTheEndpointFiltersOutAreSkipped() {
+    store.user(100, "u1");
+    store.admin(100, "/a1");
+    WebhookEndpoint adminOnly =
+        WebhookEndpoint.parse("http://receiver/hook;events=ADMIN_EVENT", null);
+    BackfillJob job =
+        BackfillJob.builder()
+            .realmId(REALM)
+            .endpoint(adminOnly)
+            .pages(store)
+            .webHookHandler(webHookHandler)
+            .checkpoint(BackfillCheckpoint.start(0, 1000))
+            .rate(1000)
+            .build();
+
+    BackfillCheckpoint checkpoint = job.run();
+
+    assertEquals(List.of("/a1"), delivered);
+    assertEquals(1, checkpoint.getDelivered());
+  }
+
+  private BackfillJob newJob(
+      BackfillCheckpoint checkpoint, BackfillStore backfillStore, int pageSize) {
+    return BackfillJob.builder()
+        .realmId(REALM)
+        .endpoint(ENDPOINT)
+        .pages(store)
+        .webHookHandler(webHookHandler)
+        .checkpoint(checkpoint)
+        .store(backfillStore)
+        .pageSize(pageSize)
+        .rate(1000)
+        .retryMillis(1)
+        .build();
+  }
+
+  private BackfillStore newStore(OutboxDatabase database, String owner, long leaseMillis) {
+    return new BackfillStore(database, "backfill-1", owner, leaseMillis, System::currentTimeMillis);
+  }
+
+  private String marker(String payload) throws IOException {
+    JsonNode event = objectMapper.readTree(payload).get("event");
+    return event.has("userId") ? event.get("userId").asText() : event.get("resourcePath").asText();
+  }
+
+  /** In-memory event store, sorted by time and then by insertion like a database index. */
+  private static final class StoredEvents implements EventPages {
+    private final List<Event> events = new ArrayList<>();
+    private final List<AdminEvent> adminEvents = new ArrayList<>();
+
+    private void user(long time, String userId) {
+      Event event = new Event();
+      event.setTime(time);
+      event.setType(EventType.LOGIN);
+      event.setRealmId(REALM);
+      event.setUserId(userId);
+      events.add(event);
+      events.sort((a, b) -> Long.compare(a.getTime(), b.getTime()));
+    }
+
+    private void admin(long time, String resourcePath) {
+      AdminEvent event = new AdminEvent();
+      event.setTime(time);
+      event.setOperationType(OperationType.CREATE);
+      event.setRealmId(REALM);
+      event.setResourcePath(resourcePath);
+      adminEvents.add(event);
+      adminEvents.sort((a, b) -> Long.compare(a.getTime(), b.getTime()));
+    }
+
+    private void expireBefore(long time) {
+      events.removeIf(event -> event.getTime() < time);
+      adminEvents.removeIf(event -> event.getTime() < time);
+    }
+
+    @Override
+    public List<Event> events(String realmId, long fromTime, long toTime, int first, int max) {
+      return events.stream()
+          .filter(event -> event.getTime() >= fromTime && event.getTime() <= toTime)
+          .skip(first)
+          .limit(max)
+          .toList();
+    }
+
+    @Override
+    public List<AdminEvent> adminEvents(
+        String realmId, long fromTime, long toTime, int first, int max) {
+      return adminEvents.stream()
+          .filter(event -> event.getTime() >= fromTime && event.getTime() <= toTime)
+          .skip(first)
+          .limit(max)
+          .toList();
+    }
+  }
+}
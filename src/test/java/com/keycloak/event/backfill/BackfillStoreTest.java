@@ -0,0 +1,87 @@
+package com.keycloak.event.backfill;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.keycloak.event.outbox.OutboxDatabase;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/** Tests for the BackfillStore class. */
+public class BackfillStoreTest {
+
+  private static final long LEASE_MILLIS = 1000;
+
+  private final AtomicLong clock = new AtomicLong(10_000);
+  private OutboxDatabase database;
+
+  @BeforeEach
+  public void setUp() throws Exception {
+    database = new OutboxDatabase();
+  }
+
+  @AfterEach
+  public void tearDown() {
+    database.close();
+  }
+
+  @Test
+  public void testSavedCheckpointIsResumed() {
+    BackfillStore store = newStore("node-1");
+    assertNull(store.read());
+
+    BackfillCheckpoint initial = BackfillCheckpoint.start(100, 900);
+    assertSame(initial, store.acquire(initial));
+    BackfillCheckpoint checkpoint = initial.advance(300, true).advance(300, true).nextPhase();
+    assertTrue(store.save(checkpoint.advance(400, true)));
+    store.release();
+
+    BackfillCheckpoint resumed = newStore("node-2").acquire(BackfillCheckpoint.start(0, 50));
+    assertEquals(BackfillCheckpoint.Phase.ADMIN_EVENTS, resumed.getPhase());
+    assertEquals(100, resumed.getFromTime());
+    assertEquals(900, resumed.getToTime());
+    assertEquals(400, resumed.getTime());
+    assertEquals(1, resumed.getSkip());
+    assertEquals(3, resumed.getDelivered());
+  }
+
+  @Test
+  public void testLiveLeaseKeepsOtherNodesOut() {
+    BackfillStore first = newStore("node-1");
+    BackfillStore second = newStore("node-2");
+    assertNotNull(first.acquire(BackfillCheckpoint.start(100, 900)));
+
+    assertNull(second.acquire(BackfillCheckpoint.start(100, 900)));
+    clock.addAndGet(LEASE_MILLIS - 1);
+    assertNull(second.acquire(BackfillCheckpoint.start(100, 900)));
+    // Saving renews the lease
+    assertTrue(first.save(BackfillCheckpoint.start(100, 900).advance(200, true)));
+    clock.addAndGet(LEASE_MILLIS - 1);
+    assertNull(second.acquire(BackfillCheckpoint.start(100, 900)));
+    // The holder itself can take its lease again
+    assertNotNull(first.acquire(BackfillCheckpoint.start(100, 900)));
+  }
+
+  @Test
+  public void testExpiredLeaseIsTakenOver() {
+    BackfillStore first = newStore("node-1");
+    BackfillStore second = newStore("node-2");
+    first.acquire(BackfillCheckpoint.start(100, 900));
+    assertTrue(first.save(BackfillCheckpoint.start(100, 900).advance(200, true)));
+
+    clock.addAndGet(LEASE_MILLIS);
+    BackfillCheckpoint resumed = second.acquire(BackfillCheckpoint.start(100, 900));
+    assertEquals(200, resumed.getTime());
+
+    // The node that lost its lease saves nothing and cannot release the new holder's lease
+    assertFalse(first.save(BackfillCheckpoint.start(100, 900).advance(300, true)));
+    first.release();
+    assertEquals(200, first.read().getTime());
+    assertNull(first.acquire(BackfillCheckpoint.start(100, 900)));
+  }
+
+  private BackfillStore newStore(String owner) {
+    return new BackfillStore(database, "realm-1:hook", owner, LEASE_MILLIS, clock::get);
+  }
+}
@@ -0,0 +1,59 @@
+package com.keycloak.event.delivery;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+/** Tests for the Bulkheads class. */
+public class BulkheadsTest {
+
+  @Test
+  public void testParseNamedBulkheads() {
+    Bulkheads bulkheads =
+        Bulkheads.parse("acme:4:20000:SPOOL=acme-prod, acme-stage; default:2::drop_oldest");
+
+    assertEquals(2, bulkheads.size());
+    Bulkhead acme = bulkheads.resolve("acme-stage");
+    assertEquals("acme", acme.getName());
+    assertEquals(4, acme.getWeight());
+    assertEquals(20000, acme.getCapacity());
+    assertEquals(OverflowPolicy.SPOOL, acme.getOverflowPolicy());
+
+    Bulkhead shared = bulkheads.resolve("other");
+    assertSame(bulkheads.getDefaultBulkhead(), shared);
+    assertEquals(2, shared.getWeight());
+    assertEquals(0, shared.getCapacity());
+    assertEquals(OverflowPolicy.DROP_OLDEST, shared.getOverflowPolicy());
+    assertFalse(bulkheads.isPerRealm());
+  }
+
+  @Test
+  public void testPerRealmTemplate() {
+    Bulkheads bulkheads = Bulkheads.parse("perf:1:500=loadtest;*:2:1000");
+
+    assertTrue(bulkheads.isPerRealm());
+    assertEquals("perf", bulkheads.resolve("loadtest").getName());
+    Bulkhead own = bulkheads.resolve("acme");
+    assertEquals(Bulkheads.REALM_PREFIX + "acme", own.getName());
+    assertEquals(2, own.getWeight());
+    assertEquals(1000, own.getCapacity());
+    assertNull(own.getOverflowPolicy());
+    assertSame(bulkheads.getDefaultBulkhead(), bulkheads.resolve(null));
+  }
+
+  @Test
+  public void testParseEmptyIsSingleBulkhead() {
+    assertEquals(1, Bulkheads.parse(null).size());
+    assertEquals(1, Bulkheads.parse(" ").size());
+    assertEquals(Bulkheads.DEFAULT_BULKHEAD, Bulkheads.parse(null).resolve("any").getName());
+  }
+
+  @Test
+  public void testInvalidFieldsFallBackToDefaults() {
+    Bulkhead bulkhead = Bulkheads.parse("x:a:b:NOPE=r").resolve("r");
+
+    assertEquals(1, bulkhead.getWeight());
+    assertEquals(0, bulkhead.getCapacity());
+    assertNull(bulkhead.getOverflowPolicy());
+  }
+}
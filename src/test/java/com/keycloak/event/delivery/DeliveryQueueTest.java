@@ -0,0 +1,585 @@
+package com.keycloak.event.delivery;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** Tests for the DeliveryQueue class. */
+public class DeliveryQueueTest {
+
+  private static final String ENDPOINT = "http://example.com/webhook";
+
+  @TempDir Path spoolDir;
+
+  private final DropCounters dropCounters = new DropCounters();
+
+  @Test
+  public void testOfferAndPollInOrder() throws Exception {
+    DeliveryQueue queue = newQueue(OverflowPolicy.DROP_NEWEST, null);
+
+    assertTrue(queue.offer(task("LOGIN", "1")));
+    assertTrue(queue.offer(task("LOGOUT", "2")));
+
+    assertEquals("1", queue.poll(0, TimeUnit.MILLISECONDS).getPayload());
+    assertEquals("2", queue.poll(0, TimeUnit.MILLISECONDS).getPayload());
+    assertNull(queue.poll(0, TimeUnit.MILLISECONDS));
+  }
+
+  @Test
+  public void testRequeuedTaskIsPolledFirstAndCountedOnce() throws Exception {
+    DeliveryQueue queue = newQueue(OverflowPolicy.DROP_NEWEST, null);
+    queue.offer(task("LOGIN", "1"));
+    DeliveryTask polled = queue.poll(0, TimeUnit.MILLISECONDS);
+    queue.offer(task("LOGIN", "2"));
+    queue.offer(task("LOGIN", "3"));
+
+    // The lane is full, but the task goes back in front without being dropped
+    queue.requeue(polled);
+
+    assertEquals(3, queue.size());
+    assertEquals(0, dropCounters.get(ENDPOINT, "LOGIN"));
+    BulkheadStats stats = queue.bulkheadStats().get(Bulkheads.DEFAULT_BULKHEAD);
+    assertEquals(3, stats.getAccepted());
+    assertEquals(0, stats.getDelivered());
+    assertEquals("1", queue.poll(0, TimeUnit.MILLISECONDS).getPayload());
+    assertEquals("2", queue.poll(0, TimeUnit.MILLISECONDS).getPayload());
+    assertEquals("3", queue.poll(0, TimeUnit.MILLISECONDS).getPayload());
+  }
+
+  @Test
+  public void testDropNewestKeepsBacklog() throws Exception {
+    DeliveryQueue queue = newQueue(OverflowPolicy.DROP_NEWEST, null);
+    queue.offer(task("LOGIN", "1"));
+    queue.offer(task("LOGIN", "2"));
+
+    // Queue is full, the new event is rejected
+    assertFalse(queue.offer(task("LOGIN_ERROR", "3")));
+
+    assertEquals(1, dropCounters.get(ENDPOINT, "LOGIN_ERROR"));
+    assertEquals("1", queue.poll(0, TimeUnit.MILLISECONDS).getPayload());
+    assertEquals("2", queue.poll(0, TimeUnit.MILLISECONDS).getPayload());
+  }
+
+  @Test
+  public void testDropOldestEvictsHead() throws Exception {
+    DeliveryQueue queue = newQueue(OverflowPolicy.DROP_OLDEST, null);
+    queue.offer(task("LOGIN", "1"));
+    queue.offer(task("LOGIN", "2"));
+
+    assertTrue(queue.offer(task("LOGOUT", "3")));
+
+    // The evicted event is counted under its own type
+    assertEquals(1, dropCounters.get(ENDPOINT, "LOGIN"));
+    assertEquals(0, dropCounters.get(ENDPOINT, "LOGOUT"));
+    assertEquals("2", queue.poll(0, TimeUnit.MILLISECONDS).getPayload());
+    assertEquals("3", queue.poll(0, TimeUnit.MILLISECONDS).getPayload());
+  }
+
+  @Test
+  public void testBlockTimesOutAndDrops() {
+    DeliveryQueue queue = newQueue(OverflowPolicy.BLOCK, null);
+    queue.offer(task("LOGIN", "1"));
+    queue.offer(task("LOGIN", "2"));
+
+    long start = System.nanoTime();
+    assertFalse(queue.offer(task("LOGIN", "3")));
+    long waitedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+    assertTrue(waitedMillis >= 20, "BLOCK should wait for the configured timeout");
+    assertEquals(1, dropCounters.get(ENDPOINT, "LOGIN"));
+  }
+
+  @Test
+  public void testBlockSucceedsWhenSpaceFrees() throws Exception {
+    DeliveryQueue queue =
+        new DeliveryQueue(
+            ENDPOINT, settings(1, OverflowPolicy.BLOCK, 5000).build(), dropCounters, null, null);
+    queue.offer(task("LOGIN", "1"));
+
+    Thread consumer =
+        new Thread(
+            () -> {
+              try {
+                Thread.sleep(50);
+                queue.poll(0, TimeUnit.MILLISECONDS);
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+            });
+    consumer.start();
+
+    assertTrue(queue.offer(task("LOGIN", "2")));
+    consumer.join();
+    assertEquals(0, dropCounters.total());
+  }
+
+  @Test
+  public void testBlockDivertsToSpoolWhenProducerMayNotWait() throws Exception {
+    DeliveryQueue queue = newQueue(OverflowPolicy.BLOCK, newSpool(Long.MAX_VALUE));
+    queue.offer(task("LOGIN", "1"));
+    queue.offer(task("LOGIN", "2"));
+
+    long start = System.nanoTime();
+    assertTrue(queue.offer(task("LOGIN", "3"), false));
+    long waitedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+    assertTrue(waitedMillis < 20, "A producer that may not wait should not block");
+    assertEquals(0, dropCounters.total());
+    assertEquals("1", queue.poll(0, TimeUnit.MILLISECONDS).getPayload());
+    assertEquals("2", queue.poll(0, TimeUnit.MILLISECONDS).getPayload());
+    assertEquals("3", queue.poll(0, TimeUnit.MILLISECONDS).getPayload());
+  }
+
+  @Test
+  public void testDivertedDeferredTaskIsSerializedWithoutTheQueueLock() throws Exception {
+    DeliveryQueue queue = newQueue(OverflowPolicy.BLOCK, newSpool(Long.MAX_VALUE));
+    queue.offer(task("LOGIN", "1"));
+    queue.offer(task("LOGIN", "2"));
+    boolean[] lockFree = new boolean[1];
+    DeliveryTask deferred =
+        DeliveryTask.builder()
+            .eventType("USER_EVENT")
+            .type("LOGIN")
+            .deferredPayload(
+                () -> {
+                  // Another thread can take the queue's lock while the payload is serialized
+                  Thread reader = new Thread(queue::size);
+                  reader.start();
+                  try {
+                    reader.join(1000);
+                  } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                  }
+                  lockFree[0] = !reader.isAlive();
+                  return "3";
+                })
+            .build();
+
+    assertTrue(queue.offer(deferred, false));
+
+    assertTrue(lockFree[0]);
+    assertEquals(3, queue.size());
+  }
+
+  @Test
+  public void testDivertedTaskThatCannotBeSerializedIsDropped() {
+    DeliveryQueue queue = newQueue(OverflowPolicy.BLOCK, newSpool(Long.MAX_VALUE));
+    queue.offer(task("LOGIN", "1"));
+    queue.offer(task("LOGIN", "2"));
+    DeliveryTask broken =
+        DeliveryTask.builder()
+            .eventType("USER_EVENT")
+            .type("LOGIN")
+            .deferredPayload(
+                () -> {
+                  throw new UncheckedIOException(new IOException("Not serializable"));
+                })
+            .build();
+
+    assertFalse(queue.offer(broken, false));
+    assertEquals(1, dropCounters.get(ENDPOINT, "LOGIN"));
+    assertEquals(2, queue.size());
+  }
+
+  @Test
+  public void testBlockWithoutSpoolDropsWhenProducerMayNotWait() {
+    DeliveryQueue queue = newQueue(OverflowPolicy.BLOCK, null);
+    queue.offer(task("LOGIN", "1"));
+    queue.offer(task("LOGIN", "2"));
+
+    assertFalse(queue.offer(task("LOGIN", "3"), false));
+    assertEquals(1, dropCounters.get(ENDPOINT, "LOGIN"));
+  }
+
+  @Test
+  public void testDeferredPayloadIsSerializedOnce() throws Exception {
+    DeliveryQueue queue = newQueue(OverflowPolicy.DROP_NEWEST, null);
+    int[] calls = new int[1];
+    DeliveryTask deferred =
+        DeliveryTask.builder()
+            .eventType("USER_EVENT")
+            .type("LOGIN")
+            .realmId("realm")
+            .deferredPayload(
+                () -> {
+                  calls[0]++;
+                  return "{\"deferred\":true}";
+                })
+            .build();
+
+    assertTrue(queue.offer(deferred));
+    assertEquals(0, calls[0], "Queueing must not serialize the payload");
+    DeliveryTask polled = queue.poll(0, TimeUnit.MILLISECONDS);
+    assertEquals("{\"deferred\":true}", polled.getPayload());
+    assertEquals("{\"deferred\":true}", polled.getPayload());
+    assertEquals(1, calls[0]);
+  }
+
+  @Test
+  public void testSpoolPreservesOrder() throws Exception {
+    DeliveryQueue queue = newQueue(OverflowPolicy.SPOOL, new DiskSpool(spoolDir, Long.MAX_VALUE));
+    for (int i = 1; i <= 5; i++) {
+      assertTrue(queue.offer(task("LOGIN", String.valueOf(i))));
+    }
+    assertEquals(5, queue.size());
+
+    // Drain two, then add one more: it must still come after the spooled events
+    assertEquals("1", queue.poll(0, TimeUnit.MILLISECONDS).getPayload());
+    assertEquals("2", queue.poll(0, TimeUnit.MILLISECONDS).getPayload());
+    queue.offer(task("LOGIN", "6"));
+
+    for (int i = 3; i <= 6; i++) {
+      assertEquals(String.valueOf(i), queue.poll(0, TimeUnit.MILLISECONDS).getPayload());
+    }
+    assertNull(queue.poll(0, TimeUnit.MILLISECONDS));
+    assertEquals(0, dropCounters.total());
+  }
+
+  @Test
+  public void testSpoolIsWrittenOutsideTheQueueLock() throws Exception {
+    CountDownLatch writing = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    DiskSpool slowDisk =
+        new DiskSpool(spoolDir, Long.MAX_VALUE) {
+          @Override
+          public boolean append(DeliveryTask task) {
+            writing.countDown();
+            try {
+              release.await();
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+            return super.append(task);
+          }
+        };
+    DeliveryQueue queue = newQueue(OverflowPolicy.SPOOL, slowDisk);
+    queue.offer(task("LOGIN", "1"));
+    queue.offer(task("LOGIN", "2"));
+    Thread producer = new Thread(() -> queue.offer(task("LOGIN", "3")));
+    producer.start();
+    assertTrue(writing.await(5, TimeUnit.SECONDS));
+
+    // The worker goes on while the spool is being written
+    assertEquals("1", queue.poll(0, TimeUnit.MILLISECONDS).getPayload());
+    // A later producer must not overtake the task being spooled by going to memory
+    Thread later = new Thread(() -> queue.offer(task("LOGIN", "4")));
+    later.start();
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (later.getState() != Thread.State.BLOCKED
+        && later.getState() != Thread.State.WAITING
+        && later.getState() != Thread.State.TERMINATED
+        && System.nanoTime() < deadline) {
+      Thread.sleep(1);
+    }
+    release.countDown();
+    producer.join(5000);
+    later.join(5000);
+
+    assertEquals(3, queue.size());
+    assertEquals(4, queue.bulkheadStats().get(Bulkheads.DEFAULT_BULKHEAD).getAccepted());
+    for (String expected : List.of("2", "3", "4")) {
+      assertEquals(expected, queue.poll(0, TimeUnit.MILLISECONDS).getPayload());
+    }
+  }
+
+  @Test
+  public void testSpoolFullDrops() {
+    DeliveryQueue queue = newQueue(OverflowPolicy.SPOOL, newSpool(0));
+    queue.offer(task("LOGIN", "1"));
+    queue.offer(task("LOGIN", "2"));
+
+    assertFalse(queue.offer(task("LOGIN", "3")));
+    assertEquals(1, dropCounters.get(ENDPOINT, "LOGIN"));
+  }
+
+  @Test
+  public void testCloseSpoolsInMemoryBacklog() throws Exception {
+    DeliveryQueue queue = newQueue(OverflowPolicy.SPOOL, new DiskSpool(spoolDir, Long.MAX_VALUE));
+    queue.offer(task("LOGIN", "1"));
+    queue.close();
+
+    // A new spool over the same directory replays the backlog
+    DiskSpool reopened = new DiskSpool(spoolDir, Long.MAX_VALUE);
+    assertEquals(1, reopened.size());
+    assertEquals("1", reopened.poll().getPayload());
+  }
+
+  @Test
+  public void testSpoolPolicyRequiresSpool() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () ->
+            new DeliveryQueue(
+                ENDPOINT, settings(1, OverflowPolicy.SPOOL, 0).build(), dropCounters, null, null));
+  }
+
+  @Test
+  public void testInvalidCapacity() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () ->
+            new DeliveryQueue(
+                ENDPOINT,
+                settings(0, OverflowPolicy.DROP_NEWEST, 0).build(),
+                dropCounters,
+                null,
+                null));
+  }
+
+  @Test
+  public void testStrictPriorityServesCriticalFirst() throws Exception {
+    DeliveryQueue queue = newPriorityQueue(SchedulingMode.STRICT, 100);
+    queue.offer(task("REFRESH_TOKEN", "bulk-1"));
+    queue.offer(task("REFRESH_TOKEN", "bulk-2"));
+    queue.offer(task("LOGIN_ERROR", "critical-1"));
+
+    assertEquals("critical-1", queue.poll(0, TimeUnit.MILLISECONDS).getPayload());
+    assertEquals("bulk-1", queue.poll(0, TimeUnit.MILLISECONDS).getPayload());
+    assertEquals(1, queue.size("default"));
+  }
+
+  @Test
+  public void testBulkFloodOnlyFillsItsOwnLane() {
+    DeliveryQueue queue = newPriorityQueue(SchedulingMode.STRICT, 2);
+    for (int i = 0; i < 10; i++) {
+      queue.offer(task("REFRESH_TOKEN", "bulk"));
+    }
+
+    // The critical lane still has room while bulk events are being dropped
+    assertTrue(queue.offer(task("LOGIN_ERROR", "critical")));
+    assertEquals(8, dropCounters.get(ENDPOINT, "REFRESH_TOKEN"));
+    assertEquals(1, queue.size("critical"));
+  }
+
+  @Test
+  public void testDrrSharesByWeight() throws Exception {
+    DeliveryQueue queue = newPriorityQueue(SchedulingMode.DRR, 1000);
+    String payload = "x".repeat(DeliveryQueue.DRR_QUANTUM);
+    for (int i = 0; i < 100; i++) {
+      queue.offer(task("LOGIN_ERROR", payload));
+      queue.offer(task("REFRESH_TOKEN", payload));
+    }
+
+    // Critical has weight 3 and default weight 1, so the first 40 picks split 30/10
+    int critical = 0;
+    for (int i = 0; i < 40; i++) {
+      if ("LOGIN_ERROR".equals(queue.poll(0, TimeUnit.MILLISECONDS).getType())) {
+        critical++;
+      }
+    }
+    assertEquals(30, critical);
+  }
+
+  @Test
+  public void testDrrDoesNotStarveLowPriority() throws Exception {
+    DeliveryQueue queue = newPriorityQueue(SchedulingMode.DRR, 1000);
+    for (int i = 0; i < 100; i++) {
+      queue.offer(task("LOGIN_ERROR", "{}"));
+    }
+    queue.offer(task("REFRESH_TOKEN", "{}"));
+
+    boolean bulkServed = false;
+    for (int i = 0; i < 101 && !bulkServed; i++) {
+      bulkServed = "REFRESH_TOKEN".equals(queue.poll(0, TimeUnit.MILLISECONDS).getType());
+    }
+    assertTrue(bulkServed);
+  }
+
+  @Test
+  public void testSpoolPerLaneKeepsPriority() throws Exception {
+    DeliveryQueue queue =
+        new DeliveryQueue(
+            ENDPOINT,
+            settings(1, OverflowPolicy.SPOOL, 0)
+                .priorityClasses(PriorityClasses.parse("critical:3=LOGIN_ERROR"))
+                .build(),
+            dropCounters,
+            name -> newSpool(spoolDir.resolve(name), Long.MAX_VALUE),
+            null);
+    queue.offer(task("REFRESH_TOKEN", "bulk-1"));
+    queue.offer(task("REFRESH_TOKEN", "bulk-2"));
+    queue.offer(task("LOGIN_ERROR", "critical-1"));
+    queue.offer(task("LOGIN_ERROR", "critical-2"));
+
+    assertEquals("critical-1", queue.poll(0, TimeUnit.MILLISECONDS).getPayload());
+    assertEquals("critical-2", queue.poll(0, TimeUnit.MILLISECONDS).getPayload());
+    assertEquals("bulk-1", queue.poll(0, TimeUnit.MILLISECONDS).getPayload());
+    assertEquals("bulk-2", queue.poll(0, TimeUnit.MILLISECONDS).getPayload());
+  }
+
+  @Test
+  public void testRealmFloodOnlyFillsItsBulkhead() throws Exception {
+    DeliveryQueue queue = newBulkheadQueue("noisy:1:5:DROP_OLDEST=noisy;*:1");
+    for (int i = 0; i < 100; i++) {
+      assertTrue(queue.offer(realmTask("noisy", "flood-" + i)));
+    }
+    assertTrue(queue.offer(realmTask("quiet", "quiet-1")));
+
+    Map<String, BulkheadStats> stats = queue.bulkheadStats();
+    assertEquals(5, stats.get("noisy").getBacklog());
+    assertEquals(95, stats.get("noisy").getDropped());
+    assertEquals(1, stats.get("realm:quiet").getBacklog());
+    assertEquals(0, stats.get("realm:quiet").getDropped());
+    assertEquals(0, stats.get(Bulkheads.DEFAULT_BULKHEAD).getAccepted());
+
+    // Bulkheads take turns after at most one quantum of payload bytes
+    int polls = 0;
+    String payload;
+    do {
+      payload = queue.poll(0, TimeUnit.MILLISECONDS).getPayload();
+      polls++;
+    } while (!"quiet-1".equals(payload));
+    assertTrue(polls <= 6);
+  }
+
+  @Test
+  public void testBulkheadsShareWorkerByWeight() throws Exception {
+    DeliveryQueue queue = newBulkheadQueue("gold:3=gold;silver:1=silver");
+    String payload = "x".repeat(DeliveryQueue.DRR_QUANTUM);
+    for (int i = 0; i < 100; i++) {
+      queue.offer(realmTask("gold", payload));
+      queue.offer(realmTask("silver", payload));
+    }
+
+    int gold = 0;
+    for (int i = 0; i < 40; i++) {
+      if ("gold".equals(queue.poll(0, TimeUnit.MILLISECONDS).getRealmId())) {
+        gold++;
+      }
+    }
+    assertEquals(30, gold);
+    assertEquals(30, queue.bulkheadStats().get("gold").getDelivered());
+  }
+
+  @Test
+  public void testPerRealmSpoolIsReplayedAfterRestart() throws Exception {
+    DeliveryQueue queue =
+        new DeliveryQueue(
+            ENDPOINT,
+            settings(1, OverflowPolicy.DROP_NEWEST, 0)
+                .bulkheads(Bulkheads.parse("*:1:1:SPOOL"))
+                .build(),
+            dropCounters,
+            name -> newSpool(spoolDir.resolve(name), Long.MAX_VALUE),
+            null);
+    queue.offer(realmTask("acme/prod", "a-1"));
+    queue.close();
+
+    DeliveryQueue restarted =
+        new DeliveryQueue(
+            ENDPOINT,
+            settings(1, OverflowPolicy.DROP_NEWEST, 0)
+                .bulkheads(Bulkheads.parse("*:1:1:SPOOL"))
+                .build(),
+            dropCounters,
+            name -> newSpool(spoolDir.resolve(name), Long.MAX_VALUE),
+            null);
+    restarted.openRealm("acme/prod");
+
+    assertEquals("a-1", restarted.poll(0, TimeUnit.MILLISECONDS).getPayload());
+    assertNull(restarted.poll(0, TimeUnit.MILLISECONDS));
+    assertEquals(
+        "realm-acme%2Fprod/", DeliveryQueue.spoolDirectory(Bulkheads.REALM_PREFIX + "acme/prod"));
+  }
+
+  @Test
+  public void testBacklogPayloadsAreKeptOffHeap() throws Exception {
+    PayloadSlabs slabs = new PayloadSlabs(PayloadSlabs.SLAB_BYTES);
+    int capacity = DeliveryQueue.RESIDENT_TASKS + 10;
+    DeliveryQueue queue =
+        new DeliveryQueue(
+            ENDPOINT,
+            settings(capacity, OverflowPolicy.DROP_OLDEST, 0).payloadSlabs(slabs).build(),
+            dropCounters,
+            null,
+            null);
+    for (int i = 0; i < capacity; i++) {
+      queue.offer(task("LOGIN", "payload-é-" + i));
+    }
+    assertEquals(10, slabs.getEntryCount());
+
+    // Evicting the head frees nothing off-heap, the tail stays off-heap
+    queue.offer(task("LOGIN", "payload-é-" + capacity));
+    assertEquals(11, slabs.getEntryCount());
+
+    for (int i = 1; i <= capacity; i++) {
+      assertEquals("payload-é-" + i, queue.poll(0, TimeUnit.MILLISECONDS).getPayload());
+    }
+    assertNull(queue.poll(0, TimeUnit.MILLISECONDS));
+    assertEquals(0, slabs.getEntryCount());
+    assertEquals(0, slabs.getUsedBytes());
+    assertEquals(1, slabs.getSlabCount());
+  }
+
+  private DeliveryQueue newBulkheadQueue(String bulkheads) {
+    return new DeliveryQueue(
+        ENDPOINT,
+        settings(1000, OverflowPolicy.DROP_NEWEST, 0).bulkheads(Bulkheads.parse(bulkheads)).build(),
+        dropCounters,
+        null,
+        null);
+  }
+
+  private DeliveryQueue newPriorityQueue(SchedulingMode mode, int capacity) {
+    return new DeliveryQueue(
+        ENDPOINT,
+        settings(capacity, OverflowPolicy.DROP_NEWEST, 0)
+            .priorityClasses(PriorityClasses.parse("critical:3=LOGIN_ERROR"))
+            .schedulingMode(mode)
+            .build(),
+        dropCounters,
+        null,
+        null);
+  }
+
+  private DeliveryQueue newQueue(OverflowPolicy policy, DiskSpool spool) {
+    return new DeliveryQueue(
+        ENDPOINT,
+        settings(2, policy, 25).build(),
+        dropCounters,
+        spool == null ? null : name -> spool,
+        null);
+  }
+
+  private static DeliverySettings.DeliverySettingsBuilder settings(
+      int capacity, OverflowPolicy policy, long blockTimeoutMillis) {
+    return DeliverySettings.builder()
+        .capacity(capacity)
+        .overflowPolicy(policy)
+        .blockTimeoutMillis(blockTimeoutMillis)
+        .schedulingMode(SchedulingMode.STRICT);
+  }
+
+  private DiskSpool newSpool(long maxBytes) {
+    return newSpool(spoolDir, maxBytes);
+  }
+
+  private static DiskSpool newSpool(Path directory, long maxBytes) {
+    try {
+      return new DiskSpool(directory, maxBytes);
+    } catch (Exception e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static DeliveryTask task(String type, String payload) {
+    return new DeliveryTask("USER_EVENT", type, payload);
+  }
+
+  private static DeliveryTask realmTask(String realmId, String payload) {
+    return DeliveryTask.builder()
+        .eventType("USER_EVENT")
+        .type("LOGIN")
+        .realmId(realmId)
+        .payload(payload)
+        .build();
+  }
+}
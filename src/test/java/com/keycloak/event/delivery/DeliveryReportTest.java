@@ -0,0 +1,110 @@
+package com.keycloak.event.delivery;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.keycloak.event.exception.WebhookDeliveryException;
+import com.keycloak.event.exception.WebhookMultiException;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpTimeoutException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+/** Tests for the DeliveryReport class. */
+public class DeliveryReportTest {
+
+  private static final long MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+  @Test
+  public void testAllDelivered() {
+    DeliveryReport report =
+        new DeliveryReport(
+            List.of(
+                new DeliveryReport.Result("http://a", MILLI, null),
+                new DeliveryReport.Result("http://b", MILLI, null)));
+
+    assertTrue(report.isDelivered());
+    assertEquals(0, report.getFailureCount());
+    assertNull(report.toException());
+    assertEquals(ErrorCategory.NONE, report.getResults().get(0).getCategory());
+  }
+
+  @Test
+  public void testEmptyReportIsDelivered() {
+    assertTrue(DeliveryReport.EMPTY.isDelivered());
+    assertNull(DeliveryReport.EMPTY.toException());
+  }
+
+  @Test
+  public void testSingleFailureIsThrownAsIs() {
+    IOException failure = new IOException("Broken pipe");
+    DeliveryReport report =
+        new DeliveryReport(
+            List.of(
+                new DeliveryReport.Result("http://a", MILLI, null),
+                new DeliveryReport.Result("http://b", MILLI, failure)));
+
+    assertFalse(report.isDelivered());
+    assertEquals(1, report.getFailureCount());
+    assertSame(failure, report.toException());
+  }
+
+  @Test
+  public void testSeveralFailuresAreCollected() {
+    Exception first = new WebhookDeliveryException("HTTP error status: 503", 503);
+    Exception second = new ConnectException("Connection refused");
+    DeliveryReport report =
+        new DeliveryReport(
+            List.of(
+                new DeliveryReport.Result("http://a", MILLI, first),
+                new DeliveryReport.Result("http://b", MILLI, null),
+                new DeliveryReport.Result("http://c", MILLI, second)));
+
+    Exception exception = report.toException();
+
+    assertInstanceOf(WebhookMultiException.class, exception);
+    assertEquals("Multiple webhook failures occurred (2/3 failed)", exception.getMessage());
+    assertArrayEquals(new Throwable[] {first, second}, exception.getSuppressed());
+    assertEquals(0, exception.getStackTrace().length);
+  }
+
+  @Test
+  public void testResultCarriesCategoryAndStatus() {
+    DeliveryReport.Result result =
+        new DeliveryReport.Result(
+            "http://a", 12 * MILLI, new WebhookDeliveryException("HTTP error status: 503", 503));
+
+    assertFalse(result.isDelivered());
+    assertEquals(ErrorCategory.SERVER_ERROR, result.getCategory());
+    assertEquals(503, result.getStatus());
+    assertEquals("http://a SERVER_ERROR 503 in 12 ms", result.toString());
+  }
+
+  @Test
+  public void testToString() {
+    DeliveryReport report =
+        new DeliveryReport(
+            List.of(
+                new DeliveryReport.Result("http://a", 3 * MILLI, null),
+                new DeliveryReport.Result("http://b", 5 * MILLI, new ConnectException("refused"))));
+
+    assertEquals(
+        "1/2 delivered: http://a NONE in 3 ms, http://b CONNECT in 5 ms", report.toString());
+  }
+
+  @Test
+  public void testErrorCategories() {
+    assertEquals(ErrorCategory.CLIENT_ERROR, ErrorCategory.ofStatus(404));
+    assertEquals(ErrorCategory.SERVER_ERROR, ErrorCategory.ofStatus(500));
+    assertEquals(ErrorCategory.UNEXPECTED_STATUS, ErrorCategory.ofStatus(302));
+    assertEquals(ErrorCategory.CONNECT, ErrorCategory.of(new ConnectException("refused")));
+    assertEquals(
+        ErrorCategory.CONNECT, ErrorCategory.of(new HttpConnectTimeoutException("timed out")));
+    assertEquals(ErrorCategory.TIMEOUT, ErrorCategory.of(new HttpTimeoutException("timed out")));
+    assertEquals(ErrorCategory.IO, ErrorCategory.of(new IOException("closed")));
+    assertEquals(ErrorCategory.INTERRUPTED, ErrorCategory.of(new InterruptedException()));
+    assertEquals(ErrorCategory.OTHER, ErrorCategory.of(new IllegalStateException()));
+  }
+}
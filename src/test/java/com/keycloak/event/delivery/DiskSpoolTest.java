@@ -0,0 +1,124 @@
+package com.keycloak.event.delivery;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.keycloak.event.representation.RepresentationMode;
+import com.keycloak.event.representation.RepresentationPolicy;
+import com.keycloak.event.trace.TraceContext;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** Tests for the DiskSpool class. */
+public class DiskSpoolTest {
+
+  @TempDir Path spoolDir;
+
+  @Test
+  public void testAppendAndPollAcrossSegments() throws Exception {
+    DiskSpool spool = new DiskSpool(spoolDir, Long.MAX_VALUE);
+    int count = DiskSpool.SEGMENT_MAX_RECORDS * 2 + 10;
+    for (int i = 0; i < count; i++) {
+      assertTrue(spool.append(new DeliveryTask("USER_EVENT", "LOGIN", "{\"n\":" + i + "}")));
+    }
+    assertEquals(count, spool.size());
+
+    for (int i = 0; i < count; i++) {
+      DeliveryTask task = spool.poll();
+      assertEquals("{\"n\":" + i + "}", task.getPayload());
+      assertEquals("USER_EVENT", task.getEventType());
+      assertEquals("LOGIN", task.getType());
+    }
+    assertNull(spool.poll());
+    assertTrue(spool.isEmpty());
+
+    // Replayed segments are deleted
+    try (var files = Files.list(spoolDir)) {
+      assertEquals(0, files.count());
+    }
+  }
+
+  @Test
+  public void testRecoversSegmentsAfterRestart() throws Exception {
+    DiskSpool spool = new DiskSpool(spoolDir, Long.MAX_VALUE);
+    spool.append(new DeliveryTask("ADMIN_EVENT", "DELETE", "{\"a\":1}"));
+    spool.append(new DeliveryTask("ADMIN_EVENT", "CREATE", "{\"a\":2}"));
+    spool.close();
+
+    DiskSpool reopened = new DiskSpool(spoolDir, Long.MAX_VALUE);
+    assertEquals(2, reopened.size());
+    assertEquals("DELETE", reopened.poll().getType());
+
+    // New appends go to a later segment than the recovered one
+    reopened.append(new DeliveryTask("ADMIN_EVENT", "UPDATE", "{\"a\":3}"));
+    assertEquals("CREATE", reopened.poll().getType());
+    assertEquals("UPDATE", reopened.poll().getType());
+  }
+
+  @Test
+  public void testRefusesAppendBeyondCap() throws Exception {
+    DiskSpool spool = new DiskSpool(spoolDir, 60);
+    assertTrue(spool.append(new DeliveryTask("USER_EVENT", "LOGIN", "{}")));
+    assertFalse(spool.append(new DeliveryTask("USER_EVENT", "LOGIN", "{\"big\":\"payload\"}")));
+    assertEquals(1, spool.size());
+
+    // Space is reclaimed once the segment is replayed
+    spool.poll();
+    assertTrue(spool.append(new DeliveryTask("USER_EVENT", "LOGIN", "{\"big\":\"payload\"}")));
+  }
+
+  @Test
+  public void testRoutingAttributesSurviveARestart() throws Exception {
+    Map<RepresentationPolicy, String> variants = new LinkedHashMap<>();
+    variants.put(RepresentationPolicy.parse("truncate:16"), "{\"r\":\"tr\\tun\"}");
+    variants.put(RepresentationPolicy.parse("omit"), "{\"r\":null}");
+    TraceContext trace =
+        TraceContext.parse("00-0af7651916cd43dd8448eb211c80319c-b7ad6b7169203331-01", "a=1,b=2");
+    DeliveryTask task =
+        DeliveryTask.builder()
+            .eventType("ADMIN_EVENT")
+            .type("UPDATE")
+            .realmId("realm\t1")
+            .resourcePath("users/a\\b\nc")
+            .payload("{\"r\":\"full\"}")
+            .variants(variants)
+            .build()
+            .withTrace(trace);
+    DiskSpool spool = new DiskSpool(spoolDir, Long.MAX_VALUE);
+    assertTrue(spool.append(task));
+    spool.close();
+
+    DeliveryTask restored = new DiskSpool(spoolDir, Long.MAX_VALUE).poll();
+    assertEquals("ADMIN_EVENT", restored.getEventType());
+    assertEquals("UPDATE", restored.getType());
+    assertEquals("realm\t1", restored.getRealmId());
+    assertNull(restored.getUserId());
+    assertEquals("users/a\\b\nc", restored.getResourcePath());
+    assertEquals("{\"r\":\"full\"}", restored.getPayload());
+    assertEquals(variants, restored.getVariants());
+    assertEquals(
+        RepresentationMode.TRUNCATE, restored.getVariants().keySet().iterator().next().getMode());
+    assertEquals(trace.getTraceId(), restored.getTrace().getTraceId());
+    assertEquals(trace.getParentId(), restored.getTrace().getParentId());
+    assertEquals("01", restored.getTrace().getFlags());
+    assertEquals("a=1,b=2", restored.getTrace().getTraceState());
+  }
+
+  @Test
+  public void testReadsSegmentsOfTheOlderFormat() throws Exception {
+    Files.writeString(
+        spoolDir.resolve("00000000000000000000.spool"), "USER_EVENT\tLOGIN\t{\"a\":1}\nbroken\n");
+
+    DiskSpool spool = new DiskSpool(spoolDir, Long.MAX_VALUE);
+    DeliveryTask task = spool.poll();
+    assertEquals("LOGIN", task.getType());
+    assertEquals("{\"a\":1}", task.getPayload());
+    assertNull(task.getRealmId());
+    // The corrupt line is skipped
+    assertNull(spool.poll());
+    assertTrue(spool.isEmpty());
+  }
+}
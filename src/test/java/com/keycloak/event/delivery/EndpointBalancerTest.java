@@ -0,0 +1,174 @@
+package com.keycloak.event.delivery;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.keycloak.event.endpoint.EndpointGroup;
+import com.keycloak.event.endpoint.EndpointSnapshot;
+import com.keycloak.event.endpoint.WebhookEndpoint;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/** Tests for the EndpointBalancer class. */
+public class EndpointBalancerTest {
+
+  private final AtomicBoolean reachable = new AtomicBoolean(false);
+  private final EndpointBalancer balancer =
+      new EndpointBalancer(endpoint -> reachable.get(), 2, 60000);
+
+  @AfterEach
+  public void tearDown() {
+    balancer.close();
+  }
+
+  @Test
+  public void testRoundRobinSpreadsEvenly() {
+    EndpointGroup group = group("round-robin");
+    Map<String, Integer> counts = new HashMap<>();
+    for (int i = 0; i < 30; i++) {
+      counts.merge(balancer.choose(group).getUrl(), 1, Integer::sum);
+    }
+
+    assertEquals(Map.of("http://r1", 10, "http://r2", 10, "http://r3", 10), counts);
+  }
+
+  @Test
+  public void testLeastOutstandingPrefersIdleMember() {
+    EndpointGroup group = group("least-outstanding");
+    WebhookEndpoint busy = balancer.choose(group);
+    WebhookEndpoint second = balancer.choose(group);
+    balancer.completed(second, 1000, true);
+
+    for (int i = 0; i < 10; i++) {
+      WebhookEndpoint chosen = balancer.choose(group);
+      assertNotEquals(busy.getUrl(), chosen.getUrl());
+      balancer.completed(chosen, 1000, true);
+    }
+    assertEquals(1, balancer.getMember(busy.getUrl()).getOutstanding());
+  }
+
+  @Test
+  public void testEwmaPrefersFastMember() {
+    EndpointGroup group = group("ewma");
+    List<WebhookEndpoint> members = group.getMembers();
+    // r1 answers in 1 ms, the others in 50 ms
+    for (WebhookEndpoint member : members) {
+      long nanos = TimeUnit.MILLISECONDS.toNanos(member.getUrl().endsWith("1") ? 1 : 50);
+      for (int i = 0; i < 5; i++) {
+        balancer.choose(group);
+        balancer.completed(member, nanos, true);
+      }
+    }
+    int fast = 0;
+    for (int i = 0; i < 300; i++) {
+      WebhookEndpoint chosen = balancer.choose(group);
+      balancer.release(chosen);
+      if (chosen.getUrl().equals("http://r1")) {
+        fast++;
+      }
+    }
+
+    // Power of two choices picks r1 whenever it is one of the two candidates: 2/3 of the time
+    assertTrue(fast > 150, "fast member chosen " + fast + " times");
+    assertTrue(balancer.getMember("http://r1").getLatencyNanos() < 2_000_000);
+  }
+
+  @Test
+  public void testFailingMemberIsEjectedAndProbedBack() {
+    EndpointGroup group = group("round-robin");
+    WebhookEndpoint failing = group.getMembers().get(0);
+    balancer.completed(failing, 1000, false);
+    assertFalse(balancer.getMember(failing.getUrl()).isEjected());
+    balancer.completed(failing, 1000, false);
+    assertTrue(balancer.getMember(failing.getUrl()).isEjected());
+
+    for (int i = 0; i < 10; i++) {
+      assertNotEquals(failing.getUrl(), balancer.choose(group).getUrl());
+    }
+
+    assertEquals(0, balancer.probe());
+    reachable.set(true);
+    assertEquals(1, balancer.probe());
+    assertFalse(balancer.getMember(failing.getUrl()).isEjected());
+    assertEquals(1, balancer.getMember(failing.getUrl()).getEjections());
+
+    // On probation: one more failure ejects it again
+    balancer.completed(failing, 1000, false);
+    assertTrue(balancer.getMember(failing.getUrl()).isEjected());
+  }
+
+  @Test
+  public void testAllMembersEjectedStillDelivers() {
+    EndpointGroup group = group("round-robin");
+    for (WebhookEndpoint member : group.getMembers()) {
+      balancer.completed(member, 1000, false);
+      balancer.completed(member, 1000, false);
+    }
+
+    assertNotNull(balancer.choose(group));
+  }
+
+  @Test
+  public void testApplyKeepsStateOfRemainingMembers() {
+    EndpointGroup group = group("round-robin");
+    balancer.choose(group);
+    balancer.apply(
+        new EndpointSnapshot(
+            2,
+            WebhookEndpoint.parseAll("http://r1;group=orders,http://r4;group=orders", null),
+            Collections.emptyMap()));
+
+    assertEquals(1, balancer.getMember("http://r1").getOutstanding());
+    assertNull(balancer.getMember("http://r2"));
+    assertNotNull(balancer.getMember("http://r4"));
+  }
+
+  @Test
+  public void testChooseOtherSkipsExcludedAndEjectedMembers() {
+    EndpointGroup group = group("round-robin");
+    WebhookEndpoint r1 = group.getMembers().get(0);
+    WebhookEndpoint r2 = group.getMembers().get(1);
+    WebhookEndpoint r3 = group.getMembers().get(2);
+    balancer.choose(group);
+    balancer.completed(r2, 1000, false);
+    balancer.completed(r2, 1000, false);
+    assertTrue(balancer.getMember(r2.getUrl()).isEjected());
+
+    WebhookEndpoint other = balancer.chooseOther(group, r1);
+    assertEquals(r3.getUrl(), other.getUrl());
+    assertEquals(1, balancer.getMember(r3.getUrl()).getOutstanding());
+
+    balancer.completed(r3, 1000, false);
+    balancer.completed(r3, 1000, false);
+    assertNull(balancer.chooseOther(group, r1));
+  }
+
+  @Test
+  public void testUngroupedEndpointsAreNotTracked() {
+    WebhookEndpoint endpoint = WebhookEndpoint.parse("http://plain", null);
+    balancer.completed(endpoint, 1000, false);
+    balancer.completed(endpoint, 1000, false);
+
+    assertNull(balancer.getMember("http://plain"));
+  }
+
+  private EndpointGroup group(String mode) {
+    EndpointSnapshot snapshot =
+        new EndpointSnapshot(
+            1,
+            WebhookEndpoint.parseAll(
+                "http://r1;group=orders;balance="
+                    + mode
+                    + ",http://r2;group=orders,"
+                    + "http://r3;group=orders",
+                null),
+            Collections.emptyMap());
+    balancer.apply(snapshot);
+    return snapshot.getGroups().get(0);
+  }
+}
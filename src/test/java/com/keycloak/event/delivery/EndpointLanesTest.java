@@ -0,0 +1,225 @@
+package com.keycloak.event.delivery;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import com.keycloak.event.HttpClientWebHookHandler;
+import com.keycloak.event.endpoint.WebhookEndpoint;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** Tests for the EndpointLanes class. */
+public class EndpointLanesTest {
+
+  private static final String ENDPOINT = "http://example.com/webhook";
+
+  @TempDir Path spoolDir;
+
+  @Test
+  public void testSameKeyAlwaysMapsToSameLane() throws Exception {
+    EndpointLanes lanes = newLanes(mock(HttpClientWebHookHandler.class), 8, OrderingKey.USER);
+    try {
+      int lane = lanes.laneOf(userTask("user-1", "LOGIN", "{}"));
+      for (int i = 0; i < 100; i++) {
+        assertEquals(lane, lanes.laneOf(userTask("user-1", "UPDATE_PROFILE", "{}")));
+      }
+
+      // Distinct users spread over several lanes
+      Set<Integer> used = new HashSet<>();
+      for (int i = 0; i < 100; i++) {
+        used.add(lanes.laneOf(userTask("user-" + i, "LOGIN", "{}")));
+      }
+      assertTrue(used.size() > 1);
+    } finally {
+      lanes.close();
+    }
+  }
+
+  @Test
+  public void testOrderingKeys() {
+    DeliveryTask admin =
+        DeliveryTask.builder()
+            .eventType("ADMIN_EVENT")
+            .type("DELETE")
+            .realmId("realm")
+            .resourcePath("users/1")
+            .payload("{}")
+            .build();
+    DeliveryTask user = userTask("user-1", "LOGIN", "{}");
+
+    assertEquals("users/1", OrderingKey.USER.extract(admin));
+    assertEquals("user-1", OrderingKey.USER.extract(user));
+    assertEquals("realm", OrderingKey.REALM.extract(admin));
+    assertEquals("users/1", OrderingKey.RESOURCE_PATH.extract(admin));
+    assertEquals("user-1", OrderingKey.RESOURCE_PATH.extract(user));
+    assertNull(OrderingKey.NONE.extract(user));
+    assertEquals(OrderingKey.REALM, OrderingKey.fromString("realm", OrderingKey.USER));
+    assertEquals(OrderingKey.USER, OrderingKey.fromString("bogus", OrderingKey.USER));
+  }
+
+  @Test
+  public void testPerKeyOrderWithParallelLanes() throws Exception {
+    int users = 20;
+    int eventsPerUser = 50;
+    Map<String, List<Integer>> received = new ConcurrentHashMap<>();
+    CountDownLatch done = new CountDownLatch(users * eventsPerUser);
+    HttpClientWebHookHandler handler = mock(HttpClientWebHookHandler.class);
+    doAnswer(
+            invocation -> {
+              String[] parts = ((String) invocation.getArgument(1)).split(":");
+              received
+                  .computeIfAbsent(parts[0], k -> Collections.synchronizedList(new ArrayList<>()))
+                  .add(Integer.parseInt(parts[1]));
+              done.countDown();
+              return null;
+            })
+        .when(handler)
+        .send(any(), anyString());
+
+    EndpointLanes lanes = newLanes(handler, 4, OrderingKey.USER);
+    try {
+      for (int i = 0; i < eventsPerUser; i++) {
+        for (int u = 0; u < users; u++) {
+          lanes.offer(userTask("user-" + u, "LOGIN", "user-" + u + ":" + i));
+        }
+      }
+      assertTrue(done.await(10, TimeUnit.SECONDS));
+
+      // Every user's events arrive in the order they were produced
+      for (List<Integer> sequence : received.values()) {
+        for (int i = 0; i < sequence.size(); i++) {
+          assertEquals(i, sequence.get(i));
+        }
+      }
+    } finally {
+      lanes.close();
+    }
+  }
+
+  @Test
+  public void testSlowKeyDoesNotBlockOtherLanes() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    CountDownLatch fastDelivered = new CountDownLatch(1);
+    HttpClientWebHookHandler handler = mock(HttpClientWebHookHandler.class);
+    doAnswer(
+            invocation -> {
+              if ("slow".equals(invocation.getArgument(1))) {
+                release.await();
+              } else {
+                fastDelivered.countDown();
+              }
+              return null;
+            })
+        .when(handler)
+        .send(any(), anyString());
+
+    EndpointLanes lanes = newLanes(handler, 4, OrderingKey.USER);
+    try {
+      DeliveryTask slow = userTask("slow-user", "LOGIN", "slow");
+      String fastUser = "fast-user";
+      for (int i = 0; lanes.laneOf(userTask(fastUser, "LOGIN", "")) == lanes.laneOf(slow); i++) {
+        fastUser = "fast-user-" + i;
+      }
+      lanes.offer(slow);
+      lanes.offer(userTask(fastUser, "LOGIN", "fast"));
+
+      assertTrue(fastDelivered.await(5, TimeUnit.SECONDS));
+    } finally {
+      release.countDown();
+      lanes.close();
+    }
+  }
+
+  @Test
+  public void testRateLimitDelaysButKeepsEvents() throws Exception {
+    int events = 10;
+    CountDownLatch done = new CountDownLatch(events);
+    HttpClientWebHookHandler handler = mock(HttpClientWebHookHandler.class);
+    doAnswer(
+            invocation -> {
+              done.countDown();
+              return null;
+            })
+        .when(handler)
+        .send(any(), anyString());
+    EndpointLanes lanes =
+        new EndpointLanes(
+            WebhookEndpoint.parse(ENDPOINT + ";rate=20;burst=2", null),
+            handler,
+            DeliverySettings.builder().capacity(100).lanes(4).orderingKey(OrderingKey.NONE).build(),
+            new DropCounters(),
+            spoolDir,
+            "test-delivery");
+    try {
+      long start = System.nanoTime();
+      for (int i = 0; i < events; i++) {
+        assertTrue(lanes.offer(userTask("user-" + i, "LOGIN", "{}")));
+      }
+
+      // Two events pass at once, the other eight wait 50 ms each
+      assertTrue(done.await(5, TimeUnit.SECONDS));
+      assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 350);
+      verify(handler, times(events)).send(any(), anyString());
+    } finally {
+      lanes.close();
+    }
+  }
+
+  @Test
+  public void testUnchangedRateKeepsLimiter() throws Exception {
+    EndpointLanes lanes =
+        new EndpointLanes(
+            WebhookEndpoint.parse(ENDPOINT + ";rate=5", null),
+            mock(HttpClientWebHookHandler.class),
+            DeliverySettings.builder().capacity(10).build(),
+            new DropCounters(),
+            spoolDir,
+            "test-delivery");
+    try {
+      TokenBucket limiter = lanes.getRateLimiter();
+      lanes.setEndpoint(WebhookEndpoint.parse(ENDPOINT + ";rate=5;timeoutMs=100", null));
+      assertSame(limiter, lanes.getRateLimiter());
+
+      lanes.setEndpoint(WebhookEndpoint.parse(ENDPOINT + ";rate=50", null));
+      assertEquals(50, lanes.getRateLimiter().getRate());
+
+      lanes.setEndpoint(WebhookEndpoint.parse(ENDPOINT, null));
+      assertNull(lanes.getRateLimiter());
+    } finally {
+      lanes.close();
+    }
+  }
+
+  private EndpointLanes newLanes(HttpClientWebHookHandler handler, int count, OrderingKey key)
+      throws Exception {
+    DeliverySettings settings =
+        DeliverySettings.builder().capacity(10000).lanes(count).orderingKey(key).build();
+    return new EndpointLanes(
+        WebhookEndpoint.parse(ENDPOINT, null),
+        handler,
+        settings,
+        new DropCounters(),
+        spoolDir,
+        "test-delivery");
+  }
+
+  private static DeliveryTask userTask(String userId, String type, String payload) {
+    return DeliveryTask.builder()
+        .eventType("USER_EVENT")
+        .type(type)
+        .realmId("realm")
+        .userId(userId)
+        .payload(payload)
+        .build();
+  }
+}
@@ -0,0 +1,88 @@
+package com.keycloak.event.delivery;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.keycloak.event.endpoint.EndpointGroup;
+import com.keycloak.event.endpoint.EndpointSnapshot;
+import com.keycloak.event.endpoint.WebhookEndpoint;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+/** Tests for the Hedger class. */
+public class HedgerTest {
+
+  private final Hedger hedger = new Hedger(60000);
+
+  @Test
+  public void testDelayIsPercentileOfRecentLatency() {
+    EndpointGroup group = group("0.5");
+    WebhookEndpoint r1 = group.getMembers().get(0);
+    for (int i = 1; i < Hedger.MIN_SAMPLES; i++) {
+      hedger.record(r1, TimeUnit.MILLISECONDS.toNanos(10));
+    }
+    assertEquals(-1, hedger.admit(group, r1));
+
+    hedger.record(r1, TimeUnit.MILLISECONDS.toNanos(100));
+    long delay = hedger.admit(group, r1);
+    assertEquals(10, TimeUnit.NANOSECONDS.toMillis(delay), 1);
+    assertEquals(-1, hedger.admit(group, group.getMembers().get(1)));
+  }
+
+  @Test
+  public void testBudgetCapsHedgesToRate() {
+    EndpointGroup group = group("0.25");
+    WebhookEndpoint r1 = group.getMembers().get(0);
+    int hedged = 0;
+    for (int i = 0; i < 100; i++) {
+      hedger.admit(group, r1);
+      if (hedger.tryHedge(group)) {
+        hedged++;
+      }
+    }
+
+    assertEquals(25, hedged);
+    assertEquals(25, hedger.getHedgeCount());
+  }
+
+  @Test
+  public void testBudgetSavesLimitedBurst() {
+    EndpointGroup group = group("1");
+    WebhookEndpoint r1 = group.getMembers().get(0);
+    for (int i = 0; i < 100; i++) {
+      hedger.admit(group, r1);
+    }
+    int hedged = 0;
+    while (hedger.tryHedge(group)) {
+      hedged++;
+    }
+
+    assertEquals((int) Hedger.MAX_CREDIT, hedged);
+  }
+
+  @Test
+  public void testOnlyHedgedGroupsAreTracked() {
+    EndpointSnapshot snapshot =
+        new EndpointSnapshot(
+            1,
+            WebhookEndpoint.parseAll("http://r1;group=orders,http://r2;group=orders", null),
+            Collections.emptyMap());
+    hedger.apply(snapshot);
+
+    assertNull(hedger.groupOf(WebhookEndpoint.parse("http://r1", null)));
+    assertNull(hedger.groupOf(WebhookEndpoint.parse("http://plain", null)));
+  }
+
+  private EndpointGroup group(String rate) {
+    EndpointSnapshot snapshot =
+        new EndpointSnapshot(
+            1,
+            WebhookEndpoint.parseAll(
+                "http://r1;group=orders;hedge=" + rate + ",http://r2;group=orders", null),
+            Collections.emptyMap());
+    hedger.apply(snapshot);
+    EndpointGroup group = snapshot.getGroups().get(0);
+    assertSame(group, hedger.groupOf(group.getMembers().get(0)));
+    return group;
+  }
+}
@@ -0,0 +1,94 @@
+package com.keycloak.event.delivery;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/** Tests for the PayloadSlabs class. */
+public class PayloadSlabsTest {
+
+  private final PayloadSlabs slabs = new PayloadSlabs(2L * PayloadSlabs.SLAB_BYTES);
+
+  @Test
+  public void testStoreReadAndRelease() {
+    String payload = "{\"type\":\"LOGIN\",\"user\":\"jürgen\"}";
+    long handle = slabs.store(payload);
+
+    assertTrue(handle >= 0);
+    assertEquals(payload, slabs.read(handle));
+    assertEquals(1, slabs.getEntryCount());
+    assertEquals(PayloadSlabs.MIN_CHUNK_BYTES, slabs.getUsedBytes());
+    assertEquals(payload.getBytes(StandardCharsets.UTF_8).length, slabs.getPayloadBytes());
+
+    assertEquals(payload, slabs.release(handle));
+    assertEquals(0, slabs.getEntryCount());
+    assertEquals(0, slabs.getUsedBytes());
+    assertEquals(0, slabs.getPayloadBytes());
+  }
+
+  @Test
+  public void testSizeClassesShareNoSlab() {
+    long small = slabs.store("x".repeat(100));
+    long large = slabs.store("y".repeat(PayloadSlabs.MIN_CHUNK_BYTES + 1));
+
+    assertEquals(2, slabs.getSlabCount());
+    assertEquals(3L * PayloadSlabs.MIN_CHUNK_BYTES, slabs.getUsedBytes());
+    assertEquals("x".repeat(100), slabs.read(small));
+    assertEquals("y".repeat(PayloadSlabs.MIN_CHUNK_BYTES + 1), slabs.read(large));
+
+    // A third size class finds no room under the cap
+    assertEquals(-1, slabs.store("z".repeat(4 * PayloadSlabs.MIN_CHUNK_BYTES)));
+    assertEquals(1, slabs.getRejectedCount());
+    assertEquals(2L * PayloadSlabs.SLAB_BYTES, slabs.getReservedBytes());
+  }
+
+  @Test
+  public void testFreedChunksAreReused() {
+    String payload = "p".repeat(PayloadSlabs.MAX_CHUNK_BYTES);
+    List<Long> handles = new ArrayList<>();
+    long handle;
+    while ((handle = slabs.store(payload)) >= 0) {
+      handles.add(handle);
+    }
+    assertEquals(2 * PayloadSlabs.SLAB_BYTES / PayloadSlabs.MAX_CHUNK_BYTES, handles.size());
+
+    slabs.release(handles.get(3));
+    assertTrue(slabs.store(payload) >= 0);
+    assertEquals(2, slabs.getSlabCount());
+  }
+
+  @Test
+  public void testEmptySlabIsRecarvedForAnotherSize() {
+    String small = "s".repeat(100);
+    String medium = "m".repeat(PayloadSlabs.MIN_CHUNK_BYTES + 1);
+    String large = "l".repeat(PayloadSlabs.MAX_CHUNK_BYTES);
+    long smallHandle = slabs.store(small);
+    long mediumHandle = slabs.store(medium);
+    assertEquals(2, slabs.getSlabCount());
+    assertEquals(-1, slabs.store(large), "Both slabs hold live chunks");
+
+    slabs.release(smallHandle);
+    long largeHandle = slabs.store(large);
+
+    assertTrue(largeHandle >= 0, "The empty slab should be re-carved");
+    assertEquals(2, slabs.getSlabCount());
+    assertEquals(large, slabs.read(largeHandle));
+    assertEquals(medium, slabs.read(mediumHandle));
+    // The small chunks went with the slab, and the other slab is still in use
+    assertEquals(-1, slabs.store(small));
+  }
+
+  @Test
+  public void testOversizedPayloadIsRefused() {
+    assertEquals(-1, slabs.store("p".repeat(PayloadSlabs.MAX_CHUNK_BYTES + 1)));
+    assertEquals(0, slabs.getSlabCount());
+  }
+
+  @Test
+  public void testCapBelowOneSlab() {
+    assertThrows(IllegalArgumentException.class, () -> new PayloadSlabs(1024));
+  }
+}
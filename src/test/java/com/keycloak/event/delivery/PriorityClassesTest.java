@@ -0,0 +1,65 @@
+package com.keycloak.event.delivery;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+/** Tests for the PriorityClasses class. */
+public class PriorityClassesTest {
+
+  @Test
+  public void testParseWithExplicitDefault() {
+    PriorityClasses classes =
+        PriorityClasses.parse(
+            "critical:8=LOGIN_ERROR,UPDATE_PASSWORD,DELETE; default:4 ;bulk:1=REFRESH_TOKEN");
+
+    assertEquals(3, classes.size());
+    assertEquals("critical", classes.getClasses().get(0).getName());
+    assertEquals(8, classes.getClasses().get(0).getWeight());
+    assertEquals(4, classes.getClasses().get(1).getWeight());
+
+    assertEquals(0, classes.classify("LOGIN_ERROR"));
+    assertEquals(0, classes.classify("DELETE"));
+    assertEquals(1, classes.classify("LOGIN"));
+    assertEquals(2, classes.classify("REFRESH_TOKEN"));
+  }
+
+  @Test
+  public void testParseAppendsDefaultLast() {
+    PriorityClasses classes = PriorityClasses.parse("critical=LOGIN_ERROR");
+
+    assertEquals(2, classes.size());
+    assertEquals(1, classes.getClasses().get(0).getWeight());
+    assertEquals(PriorityClasses.DEFAULT_CLASS, classes.getClasses().get(1).getName());
+    assertEquals(1, classes.classify("LOGIN"));
+  }
+
+  @Test
+  public void testParseEmptyIsSingleClass() {
+    assertEquals(1, PriorityClasses.parse(null).size());
+    assertEquals(1, PriorityClasses.parse("  ").size());
+    assertEquals(0, PriorityClasses.parse(null).classify("LOGIN"));
+  }
+
+  @Test
+  public void testInvalidWeightFallsBackToOne() {
+    PriorityClasses classes = PriorityClasses.parse("critical:x=LOGIN_ERROR");
+    assertEquals(1, classes.getClasses().get(0).getWeight());
+  }
+
+  @Test
+  public void testDuplicateNamesAreRejected() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> PriorityClasses.parse("critical=LOGIN_ERROR;critical=DELETE"));
+    assertThrows(IllegalArgumentException.class, () -> PriorityClasses.parse("a/b=LOGIN;a.b"));
+  }
+
+  @Test
+  public void testSpoolNameStaysInsideTheSpoolDirectory() {
+    assertEquals("critical", new PriorityClass("critical", 1, Set.of()).getSpoolName());
+    assertEquals("___etc", new PriorityClass("../etc", 1, Set.of()).getSpoolName());
+    assertEquals("__", new PriorityClass("..", 1, Set.of()).getSpoolName());
+  }
+}
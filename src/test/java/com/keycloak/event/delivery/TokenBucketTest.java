@@ -0,0 +1,90 @@
+package com.keycloak.event.delivery;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.keycloak.event.endpoint.WebhookEndpoint;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+/** Tests for the TokenBucket class. */
+public class TokenBucketTest {
+
+  private final AtomicLong now = new AtomicLong(-TimeUnit.SECONDS.toNanos(100));
+
+  @Test
+  public void testBurstThenSustainedRate() {
+    TokenBucket bucket = new TokenBucket(10, 3, now::get);
+
+    for (int i = 0; i < 3; i++) {
+      assertEquals(0, bucket.tryAcquire());
+    }
+    long wait = bucket.tryAcquire();
+    assertEquals(TimeUnit.MILLISECONDS.toNanos(100), wait);
+
+    // Failed attempts take nothing; one interval later exactly one token is back
+    assertEquals(wait, bucket.tryAcquire());
+    now.addAndGet(wait);
+    assertEquals(0, bucket.tryAcquire());
+    assertTrue(bucket.tryAcquire() > 0);
+  }
+
+  @Test
+  public void testIdleTimeRefillsUpToBurst() {
+    TokenBucket bucket = new TokenBucket(100, 5, now::get);
+    for (int i = 0; i < 5; i++) {
+      bucket.tryAcquire();
+    }
+
+    now.addAndGet(TimeUnit.SECONDS.toNanos(60));
+
+    int taken = 0;
+    while (bucket.tryAcquire() == 0) {
+      taken++;
+    }
+    assertEquals(5, taken);
+  }
+
+  @Test
+  public void testConcurrentAcquireNeverExceedsBurst() throws Exception {
+    TokenBucket bucket = new TokenBucket(1, 1000, now::get);
+    AtomicInteger taken = new AtomicInteger();
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < 8; t++) {
+      Thread thread =
+          new Thread(
+              () -> {
+                for (int i = 0; i < 500; i++) {
+                  if (bucket.tryAcquire() == 0) {
+                    taken.incrementAndGet();
+                  }
+                }
+              });
+      threads.add(thread);
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertEquals(1000, taken.get());
+  }
+
+  @Test
+  public void testEndpointOptions() {
+    assertNull(TokenBucket.of(WebhookEndpoint.parse("http://a", null)));
+    assertNull(TokenBucket.of(WebhookEndpoint.parse("http://a;rate=fast", null)));
+    assertNull(TokenBucket.of(WebhookEndpoint.parse("http://a;rate=0", null)));
+
+    TokenBucket defaults = TokenBucket.of(WebhookEndpoint.parse("http://a;rate=2.5", null));
+    assertEquals(2.5, defaults.getRate());
+    assertEquals(3, defaults.getBurst());
+
+    TokenBucket explicit =
+        TokenBucket.of(WebhookEndpoint.parse("http://a;rate=50;burst=200", null));
+    assertEquals(200, explicit.getBurst());
+  }
+}
@@ -0,0 +1,345 @@
+package com.keycloak.event.delivery;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import com.keycloak.event.HttpClientWebHookHandler;
+import com.keycloak.event.config.WebhookConfig;
+import com.keycloak.event.endpoint.EndpointRegistry;
+import com.keycloak.event.endpoint.WebhookEndpoint;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** Tests for the WebhookDispatcher class. */
+public class WebhookDispatcherTest {
+
+  @TempDir Path spoolDir;
+
+  @AfterEach
+  public void tearDown() {
+    System.clearProperty(WebhookConfig.QUEUE_CAPACITY);
+  }
+
+  @Test
+  public void testDispatchDeliversToEveryEndpoint() throws Exception {
+    HttpClientWebHookHandler handler = mock(HttpClientWebHookHandler.class);
+    when(handler.getRegistry()).thenReturn(registryOf("http://a,http://b"));
+    CountDownLatch delivered = new CountDownLatch(2);
+    doAnswer(
+            invocation -> {
+              delivered.countDown();
+              return null;
+            })
+        .when(handler)
+        .send(any(), anyString());
+
+    WebhookDispatcher dispatcher =
+        new WebhookDispatcher(
+            handler, DeliverySettings.builder().capacity(10).spoolDirectory(spoolDir).build());
+    try {
+      dispatcher.dispatch(new DeliveryTask("USER_EVENT", "LOGIN", "{}"));
+
+      assertTrue(delivered.await(5, TimeUnit.SECONDS));
+      verify(handler).send(argThat(e -> e.getUrl().equals("http://a")), eq("{}"));
+      verify(handler).send(argThat(e -> e.getUrl().equals("http://b")), eq("{}"));
+    } finally {
+      dispatcher.close();
+    }
+  }
+
+  @Test
+  public void testDispatchSkipsEndpointsNotTakingEventType() throws Exception {
+    HttpClientWebHookHandler handler = mock(HttpClientWebHookHandler.class);
+    when(handler.getRegistry()).thenReturn(registryOf("http://all,http://alerts;events=ALERT"));
+    CountDownLatch delivered = new CountDownLatch(3);
+    doAnswer(
+            invocation -> {
+              delivered.countDown();
+              return null;
+            })
+        .when(handler)
+        .send(any(), anyString());
+
+    WebhookDispatcher dispatcher =
+        new WebhookDispatcher(
+            handler, DeliverySettings.builder().capacity(10).spoolDirectory(spoolDir).build());
+    try {
+      dispatcher.dispatch(new DeliveryTask("USER_EVENT", "LOGIN_ERROR", "{\"raw\":1}"));
+      dispatcher.dispatch(new DeliveryTask("ALERT", "BRUTE_FORCE", "{\"alert\":1}"));
+
+      assertTrue(delivered.await(5, TimeUnit.SECONDS));
+      verify(handler).send(argThat(e -> e.getUrl().equals("http://all")), eq("{\"raw\":1}"));
+      verify(handler).send(argThat(e -> e.getUrl().equals("http://all")), eq("{\"alert\":1}"));
+      verify(handler).send(argThat(e -> e.getUrl().equals("http://alerts")), eq("{\"alert\":1}"));
+      verify(handler, never())
+          .send(argThat(e -> e.getUrl().equals("http://alerts")), eq("{\"raw\":1}"));
+    } finally {
+      dispatcher.close();
+    }
+  }
+
+  @Test
+  public void testBalancedGroupDeliversToOneMember() throws Exception {
+    HttpClientWebHookHandler handler = mock(HttpClientWebHookHandler.class);
+    EndpointRegistry registry = registryOf("http://r1;group=g,http://r2;group=g,http://audit");
+    EndpointBalancer balancer = new EndpointBalancer(endpoint -> true, 3, 60000);
+    balancer.apply(registry.current());
+    when(handler.getRegistry()).thenReturn(registry);
+    when(handler.getBalancer()).thenReturn(balancer);
+    CountDownLatch delivered = new CountDownLatch(8);
+    doAnswer(
+            invocation -> {
+              balancer.completed(invocation.getArgument(0), 1000, true);
+              delivered.countDown();
+              return null;
+            })
+        .when(handler)
+        .send(any(), anyString());
+
+    WebhookDispatcher dispatcher =
+        new WebhookDispatcher(
+            handler, DeliverySettings.builder().capacity(10).spoolDirectory(spoolDir).build());
+    try {
+      for (int i = 0; i < 4; i++) {
+        dispatcher.dispatch(new DeliveryTask("USER_EVENT", "LOGIN", "{}"));
+      }
+
+      assertTrue(delivered.await(5, TimeUnit.SECONDS));
+      verify(handler, times(4)).send(argThat(e -> e.getUrl().equals("http://audit")), eq("{}"));
+      verify(handler, times(2)).send(argThat(e -> e.getUrl().equals("http://r1")), eq("{}"));
+      verify(handler, times(2)).send(argThat(e -> e.getUrl().equals("http://r2")), eq("{}"));
+      assertEquals(0, balancer.getMember("http://r1").getOutstanding());
+    } finally {
+      dispatcher.close();
+      balancer.close();
+    }
+  }
+
+  @Test
+  public void testEvictedTasksReleaseTheirMember() throws Exception {
+    HttpClientWebHookHandler handler = mock(HttpClientWebHookHandler.class);
+    EndpointRegistry registry = registryOf("http://r1;group=g");
+    EndpointBalancer balancer = new EndpointBalancer(endpoint -> true, 3, 60000);
+    balancer.apply(registry.current());
+    when(handler.getRegistry()).thenReturn(registry);
+    when(handler.getBalancer()).thenReturn(balancer);
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    CountDownLatch delivered = new CountDownLatch(2);
+    doAnswer(
+            invocation -> {
+              started.countDown();
+              release.await();
+              balancer.completed(invocation.getArgument(0), 1000, true);
+              delivered.countDown();
+              return null;
+            })
+        .when(handler)
+        .send(any(), anyString());
+
+    WebhookDispatcher dispatcher =
+        new WebhookDispatcher(
+            handler,
+            DeliverySettings.builder()
+                .capacity(1)
+                .overflowPolicy(OverflowPolicy.DROP_OLDEST)
+                .spoolDirectory(spoolDir)
+                .build());
+    try {
+      dispatcher.dispatch(new DeliveryTask("USER_EVENT", "LOGIN", "{}"));
+      assertTrue(started.await(5, TimeUnit.SECONDS));
+      // One in flight, the newest queued, the three before it evicted
+      for (int i = 0; i < 4; i++) {
+        dispatcher.dispatch(new DeliveryTask("USER_EVENT", "LOGIN", "{}"));
+      }
+      assertEquals(2, balancer.getMember("http://r1").getOutstanding());
+      release.countDown();
+
+      assertTrue(delivered.await(5, TimeUnit.SECONDS));
+      verify(handler, times(2)).send(any(), anyString());
+      assertEquals(0, balancer.getMember("http://r1").getOutstanding());
+    } finally {
+      release.countDown();
+      dispatcher.close();
+      balancer.close();
+    }
+  }
+
+  @Test
+  public void testSlowEndpointDoesNotBlockDispatch() throws Exception {
+    HttpClientWebHookHandler handler = mock(HttpClientWebHookHandler.class);
+    when(handler.getRegistry()).thenReturn(registryOf("http://slow"));
+    CountDownLatch release = new CountDownLatch(1);
+    doAnswer(
+            invocation -> {
+              release.await();
+              return null;
+            })
+        .when(handler)
+        .send(any(), anyString());
+
+    WebhookDispatcher dispatcher =
+        new WebhookDispatcher(
+            handler,
+            DeliverySettings.builder()
+                .capacity(1)
+                .overflowPolicy(OverflowPolicy.DROP_NEWEST)
+                .spoolDirectory(spoolDir)
+                .build());
+    try {
+      // One in flight, one queued, the rest are dropped without waiting
+      for (int i = 0; i < 10; i++) {
+        dispatcher.dispatch(new DeliveryTask("USER_EVENT", "LOGIN", "{}"));
+      }
+      assertTrue(dispatcher.getDropCounters().get("http://slow", "LOGIN") >= 8);
+    } finally {
+      release.countDown();
+      dispatcher.close();
+    }
+  }
+
+  @Test
+  public void testSpoolPolicyUsesDirectoryPerClass() throws Exception {
+    HttpClientWebHookHandler handler = mock(HttpClientWebHookHandler.class);
+    when(handler.getRegistry()).thenReturn(registryOf("http://a"));
+
+    WebhookDispatcher dispatcher =
+        new WebhookDispatcher(
+            handler,
+            DeliverySettings.builder()
+                .overflowPolicy(OverflowPolicy.SPOOL)
+                .priorityClasses(PriorityClasses.parse("critical:4=LOGIN_ERROR"))
+                .spoolDirectory(spoolDir)
+                .build());
+    dispatcher.close();
+
+    try (var endpoints = Files.list(spoolDir)) {
+      Path endpointDir = endpoints.findFirst().orElseThrow();
+      assertTrue(Files.isDirectory(endpointDir.resolve("lane-0").resolve("critical")));
+      assertTrue(Files.isDirectory(endpointDir.resolve("lane-0").resolve("default")));
+    }
+  }
+
+  @Test
+  public void testEndpointChangesApplyWithoutRestart() throws Exception {
+    EndpointRegistry registry = registryOf("http://a");
+    HttpClientWebHookHandler handler = mock(HttpClientWebHookHandler.class);
+    when(handler.getRegistry()).thenReturn(registry);
+    CountDownLatch releaseA = new CountDownLatch(1);
+    CountDownLatch deliveredB = new CountDownLatch(1);
+    doAnswer(
+            invocation -> {
+              WebhookEndpoint endpoint = invocation.getArgument(0);
+              if (endpoint.getUrl().equals("http://a")) {
+                releaseA.await();
+              } else {
+                deliveredB.countDown();
+              }
+              return null;
+            })
+        .when(handler)
+        .send(any(), anyString());
+
+    WebhookDispatcher dispatcher =
+        new WebhookDispatcher(
+            handler, DeliverySettings.builder().capacity(10).spoolDirectory(spoolDir).build());
+    try {
+      // One event in flight and two queued for "a" when it is removed
+      for (int i = 0; i < 3; i++) {
+        dispatcher.dispatch(new DeliveryTask("USER_EVENT", "LOGIN", "{}"));
+      }
+      EndpointLanes lanesA = dispatcher.getEndpoint("http://a");
+      registry.update(EndpointRegistry.ENV_SOURCE, "http://b");
+
+      assertNull(dispatcher.getEndpoint("http://a"));
+      dispatcher.dispatch(new DeliveryTask("USER_EVENT", "LOGIN", "{}"));
+      assertTrue(deliveredB.await(5, TimeUnit.SECONDS));
+
+      // The removed endpoint still receives its backlog before it is closed
+      releaseA.countDown();
+      verify(handler, timeout(5000).times(3))
+          .send(argThat(e -> e.getUrl().equals("http://a")), eq("{}"));
+      assertEquals(0, lanesA.size());
+    } finally {
+      releaseA.countDown();
+      dispatcher.close();
+    }
+  }
+
+  @Test
+  public void testRealmEndpointsOnlyReceiveTheirRealm() throws Exception {
+    EndpointRegistry registry = registryOf("http://global");
+    registry.updateRealm("realm-1", "http://realm-1");
+    HttpClientWebHookHandler handler = mock(HttpClientWebHookHandler.class);
+    when(handler.getRegistry()).thenReturn(registry);
+
+    WebhookDispatcher dispatcher =
+        new WebhookDispatcher(
+            handler, DeliverySettings.builder().capacity(10).spoolDirectory(spoolDir).build());
+    try {
+      dispatcher.dispatch(
+          DeliveryTask.builder()
+              .eventType("USER_EVENT")
+              .type("LOGIN")
+              .realmId("realm-1")
+              .userId("u1")
+              .payload("{1}")
+              .build());
+      dispatcher.dispatch(
+          DeliveryTask.builder()
+              .eventType("USER_EVENT")
+              .type("LOGIN")
+              .realmId("realm-2")
+              .userId("u2")
+              .payload("{2}")
+              .build());
+
+      verify(handler, timeout(5000))
+          .send(argThat(e -> e.getUrl().equals("http://global")), eq("{1}"));
+      verify(handler, timeout(5000))
+          .send(argThat(e -> e.getUrl().equals("http://global")), eq("{2}"));
+      verify(handler, timeout(5000))
+          .send(argThat(e -> e.getUrl().equals("http://realm-1")), eq("{1}"));
+      verify(handler, never()).send(argThat(e -> e.getUrl().equals("http://realm-1")), eq("{2}"));
+    } finally {
+      dispatcher.close();
+    }
+  }
+
+  @Test
+  public void testChangedOptionsKeepLanes() throws Exception {
+    EndpointRegistry registry = registryOf("http://a;timeoutMs=1000");
+    HttpClientWebHookHandler handler = mock(HttpClientWebHookHandler.class);
+    when(handler.getRegistry()).thenReturn(registry);
+
+    WebhookDispatcher dispatcher =
+        new WebhookDispatcher(
+            handler, DeliverySettings.builder().capacity(10).spoolDirectory(spoolDir).build());
+    try {
+      EndpointLanes lanes = dispatcher.getEndpoint("http://a");
+      registry.update(EndpointRegistry.ENV_SOURCE, "http://a;timeoutMs=2000");
+
+      assertSame(lanes, dispatcher.getEndpoint("http://a"));
+      assertEquals("2000", lanes.getEndpoint().option(WebhookEndpoint.TIMEOUT_OPTION));
+    } finally {
+      dispatcher.close();
+    }
+  }
+
+  @Test
+  public void testFromConfigDisabled() throws Exception {
+    System.setProperty(WebhookConfig.QUEUE_CAPACITY, "0");
+    assertNull(WebhookDispatcher.fromConfig(mock(HttpClientWebHookHandler.class)));
+  }
+
+  private static EndpointRegistry registryOf(String specs) {
+    EndpointRegistry registry = new EndpointRegistry(null);
+    registry.update(EndpointRegistry.ENV_SOURCE, specs);
+    return registry;
+  }
+}
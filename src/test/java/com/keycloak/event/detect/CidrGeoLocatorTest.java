@@ -0,0 +1,61 @@
+package com.keycloak.event.detect;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** Tests for the CidrGeoLocator class. */
+public class CidrGeoLocatorTest {
+
+  @TempDir Path dir;
+
+  @Test
+  public void testLocatesAddressesInRanges() {
+    CidrGeoLocator locator =
+        new CidrGeoLocator(
+            List.of(
+                "# cidr,latitude,longitude",
+                "198.51.100.0/24,-33.87,151.21",
+                "",
+                "192.0.2.0/24,52.37,4.89",
+                "203.0.113.7,40.71,-74.01"));
+
+    assertArrayEquals(new double[] {52.37, 4.89}, locator.locate("192.0.2.200"));
+    assertArrayEquals(new double[] {-33.87, 151.21}, locator.locate("198.51.100.0"));
+    assertArrayEquals(new double[] {40.71, -74.01}, locator.locate("203.0.113.7"));
+    assertNull(locator.locate("203.0.113.8"));
+    assertNull(locator.locate("10.0.0.1"));
+    assertNull(locator.locate("2001:db8::1"));
+    assertNull(locator.locate(null));
+  }
+
+  @Test
+  public void testInvalidLinesAreIgnored() {
+    CidrGeoLocator locator =
+        new CidrGeoLocator(
+            List.of("300.0.0.0/8,1,2", "10.0.0.0/33,1,2", "10.0.0.0/8,north,2", "10.0.0.0/8,1,2"));
+
+    assertArrayEquals(new double[] {1, 2}, locator.locate("10.1.2.3"));
+  }
+
+  @Test
+  public void testParseRejectsNonIpv4() {
+    assertEquals(0xC0000201L, CidrGeoLocator.parse("192.0.2.1"));
+    assertEquals(-1, CidrGeoLocator.parse("192.0.2"));
+    assertEquals(-1, CidrGeoLocator.parse("192.0.2.256"));
+    assertEquals(-1, CidrGeoLocator.parse("192.0..1"));
+    assertEquals(-1, CidrGeoLocator.parse("a.b.c.d"));
+  }
+
+  @Test
+  public void testLoadReadsFile() throws Exception {
+    Path file = dir.resolve("geo.csv");
+    Files.writeString(file, "192.0.2.0/24,52.37,4.89\n");
+
+    assertNotNull(CidrGeoLocator.load(file).locate("192.0.2.1"));
+  }
+}
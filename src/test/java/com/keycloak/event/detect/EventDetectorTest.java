@@ -0,0 +1,188 @@
+package com.keycloak.event.detect;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.keycloak.events.Event;
+import org.keycloak.events.EventType;
+
+/** Tests for the EventDetector class. */
+public class EventDetectorTest {
+
+  private static final long START = 1_700_000_000_000L;
+
+  private static final GeoLocator LOCATOR =
+      new CidrGeoLocator(
+          List.of(
+              "192.0.2.0/24,52.37,4.89", // Amsterdam
+              "198.51.100.0/24,-33.87,151.21", // Sydney
+              "203.0.113.0/24,52.09,5.12")); // Utrecht
+
+  @Test
+  public void testUserFailuresRaiseOneAlertAtThreshold() {
+    EventDetector detector = new EventDetector(60_000, 3, 0, 0, 100, null, 1000);
+
+    assertTrue(detector.observe(failure("u1", "192.0.2.1", START)).isEmpty());
+    assertTrue(detector.observe(failure("u1", "192.0.2.2", START + 1)).isEmpty());
+    List<Alert> alerts = detector.observe(failure("u1", "192.0.2.3", START + 2));
+    assertTrue(detector.observe(failure("u1", "192.0.2.4", START + 3)).isEmpty());
+
+    assertEquals(1, alerts.size());
+    Alert alert = alerts.get(0);
+    assertEquals(Alert.BRUTE_FORCE, alert.getType());
+    assertEquals("userId", alert.getKey());
+    assertEquals("u1", alert.getValue());
+    assertEquals(3, alert.getCount());
+    assertEquals(60_000L, alert.getWindowMs());
+    assertEquals("realm", alert.getRealmId());
+    assertEquals("192.0.2.3", alert.getIpAddress());
+  }
+
+  @Test
+  public void testFailuresAreCountedPerIpAndClient() {
+    EventDetector detector = new EventDetector(60_000, 0, 2, 3, 100, null, 1000);
+
+    detector.observe(failure("u1", "192.0.2.1", START));
+    List<Alert> byIp = detector.observe(failure("u2", "192.0.2.1", START + 1));
+    List<Alert> byClient = detector.observe(failure("u3", "192.0.2.9", START + 2));
+
+    assertEquals(1, byIp.size());
+    assertEquals("ipAddress", byIp.get(0).getKey());
+    assertEquals(1, byClient.size());
+    assertEquals("clientId", byClient.get(0).getKey());
+    assertEquals("app", byClient.get(0).getValue());
+  }
+
+  @Test
+  public void testUsernameFloodDoesNotEvictAddressCounts() {
+    EventDetector detector = new EventDetector(60_000, 100, 3, 0, 4, null, 1000);
+
+    detector.observe(failure("u0", "192.0.2.1", START));
+    for (int i = 1; i <= 8; i++) {
+      detector.observe(failure("u" + i, null, START + 6_000));
+    }
+    detector.observe(failure("u9", "192.0.2.1", START + 12_000));
+    List<Alert> alerts = detector.observe(failure("u10", "192.0.2.1", START + 12_000));
+
+    assertEquals(1, alerts.size());
+    assertEquals("ipAddress", alerts.get(0).getKey());
+  }
+
+  @Test
+  public void testUnknownUserIsCountedByUsername() {
+    EventDetector detector = new EventDetector(60_000, 2, 0, 0, 100, null, 1000);
+    Event first = failure(null, "192.0.2.1", START);
+    first.setDetails(Map.of("username", "admin"));
+    Event second = failure(null, "192.0.2.1", START + 1);
+    second.setDetails(Map.of("username", "admin"));
+
+    detector.observe(first);
+    List<Alert> alerts = detector.observe(second);
+
+    assertEquals("admin", alerts.get(0).getValue());
+  }
+
+  @Test
+  public void testFailuresOutsideWindowDoNotAlert() {
+    EventDetector detector = new EventDetector(60_000, 2, 0, 0, 100, null, 1000);
+
+    detector.observe(failure("u1", "192.0.2.1", START));
+
+    assertTrue(detector.observe(failure("u1", "192.0.2.1", START + 120_000)).isEmpty());
+  }
+
+  @Test
+  public void testRealmsAreCountedSeparately() {
+    EventDetector detector = new EventDetector(60_000, 2, 0, 0, 100, null, 1000);
+    Event other = failure("u1", "192.0.2.1", START + 1);
+    other.setRealmId("other");
+
+    detector.observe(failure("u1", "192.0.2.1", START));
+
+    assertTrue(detector.observe(other).isEmpty());
+  }
+
+  @Test
+  public void testImpossibleTravelIsDetected() {
+    EventDetector detector = new EventDetector(60_000, 5, 0, 0, 100, LOCATOR, 1000);
+
+    assertTrue(detector.observe(login("u1", "192.0.2.1", START)).isEmpty());
+    List<Alert> alerts =
+        detector.observe(login("u1", "198.51.100.1", START + TimeUnit.HOURS.toMillis(2)));
+
+    assertEquals(1, alerts.size());
+    Alert alert = alerts.get(0);
+    assertEquals(Alert.IMPOSSIBLE_TRAVEL, alert.getType());
+    assertEquals("u1", alert.getUserId());
+    assertTrue(alert.getDistanceKm() > 16_000 && alert.getDistanceKm() < 17_000);
+    assertEquals(TimeUnit.HOURS.toMillis(2), alert.getElapsedMs());
+    assertTrue(alert.getSpeedKmh() > 8_000);
+  }
+
+  @Test
+  public void testPlausibleTravelIsNotReported() {
+    EventDetector detector = new EventDetector(60_000, 5, 0, 0, 100, LOCATOR, 1000);
+
+    detector.observe(login("u1", "192.0.2.1", START));
+    // Close by, even if fast
+    assertTrue(detector.observe(login("u1", "203.0.113.1", START + 60_000)).isEmpty());
+    // Far, but slow enough
+    assertTrue(
+        detector
+            .observe(login("u1", "198.51.100.1", START + TimeUnit.HOURS.toMillis(24)))
+            .isEmpty());
+    // Other user, unknown address
+    assertTrue(detector.observe(login("u2", "198.51.100.1", START)).isEmpty());
+    assertTrue(detector.observe(login("u2", "10.0.0.1", START + 1)).isEmpty());
+  }
+
+  @Test
+  public void testTravelIsNotDetectedWithoutLocator() {
+    EventDetector detector = new EventDetector(60_000, 5, 0, 0, 100, null, 1000);
+
+    detector.observe(login("u1", "192.0.2.1", START));
+
+    assertTrue(detector.observe(login("u1", "198.51.100.1", START + 1)).isEmpty());
+  }
+
+  @Test
+  public void testDistance() {
+    assertEquals(0, EventDetector.distance(52.37, 4.89, 52.37, 4.89), 0.001);
+    assertEquals(20015, EventDetector.distance(0, 0, 0, 180), 1);
+  }
+
+  @Test
+  public void testKeysSeparateParts() {
+    assertNotEquals(EventDetector.key("user", "ab", "c"), EventDetector.key("user", "a", "bc"));
+    assertEquals(EventDetector.key("user", "a", "b"), EventDetector.key("user", "a", "b"));
+  }
+
+  @Test
+  public void testFromConfigIsDisabledByDefault() {
+    assertNull(EventDetector.fromConfig());
+  }
+
+  private static Event failure(String userId, String ipAddress, long time) {
+    Event event = event(EventType.LOGIN_ERROR, userId, ipAddress, time);
+    event.setError("invalid_user_credentials");
+    return event;
+  }
+
+  private static Event login(String userId, String ipAddress, long time) {
+    return event(EventType.LOGIN, userId, ipAddress, time);
+  }
+
+  private static Event event(EventType type, String userId, String ipAddress, long time) {
+    Event event = new Event();
+    event.setType(type);
+    event.setRealmId("realm");
+    event.setClientId("app");
+    event.setUserId(userId);
+    event.setIpAddress(ipAddress);
+    event.setTime(time);
+    return event;
+  }
+}
@@ -0,0 +1,101 @@
+package com.keycloak.event.detect;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+/** Tests for the WindowCounters class. */
+public class WindowCountersTest {
+
+  private static final long START = 1_700_000_000_000L;
+
+  @Test
+  public void testCountsWithinWindow() {
+    WindowCounters counters = new WindowCounters(10_000, 10, 100);
+
+    assertEquals(1, counters.increment(42, START));
+    assertEquals(2, counters.increment(42, START + 3_000));
+    assertEquals(3, counters.increment(42, START + 9_000));
+    assertEquals(1, counters.increment(7, START + 9_000));
+    assertEquals(3, counters.count(42));
+    assertEquals(0, counters.count(8));
+  }
+
+  @Test
+  public void testOldBucketsSlideOutOfWindow() {
+    WindowCounters counters = new WindowCounters(10_000, 10, 100);
+    counters.increment(42, START);
+    counters.increment(42, START + 5_000);
+
+    assertEquals(2, counters.increment(42, START + 10_500));
+    assertEquals(1, counters.increment(42, START + 60_000));
+  }
+
+  @Test
+  public void testLateEventsCountUnlessOutsideWindow() {
+    WindowCounters counters = new WindowCounters(10_000, 10, 100);
+    counters.increment(42, START + 20_000);
+
+    assertEquals(2, counters.increment(42, START + 15_000));
+    assertEquals(2, counters.increment(42, START));
+  }
+
+  @Test
+  public void testZeroKeyIsCounted() {
+    WindowCounters counters = new WindowCounters(10_000, 10, 100);
+
+    assertEquals(1, counters.increment(0, START));
+    assertEquals(2, counters.increment(0, START));
+  }
+
+  @Test
+  public void testTableGrowsAndKeepsCounts() {
+    WindowCounters counters = new WindowCounters(10_000, 10, 10_000);
+    for (long key = 1; key <= 5_000; key++) {
+      counters.increment(key, START);
+      counters.increment(key, START);
+    }
+
+    assertEquals(5_000, counters.size());
+    for (long key = 1; key <= 5_000; key++) {
+      assertEquals(2, counters.count(key));
+    }
+  }
+
+  @Test
+  public void testFullTableEvictsLeastRecentlyCountedKeys() {
+    WindowCounters counters = new WindowCounters(10_000, 10, 4);
+    for (long key = 1; key <= 4; key++) {
+      assertEquals(1, counters.increment(key, START + key * 1_000));
+    }
+    assertEquals(2, counters.increment(1, START + 5_000));
+
+    assertEquals(1, counters.increment(5, START + 6_000));
+    assertEquals(4, counters.size());
+    assertEquals(0, counters.count(2), "The least recently counted key should be evicted");
+    assertEquals(2, counters.count(1));
+    assertEquals(1, counters.count(3));
+  }
+
+  @Test
+  public void testFullTableDropsExpiredKeysBeforeEvicting() {
+    WindowCounters counters = new WindowCounters(10_000, 10, 4);
+    for (long key = 1; key <= 4; key++) {
+      counters.increment(key, START);
+    }
+
+    assertEquals(1, counters.increment(5, START + 30_000));
+    assertEquals(1, counters.size());
+  }
+
+  @Test
+  public void testEvictionKeepsKeysCountedInTheSameBucket() {
+    WindowCounters counters = new WindowCounters(10_000, 10, 8);
+    for (long key = 1; key <= 9; key++) {
+      counters.increment(key, START);
+    }
+
+    assertEquals(7, counters.size(), "Only a quarter of the table should be evicted");
+    assertEquals(1, counters.count(9));
+  }
+}
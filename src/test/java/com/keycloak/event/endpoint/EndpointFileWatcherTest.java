@@ -0,0 +1,78 @@
+package com.keycloak.event.endpoint;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** Tests for the EndpointFileWatcher class. */
+public class EndpointFileWatcherTest {
+
+  @TempDir Path dir;
+
+  @Test
+  public void testLoadsFileOnStart() throws Exception {
+    Path file = dir.resolve("endpoints.txt");
+    Files.writeString(file, "# receivers\nhttp://a\n\nhttp://b;timeoutMs=500,http://c\n");
+    EndpointRegistry registry = new EndpointRegistry(null);
+
+    try (EndpointFileWatcher watcher = new EndpointFileWatcher(file, registry, 60000)) {
+      assertEquals(List.of("http://a", "http://b", "http://c"), registry.current().getUrls());
+    }
+  }
+
+  @Test
+  public void testReloadsChangedFile() throws Exception {
+    Path file = dir.resolve("endpoints.txt");
+    Files.writeString(file, "http://a\n");
+    EndpointRegistry registry = new EndpointRegistry(null);
+
+    try (EndpointFileWatcher watcher = new EndpointFileWatcher(file, registry, 60000)) {
+      assertFalse(watcher.check());
+
+      Files.writeString(file, "http://b\n");
+      Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 1000));
+
+      assertTrue(watcher.check());
+      assertEquals(List.of("http://b"), registry.current().getUrls());
+    }
+  }
+
+  @Test
+  public void testPollingPicksUpChanges() throws Exception {
+    Path file = dir.resolve("endpoints.txt");
+    EndpointRegistry registry = new EndpointRegistry(null);
+
+    try (EndpointFileWatcher watcher = new EndpointFileWatcher(file, registry, 20)) {
+      assertTrue(registry.current().getUrls().isEmpty());
+
+      Files.writeString(file, "http://late\n");
+
+      long deadline = System.currentTimeMillis() + 5000;
+      while (registry.current().getUrls().isEmpty() && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+      assertEquals(List.of("http://late"), registry.current().getUrls());
+    }
+  }
+
+  @Test
+  public void testDeletedFileClearsSource() throws Exception {
+    Path file = dir.resolve("endpoints.txt");
+    Files.writeString(file, "http://a\n");
+    EndpointRegistry registry = new EndpointRegistry(null);
+    registry.update(EndpointRegistry.ENV_SOURCE, "http://env");
+
+    try (EndpointFileWatcher watcher = new EndpointFileWatcher(file, registry, 60000)) {
+      Files.delete(file);
+
+      assertTrue(watcher.check());
+      assertEquals(List.of("http://env"), registry.current().getUrls());
+      assertFalse(watcher.check());
+    }
+  }
+}
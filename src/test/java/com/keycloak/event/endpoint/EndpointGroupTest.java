@@ -0,0 +1,117 @@
+package com.keycloak.event.endpoint;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+/** Tests for the EndpointGroup class. */
+public class EndpointGroupTest {
+
+  @Test
+  public void testUngroupedEndpointsAreBroadcast() {
+    List<EndpointGroup> groups =
+        EndpointGroup.of(WebhookEndpoint.parseAll("http://a,http://b", null));
+
+    assertEquals(2, groups.size());
+    for (EndpointGroup group : groups) {
+      assertNull(group.getName());
+      assertEquals(BalanceMode.BROADCAST, group.getMode());
+      assertFalse(group.isBalanced());
+      assertEquals(1, group.getMembers().size());
+    }
+  }
+
+  @Test
+  public void testMembersAreGroupedByName() {
+    List<EndpointGroup> groups =
+        EndpointGroup.of(
+            WebhookEndpoint.parseAll(
+                "http://r1;group=orders,http://audit,http://r2;group=orders;balance=ewma", null));
+
+    assertEquals(2, groups.size());
+    EndpointGroup orders = groups.get(0);
+    assertEquals("orders", orders.getName());
+    assertEquals(BalanceMode.EWMA, orders.getMode());
+    assertTrue(orders.isBalanced());
+    assertEquals("http://r1", orders.getMembers().get(0).getUrl());
+    assertEquals("http://r2", orders.getMembers().get(1).getUrl());
+    assertEquals("http://audit", groups.get(1).getMembers().get(0).getUrl());
+  }
+
+  @Test
+  public void testBalanceMode() {
+    assertEquals(
+        EndpointGroup.DEFAULT_MODE,
+        EndpointGroup.of(WebhookEndpoint.parseAll("http://a;group=g", null)).get(0).getMode());
+    assertEquals(
+        BalanceMode.LEAST_OUTSTANDING,
+        EndpointGroup.of(
+                WebhookEndpoint.parseAll("http://a;group=g;balance=Least-Outstanding", null))
+            .get(0)
+            .getMode());
+    assertEquals(
+        BalanceMode.BROADCAST,
+        EndpointGroup.of(
+                WebhookEndpoint.parseAll(
+                    "http://a;group=g;balance=broadcast,http://b;group=g;balance=round-robin",
+                    null))
+            .get(0)
+            .getMode());
+    assertEquals(
+        EndpointGroup.DEFAULT_MODE,
+        EndpointGroup.of(WebhookEndpoint.parseAll("http://a;group=g;balance=random", null))
+            .get(0)
+            .getMode());
+  }
+
+  @Test
+  public void testHedgeRateFromFirstMemberThatSetsIt() {
+    EndpointGroup group =
+        EndpointGroup.of(
+                WebhookEndpoint.parseAll(
+                    "http://a;group=g;hedge=zero,http://b;group=g;hedge=0.05,"
+                        + "http://c;group=g;hedge=0.5",
+                    null))
+            .get(0);
+    assertEquals(0.05, group.getHedgeRate());
+    assertTrue(group.isHedged());
+
+    // A single member has nobody to hedge to, broadcast groups are never hedged
+    assertFalse(
+        EndpointGroup.of(WebhookEndpoint.parseAll("http://a;group=g;hedge=0.1", null))
+            .get(0)
+            .isHedged());
+    EndpointGroup broadcast =
+        EndpointGroup.of(
+                WebhookEndpoint.parseAll(
+                    "http://a;group=g;balance=broadcast;hedge=0.1,http://b;group=g", null))
+            .get(0);
+    assertEquals(0, broadcast.getHedgeRate());
+    assertFalse(
+        EndpointGroup.of(
+                WebhookEndpoint.parseAll("http://a;group=g;hedge=2,http://b;group=g", null))
+            .get(0)
+            .isHedged());
+  }
+
+  @Test
+  public void testSnapshotGroupsPerRealm() {
+    EndpointSnapshot snapshot =
+        new EndpointSnapshot(
+            1,
+            WebhookEndpoint.parseAll("http://r1;group=orders,http://r2;group=orders", null),
+            Map.of("realm", WebhookEndpoint.parseAll("http://r3;group=orders", null)));
+
+    assertEquals(1, snapshot.getGroups().size());
+    assertEquals(2, snapshot.groupsFor(null).get(0).getMembers().size());
+    assertEquals(2, snapshot.groupsFor("other").get(0).getMembers().size());
+    assertEquals(3, snapshot.groupsFor("realm").get(0).getMembers().size());
+    assertEquals(2, snapshot.allGroups().size());
+    assertEquals(
+        Collections.emptyList(),
+        new EndpointSnapshot(1, Collections.emptyList(), Collections.emptyMap()).allGroups());
+  }
+}
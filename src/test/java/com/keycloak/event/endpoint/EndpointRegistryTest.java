@@ -0,0 +1,161 @@
+package com.keycloak.event.endpoint;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.keycloak.Config;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.RealmProvider;
+
+/** Tests for the EndpointRegistry class. */
+public class EndpointRegistryTest {
+
+  @Test
+  public void testUpdatePublishesNewSnapshot() {
+    EndpointRegistry registry = new EndpointRegistry(null);
+    EndpointSnapshot empty = registry.current();
+
+    registry.update(EndpointRegistry.ENV_SOURCE, "http://a,http://b");
+    EndpointSnapshot snapshot = registry.current();
+
+    assertNotSame(empty, snapshot);
+    assertTrue(snapshot.getVersion() > empty.getVersion());
+    assertEquals(List.of("http://a", "http://b"), snapshot.getUrls());
+    // Snapshots already handed out are not modified
+    assertTrue(empty.getEndpoints().isEmpty());
+  }
+
+  @Test
+  public void testUnchangedUpdateKeepsSnapshot() {
+    EndpointRegistry registry = new EndpointRegistry(null);
+    registry.update(EndpointRegistry.ENV_SOURCE, "http://a");
+    EndpointSnapshot snapshot = registry.current();
+
+    registry.update(EndpointRegistry.ENV_SOURCE, " http://a ");
+    registry.update(EndpointRegistry.FILE_SOURCE, null);
+
+    assertSame(snapshot, registry.current());
+  }
+
+  @Test
+  public void testSourcesAreMergedInOrder() {
+    EndpointRegistry registry = new EndpointRegistry(null);
+    registry.update(EndpointRegistry.FILE_SOURCE, "http://file,http://shared;timeoutMs=1");
+    registry.update(EndpointRegistry.ENV_SOURCE, "http://env,http://shared;timeoutMs=2");
+
+    EndpointSnapshot snapshot = registry.current();
+    assertEquals(List.of("http://env", "http://shared", "http://file"), snapshot.getUrls());
+    assertEquals("2", snapshot.find("http://shared").option(WebhookEndpoint.TIMEOUT_OPTION));
+
+    registry.update(EndpointRegistry.ENV_SOURCE, null);
+    assertEquals(List.of("http://file", "http://shared"), registry.current().getUrls());
+  }
+
+  @Test
+  public void testFromConfigReadsSpiScope() {
+    Config.Scope config = mock(Config.Scope.class);
+    when(config.get(EndpointRegistry.SPI_URLS_OPTION)).thenReturn("http://spi");
+
+    EndpointRegistry registry = EndpointRegistry.fromConfig(config);
+
+    assertEquals(List.of("http://spi"), registry.current().getUrls());
+  }
+
+  @Test
+  public void testRealmEndpoints() {
+    EndpointRegistry registry = new EndpointRegistry(null);
+    registry.update(EndpointRegistry.ENV_SOURCE, "http://global");
+    registry.updateRealm("realm-1", "http://realm-1,http://global");
+
+    EndpointSnapshot snapshot = registry.current();
+    assertEquals(List.of("http://global"), urls(snapshot.endpointsFor(null)));
+    assertEquals(List.of("http://global"), urls(snapshot.endpointsFor("realm-2")));
+    assertEquals(
+        List.of("http://global", "http://realm-1"), urls(snapshot.endpointsFor("realm-1")));
+    assertEquals(2, snapshot.allEndpoints().size());
+
+    registry.updateRealm("realm-1", null);
+    assertEquals(List.of("http://global"), urls(registry.current().endpointsFor("realm-1")));
+  }
+
+  @Test
+  public void testRealmEndpointsOnlyUseHttp() {
+    EndpointRegistry registry = new EndpointRegistry(null);
+    registry.updateRealm(
+        "realm-1", "file:///etc/passwd,unix:///run/agent.sock,https://realm-1,http://realm-1b");
+
+    assertEquals(
+        List.of("https://realm-1", "http://realm-1b"),
+        urls(registry.current().endpointsFor("realm-1")));
+  }
+
+  @Test
+  public void testRealmEndpointsCannotJoinGroups() {
+    EndpointRegistry registry = new EndpointRegistry(null);
+    registry.update(EndpointRegistry.ENV_SOURCE, "http://siem;group=siem");
+    registry.updateRealm(
+        "realm-1",
+        "http://sink;group=siem,http://fast;balance=EWMA,http://hedged;hedge=1,http://a");
+
+    EndpointSnapshot snapshot = registry.current();
+    assertEquals(List.of("http://siem", "http://a"), urls(snapshot.endpointsFor("realm-1")));
+    EndpointGroup siem = snapshot.groupsFor("realm-1").get(0);
+    assertEquals("siem", siem.getName());
+    assertEquals(List.of("http://siem"), urls(siem.getMembers()));
+  }
+
+  @Test
+  public void testRealmEndpointsAreCapped() {
+    EndpointRegistry registry = new EndpointRegistry(null, 2);
+    registry.updateRealm("realm-1", "http://a,http://b,http://c");
+
+    assertEquals(List.of("http://a", "http://b"), urls(registry.current().endpointsFor("realm-1")));
+  }
+
+  @Test
+  public void testLoadRealmsReadsAttributes() {
+    RealmModel realm = mock(RealmModel.class);
+    when(realm.getId()).thenReturn("realm-1");
+    when(realm.getAttribute(EndpointRegistry.REALM_ATTRIBUTE)).thenReturn("http://realm-1");
+    RealmModel plain = mock(RealmModel.class);
+    when(plain.getId()).thenReturn("realm-2");
+    RealmProvider realms = mock(RealmProvider.class);
+    when(realms.getRealmsStream()).thenReturn(Stream.of(realm, plain));
+    KeycloakSession session = mock(KeycloakSession.class);
+    when(session.realms()).thenReturn(realms);
+
+    EndpointRegistry registry = new EndpointRegistry(null);
+    registry.loadRealms(session);
+
+    assertEquals(List.of("http://realm-1"), urls(registry.current().endpointsFor("realm-1")));
+    assertTrue(registry.current().endpointsFor("realm-2").isEmpty());
+  }
+
+  @Test
+  public void testListenersSeeEverySnapshot() {
+    EndpointRegistry registry = new EndpointRegistry(null);
+    List<Long> versions = new ArrayList<>();
+    registry.addListener(snapshot -> versions.add(snapshot.getVersion()));
+    registry.addListener(
+        snapshot -> {
+          throw new IllegalStateException("ignored");
+        });
+
+    registry.update(EndpointRegistry.ENV_SOURCE, "http://a");
+    registry.update(EndpointRegistry.ENV_SOURCE, "http://b");
+
+    assertEquals(List.of(1L, 2L), versions);
+    assertEquals(List.of("http://b"), registry.current().getUrls());
+  }
+
+  private static List<String> urls(List<WebhookEndpoint> endpoints) {
+    List<String> urls = new ArrayList<>();
+    endpoints.forEach(endpoint -> urls.add(endpoint.getUrl()));
+    return urls;
+  }
+}
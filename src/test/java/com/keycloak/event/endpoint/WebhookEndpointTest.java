@@ -0,0 +1,102 @@
+package com.keycloak.event.endpoint;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.keycloak.event.util.PayloadFormat;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.time.Duration;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/** Tests for the WebhookEndpoint class. */
+public class WebhookEndpointTest {
+
+  @Test
+  public void testParsePlainUrl() {
+    WebhookEndpoint endpoint = WebhookEndpoint.parse(" http://example.com/hook ", null);
+
+    assertEquals("http://example.com/hook", endpoint.getUrl());
+    assertEquals(URI.create("http://example.com/hook"), endpoint.getUri());
+    assertEquals("application/json", endpoint.getHeaders().get("Content-Type"));
+    assertEquals(Duration.ofSeconds(10), endpoint.getRequestTimeout());
+    assertTrue(endpoint.getOptions().isEmpty());
+  }
+
+  @Test
+  public void testParseOptions() {
+    WebhookEndpoint endpoint =
+        WebhookEndpoint.parse(
+            "https://siem.example.com/hook;timeoutMs=2000;header.X-Api-Key=secret;group=siem",
+            null);
+
+    assertEquals("https://siem.example.com/hook", endpoint.getUrl());
+    assertEquals(Duration.ofMillis(2000), endpoint.getRequestTimeout());
+    assertEquals("secret", endpoint.getHeaders().get("X-Api-Key"));
+    assertEquals("siem", endpoint.option("group"));
+    assertNull(endpoint.option("missing"));
+  }
+
+  @Test
+  public void testEventsOptionSelectsEventTypes() {
+    WebhookEndpoint alerts =
+        WebhookEndpoint.parse("http://example.com;events=alert|ADMIN_EVENT", null);
+    WebhookEndpoint all = WebhookEndpoint.parse("http://example.com", null);
+
+    assertTrue(alerts.accepts("ALERT"));
+    assertTrue(alerts.accepts("ADMIN_EVENT"));
+    assertFalse(alerts.accepts("USER_EVENT"));
+    assertTrue(alerts.accepts(null));
+    assertTrue(all.accepts("USER_EVENT"));
+    assertTrue(all.accepts("ALERT"));
+  }
+
+  @Test
+  public void testInvalidTimeoutFallsBackToDefault() {
+    WebhookEndpoint endpoint = WebhookEndpoint.parse("http://example.com;timeoutMs=soon", null);
+    assertEquals(Duration.ofSeconds(10), endpoint.getRequestTimeout());
+  }
+
+  @Test
+  public void testHostIpReplacement() {
+    WebhookEndpoint endpoint = WebhookEndpoint.parse("http://localhost:9000/hook", "10.0.0.5");
+    assertEquals("http://10.0.0.5:9000/hook", endpoint.getUrl());
+  }
+
+  @Test
+  public void testParseAllSkipsBlankAndInvalid() {
+    List<WebhookEndpoint> endpoints =
+        WebhookEndpoint.parseAll(
+            "http://a.example.com,, http://bad url ,http://b.example.com", null);
+
+    assertEquals(2, endpoints.size());
+    assertEquals("http://a.example.com", endpoints.get(0).getUrl());
+    assertEquals("http://b.example.com", endpoints.get(1).getUrl());
+    assertTrue(WebhookEndpoint.parseAll(null, null).isEmpty());
+  }
+
+  @Test
+  public void testFormatSetsContentType() {
+    WebhookEndpoint endpoint = WebhookEndpoint.parse("http://example.com;format=cbor", null);
+    assertEquals(PayloadFormat.CBOR, endpoint.getFormat());
+    assertEquals("application/cbor", endpoint.getHeaders().get("Content-Type"));
+
+    WebhookEndpoint unknown = WebhookEndpoint.parse("http://example.com;format=xml", null);
+    assertEquals(PayloadFormat.JSON, unknown.getFormat());
+    assertEquals("application/json", unknown.getHeaders().get("Content-Type"));
+  }
+
+  @Test
+  public void testNewRequestAppliesPreparedValues() {
+    WebhookEndpoint endpoint =
+        WebhookEndpoint.parse("http://example.com/hook;header.X-Tenant=acme;timeoutMs=500", null);
+
+    HttpRequest request =
+        endpoint.newRequest().POST(HttpRequest.BodyPublishers.ofString("{}")).build();
+
+    assertEquals(endpoint.getUri(), request.uri());
+    assertEquals("acme", request.headers().firstValue("X-Tenant").orElse(null));
+    assertEquals("application/json", request.headers().firstValue("Content-Type").orElse(null));
+    assertEquals(Duration.ofMillis(500), request.timeout().orElse(null));
+  }
+}
@@ -0,0 +1,143 @@
+package com.keycloak.event.enrich;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.keycloak.events.Event;
+import org.keycloak.events.EventType;
+import org.keycloak.events.admin.AdminEvent;
+import org.keycloak.events.admin.AuthDetails;
+import org.keycloak.events.admin.OperationType;
+import org.keycloak.events.admin.ResourceType;
+import org.keycloak.models.ClientModel;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.RealmProvider;
+import org.keycloak.models.UserModel;
+import org.keycloak.models.UserProvider;
+
+/** Tests for the EventEnricher class. */
+public class EventEnricherTest {
+
+  private KeycloakSession session;
+  private RealmProvider realmProvider;
+  private UserProvider userProvider;
+  private RealmModel realm;
+  private UserModel user;
+  private EventEnricher enricher;
+
+  @BeforeEach
+  public void setUp() {
+    session = mock(KeycloakSession.class);
+    realmProvider = mock(RealmProvider.class);
+    userProvider = mock(UserProvider.class);
+    realm = mock(RealmModel.class);
+    user = mock(UserModel.class);
+    ClientModel client = mock(ClientModel.class);
+    when(session.realms()).thenReturn(realmProvider);
+    when(session.users()).thenReturn(userProvider);
+    when(realmProvider.getRealm("realm-1")).thenReturn(realm);
+    when(realm.getName()).thenReturn("acme");
+    when(userProvider.getUserById(realm, "user-1")).thenReturn(user);
+    when(user.getUsername()).thenReturn("alice");
+    when(user.getEmail()).thenReturn("alice@example.com");
+    when(realm.getClientByClientId("account")).thenReturn(client);
+    when(realm.getClientById("client-uuid")).thenReturn(client);
+    when(client.getClientId()).thenReturn("account");
+    when(client.getName()).thenReturn("Account Console");
+    enricher = new EventEnricher(100, 60000);
+  }
+
+  @Test
+  public void testUserEventIsEnrichedWithOneLookupPerEntity() {
+    for (int i = 0; i < 10; i++) {
+      Map<String, String> fields = enricher.enrich(session, loginEvent(EventType.LOGIN));
+
+      assertEquals(
+          Map.of(
+              EventEnricher.REALM_NAME, "acme",
+              EventEnricher.USERNAME, "alice",
+              EventEnricher.EMAIL, "alice@example.com",
+              EventEnricher.CLIENT_ID, "account",
+              EventEnricher.CLIENT_NAME, "Account Console"),
+          fields);
+    }
+
+    verify(realmProvider, times(1)).getRealm("realm-1");
+    verify(userProvider, times(1)).getUserById(realm, "user-1");
+    verify(realm, times(1)).getClientByClientId("account");
+    assertEquals(9, enricher.getUsers().getHits());
+  }
+
+  @Test
+  public void testAdminEventInvalidatesChangedUser() {
+    enricher.enrich(session, loginEvent(EventType.LOGIN));
+    when(user.getEmail()).thenReturn("alice@new.example.com");
+
+    AdminEvent update = adminEvent(ResourceType.USER, "users/user-1");
+    enricher.invalidate(update);
+    Map<String, String> fields = enricher.enrich(session, loginEvent(EventType.LOGIN));
+
+    assertEquals("alice@new.example.com", fields.get(EventEnricher.EMAIL));
+    verify(userProvider, times(2)).getUserById(realm, "user-1");
+  }
+
+  @Test
+  public void testProfileUpdateInvalidatesUser() {
+    enricher.enrich(session, loginEvent(EventType.LOGIN));
+    when(user.getUsername()).thenReturn("alice2");
+
+    Map<String, String> fields = enricher.enrich(session, loginEvent(EventType.UPDATE_PROFILE));
+
+    assertEquals("alice2", fields.get(EventEnricher.USERNAME));
+  }
+
+  @Test
+  public void testAdminEventIsEnrichedWithActor() {
+    Map<String, String> fields =
+        enricher.enrich(session, adminEvent(ResourceType.GROUP, "groups/1"));
+
+    assertEquals("acme", fields.get(EventEnricher.REALM_NAME));
+    assertEquals("alice", fields.get(EventEnricher.USERNAME));
+    assertEquals("Account Console", fields.get(EventEnricher.CLIENT_NAME));
+  }
+
+  @Test
+  public void testUnknownEntitiesAndFailuresAreSkipped() {
+    Event event = loginEvent(EventType.LOGIN);
+    event.setUserId("deleted-user");
+    event.setClientId(null);
+    when(realmProvider.getRealm("broken")).thenThrow(new IllegalStateException("no transaction"));
+
+    assertEquals(Map.of(EventEnricher.REALM_NAME, "acme"), enricher.enrich(session, event));
+    event.setRealmId("broken");
+    assertTrue(enricher.enrich(session, event).isEmpty());
+    assertTrue(enricher.enrich(null, event).isEmpty());
+  }
+
+  private static Event loginEvent(EventType type) {
+    Event event = new Event();
+    event.setType(type);
+    event.setRealmId("realm-1");
+    event.setUserId("user-1");
+    event.setClientId("account");
+    return event;
+  }
+
+  private static AdminEvent adminEvent(ResourceType resourceType, String path) {
+    AuthDetails auth = new AuthDetails();
+    auth.setRealmId("realm-1");
+    auth.setUserId("user-1");
+    auth.setClientId("client-uuid");
+    AdminEvent adminEvent = new AdminEvent();
+    adminEvent.setRealmId("realm-1");
+    adminEvent.setAuthDetails(auth);
+    adminEvent.setOperationType(OperationType.UPDATE);
+    adminEvent.setResourceType(resourceType);
+    adminEvent.setResourcePath(path);
+    return adminEvent;
+  }
+}
@@ -0,0 +1,86 @@
+package com.keycloak.event.enrich;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+/** Tests for the LookupCache class. */
+public class LookupCacheTest {
+
+  private final AtomicLong now = new AtomicLong();
+  private final AtomicInteger loads = new AtomicInteger();
+
+  @Test
+  public void testEntriesExpireAfterTtl() {
+    LookupCache<String> cache = new LookupCache<>(10, 1000, now::get);
+
+    assertEquals("a-1", cache.get("a", this::load));
+    assertEquals("a-1", cache.get("a", this::load));
+    now.addAndGet(TimeUnit.MILLISECONDS.toNanos(999));
+    assertEquals("a-1", cache.get("a", this::load));
+    now.addAndGet(TimeUnit.MILLISECONDS.toNanos(1));
+    assertEquals("a-2", cache.get("a", this::load));
+
+    assertEquals(2, cache.getMisses());
+    assertEquals(2, cache.getHits());
+  }
+
+  @Test
+  public void testLeastRecentlyUsedIsEvicted() {
+    LookupCache<String> cache = new LookupCache<>(2, 60000, now::get);
+    cache.get("a", this::load);
+    cache.get("b", this::load);
+    cache.get("a", this::load);
+    cache.get("c", this::load);
+
+    assertEquals(2, cache.size());
+    assertEquals("a-1", cache.get("a", this::load));
+    assertEquals("b-4", cache.get("b", this::load));
+  }
+
+  @Test
+  public void testMissingValuesAreCached() {
+    LookupCache<String> cache = new LookupCache<>(10, 60000, now::get);
+    AtomicInteger calls = new AtomicInteger();
+
+    assertNull(cache.get("gone", key -> calls.incrementAndGet() > 0 ? null : key));
+    assertNull(cache.get("gone", key -> calls.incrementAndGet() > 0 ? null : key));
+    assertEquals(1, calls.get());
+  }
+
+  @Test
+  public void testInvalidation() {
+    LookupCache<String> cache = new LookupCache<>(10, 60000, now::get);
+    cache.get("realm/a", this::load);
+    cache.get("realm/b", this::load);
+    cache.get("other/c", this::load);
+
+    cache.invalidate("realm/a");
+    assertEquals("realm/a-4", cache.get("realm/a", this::load));
+    cache.invalidateIf(key -> key.startsWith("realm/"));
+    assertEquals(1, cache.size());
+  }
+
+  @Test
+  public void testLoadOverlappingInvalidationIsNotCached() {
+    LookupCache<String> cache = new LookupCache<>(10, 60000, now::get);
+
+    String stale =
+        cache.get(
+            "a",
+            key -> {
+              cache.invalidate(key);
+              return "stale";
+            });
+
+    assertEquals("stale", stale);
+    assertEquals(0, cache.size());
+  }
+
+  private String load(String key) {
+    return key + "-" + loads.incrementAndGet();
+  }
+}
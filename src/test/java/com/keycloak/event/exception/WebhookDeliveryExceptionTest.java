@@ -0,0 +1,38 @@
+package com.keycloak.event.exception;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.keycloak.event.delivery.ErrorCategory;
+import org.junit.jupiter.api.Test;
+
+/** Tests for the WebhookDeliveryException class. */
+public class WebhookDeliveryExceptionTest {
+
+  @Test
+  public void testConstructorWithStatus() {
+    WebhookDeliveryException exception =
+        new WebhookDeliveryException("HTTP error status: 429", 429);
+
+    assertEquals("HTTP error status: 429", exception.getMessage());
+    assertEquals(429, exception.getStatus());
+    assertEquals(ErrorCategory.CLIENT_ERROR, exception.getCategory());
+  }
+
+  @Test
+  public void testConstructorWithCategory() {
+    WebhookDeliveryException exception =
+        new WebhookDeliveryException("Sink closed", ErrorCategory.IO, 0);
+
+    assertEquals(ErrorCategory.IO, exception.getCategory());
+    assertEquals(0, exception.getStatus());
+  }
+
+  @Test
+  public void testHasNoStackTrace() {
+    WebhookDeliveryException exception = new WebhookDeliveryException("HTTP error", 500);
+
+    assertEquals(0, exception.getStackTrace().length);
+    exception.addSuppressed(new RuntimeException());
+    assertEquals(0, exception.getSuppressed().length);
+  }
+}
@@ -48,4 +48,11 @@ public class WebhookMultiExceptionTest {
     assertEquals(exception2, suppressed[1]);
     assertEquals(exception3, suppressed[2]);
   }
+
+  @Test
+  public void testHasNoStackTrace() {
+    WebhookMultiException exception = new WebhookMultiException("Multiple webhook failures");
+
+    assertEquals(0, exception.getStackTrace().length);
+  }
 }
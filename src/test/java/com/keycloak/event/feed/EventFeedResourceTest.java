@@ -0,0 +1,160 @@
+package com.keycloak.event.feed;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+import com.keycloak.event.delivery.DeliveryTask;
+import jakarta.ws.rs.container.AsyncResponse;
+import jakarta.ws.rs.sse.OutboundSseEvent;
+import jakarta.ws.rs.sse.Sse;
+import jakarta.ws.rs.sse.SseEventSink;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+/** Tests for the EventFeedResource class. */
+public class EventFeedResourceTest {
+
+  private static final long TIMEOUT_MILLIS = EventFeed.TICK_MILLIS * 8;
+
+  private EventFeed feed;
+  private EventFeedResource resource;
+  private OutboundSseEvent.Builder builder;
+  private Sse sse;
+  private SseEventSink sink;
+
+  @BeforeEach
+  public void setUp() {
+    feed = new EventFeed(100);
+    resource =
+        new EventFeedResource(null, feed) {
+          @Override
+          protected String authorize() {
+            return "realm-a";
+          }
+        };
+    builder = mock(OutboundSseEvent.Builder.class, RETURNS_SELF);
+    when(builder.build()).thenReturn(mock(OutboundSseEvent.class));
+    sse = mock(Sse.class);
+    when(sse.newEventBuilder()).thenReturn(builder);
+    sink = mock(SseEventSink.class);
+    when(sink.send(any())).thenReturn(CompletableFuture.completedFuture(null));
+  }
+
+  @AfterEach
+  public void tearDown() {
+    feed.close();
+  }
+
+  @Test
+  public void testEventsAreReturnedRightAway() {
+    append(3);
+    AsyncResponse response = mock(AsyncResponse.class);
+
+    resource.events(null, 2, 30, response);
+
+    assertTrue(resumed(response, 0).endsWith("\"events\":[{\"n\":0},{\"n\":1}]}"));
+    assertEquals(0, feed.getSubscriberCount());
+  }
+
+  @Test
+  public void testEmptyPageWithoutWaitIsReturnedRightAway() {
+    AsyncResponse response = mock(AsyncResponse.class);
+
+    resource.events(null, null, null, response);
+
+    assertTrue(resumed(response, 0).endsWith("\"events\":[]}"));
+  }
+
+  @Test
+  public void testLongPollResumesWhenEventsArrive() {
+    AsyncResponse response = mock(AsyncResponse.class);
+    resource.events(null, null, 30, response);
+    verify(response, after(EventFeed.TICK_MILLIS).never()).resume(any(Object.class));
+
+    append(1);
+
+    assertTrue(resumed(response, TIMEOUT_MILLIS).endsWith("\"events\":[{\"n\":0}]}"));
+  }
+
+  @Test
+  public void testLongPollResumesWithEmptyPageAfterWait() {
+    AsyncResponse response = mock(AsyncResponse.class);
+
+    resource.events(null, null, 1, response);
+
+    assertTrue(resumed(response, 1000 + TIMEOUT_MILLIS).endsWith("\"events\":[]}"));
+  }
+
+  @Test
+  public void testStreamSendsEventsWithCursorIds() {
+    append(2);
+
+    resource.stream(null, null, sink, sse);
+
+    verify(builder, timeout(TIMEOUT_MILLIS)).data(String.class, "{\"n\":1}");
+    verify(builder, times(2)).name(EventFeedResource.EVENT);
+    verify(builder).data(String.class, "{\"n\":0}");
+    verify(builder).id(feed.read("realm-a", null, 1).getCursor());
+  }
+
+  @Test
+  public void testStreamResumesAfterLastEventId() {
+    append(3);
+    String lastEventId = feed.read("realm-a", null, 2).getCursor();
+
+    resource.stream(null, lastEventId, sink, sse);
+
+    verify(builder, timeout(TIMEOUT_MILLIS)).data(String.class, "{\"n\":2}");
+    verify(builder, after(EventFeed.TICK_MILLIS).times(1)).data(eq(String.class), anyString());
+  }
+
+  @Test
+  public void testStreamWaitsForClientToTakePreviousBatch() {
+    CompletableFuture<?> pending = new CompletableFuture<>();
+    doReturn(pending).when(sink).send(any());
+    append(1);
+    resource.stream(null, null, sink, sse);
+    verify(sink, timeout(TIMEOUT_MILLIS)).send(any());
+
+    append(1);
+
+    verify(sink, after(EventFeed.TICK_MILLIS * 2).times(1)).send(any());
+    pending.complete(null);
+    verify(builder, timeout(TIMEOUT_MILLIS)).data(String.class, "{\"n\":1}");
+  }
+
+  @Test
+  public void testClosedStreamIsDropped() {
+    resource.stream(null, null, sink, sse);
+    when(sink.isClosed()).thenReturn(true);
+
+    verify(sink, after(EventFeed.TICK_MILLIS * 2).never()).send(any());
+    assertEquals(0, feed.getSubscriberCount());
+  }
+
+  private static String resumed(AsyncResponse response, long timeoutMillis) {
+    ArgumentCaptor<Object> json = ArgumentCaptor.forClass(Object.class);
+    verify(response, timeout(timeoutMillis)).resume(json.capture());
+    return (String) json.getValue();
+  }
+
+  private void append(int count) {
+    int start = feed.read("realm-a", null, Integer.MAX_VALUE).getEntries().size();
+    for (int i = start; i < start + count; i++) {
+      feed.append(
+          DeliveryTask.builder()
+              .eventType("USER_EVENT")
+              .type("LOGIN")
+              .realmId("realm-a")
+              .userId("user")
+              .payload("{\"n\":" + i + "}")
+              .build());
+    }
+  }
+}
@@ -0,0 +1,227 @@
+package com.keycloak.event.feed;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.keycloak.event.delivery.DeliveryTask;
+import com.keycloak.event.representation.RepresentationPolicy;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/** Tests for the EventFeed class. */
+public class EventFeedTest {
+
+  private EventFeed feed;
+
+  @AfterEach
+  public void tearDown() {
+    if (feed != null) {
+      feed.close();
+    }
+  }
+
+  @Test
+  public void testPagesFollowCursors() {
+    feed = new EventFeed(10);
+    append("realm-a", 5);
+
+    FeedPage first = feed.read("realm-a", null, 3);
+    FeedPage second = feed.read("realm-a", first.getCursor(), 3);
+    FeedPage third = feed.read("realm-a", second.getCursor(), 3);
+
+    assertEquals(List.of("{\"n\":0}", "{\"n\":1}", "{\"n\":2}"), payloads(first));
+    assertEquals(List.of("{\"n\":3}", "{\"n\":4}"), payloads(second));
+    assertTrue(third.isEmpty());
+    assertEquals(second.getCursor(), third.getCursor());
+    assertFalse(first.isGap() || second.isGap() || third.isGap());
+    assertEquals(second.getEntries().get(1).getCursor(), second.getCursor());
+  }
+
+  @Test
+  public void testRealmsAreSeparate() {
+    feed = new EventFeed(10);
+    append("realm-a", 2);
+    append("realm-b", 1);
+    feed.append(DeliveryTask.builder().eventType("USER_EVENT").type("LOGIN").payload("{}").build());
+
+    assertEquals(2, feed.read("realm-a", null, 10).getEntries().size());
+    assertEquals(1, feed.read("realm-b", null, 10).getEntries().size());
+    assertTrue(feed.read("realm-c", null, 10).isEmpty());
+  }
+
+  @Test
+  public void testConsumerThatFellBehindResumesFromOldestWithGap() {
+    feed = new EventFeed(4);
+    append("realm-a", 2);
+    String cursor = feed.read("realm-a", null, 1).getCursor();
+    append("realm-a", 8);
+
+    FeedPage page = feed.read("realm-a", cursor, 10);
+
+    assertTrue(page.isGap());
+    assertEquals(4, page.getEntries().size());
+    assertEquals("{\"n\":6}", page.getEntries().get(0).getPayload());
+  }
+
+  @Test
+  public void testFirstReadOfEvictedRingReportsNoGap() {
+    feed = new EventFeed(2);
+    append("realm-a", 5);
+
+    FeedPage page = feed.read("realm-a", null, 10);
+
+    assertFalse(page.isGap());
+    assertEquals(List.of("{\"n\":3}", "{\"n\":4}"), payloads(page));
+  }
+
+  @Test
+  public void testUnknownCursorStartsFromOldestWithGap() {
+    feed = new EventFeed(10);
+    append("realm-a", 2);
+    EventFeed previous = new EventFeed(10);
+    String foreign = previous.encode(1);
+    previous.close();
+
+    FeedPage page = feed.read("realm-a", foreign, 10);
+    FeedPage garbage = feed.read("realm-a", "not a cursor!", 10);
+
+    assertTrue(page.isGap());
+    assertEquals(2, page.getEntries().size());
+    assertTrue(garbage.isGap());
+    assertNull(feed.decode(foreign));
+  }
+
+  @Test
+  public void testFullRepresentationIsPreferred() {
+    feed = new EventFeed(10);
+    feed.append(
+        DeliveryTask.builder()
+            .eventType("ADMIN_EVENT")
+            .type("UPDATE")
+            .realmId("realm-a")
+            .resourcePath("users/1")
+            .payload("{\"omitted\":true}")
+            .variants(Map.of(RepresentationPolicy.FULL, "{\"full\":true}"))
+            .build());
+
+    assertEquals(
+        "{\"full\":true}", feed.read("realm-a", null, 10).getEntries().get(0).getPayload());
+  }
+
+  @Test
+  public void testPayloadThatFailsToSerializeIsSkipped() {
+    feed = new EventFeed(10);
+    feed.append(
+        DeliveryTask.builder()
+            .eventType("USER_EVENT")
+            .type("LOGIN")
+            .realmId("realm-a")
+            .deferredPayload(
+                () -> {
+                  throw new IllegalStateException("boom");
+                })
+            .build());
+    append("realm-a", 1);
+
+    FeedPage page = feed.read("realm-a", null, 10);
+
+    assertEquals(List.of("{\"n\":0}"), payloads(page));
+  }
+
+  @Test
+  public void testPageRendersAsJson() {
+    FeedPage page =
+        new FeedPage(
+            List.of(new FeedPage.Entry("c1", "{\"a\":1}"), new FeedPage.Entry("c2", "[2]")),
+            "c2",
+            true);
+
+    assertEquals("{\"cursor\":\"c2\",\"gap\":true,\"events\":[{\"a\":1},[2]]}", page.toJson());
+  }
+
+  @Test
+  public void testSubscribersArePolledWhenEventsArrive() throws Exception {
+    feed = new EventFeed(10);
+    CountDownLatch delivered = new CountDownLatch(1);
+    feed.subscribe(
+        new EventFeed.Subscriber() {
+          @Override
+          public boolean poll() {
+            if (feed.read("realm-a", null, 10).isEmpty()) {
+              return true;
+            }
+            delivered.countDown();
+            return false;
+          }
+
+          @Override
+          public void close() {}
+        });
+
+    append("realm-a", 1);
+
+    assertTrue(delivered.await(EventFeed.TICK_MILLIS * 4, TimeUnit.MILLISECONDS));
+    long deadline = System.currentTimeMillis() + 1000;
+    while (feed.getSubscriberCount() > 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(5);
+    }
+    assertEquals(0, feed.getSubscriberCount());
+  }
+
+  @Test
+  public void testCloseEndsSubscriptions() {
+    feed = new EventFeed(10);
+    CountDownLatch closed = new CountDownLatch(2);
+    EventFeed.Subscriber subscriber =
+        new EventFeed.Subscriber() {
+          @Override
+          public boolean poll() {
+            return true;
+          }
+
+          @Override
+          public void close() {
+            closed.countDown();
+          }
+        };
+    feed.subscribe(subscriber);
+
+    feed.close();
+    feed.subscribe(subscriber);
+
+    assertEquals(0, closed.getCount());
+    assertEquals(0, feed.getSubscriberCount());
+  }
+
+  @Test
+  public void testFromConfigIsDisabledByDefault() {
+    assertNull(EventFeed.fromConfig());
+  }
+
+  private void append(String realmId, int count) {
+    int start = 0;
+    FeedPage existing = feed.read(realmId, null, Integer.MAX_VALUE);
+    if (!existing.isEmpty()) {
+      String last = existing.getEntries().get(existing.getEntries().size() - 1).getPayload();
+      start = Integer.parseInt(last.replaceAll("\\D", "")) + 1;
+    }
+    for (int i = start; i < start + count; i++) {
+      feed.append(
+          DeliveryTask.builder()
+              .eventType("USER_EVENT")
+              .type("LOGIN")
+              .realmId(realmId)
+              .userId("user")
+              .payload("{\"n\":" + i + "}")
+              .build());
+    }
+  }
+
+  private static List<String> payloads(FeedPage page) {
+    return page.getEntries().stream().map(FeedPage.Entry::getPayload).collect(Collectors.toList());
+  }
+}
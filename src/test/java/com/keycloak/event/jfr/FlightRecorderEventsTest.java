@@ -0,0 +1,195 @@
+package com.keycloak.event.jfr;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+import com.keycloak.event.delivery.DeliveryQueue;
+import com.keycloak.event.delivery.DeliverySettings;
+import com.keycloak.event.delivery.DeliveryTask;
+import com.keycloak.event.delivery.DropCounters;
+import com.keycloak.event.delivery.OverflowPolicy;
+import com.keycloak.event.endpoint.WebhookEndpoint;
+import com.keycloak.event.sink.HttpSink;
+import com.keycloak.event.util.JsonUtil;
+import java.net.ConnectException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** Tests for the Flight Recorder events of the delivery pipeline. */
+public class FlightRecorderEventsTest {
+
+  private static final String ENDPOINT = "http://example.com/webhook";
+
+  private static final List<String> NAMES =
+      List.of("Serialization", "Enqueue", "HttpSend", "Retry", "Drop");
+
+  @TempDir Path tempDir;
+
+  @Test
+  public void testEventsHaveNoStackTraceOrThreshold() {
+    FlightRecorder.register(HttpSendEvent.class);
+    for (Class<? extends jdk.jfr.Event> type :
+        List.of(
+            SerializationEvent.class,
+            EnqueueEvent.class,
+            HttpSendEvent.class,
+            RetryEvent.class,
+            DropEvent.class)) {
+      EventType eventType = EventType.getEventType(type);
+      assertTrue(eventType.getName().startsWith("com.keycloak.event."), eventType.getName());
+      Map<String, String> settings =
+          eventType.getSettingDescriptors().stream()
+              .collect(Collectors.toMap(s -> s.getName(), s -> s.getDefaultValue()));
+      assertEquals("false", settings.get("stackTrace"), eventType.getName());
+      assertEquals("0 ms", settings.get("threshold"), eventType.getName());
+    }
+  }
+
+  @Test
+  public void testHttpSendIsRecorded() throws Exception {
+    HttpClient httpClient = mock(HttpClient.class);
+    HttpResponse<String> response = mock(HttpResponse.class);
+    when(response.statusCode()).thenReturn(202);
+    when(httpClient.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class)))
+        .thenAnswer(invocation -> response);
+    HttpSink sink = new HttpSink(WebhookEndpoint.parse(ENDPOINT, null), httpClient);
+
+    List<RecordedEvent> events = record(() -> sink.send("{\"a\":1}"));
+
+    RecordedEvent send = only(events, "com.keycloak.event.HttpSend");
+    assertEquals(ENDPOINT, send.getString("endpoint"));
+    assertEquals(202, send.getInt("status"));
+    assertEquals(7, send.getLong("bytes"));
+    assertNull(send.getString("error"));
+  }
+
+  @Test
+  public void testFailedHttpSendIsRecorded() throws Exception {
+    HttpClient httpClient = mock(HttpClient.class);
+    when(httpClient.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class)))
+        .thenThrow(new ConnectException("Connection refused"));
+    HttpSink sink = new HttpSink(WebhookEndpoint.parse(ENDPOINT, null), httpClient);
+
+    List<RecordedEvent> events =
+        record(() -> assertThrows(ConnectException.class, () -> sink.send("{}")));
+
+    RecordedEvent send = only(events, "com.keycloak.event.HttpSend");
+    assertEquals(0, send.getInt("status"));
+    assertEquals(ConnectException.class.getName(), send.getString("error"));
+  }
+
+  @Test
+  public void testEnqueueAndDropAreRecorded() throws Exception {
+    DeliveryQueue queue =
+        new DeliveryQueue(
+            ENDPOINT,
+            DeliverySettings.builder()
+                .capacity(1)
+                .overflowPolicy(OverflowPolicy.DROP_NEWEST)
+                .build(),
+            new DropCounters(),
+            null,
+            null);
+
+    List<RecordedEvent> events =
+        record(
+            () -> {
+              queue.offer(new DeliveryTask("USER_EVENT", "LOGIN", "{}"));
+              queue.offer(new DeliveryTask("USER_EVENT", "LOGOUT", "{}"));
+            });
+
+    List<RecordedEvent> enqueues = all(events, "com.keycloak.event.Enqueue");
+    assertEquals(2, enqueues.size());
+    assertTrue(enqueues.get(0).getBoolean("accepted"));
+    assertFalse(enqueues.get(1).getBoolean("accepted"));
+    RecordedEvent drop = only(events, "com.keycloak.event.Drop");
+    assertEquals("LOGOUT", drop.getString("type"));
+    assertEquals("DROP_NEWEST", drop.getString("reason"));
+    assertEquals(ENDPOINT, drop.getString("endpoint"));
+  }
+
+  @Test
+  public void testSerializationIsRecorded() throws Exception {
+    String[] json = new String[1];
+
+    List<RecordedEvent> events =
+        record(() -> json[0] = JsonUtil.createEventWrapper(JsonUtil.ALERT_TYPE, Map.of("a", 1)));
+
+    RecordedEvent serialization = only(events, "com.keycloak.event.Serialization");
+    assertEquals(JsonUtil.ALERT_TYPE, serialization.getString("eventType"));
+    assertEquals(json[0].length(), serialization.getLong("length"));
+  }
+
+  @Test
+  public void testNothingIsRecordedWhenDisabled() throws Exception {
+    DeliveryQueue queue =
+        new DeliveryQueue(
+            ENDPOINT,
+            DeliverySettings.builder()
+                .capacity(1)
+                .overflowPolicy(OverflowPolicy.DROP_NEWEST)
+                .build(),
+            new DropCounters(),
+            null,
+            null);
+
+    Path file = tempDir.resolve("disabled.jfr");
+    try (Recording recording = new Recording()) {
+      for (String name : NAMES) {
+        recording.disable("com.keycloak.event." + name);
+      }
+      recording.start();
+      queue.offer(new DeliveryTask("USER_EVENT", "LOGIN", "{}"));
+      queue.offer(new DeliveryTask("USER_EVENT", "LOGOUT", "{}"));
+      recording.stop();
+      recording.dump(file);
+    }
+
+    assertTrue(
+        RecordingFile.readAllEvents(file).stream()
+            .noneMatch(e -> e.getEventType().getName().startsWith("com.keycloak.event.")));
+  }
+
+  private interface Action {
+    void run() throws Exception;
+  }
+
+  private List<RecordedEvent> record(Action action) throws Exception {
+    Path file = tempDir.resolve("recording.jfr");
+    try (Recording recording = new Recording()) {
+      for (String name : NAMES) {
+        recording.enable("com.keycloak.event." + name).withoutStackTrace().withoutThreshold();
+      }
+      recording.start();
+      action.run();
+      recording.stop();
+      recording.dump(file);
+    }
+    return RecordingFile.readAllEvents(file);
+  }
+
+  private static List<RecordedEvent> all(List<RecordedEvent> events, String name) {
+    return events.stream()
+        .filter(e -> e.getEventType().getName().equals(name))
+        .collect(Collectors.toList());
+  }
+
+  private static RecordedEvent only(List<RecordedEvent> events, String name) {
+    List<RecordedEvent> matching = all(events, name);
+    assertEquals(1, matching.size(), name);
+    return matching.get(0);
+  }
+}
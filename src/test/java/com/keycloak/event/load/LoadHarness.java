@@ -0,0 +1,272 @@
+package com.keycloak.event.load;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.keycloak.event.HttpClientWebHookHandler;
+import com.keycloak.event.KeycloakEventListenerProvider;
+import com.keycloak.event.ListenerSettings;
+import com.keycloak.event.config.WebhookConfig;
+import com.keycloak.event.delivery.WebhookDispatcher;
+import com.keycloak.event.util.LatencyHistogram;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import lombok.extern.slf4j.Slf4j;
+import org.keycloak.events.Event;
+import org.keycloak.events.EventType;
+import org.keycloak.events.admin.AdminEvent;
+import org.keycloak.events.admin.OperationType;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Self-contained load test of the bridge. Generates synthetic {@link Event} and {@link AdminEvent}
+ * streams at a fixed rate, drives them through {@link KeycloakEventListenerProvider} from several
+ * producer threads, and delivers them to an in-process {@link StubWebhookReceiver}.
+ *
+ * <p>The dispatcher is built from the usual WEBHOOK_* settings, so queue, overflow, priority and
+ * lane options can be compared by passing them as system properties. Run with:
+ *
+ * <pre>
+ * mvn test -Dtest=LoadHarnessTest -Dload.rate=20000 -Dload.durationSeconds=60
+ * </pre>
+ */
+@Slf4j
+public class LoadHarness {
+
+  private final LoadSettings settings;
+
+  /**
+   * Creates a harness.
+   *
+   * @param settings The load parameters
+   */
+  public LoadHarness(LoadSettings settings) {
+    this.settings = settings;
+  }
+
+  /**
+   * Runs the harness with settings from {@code load.*} system properties and logs the report.
+   *
+   * @param args Ignored
+   * @throws Exception If the run fails
+   */
+  public static void main(String[] args) throws Exception {
+    log.info("{}", new LoadHarness(LoadSettings.fromSystemProperties()).run());
+  }
+
+  /**
+   * Runs one load test.
+   *
+   * @return The measurements of the run
+   * @throws Exception If the receiver or dispatcher cannot be started
+   */
+  public LoadReport run() throws Exception {
+    Logger root = (Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME);
+    Level previousLevel = root.getLevel();
+    String previousUrls = System.getProperty(WebhookConfig.WEBHOOK_URLS);
+    root.setLevel(Level.WARN);
+
+    try (StubWebhookReceiver receiver = new StubWebhookReceiver(settings)) {
+      System.setProperty(WebhookConfig.WEBHOOK_URLS, receiver.getUrl());
+      try (HttpClientWebHookHandler handler = new HttpClientWebHookHandler()) {
+        WebhookDispatcher dispatcher = WebhookDispatcher.fromConfig(handler);
+        KeycloakEventListenerProvider provider =
+            new KeycloakEventListenerProvider(
+                null,
+                ListenerSettings.builder().webHookHandler(handler).dispatcher(dispatcher).build());
+        try {
+          return measure(provider, dispatcher, receiver);
+        } finally {
+          if (dispatcher != null) {
+            dispatcher.close();
+          }
+        }
+      }
+    } finally {
+      root.setLevel(previousLevel);
+      if (previousUrls == null) {
+        System.clearProperty(WebhookConfig.WEBHOOK_URLS);
+      } else {
+        System.setProperty(WebhookConfig.WEBHOOK_URLS, previousUrls);
+      }
+    }
+  }
+
+  private LoadReport measure(
+      KeycloakEventListenerProvider provider,
+      WebhookDispatcher dispatcher,
+      StubWebhookReceiver receiver)
+      throws InterruptedException {
+    LatencyHistogram onEventLatency = new LatencyHistogram();
+    LongAdder sent = new LongAdder();
+    LongAdder allocated = new LongAdder();
+    AtomicLong peakHeap = new AtomicLong();
+    AtomicBoolean sampling = new AtomicBoolean(true);
+    MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    long[] gcBefore = gcTotals();
+
+    Thread sampler =
+        new Thread(
+            () -> {
+              while (sampling.get()) {
+                peakHeap.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(50));
+              }
+            },
+            "load-heap-sampler");
+    sampler.setDaemon(true);
+    sampler.start();
+
+    long start = System.nanoTime();
+    long end = start + TimeUnit.SECONDS.toNanos(settings.getDurationSeconds());
+    List<Thread> producers = new ArrayList<>();
+    for (int p = 0; p < settings.getProducers(); p++) {
+      Thread producer =
+          new Thread(
+              () -> produce(provider, end, onEventLatency, sent, allocated), "load-producer-" + p);
+      producers.add(producer);
+      producer.start();
+    }
+    for (Thread producer : producers) {
+      producer.join();
+    }
+    long produceNanos = System.nanoTime() - start;
+
+    long drainDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(settings.getDrainSeconds());
+    while (receiver.handled() + dropped(dispatcher) < sent.sum()
+        && System.nanoTime() < drainDeadline) {
+      Thread.sleep(10);
+    }
+    long totalNanos = System.nanoTime() - start;
+    sampling.set(false);
+    long[] gcAfter = gcTotals();
+
+    return LoadReport.builder()
+        .sent(sent.sum())
+        .produceSeconds(produceNanos / 1e9)
+        .totalSeconds(totalNanos / 1e9)
+        .accepted(receiver.getAccepted().sum())
+        .failed(receiver.getFailed().sum())
+        .throttled(receiver.getThrottled().sum())
+        .dropped(dropped(dispatcher))
+        .onEventLatency(onEventLatency)
+        .endToEndLatency(receiver.getEndToEnd())
+        .allocatedBytesPerEvent(sent.sum() == 0 ? 0 : allocated.sum() / sent.sum())
+        .gcCount(gcAfter[0] - gcBefore[0])
+        .gcMillis(gcAfter[1] - gcBefore[1])
+        .peakHeapBytes(peakHeap.get())
+        .build();
+  }
+
+  private void produce(
+      KeycloakEventListenerProvider provider,
+      long end,
+      LatencyHistogram onEventLatency,
+      LongAdder sent,
+      LongAdder allocated) {
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    EventMix mix = new EventMix(settings.mixWeights());
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    long interval = (long) (1e9 * settings.getProducers() / Math.max(1, settings.getRate()));
+    long next = System.nanoTime();
+    while (true) {
+      long now = System.nanoTime();
+      if (now >= end) {
+        return;
+      }
+      if (now < next) {
+        LockSupport.parkNanos(next - now);
+      }
+      next += interval;
+
+      String type = mix.next(random);
+      String userId = "user-" + random.nextInt(settings.getUsers());
+      long allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+      long started = System.nanoTime();
+      if (type.startsWith("ADMIN:")) {
+        provider.onEvent(adminEvent(type.substring(6), userId, started), true);
+      } else {
+        provider.onEvent(userEvent(type, userId, started));
+      }
+      onEventLatency.record(System.nanoTime() - started);
+      allocated.add(threads.getCurrentThreadAllocatedBytes() - allocatedBefore);
+      sent.increment();
+    }
+  }
+
+  private static Event userEvent(String type, String userId, long sentNanos) {
+    Event event = new Event();
+    event.setType(EventType.valueOf(type));
+    event.setTime(System.currentTimeMillis());
+    event.setRealmId("load-realm");
+    event.setClientId("load-client");
+    event.setUserId(userId);
+    event.setIpAddress("10.0.0.1");
+    Map<String, String> details = new HashMap<>();
+    details.put("sentNanos", Long.toString(sentNanos));
+    details.put("username", userId);
+    event.setDetails(details);
+    return event;
+  }
+
+  private static AdminEvent adminEvent(String operation, String userId, long sentNanos) {
+    AdminEvent event = new AdminEvent();
+    event.setOperationType(OperationType.valueOf(operation));
+    event.setTime(System.currentTimeMillis());
+    event.setRealmId("load-realm");
+    event.setResourcePath("users/" + userId);
+    event.setRepresentation("{\"sentNanos\":\"" + sentNanos + "\",\"enabled\":true}");
+    return event;
+  }
+
+  private static long dropped(WebhookDispatcher dispatcher) {
+    return dispatcher == null ? 0 : dispatcher.getDropCounters().total();
+  }
+
+  private static long[] gcTotals() {
+    long count = 0;
+    long millis = 0;
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+      count += Math.max(0, gc.getCollectionCount());
+      millis += Math.max(0, gc.getCollectionTime());
+    }
+    return new long[] {count, millis};
+  }
+
+  /** Weighted random choice over the configured event types. */
+  private static final class EventMix {
+    private final String[] types;
+    private final int[] cumulative;
+
+    private EventMix(Map<String, Integer> weights) {
+      types = weights.keySet().toArray(new String[0]);
+      cumulative = new int[types.length];
+      int sum = 0;
+      for (int i = 0; i < types.length; i++) {
+        sum += weights.get(types[i]);
+        cumulative[i] = sum;
+      }
+    }
+
+    private String next(ThreadLocalRandom random) {
+      int roll = random.nextInt(cumulative[cumulative.length - 1]);
+      for (int i = 0; i < cumulative.length; i++) {
+        if (roll < cumulative[i]) {
+          return types[i];
+        }
+      }
+      return types[types.length - 1];
+    }
+  }
+}
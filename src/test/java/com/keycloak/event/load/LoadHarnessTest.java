@@ -0,0 +1,43 @@
+package com.keycloak.event.load;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Runs the load harness. By default this is a short smoke run; pass {@code load.*} system
+ * properties for a real measurement. Tagged {@code benchmark}, so it only runs with {@code
+ * -Pbenchmark}.
+ */
+@Slf4j
+@Tag("benchmark")
+public class LoadHarnessTest {
+
+  @Test
+  public void testLoadRun() throws Exception {
+    LoadSettings settings =
+        Boolean.getBoolean("load.full")
+                || System.getProperty("load.rate") != null
+                || System.getProperty("load.durationSeconds") != null
+            ? LoadSettings.fromSystemProperties()
+            : LoadSettings.builder()
+                .rate(500)
+                .durationSeconds(1)
+                .producers(2)
+                .throttleRate(0.1)
+                .drainSeconds(10)
+                .build();
+
+    LoadReport report = new LoadHarness(settings).run();
+    log.info("{}", report);
+
+    assertTrue(report.getSent() > 0);
+    assertEquals(
+        report.getSent(),
+        report.getAccepted() + report.getFailed() + report.getThrottled() + report.getDropped());
+    assertTrue(report.getOnEventLatency().count() > 0);
+    assertEquals(report.getAccepted(), report.getEndToEndLatency().count());
+  }
+}
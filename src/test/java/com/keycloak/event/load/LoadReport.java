@@ -0,0 +1,81 @@
+package com.keycloak.event.load;
+
+import com.keycloak.event.util.LatencyHistogram;
+import lombok.Builder;
+import lombok.Getter;
+
+/** Measurements of one {@link LoadHarness} run. */
+@Getter
+@Builder
+public class LoadReport {
+
+  private final long sent;
+  private final double produceSeconds;
+  private final double totalSeconds;
+  private final long accepted;
+  private final long failed;
+  private final long throttled;
+  private final long dropped;
+  private final LatencyHistogram onEventLatency;
+  private final LatencyHistogram endToEndLatency;
+  private final long allocatedBytesPerEvent;
+  private final long gcCount;
+  private final long gcMillis;
+  private final long peakHeapBytes;
+
+  /**
+   * Returns the rate at which onEvent calls completed.
+   *
+   * @return Events per second during the production phase
+   */
+  public double eventsPerSecond() {
+    return produceSeconds == 0 ? 0 : sent / produceSeconds;
+  }
+
+  /**
+   * Returns the rate at which the receiver accepted events, including the drain phase.
+   *
+   * @return Accepted deliveries per second
+   */
+  public double deliveriesPerSecond() {
+    return totalSeconds == 0 ? 0 : accepted / totalSeconds;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "Load report%n"
+            + "  events sent         %d in %.1f s (%.0f events/s)%n"
+            + "  receiver            %d accepted, %d failed (500), %d throttled (429),"
+            + " %.0f deliveries/s%n"
+            + "  dropped             %d%n"
+            + "  onEvent latency     p50 %s  p99 %s  p999 %s  max %s%n"
+            + "  end-to-end latency  p50 %s  p99 %s  p999 %s  max %s%n"
+            + "  allocation          %d bytes per onEvent call%n"
+            + "  gc                  %d collections, %d ms; peak heap %d MB",
+        sent,
+        produceSeconds,
+        eventsPerSecond(),
+        accepted,
+        failed,
+        throttled,
+        deliveriesPerSecond(),
+        dropped,
+        micros(onEventLatency.percentile(50)),
+        micros(onEventLatency.percentile(99)),
+        micros(onEventLatency.percentile(99.9)),
+        micros(onEventLatency.max()),
+        micros(endToEndLatency.percentile(50)),
+        micros(endToEndLatency.percentile(99)),
+        micros(endToEndLatency.percentile(99.9)),
+        micros(endToEndLatency.max()),
+        allocatedBytesPerEvent,
+        gcCount,
+        gcMillis,
+        peakHeapBytes / (1024 * 1024));
+  }
+
+  private static String micros(long nanos) {
+    return String.format("%.0fus", nanos / 1000.0);
+  }
+}
@@ -0,0 +1,95 @@
+package com.keycloak.event.load;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * Parameters of a load run. Every field can be set from a {@code load.*} system property, for
+ * example {@code -Dload.rate=20000 -Dload.durationSeconds=60}.
+ */
+@Getter
+@Builder
+public class LoadSettings {
+
+  /** Target events per second across all producers */
+  @Builder.Default private final int rate = 2000;
+
+  /** Length of the measured run */
+  @Builder.Default private final int durationSeconds = 10;
+
+  /** Number of threads calling onEvent, simulating concurrent Keycloak requests */
+  @Builder.Default private final int producers = 4;
+
+  /** Number of distinct user IDs events are spread over */
+  @Builder.Default private final int users = 1000;
+
+  /**
+   * Event mix as {@code TYPE=weight} pairs. Admin operations are prefixed with {@code ADMIN:}, for
+   * example {@code LOGIN=60,REFRESH_TOKEN=25,LOGIN_ERROR=10,ADMIN:UPDATE=5}
+   */
+  @Builder.Default
+  private final String mix = "LOGIN=60,REFRESH_TOKEN=25,LOGIN_ERROR=10,ADMIN:UPDATE=5";
+
+  /** Fixed processing time of the stub receiver per request */
+  @Builder.Default private final long receiverLatencyMillis = 0;
+
+  /** Additional uniformly random processing time of the stub receiver */
+  @Builder.Default private final long receiverJitterMillis = 0;
+
+  /** Fraction of requests the stub receiver answers with 500 */
+  @Builder.Default private final double errorRate = 0;
+
+  /** Fraction of requests the stub receiver answers with 429 */
+  @Builder.Default private final double throttleRate = 0;
+
+  /** Worker threads of the stub receiver */
+  @Builder.Default private final int receiverThreads = 32;
+
+  /** How long to wait after the run for the backlog to drain */
+  @Builder.Default private final int drainSeconds = 30;
+
+  /**
+   * Reads the settings from {@code load.*} system properties.
+   *
+   * @return The configured settings
+   */
+  public static LoadSettings fromSystemProperties() {
+    LoadSettings d = builder().build();
+    return builder()
+        .rate(Integer.getInteger("load.rate", d.rate))
+        .durationSeconds(Integer.getInteger("load.durationSeconds", d.durationSeconds))
+        .producers(Integer.getInteger("load.producers", d.producers))
+        .users(Integer.getInteger("load.users", d.users))
+        .mix(System.getProperty("load.mix", d.mix))
+        .receiverLatencyMillis(Long.getLong("load.receiverLatencyMillis", d.receiverLatencyMillis))
+        .receiverJitterMillis(Long.getLong("load.receiverJitterMillis", d.receiverJitterMillis))
+        .errorRate(doubleProperty("load.errorRate", d.errorRate))
+        .throttleRate(doubleProperty("load.throttleRate", d.throttleRate))
+        .receiverThreads(Integer.getInteger("load.receiverThreads", d.receiverThreads))
+        .drainSeconds(Integer.getInteger("load.drainSeconds", d.drainSeconds))
+        .build();
+  }
+
+  /**
+   * Parses the event mix into type weights, preserving order.
+   *
+   * @return Weight by type name
+   */
+  public Map<String, Integer> mixWeights() {
+    Map<String, Integer> weights = new LinkedHashMap<>();
+    for (String entry : mix.split(",")) {
+      String[] parts = entry.trim().split("=");
+      if (parts.length == 2) {
+        weights.put(parts[0].trim(), Integer.parseInt(parts[1].trim()));
+      }
+    }
+    return weights;
+  }
+
+  private static double doubleProperty(String name, double defaultValue) {
+    String value = System.getProperty(name);
+    return value == null ? defaultValue : Double.parseDouble(value);
+  }
+}
@@ -0,0 +1,168 @@
+package com.keycloak.event.load;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.keycloak.event.util.JsonUtil;
+import com.keycloak.event.util.PayloadFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.keycloak.events.Event;
+import org.keycloak.events.EventType;
+import org.keycloak.events.admin.AdminEvent;
+import org.keycloak.events.admin.AuthDetails;
+import org.keycloak.events.admin.OperationType;
+import org.keycloak.events.admin.ResourceType;
+
+/**
+ * Compares payload size and serialization CPU of the {@link PayloadFormat}s on representative user
+ * and admin events. For each format it measures serializing the event envelope directly and
+ * transcoding the queued JSON text, which is what the delivery path does.
+ *
+ * <p>Run with {@code mvn test -Dtest=PayloadFormatBenchmarkTest -Dbenchmark.iterations=200000}.
+ */
+@Slf4j
+public class PayloadFormatBenchmark {
+
+  /** Measurements of one format */
+  @Getter
+  @Builder
+  public static class Result {
+    private final PayloadFormat format;
+    private final double bytesPerEvent;
+    private final double directNanosPerEvent;
+    private final double transcodeNanosPerEvent;
+
+    @Override
+    public String toString() {
+      return String.format(
+          "%-6s %8.1f bytes/event %8.0f ns/event direct %8.0f ns/event from JSON",
+          format, bytesPerEvent, directNanosPerEvent, transcodeNanosPerEvent);
+    }
+  }
+
+  private final int iterations;
+  private final List<ObjectNode> trees = new ArrayList<>();
+  private final List<String> jsonPayloads = new ArrayList<>();
+
+  /**
+   * Creates a benchmark.
+   *
+   * @param iterations Events serialized per format and measurement, after an equal warm-up
+   */
+  public PayloadFormatBenchmark(int iterations) throws Exception {
+    this.iterations = iterations;
+    trees.add(JsonUtil.createEventTree(JsonUtil.USER_EVENT_TYPE, sampleEvent()));
+    trees.add(JsonUtil.createEventTree(JsonUtil.ADMIN_EVENT_TYPE, sampleAdminEvent()));
+    for (ObjectNode tree : trees) {
+      jsonPayloads.add(JsonUtil.toJson(tree));
+    }
+  }
+
+  /**
+   * Entry point for running the benchmark outside of JUnit.
+   *
+   * @param args Optional iteration count
+   */
+  public static void main(String[] args) throws Exception {
+    int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+    new PayloadFormatBenchmark(iterations).run().forEach(result -> log.info("{}", result));
+  }
+
+  /**
+   * Measures every format.
+   *
+   * @return One result per format
+   */
+  public List<Result> run() throws Exception {
+    List<Result> results = new ArrayList<>();
+    for (PayloadFormat format : PayloadFormat.values()) {
+      long bytes = 0;
+      for (ObjectNode tree : trees) {
+        bytes += format.getMapper().writeValueAsBytes(tree).length;
+      }
+      // Warm-up, then measure
+      direct(format);
+      long directNanos = direct(format);
+      transcode(format);
+      long transcodeNanos = transcode(format);
+      results.add(
+          Result.builder()
+              .format(format)
+              .bytesPerEvent((double) bytes / trees.size())
+              .directNanosPerEvent((double) directNanos / iterations)
+              .transcodeNanosPerEvent((double) transcodeNanos / iterations)
+              .build());
+    }
+    return results;
+  }
+
+  private long direct(PayloadFormat format) throws Exception {
+    long sink = 0;
+    long start = System.nanoTime();
+    for (int i = 0; i < iterations; i++) {
+      sink += format.getMapper().writeValueAsBytes(trees.get(i & 1)).length;
+    }
+    return consume(System.nanoTime() - start, sink);
+  }
+
+  private long transcode(PayloadFormat format) throws Exception {
+    long sink = 0;
+    long start = System.nanoTime();
+    for (int i = 0; i < iterations; i++) {
+      sink += format.encode(jsonPayloads.get(i & 1)).length;
+    }
+    return consume(System.nanoTime() - start, sink);
+  }
+
+  private static long consume(long elapsed, long sink) {
+    // Keeps the serialized sizes live so the loops are not optimized away
+    return sink == Long.MIN_VALUE ? 0 : elapsed;
+  }
+
+  private static Event sampleEvent() {
+    Event event = new Event();
+    event.setId("6f1a1d2e-3c3b-4a0e-9e55-0f3f8c1b2a11");
+    event.setTime(System.currentTimeMillis());
+    event.setType(EventType.LOGIN);
+    event.setRealmId("5b2c9d8e-1f4a-4c6b-8e7d-2a9b3c4d5e6f");
+    event.setClientId("account-console");
+    event.setUserId("0b7e4c2a-9d1f-4e3b-8a6c-5d2e1f0a9b8c");
+    event.setSessionId("c3d4e5f6-a7b8-4c9d-8e0f-1a2b3c4d5e6f");
+    event.setIpAddress("10.20.30.40");
+    Map<String, String> details = new HashMap<>();
+    details.put("auth_method", "openid-connect");
+    details.put("auth_type", "code");
+    details.put("redirect_uri", "https://app.example.com/callback");
+    details.put("consent", "no_consent_required");
+    details.put("code_id", "c3d4e5f6-a7b8-4c9d-8e0f-1a2b3c4d5e6f");
+    details.put("username", "alice@example.com");
+    event.setDetails(details);
+    return event;
+  }
+
+  private static AdminEvent sampleAdminEvent() {
+    AuthDetails authDetails = new AuthDetails();
+    authDetails.setRealmId("5b2c9d8e-1f4a-4c6b-8e7d-2a9b3c4d5e6f");
+    authDetails.setClientId("security-admin-console");
+    authDetails.setUserId("1a2b3c4d-5e6f-4a7b-8c9d-0e1f2a3b4c5d");
+    authDetails.setIpAddress("10.20.30.41");
+    AdminEvent adminEvent = new AdminEvent();
+    adminEvent.setId("7e8f9a0b-1c2d-4e3f-8a4b-5c6d7e8f9a0b");
+    adminEvent.setTime(System.currentTimeMillis());
+    adminEvent.setRealmId("5b2c9d8e-1f4a-4c6b-8e7d-2a9b3c4d5e6f");
+    adminEvent.setAuthDetails(authDetails);
+    adminEvent.setOperationType(OperationType.UPDATE);
+    adminEvent.setResourceType(ResourceType.USER);
+    adminEvent.setResourcePath("users/0b7e4c2a-9d1f-4e3b-8a6c-5d2e1f0a9b8c");
+    adminEvent.setRepresentation(
+        "{\"id\":\"0b7e4c2a-9d1f-4e3b-8a6c-5d2e1f0a9b8c\",\"username\":\"alice@example.com\","
+            + "\"firstName\":\"Alice\",\"lastName\":\"Example\",\"email\":\"alice@example.com\","
+            + "\"emailVerified\":true,\"enabled\":true,\"attributes\":{\"department\":[\"R&D\"],"
+            + "\"locale\":[\"en\"]},\"requiredActions\":[],\"groups\":[\"/staff\"]}");
+    return adminEvent;
+  }
+}
@@ -0,0 +1,32 @@
+package com.keycloak.event.load;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.keycloak.event.util.PayloadFormat;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Runs the payload format benchmark. By default this is a short smoke run; pass {@code
+ * -Dbenchmark.iterations=N} for a real measurement. Tagged {@code benchmark}, so it only runs with
+ * {@code -Pbenchmark}.
+ */
+@Slf4j
+@Tag("benchmark")
+public class PayloadFormatBenchmarkTest {
+
+  @Test
+  public void testBenchmark() throws Exception {
+    int iterations = Integer.getInteger("benchmark.iterations", 2000);
+    List<PayloadFormatBenchmark.Result> results = new PayloadFormatBenchmark(iterations).run();
+    results.forEach(result -> log.info("{}", result));
+
+    assertEquals(PayloadFormat.values().length, results.size());
+    double jsonBytes = results.get(0).getBytesPerEvent();
+    for (PayloadFormatBenchmark.Result result : results.subList(1, results.size())) {
+      assertTrue(result.getBytesPerEvent() < jsonBytes, result.getFormat() + " is not smaller");
+    }
+  }
+}
@@ -0,0 +1,127 @@
+package com.keycloak.event.load;
+
+import com.keycloak.event.util.LatencyHistogram;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.Getter;
+
+/**
+ * In-process webhook receiver for load tests. Answers POSTs after an injectable delay with 200, 500
+ * or 429 at configurable rates, and records the end-to-end latency of each event from the {@code
+ * sentNanos} detail the load generator stamps into it.
+ */
+public class StubWebhookReceiver implements AutoCloseable {
+
+  private static final String SENT_NANOS = "sentNanos";
+
+  private final HttpServer server;
+  private final ExecutorService executor;
+  private final LoadSettings settings;
+  @Getter private final LatencyHistogram endToEnd = new LatencyHistogram();
+  @Getter private final LongAdder accepted = new LongAdder();
+  @Getter private final LongAdder failed = new LongAdder();
+  @Getter private final LongAdder throttled = new LongAdder();
+
+  /**
+   * Starts a receiver on an ephemeral loopback port.
+   *
+   * @param settings The latency and error injection settings
+   * @throws IOException If the server cannot bind
+   */
+  public StubWebhookReceiver(LoadSettings settings) throws IOException {
+    this.settings = settings;
+    this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    this.executor = Executors.newFixedThreadPool(settings.getReceiverThreads());
+    server.setExecutor(executor);
+    server.createContext("/", this::handle);
+    server.start();
+  }
+
+  /**
+   * Returns the URL events should be posted to.
+   *
+   * @return The receiver URL
+   */
+  public String getUrl() {
+    return "http://127.0.0.1:" + server.getAddress().getPort() + "/webhook";
+  }
+
+  /**
+   * Returns the number of requests answered, whatever the status.
+   *
+   * @return The request count
+   */
+  public long handled() {
+    return accepted.sum() + failed.sum() + throttled.sum();
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    byte[] body;
+    try (InputStream in = exchange.getRequestBody()) {
+      body = in.readAllBytes();
+    }
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    long delay =
+        settings.getReceiverLatencyMillis()
+            + (settings.getReceiverJitterMillis() > 0
+                ? random.nextLong(settings.getReceiverJitterMillis() + 1)
+                : 0);
+    if (delay > 0) {
+      try {
+        Thread.sleep(delay);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    int status;
+    double roll = random.nextDouble();
+    if (roll < settings.getErrorRate()) {
+      status = 500;
+      failed.increment();
+    } else if (roll < settings.getErrorRate() + settings.getThrottleRate()) {
+      status = 429;
+      throttled.increment();
+    } else {
+      status = 200;
+      accepted.increment();
+      recordLatency(new String(body, StandardCharsets.UTF_8));
+    }
+    exchange.sendResponseHeaders(status, -1);
+    exchange.close();
+  }
+
+  private void recordLatency(String body) {
+    int start = body.indexOf(SENT_NANOS);
+    if (start < 0) {
+      return;
+    }
+    // Skip the quotes, which are escaped when the stamp sits inside an admin representation
+    start += SENT_NANOS.length();
+    while (start < body.length() && !Character.isDigit(body.charAt(start))) {
+      start++;
+    }
+    int end = start;
+    while (end < body.length() && Character.isDigit(body.charAt(end))) {
+      end++;
+    }
+    if (end > start) {
+      endToEnd.record(System.nanoTime() - Long.parseLong(body.substring(start, end)));
+    }
+  }
+}
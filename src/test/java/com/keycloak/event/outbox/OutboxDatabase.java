@@ -0,0 +1,129 @@
+package com.keycloak.event.outbox;
+
+import com.keycloak.event.backfill.BackfillStateEntity;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.UUID;
+import java.util.function.ToIntFunction;
+import liquibase.Contexts;
+import liquibase.Liquibase;
+import liquibase.database.Database;
+import liquibase.database.DatabaseFactory;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.dialect.H2Dialect;
+
+/**
+ * In-memory H2 database with the outbox and backfill tables, standing in for Keycloak's database in
+ * tests. The tables are created by the changelog Keycloak runs, and the entities are mapped by
+ * Hibernate as in Keycloak's persistence unit.
+ *
+ * <p>H2 supports {@code FOR UPDATE SKIP LOCKED}, but Hibernate's H2 dialect does not render it and
+ * locks with a plain {@code FOR UPDATE}. The database uses a dialect that renders it, as the
+ * dialects of the databases Keycloak runs on in production do.
+ */
+public class OutboxDatabase implements OutboxTransactions, Closeable {
+
+  private final String url = "jdbc:h2:mem:outbox-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1";
+  private final Connection keepAlive;
+  private final EntityManagerFactory entityManagerFactory;
+
+  /**
+   * Creates the database and runs the outbox changelog.
+   *
+   * @throws Exception If the database cannot be created
+   */
+  @SuppressWarnings("deprecation")
+  public OutboxDatabase() throws Exception {
+    keepAlive = DriverManager.getConnection(url, "sa", "");
+    Database database =
+        DatabaseFactory.getInstance()
+            .findCorrectDatabaseImplementation(new JdbcConnection(keepAlive));
+    new Liquibase(OutboxEntityProvider.CHANGELOG, new ClassLoaderResourceAccessor(), database)
+        .update(new Contexts());
+    entityManagerFactory =
+        new Configuration()
+            .addAnnotatedClass(OutboxEventEntity.class)
+            .addAnnotatedClass(BackfillStateEntity.class)
+            .setProperty("hibernate.connection.url", url)
+            .setProperty("hibernate.connection.username", "sa")
+            .setProperty("hibernate.connection.password", "")
+            .setProperty("hibernate.connection.pool_size", "8")
+            .setProperty("hibernate.dialect", SkipLockedH2Dialect.class.getName())
+            .buildSessionFactory();
+  }
+
+  /**
+   * Opens an entity manager; the caller manages its transaction.
+   *
+   * @return A new entity manager
+   */
+  public EntityManager open() {
+    return entityManagerFactory.createEntityManager();
+  }
+
+  /**
+   * Counts the rows of the outbox table.
+   *
+   * @return The row count
+   */
+  public long count() {
+    return run(
+        entityManager ->
+            entityManager
+                .createQuery("SELECT COUNT(e) FROM OutboxEventEntity e", Long.class)
+                .getSingleResult()
+                .intValue());
+  }
+
+  @Override
+  public int run(ToIntFunction<EntityManager> work) {
+    EntityManager entityManager = open();
+    try {
+      entityManager.getTransaction().begin();
+      int result = work.applyAsInt(entityManager);
+      entityManager.getTransaction().commit();
+      return result;
+    } catch (RuntimeException e) {
+      if (entityManager.getTransaction().isActive()) {
+        entityManager.getTransaction().rollback();
+      }
+      throw e;
+    } finally {
+      entityManager.close();
+    }
+  }
+
+  @Override
+  public void close() {
+    entityManagerFactory.close();
+    try {
+      keepAlive.close();
+    } catch (Exception e) {
+      // The in-memory database is gone either way
+    }
+  }
+
+  /** H2 dialect that renders SKIP LOCKED. */
+  public static class SkipLockedH2Dialect extends H2Dialect {
+
+    @Override
+    public boolean supportsSkipLocked() {
+      return true;
+    }
+
+    @Override
+    public String getForUpdateSkipLockedString() {
+      return " for update skip locked";
+    }
+
+    @Override
+    public String getForUpdateSkipLockedString(String aliases) {
+      return getForUpdateSkipLockedString();
+    }
+  }
+}
@@ -0,0 +1,259 @@
+package com.keycloak.event.outbox;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anySet;
+import static org.mockito.Mockito.*;
+
+import com.keycloak.event.HttpClientWebHookHandler;
+import com.keycloak.event.delivery.DeliveryReport;
+import com.keycloak.event.delivery.DeliveryTask;
+import com.keycloak.event.exception.WebhookDeliveryException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/** Tests for the OutboxPoller class. */
+public class OutboxPollerTest {
+
+  /** Long enough that the poller thread never runs during a test */
+  private static final long POLL_MILLIS = 3_600_000;
+
+  private final OutboxStore store = new OutboxStore(60_000, 60_000);
+  private final List<OutboxPoller> pollers = new ArrayList<>();
+  private OutboxDatabase database;
+  private HttpClientWebHookHandler webHookHandler;
+
+  @BeforeEach
+  public void setUp() throws Exception {
+    database = new OutboxDatabase();
+    webHookHandler = mock(HttpClientWebHookHandler.class);
+  }
+
+  @AfterEach
+  public void tearDown() {
+    pollers.forEach(OutboxPoller::close);
+    database.close();
+  }
+
+  @Test
+  public void testDrainDeliversInOrderAndDeletes() throws Exception {
+    List<String> delivered = recordDeliveries();
+    append("1", "2", "3", "4", "5");
+
+    assertEquals(5, newPoller(2).drain());
+
+    assertEquals(List.of("1", "2", "3", "4", "5"), delivered);
+    assertEquals(0, database.count());
+  }
+
+  @Test
+  public void testFailedRowIsKeptAndRescheduled() throws Exception {
+    doAnswer(
+            invocation -> {
+              DeliveryTask task = invocation.getArgument(0);
+              return report(
+                  Map.of("http://a", !"2".equals(task.getPayload())), invocation.getArgument(1));
+            })
+        .when(webHookHandler)
+        .deliver(any(DeliveryTask.class), anySet());
+    append("1", "2", "3");
+    OutboxPoller poller = newPoller(10);
+
+    assertEquals(2, poller.drain());
+    assertEquals(1, database.count());
+    // Not due again until the backoff has passed
+    assertEquals(0, poller.drain());
+    verify(webHookHandler, times(3)).deliver(any(DeliveryTask.class), anySet());
+    assertEquals(
+        1,
+        database.run(
+            entityManager ->
+                entityManager
+                    .createQuery("SELECT e FROM OutboxEventEntity e", OutboxEventEntity.class)
+                    .getSingleResult()
+                    .getAttempts()));
+  }
+
+  @Test
+  public void testRetryOnlyGoesToEndpointsThatFailed() throws Exception {
+    List<String> sent = Collections.synchronizedList(new ArrayList<>());
+    boolean[] healthy = {false};
+    doAnswer(
+            invocation -> {
+              Set<String> deliveredTo = invocation.getArgument(1);
+              for (String url : List.of("http://a", "http://b")) {
+                if (!deliveredTo.contains(url)) {
+                  sent.add(url);
+                }
+              }
+              return report(Map.of("http://a", true, "http://b", healthy[0]), deliveredTo);
+            })
+        .when(webHookHandler)
+        .deliver(any(DeliveryTask.class), anySet());
+    append("1");
+    OutboxPoller poller = newPoller(10);
+
+    assertEquals(0, poller.drain());
+    makeDue();
+    healthy[0] = true;
+    assertEquals(1, poller.drain());
+
+    assertEquals(List.of("http://a", "http://b", "http://b"), sent);
+    assertEquals(0, database.count());
+  }
+
+  @Test
+  public void testClaimedRowIsNotClaimedAgainUntilTheClaimEnds() {
+    append("1");
+    long now = System.currentTimeMillis();
+    List<OutboxEventEntity> claimed = claim(now);
+
+    assertEquals(1, claimed.size());
+    assertTrue(claim(now).isEmpty(), "A claimed row should not be claimed by another poller");
+    assertEquals(1, claim(now + store.getLeaseMillis()).size());
+  }
+
+  @Test
+  public void testRowClaimedAgainIsNotDeletedByTheFormerClaim() {
+    append("1");
+    long now = System.currentTimeMillis();
+    OutboxEventEntity expired = claim(now).get(0);
+    OutboxEventEntity current = claim(now + store.getLeaseMillis()).get(0);
+
+    assertEquals(0, database.run(entityManager -> store.delivered(entityManager, expired) ? 1 : 0));
+    assertEquals(1, database.count());
+    assertEquals(1, database.run(entityManager -> store.delivered(entityManager, current) ? 1 : 0));
+    assertEquals(0, database.count());
+  }
+
+  @Test
+  public void testParallelPollersDeliverEachRowOnce() throws Exception {
+    List<String> delivered = recordDeliveries();
+    String[] payloads = new String[60];
+    for (int i = 0; i < payloads.length; i++) {
+      payloads[i] = String.valueOf(i);
+    }
+    append(payloads);
+    OutboxPoller first = newPoller(5);
+    OutboxPoller second = newPoller(5);
+    CountDownLatch start = new CountDownLatch(1);
+    List<Thread> threads = new ArrayList<>();
+    for (OutboxPoller poller : List.of(first, second)) {
+      Thread thread =
+          new Thread(
+              () -> {
+                try {
+                  start.await();
+                  while (database.count() > 0) {
+                    poller.drain();
+                  }
+                } catch (InterruptedException e) {
+                  Thread.currentThread().interrupt();
+                }
+              });
+      thread.start();
+      threads.add(thread);
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join(TimeUnit.SECONDS.toMillis(30));
+    }
+
+    assertEquals(payloads.length, delivered.size());
+    assertEquals(payloads.length, new HashSet<>(delivered).size(), "No row is delivered twice");
+  }
+
+  @Test
+  public void testPurgeRemovesRowsPastRetention() {
+    appendAt(System.currentTimeMillis() - 120_000, "1");
+    append("2");
+    OutboxPoller poller =
+        new OutboxPoller(store, database, webHookHandler, 10, POLL_MILLIS, 60_000);
+    pollers.add(poller);
+
+    assertEquals(1, poller.purge());
+    assertEquals(1, database.count());
+  }
+
+  private OutboxPoller newPoller(int batchSize) {
+    OutboxPoller poller =
+        new OutboxPoller(store, database, webHookHandler, batchSize, POLL_MILLIS, 60_000);
+    pollers.add(poller);
+    return poller;
+  }
+
+  private List<String> recordDeliveries() throws Exception {
+    List<String> delivered = Collections.synchronizedList(new ArrayList<>());
+    doAnswer(
+            invocation -> {
+              delivered.add(invocation.<DeliveryTask>getArgument(0).getPayload());
+              return report(Map.of("http://a", true), invocation.getArgument(1));
+            })
+        .when(webHookHandler)
+        .deliver(any(DeliveryTask.class), anySet());
+    return delivered;
+  }
+
+  /** Reports the outcome at each endpoint not yet in the progress, adding those that succeed. */
+  private static DeliveryReport report(Map<String, Boolean> outcomes, Set<String> deliveredTo) {
+    List<DeliveryReport.Result> results = new ArrayList<>();
+    outcomes.forEach(
+        (url, success) -> {
+          if (deliveredTo.contains(url)) {
+            return;
+          }
+          if (success) {
+            deliveredTo.add(url);
+          }
+          results.add(
+              new DeliveryReport.Result(
+                  url, 0, success ? null : new WebhookDeliveryException("503", 503)));
+        });
+    return new DeliveryReport(results);
+  }
+
+  private List<OutboxEventEntity> claim(long now) {
+    List<OutboxEventEntity> claimed = new ArrayList<>();
+    database.run(
+        entityManager -> {
+          claimed.addAll(store.claim(entityManager, 0, now, 10));
+          return claimed.size();
+        });
+    return claimed;
+  }
+
+  private void makeDue() {
+    database.run(
+        entityManager ->
+            entityManager
+                .createQuery("UPDATE OutboxEventEntity e SET e.nextAttemptAt = 0")
+                .executeUpdate());
+  }
+
+  private void append(String... payloads) {
+    appendAt(System.currentTimeMillis(), payloads);
+  }
+
+  private void appendAt(long now, String... payloads) {
+    database.run(
+        entityManager -> {
+          for (String payload : payloads) {
+            try {
+              store.append(entityManager, new DeliveryTask("USER_EVENT", "LOGIN", payload), now);
+            } catch (Exception e) {
+              throw new IllegalStateException(e);
+            }
+          }
+          return payloads.length;
+        });
+  }
+}
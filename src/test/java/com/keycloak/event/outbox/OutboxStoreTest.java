@@ -0,0 +1,199 @@
+package com.keycloak.event.outbox;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.keycloak.event.delivery.DeliveryTask;
+import com.keycloak.event.representation.RepresentationMode;
+import com.keycloak.event.representation.RepresentationPolicy;
+import jakarta.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/** Tests for the OutboxStore class. */
+public class OutboxStoreTest {
+
+  private static final long NOW = 1_700_000_000_000L;
+
+  private final OutboxStore store = new OutboxStore(60_000, 60_000);
+  private OutboxDatabase database;
+
+  @BeforeEach
+  public void setUp() throws Exception {
+    database = new OutboxDatabase();
+  }
+
+  @AfterEach
+  public void tearDown() {
+    database.close();
+  }
+
+  @Test
+  public void testClaimPagesByIdInInsertionOrder() {
+    append(5);
+
+    List<Long> first = ids(database, 0, NOW, 3);
+    assertEquals(3, first.size());
+    assertTrue(first.get(0) < first.get(1) && first.get(1) < first.get(2));
+    List<Long> second = ids(database, first.get(2), NOW, 3);
+    assertEquals(2, second.size());
+    assertTrue(second.get(0) > first.get(2));
+  }
+
+  @Test
+  public void testClaimSkipsRowsLockedByAnotherTransaction() {
+    append(4);
+    EntityManager first = database.open();
+    EntityManager second = database.open();
+    try {
+      first.getTransaction().begin();
+      List<OutboxEventEntity> claimed = store.claim(first, 0, NOW, 2);
+
+      second.getTransaction().begin();
+      List<OutboxEventEntity> others = store.claim(second, 0, NOW, 10);
+
+      assertEquals(2, claimed.size());
+      assertEquals(2, others.size(), "Locked rows should be skipped, not waited for");
+      assertTrue(others.get(0).getId() > claimed.get(1).getId());
+      second.getTransaction().commit();
+      first.getTransaction().commit();
+    } finally {
+      first.close();
+      second.close();
+    }
+  }
+
+  @Test
+  public void testFailedRowIsClaimedAgainAfterBackoff() {
+    append(1);
+    database.run(
+        entityManager -> {
+          try {
+            store.failed(
+                entityManager, store.claim(entityManager, 0, NOW, 1).get(0), Set.of("a"), NOW);
+          } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+          }
+          return 0;
+        });
+
+    assertTrue(ids(database, 0, NOW, 10).isEmpty());
+    assertEquals(1, ids(database, 0, NOW + OutboxStore.MIN_BACKOFF_MILLIS, 10).size());
+    List<Set<String>> deliveredTo = new ArrayList<>();
+    database.run(
+        entityManager -> {
+          deliveredTo.add(
+              store.deliveredTo(
+                  entityManager
+                      .createQuery("SELECT e FROM OutboxEventEntity e", OutboxEventEntity.class)
+                      .getSingleResult()));
+          return 1;
+        });
+    assertEquals(List.of(Set.of("a")), deliveredTo);
+  }
+
+  @Test
+  public void testBackoffDoublesUpToMaximum() {
+    assertEquals(1000, store.backoffMillis(1));
+    assertEquals(2000, store.backoffMillis(2));
+    assertEquals(32_000, store.backoffMillis(6));
+    assertEquals(60_000, store.backoffMillis(7));
+    assertEquals(60_000, store.backoffMillis(1000));
+  }
+
+  @Test
+  public void testRowRestoresTaskWithVariants() {
+    RepresentationPolicy truncate = new RepresentationPolicy(RepresentationMode.TRUNCATE, 100);
+    DeliveryTask task =
+        DeliveryTask.builder()
+            .eventType("ADMIN_EVENT")
+            .type("UPDATE")
+            .realmId("realm-1")
+            .resourcePath("users/1")
+            .payload("{\"full\":true}")
+            .variants(
+                Map.of(RepresentationPolicy.FULL, "{\"full\":true}", truncate, "{\"full\":false}"))
+            .build();
+    database.run(
+        entityManager -> {
+          appendUnchecked(entityManager, task);
+          return 0;
+        });
+
+    DeliveryTask[] restored = new DeliveryTask[1];
+    database.run(
+        entityManager -> {
+          restored[0] = store.toTask(store.claim(entityManager, 0, NOW, 1).get(0));
+          return 0;
+        });
+
+    assertEquals("ADMIN_EVENT", restored[0].getEventType());
+    assertEquals("UPDATE", restored[0].getType());
+    assertEquals("realm-1", restored[0].getRealmId());
+    assertEquals("users/1", restored[0].getResourcePath());
+    assertEquals("{\"full\":true}", restored[0].getPayload());
+    assertEquals(task.getVariants(), restored[0].getVariants());
+  }
+
+  @Test
+  public void testPurgeDeletesOldRows() {
+    append(2);
+    database.run(
+        entityManager -> {
+          OutboxEventEntity old = appendUnchecked(entityManager, task("LOGIN"));
+          old.setCreatedAt(NOW - 10_000);
+          return 0;
+        });
+
+    assertEquals(1, database.run(entityManager -> store.purge(entityManager, NOW - 1)));
+    assertEquals(2, database.count());
+  }
+
+  private void append(int count) {
+    database.run(
+        entityManager -> {
+          for (int i = 0; i < count; i++) {
+            appendUnchecked(entityManager, task("LOGIN"));
+          }
+          return count;
+        });
+  }
+
+  private OutboxEventEntity appendUnchecked(EntityManager entityManager, DeliveryTask task) {
+    try {
+      return store.append(entityManager, task, NOW);
+    } catch (Exception e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private List<Long> ids(OutboxDatabase db, long afterId, long now, int limit) {
+    EntityManager entityManager = db.open();
+    try {
+      entityManager.getTransaction().begin();
+      List<Long> ids =
+          store.claim(entityManager, afterId, now, limit).stream()
+              .map(OutboxEventEntity::getId)
+              .toList();
+      entityManager.getTransaction().commit();
+      return ids;
+    } finally {
+      entityManager.close();
+    }
+  }
+
+  private static DeliveryTask task(String type) {
+    return DeliveryTask.builder()
+        .eventType("USER_EVENT")
+        .type(type)
+        .realmId("realm-1")
+        .userId("user-1")
+        .payload("{\"type\":\"" + type + "\"}")
+        .build();
+  }
+}
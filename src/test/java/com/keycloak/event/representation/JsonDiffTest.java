@@ -0,0 +1,58 @@
+package com.keycloak.event.representation;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import org.junit.jupiter.api.Test;
+
+/** Tests for the JsonDiff class. */
+public class JsonDiffTest {
+
+  private final ObjectMapper mapper = new ObjectMapper();
+
+  @Test
+  public void testEqualDocumentsHaveEmptyPatch() throws Exception {
+    JsonNode document = mapper.readTree("{\"a\":1,\"b\":[1,2]}");
+
+    assertEquals(0, JsonDiff.diff(document, document.deepCopy()).size());
+  }
+
+  @Test
+  public void testChangedAddedAndRemovedFields() throws Exception {
+    ArrayNode patch =
+        JsonDiff.diff(
+            mapper.readTree("{\"enabled\":true,\"old\":1,\"attrs\":{\"x\":\"1\"}}"),
+            mapper.readTree("{\"enabled\":false,\"attrs\":{\"x\":\"2\"},\"new\":\"n\"}"));
+
+    assertEquals(
+        mapper.readTree(
+            "[{\"op\":\"remove\",\"path\":\"/old\"},"
+                + "{\"op\":\"replace\",\"path\":\"/enabled\",\"value\":false},"
+                + "{\"op\":\"replace\",\"path\":\"/attrs/x\",\"value\":\"2\"},"
+                + "{\"op\":\"add\",\"path\":\"/new\",\"value\":\"n\"}]"),
+        patch);
+  }
+
+  @Test
+  public void testArraysAreComparedElementwiseOrReplaced() throws Exception {
+    assertEquals(
+        mapper.readTree("[{\"op\":\"replace\",\"path\":\"/roles/1\",\"value\":\"c\"}]"),
+        JsonDiff.diff(
+            mapper.readTree("{\"roles\":[\"a\",\"b\"]}"),
+            mapper.readTree("{\"roles\":[\"a\",\"c\"]}")));
+    assertEquals(
+        mapper.readTree("[{\"op\":\"replace\",\"path\":\"/roles\",\"value\":[\"a\"]}]"),
+        JsonDiff.diff(
+            mapper.readTree("{\"roles\":[\"a\",\"b\"]}"), mapper.readTree("{\"roles\":[\"a\"]}")));
+  }
+
+  @Test
+  public void testPathsAreEscaped() throws Exception {
+    ArrayNode patch =
+        JsonDiff.diff(mapper.readTree("{\"a/b~c\":1}"), mapper.readTree("{\"a/b~c\":2}"));
+
+    assertEquals("/a~1b~0c", patch.get(0).get("path").asText());
+  }
+}
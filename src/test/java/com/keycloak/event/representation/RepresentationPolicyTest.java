@@ -0,0 +1,58 @@
+package com.keycloak.event.representation;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.keycloak.event.endpoint.WebhookEndpoint;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+/** Tests for the RepresentationPolicy class. */
+public class RepresentationPolicyTest {
+
+  @Test
+  public void testDefaultIsFull() {
+    assertSame(RepresentationPolicy.FULL, RepresentationPolicy.fromOptions(Map.of()));
+    assertSame(
+        RepresentationPolicy.FULL,
+        RepresentationPolicy.fromOptions(Map.of(RepresentationPolicy.OPTION, "bogus")));
+  }
+
+  @Test
+  public void testTruncateReadsLimit() {
+    RepresentationPolicy policy =
+        WebhookEndpoint.parse("http://a;representation=truncate;representationMaxBytes=100", null)
+            .getRepresentationPolicy();
+
+    assertEquals(RepresentationMode.TRUNCATE, policy.getMode());
+    assertEquals(100, policy.getMaxBytes());
+    assertEquals("truncate:100", policy.toString());
+  }
+
+  @Test
+  public void testLimitOnlyDistinguishesTruncatingPolicies() {
+    assertEquals(
+        RepresentationPolicy.fromOptions(Map.of(RepresentationPolicy.OPTION, "hash")),
+        RepresentationPolicy.fromOptions(
+            Map.of(
+                RepresentationPolicy.OPTION, "HASH", RepresentationPolicy.MAX_BYTES_OPTION, "10")));
+    assertNotEquals(
+        RepresentationPolicy.fromOptions(
+            Map.of(
+                RepresentationPolicy.OPTION,
+                "truncate",
+                RepresentationPolicy.MAX_BYTES_OPTION,
+                "10")),
+        RepresentationPolicy.fromOptions(Map.of(RepresentationPolicy.OPTION, "truncate")));
+  }
+
+  @Test
+  public void testParseReadsToString() {
+    RepresentationPolicy truncate = new RepresentationPolicy(RepresentationMode.TRUNCATE, 100);
+    RepresentationPolicy diff =
+        RepresentationPolicy.fromOptions(Map.of(RepresentationPolicy.OPTION, "diff"));
+
+    assertEquals(truncate, RepresentationPolicy.parse(truncate.toString()));
+    assertEquals(diff, RepresentationPolicy.parse(diff.toString()));
+    assertSame(RepresentationPolicy.FULL, RepresentationPolicy.parse("FULL"));
+  }
+}
@@ -0,0 +1,169 @@
+package com.keycloak.event.representation;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.keycloak.events.admin.AdminEvent;
+import org.keycloak.events.admin.OperationType;
+
+/** Tests for the RepresentationRenderer class. */
+public class RepresentationRendererTest {
+
+  private static final RepresentationPolicy OMIT =
+      new RepresentationPolicy(RepresentationMode.OMIT, 0);
+  private static final RepresentationPolicy HASH =
+      new RepresentationPolicy(RepresentationMode.HASH, 0);
+  private static final RepresentationPolicy DIFF =
+      new RepresentationPolicy(RepresentationMode.DIFF, 0);
+
+  private final ObjectMapper mapper = new ObjectMapper();
+  private final RepresentationRenderer renderer = new RepresentationRenderer(1024 * 1024);
+
+  @Test
+  public void testEachPolicyGetsItsPayload() throws Exception {
+    AdminEvent event = event(OperationType.UPDATE, "{\"username\":\"alice\"}");
+    RepresentationPolicy truncate = new RepresentationPolicy(RepresentationMode.TRUNCATE, 5);
+
+    Map<RepresentationPolicy, String> payloads =
+        renderer.render(
+            event, true, Map.of(), List.of(RepresentationPolicy.FULL, OMIT, truncate, HASH));
+
+    assertEquals(
+        "{\"username\":\"alice\"}",
+        eventNode(payloads.get(RepresentationPolicy.FULL)).get("representation").asText());
+    assertTrue(eventNode(payloads.get(OMIT)).get("representation").isNull());
+
+    JsonNode truncated = eventNode(payloads.get(truncate));
+    assertEquals("{\"use", truncated.get("representation").asText());
+    assertTrue(truncated.get(RepresentationRenderer.TRUNCATED_FIELD).asBoolean());
+    assertEquals(20, truncated.get(RepresentationRenderer.SIZE_FIELD).asInt());
+
+    JsonNode hashed = eventNode(payloads.get(HASH));
+    assertTrue(hashed.get("representation").isNull());
+    byte[] digest =
+        MessageDigest.getInstance("SHA-256")
+            .digest("{\"username\":\"alice\"}".getBytes(StandardCharsets.UTF_8));
+    assertEquals(
+        "sha256:" + HexFormat.of().formatHex(digest),
+        hashed.get(RepresentationRenderer.HASH_FIELD).asText());
+  }
+
+  @Test
+  public void testTruncationKeepsCharactersWhole() throws Exception {
+    AdminEvent event = event(OperationType.UPDATE, "\"äöü\"");
+    RepresentationPolicy truncate = new RepresentationPolicy(RepresentationMode.TRUNCATE, 4);
+
+    String payload = renderer.render(event, true, Map.of(), List.of(truncate)).get(truncate);
+
+    String representation = eventNode(payload).get("representation").asText();
+    assertEquals("\"ä", representation);
+    assertTrue(representation.getBytes(StandardCharsets.UTF_8).length <= 4);
+  }
+
+  @Test
+  public void testDiffAgainstPreviousRepresentation() throws Exception {
+    String first =
+        renderer
+            .render(
+                event(OperationType.CREATE, "{\"enabled\":true}"), true, Map.of(), List.of(DIFF))
+            .get(DIFF);
+    assertEquals("{\"enabled\":true}", eventNode(first).get("representation").asText());
+    assertFalse(eventNode(first).has(RepresentationRenderer.DIFF_FIELD));
+
+    String second =
+        renderer
+            .render(
+                event(OperationType.UPDATE, "{\"enabled\":false}"), true, Map.of(), List.of(DIFF))
+            .get(DIFF);
+    JsonNode node = eventNode(second);
+    assertTrue(node.get("representation").isNull());
+    assertEquals(
+        mapper.readTree("[{\"op\":\"replace\",\"path\":\"/enabled\",\"value\":false}]"),
+        node.get(RepresentationRenderer.DIFF_FIELD));
+
+    renderer.render(event(OperationType.DELETE, "{}"), true, Map.of(), List.of(DIFF));
+    assertEquals(0, renderer.cachedResources());
+  }
+
+  @Test
+  public void testDiffCacheIsBounded() throws Exception {
+    RepresentationRenderer small = new RepresentationRenderer(40);
+    for (int i = 0; i < 6; i++) {
+      small.render(event("/users/" + i, "{\"i\":" + i + "}"), true, Map.of(), List.of(DIFF));
+    }
+    assertEquals(5, small.cachedResources());
+
+    // The oldest resource was evicted, so it is sent in full again
+    String evicted =
+        small.render(event("/users/0", "{\"i\":9}"), true, Map.of(), List.of(DIFF)).get(DIFF);
+    assertFalse(eventNode(evicted).has(RepresentationRenderer.DIFF_FIELD));
+    String kept =
+        small.render(event("/users/5", "{\"i\":9}"), true, Map.of(), List.of(DIFF)).get(DIFF);
+    assertTrue(eventNode(kept).has(RepresentationRenderer.DIFF_FIELD));
+
+    // Representations larger than the cache are never kept
+    small.render(event("/users/5", "x".repeat(41)), true, Map.of(), List.of(DIFF));
+    assertEquals(4, small.cachedResources());
+  }
+
+  @Test
+  public void testDiffCacheCountsBytes() throws Exception {
+    RepresentationRenderer small = new RepresentationRenderer(40);
+    // 30 characters, but 60 bytes in UTF-8
+    small.render(event("/users/1", "\"" + "ä".repeat(28) + "\""), true, Map.of(), List.of(DIFF));
+    assertEquals(0, small.cachedResources());
+  }
+
+  @Test
+  public void testPoliciesDoNotChangeEachOther() throws Exception {
+    AdminEvent event = event(OperationType.UPDATE, "{\"a\":1}");
+
+    Map<RepresentationPolicy, String> payloads =
+        renderer.render(event, true, Map.of(), List.of(OMIT, HASH, RepresentationPolicy.FULL));
+
+    JsonNode full = eventNode(payloads.get(RepresentationPolicy.FULL));
+    assertEquals("{\"a\":1}", full.get("representation").asText());
+    assertFalse(full.has(RepresentationRenderer.HASH_FIELD));
+    assertFalse(eventNode(payloads.get(OMIT)).has(RepresentationRenderer.HASH_FIELD));
+  }
+
+  @Test
+  public void testRepresentationDroppedWhenNotIncluded() throws Exception {
+    Map<RepresentationPolicy, String> payloads =
+        renderer.render(
+            event(OperationType.UPDATE, "{\"a\":1}"),
+            false,
+            Map.of(),
+            List.of(RepresentationPolicy.FULL, HASH));
+
+    assertSame(payloads.get(RepresentationPolicy.FULL), payloads.get(HASH));
+    assertTrue(eventNode(payloads.get(HASH)).get("representation").isNull());
+    assertFalse(eventNode(payloads.get(HASH)).has(RepresentationRenderer.HASH_FIELD));
+  }
+
+  private JsonNode eventNode(String payload) throws Exception {
+    return mapper.readTree(payload).get("event");
+  }
+
+  private static AdminEvent event(String resourcePath, String representation) {
+    AdminEvent event = event(OperationType.UPDATE, representation);
+    event.setResourcePath(resourcePath);
+    return event;
+  }
+
+  private static AdminEvent event(OperationType operation, String representation) {
+    AdminEvent event = new AdminEvent();
+    event.setOperationType(operation);
+    event.setRealmId("realm");
+    event.setResourcePath("/users/1");
+    event.setRepresentation(representation);
+    return event;
+  }
+}
@@ -0,0 +1,185 @@
+package com.keycloak.event.sink;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.keycloak.event.endpoint.WebhookEndpoint;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** Tests for the FileSink class. */
+public class FileSinkTest {
+
+  @TempDir Path dir;
+
+  @Test
+  public void testAppendsOneLinePerPayload() throws Exception {
+    Path file = dir.resolve("events.ndjson");
+    FileSink sink = new FileSink(endpoint(file, ""));
+    sink.send("{\"n\":1}");
+    sink.send("{\"n\":2}");
+    sink.close();
+
+    assertEquals(List.of("{\"n\":1}", "{\"n\":2}"), Files.readAllLines(file));
+    assertEquals(2, sink.getCommitted());
+  }
+
+  @Test
+  public void testAppendsToExistingFile() throws Exception {
+    Path file = dir.resolve("events.ndjson");
+    Files.writeString(file, "{\"n\":0}\n");
+
+    FileSink sink = new FileSink(endpoint(file, ""));
+    sink.send("{\"n\":1}");
+    sink.close();
+
+    assertEquals(List.of("{\"n\":0}", "{\"n\":1}"), Files.readAllLines(file));
+  }
+
+  @Test
+  public void testSyncModeWaitsForCommit() throws Exception {
+    Path file = dir.resolve("sub/events.ndjson");
+    FileSink sink = new FileSink(endpoint(file, ";sync=true;commitMs=5"));
+    try {
+      sink.send("{\"n\":1}");
+
+      // The payload is on disk as soon as send returns
+      assertEquals(List.of("{\"n\":1}"), Files.readAllLines(file));
+      assertEquals(1, sink.getCommitted());
+    } finally {
+      sink.close();
+    }
+  }
+
+  @Test
+  public void testConcurrentSendersShareCommits() throws Exception {
+    Path file = dir.resolve("events.ndjson");
+    FileSink sink = new FileSink(endpoint(file, ";sync=true;commitMs=2"));
+    int senders = 8;
+    int perSender = 200;
+    ExecutorService executor = Executors.newFixedThreadPool(senders);
+    CountDownLatch done = new CountDownLatch(senders);
+    try {
+      for (int s = 0; s < senders; s++) {
+        int sender = s;
+        executor.execute(
+            () -> {
+              try {
+                for (int i = 0; i < perSender; i++) {
+                  sink.send("{\"s\":" + sender + ",\"i\":" + i + "}");
+                }
+              } catch (Exception e) {
+                fail(e);
+              } finally {
+                done.countDown();
+              }
+            });
+      }
+      assertTrue(done.await(30, TimeUnit.SECONDS));
+    } finally {
+      executor.shutdown();
+      sink.close();
+    }
+
+    List<String> lines = Files.readAllLines(file);
+    assertEquals(senders * perSender, lines.size());
+    // Per sender, lines keep the order in which they were sent
+    for (int s = 0; s < senders; s++) {
+      String prefix = "{\"s\":" + s + ",";
+      List<String> ofSender =
+          lines.stream().filter(line -> line.startsWith(prefix)).collect(Collectors.toList());
+      for (int i = 0; i < perSender; i++) {
+        assertEquals(prefix + "\"i\":" + i + "}", ofSender.get(i));
+      }
+    }
+  }
+
+  @Test
+  public void testRotatesBySizeAndCompresses() throws Exception {
+    Path file = dir.resolve("events.ndjson");
+    FileSink sink = new FileSink(endpoint(file, ";maxBytes=100;sync=true;commitMs=1"));
+    List<String> sent = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      String payload = "{\"n\":" + i + ",\"pad\":\"xxxxxxxxxxxxxxxxxxxx\"}";
+      sink.send(payload);
+      sent.add(payload);
+    }
+    sink.close();
+
+    List<Path> rotated;
+    try (Stream<Path> files = Files.list(dir)) {
+      rotated =
+          files
+              .filter(p -> p.getFileName().toString().endsWith(".ndjson.gz"))
+              .sorted()
+              .collect(Collectors.toList());
+    }
+    assertFalse(rotated.isEmpty());
+
+    // Every payload is either in a compressed rotated file or in the current file
+    List<String> all = new ArrayList<>();
+    for (Path path : rotated) {
+      try (InputStream in = new GZIPInputStream(Files.newInputStream(path))) {
+        String content = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        content.lines().forEach(all::add);
+      }
+    }
+    all.addAll(Files.readAllLines(file));
+    assertEquals(sent.size(), all.size());
+    assertTrue(all.containsAll(sent));
+  }
+
+  @Test
+  public void testRotatesByAgeWithoutCompression() throws Exception {
+    Path file = dir.resolve("events.log");
+    FileSink sink = new FileSink(endpoint(file, ";rotateMs=50;compress=none;commitMs=5"));
+    try {
+      sink.send("{\"n\":1}");
+      long deadline = System.currentTimeMillis() + 5000;
+      while (countFiles() < 2 && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+    } finally {
+      sink.close();
+    }
+
+    try (Stream<Path> files = Files.list(dir)) {
+      Path rotated =
+          files
+              .filter(p -> p.getFileName().toString().matches("events-\\d{8}-\\d{6}-\\d{3}\\.log"))
+              .findFirst()
+              .orElseThrow();
+      assertEquals(List.of("{\"n\":1}"), Files.readAllLines(rotated));
+    }
+  }
+
+  @Test
+  public void testSendAfterCloseFails() throws Exception {
+    FileSink sink = new FileSink(endpoint(dir.resolve("events.ndjson"), ""));
+    sink.close();
+
+    assertThrows(java.io.IOException.class, () -> sink.send("{}"));
+  }
+
+  private long countFiles() throws Exception {
+    try (Stream<Path> files = Files.list(dir)) {
+      return files.count();
+    }
+  }
+
+  private static WebhookEndpoint endpoint(Path file, String options) {
+    return WebhookEndpoint.parse(file.toUri() + options, null);
+  }
+}
@@ -0,0 +1,167 @@
+package com.keycloak.event.sink;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.keycloak.event.endpoint.WebhookEndpoint;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** Tests for the UnixSocketSink class. */
+public class UnixSocketSinkTest {
+
+  @TempDir Path dir;
+
+  private ServerSocketChannel server;
+
+  @AfterEach
+  public void tearDown() throws IOException {
+    if (server != null) {
+      server.close();
+    }
+  }
+
+  @Test
+  public void testNdjsonFraming() throws Exception {
+    Path socket = listen();
+    UnixSocketSink sink = new UnixSocketSink(endpoint(socket, ""));
+    try {
+      sink.send("{\"n\":1}");
+      sink.send("{\"n\":2}");
+
+      try (SocketChannel accepted = server.accept()) {
+        assertEquals("{\"n\":1}\n{\"n\":2}\n", readString(accepted, 16));
+      }
+    } finally {
+      sink.close();
+    }
+  }
+
+  @Test
+  public void testLengthPrefixedBatchedFraming() throws Exception {
+    Path socket = listen();
+    UnixSocketSink sink = new UnixSocketSink(endpoint(socket, ";framing=length;batchMs=5"));
+    try {
+      sink.send("{\"n\":1}");
+      sink.send("{\"n\":22}");
+
+      try (SocketChannel accepted = server.accept()) {
+        List<String> frames = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+          ByteBuffer length = readFully(accepted, 4);
+          frames.add(
+              new String(readFully(accepted, length.getInt()).array(), StandardCharsets.UTF_8));
+        }
+        assertEquals(List.of("{\"n\":1}", "{\"n\":22}"), frames);
+      }
+    } finally {
+      sink.close();
+    }
+  }
+
+  @Test
+  public void testUnreachableSocketFailsFastWhileBackingOff() throws Exception {
+    UnixSocketSink sink = new UnixSocketSink(endpoint(dir.resolve("missing.sock"), ""));
+    try {
+      assertThrows(IOException.class, () -> sink.send("{}"));
+
+      long start = System.nanoTime();
+      IOException e = assertThrows(IOException.class, () -> sink.send("{}"));
+      assertTrue(e.getMessage().contains("retrying"));
+      assertTrue(System.nanoTime() - start < 50_000_000L);
+    } finally {
+      sink.close();
+    }
+  }
+
+  @Test
+  public void testReconnectsAfterReceiverRestart() throws Exception {
+    Path socket = listen();
+    UnixSocketSink sink = new UnixSocketSink(endpoint(socket, ""));
+    try {
+      sink.send("{\"n\":1}");
+      try (SocketChannel accepted = server.accept()) {
+        assertEquals("{\"n\":1}\n", readString(accepted, 8));
+      }
+      // The receiver restarts: the old connection is gone and the socket file is recreated
+      server.close();
+      Files.deleteIfExists(socket);
+      listen();
+
+      long deadline = System.currentTimeMillis() + 10000;
+      boolean delivered = false;
+      while (!delivered && System.currentTimeMillis() < deadline) {
+        try {
+          sink.send("{\"n\":2}");
+          delivered = sink.getConnects() == 2;
+        } catch (IOException e) {
+          Thread.sleep(50);
+        }
+      }
+      assertTrue(delivered);
+      try (SocketChannel accepted = server.accept()) {
+        assertTrue(readString(accepted, 8).startsWith("{\"n\":2}"));
+      }
+    } finally {
+      sink.close();
+    }
+  }
+
+  @Test
+  public void testBatchedSendsSurviveOutage() throws Exception {
+    Path socket = dir.resolve("late.sock");
+    UnixSocketSink sink = new UnixSocketSink(endpoint(socket, ";batchMs=5"));
+    try {
+      // Buffered while nobody listens, delivered once the receiver comes up
+      sink.send("{\"n\":1}");
+      Thread.sleep(50);
+      bind(socket);
+
+      try (SocketChannel accepted = server.accept()) {
+        assertEquals("{\"n\":1}\n", readString(accepted, 8));
+      }
+    } finally {
+      sink.close();
+    }
+  }
+
+  private Path listen() throws IOException {
+    return bind(dir.resolve("events.sock"));
+  }
+
+  private Path bind(Path socket) throws IOException {
+    server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+    server.bind(UnixDomainSocketAddress.of(socket));
+    return socket;
+  }
+
+  private static String readString(SocketChannel channel, int bytes) throws IOException {
+    return new String(readFully(channel, bytes).array(), StandardCharsets.UTF_8);
+  }
+
+  private static ByteBuffer readFully(SocketChannel channel, int bytes) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(bytes);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer) < 0) {
+        throw new IOException("Connection closed");
+      }
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  private static WebhookEndpoint endpoint(Path socket, String options) {
+    return WebhookEndpoint.parse("unix://" + socket + options, null);
+  }
+}
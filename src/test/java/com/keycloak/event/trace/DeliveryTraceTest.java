@@ -0,0 +1,117 @@
+package com.keycloak.event.trace;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.keycloak.event.delivery.DeliveryTask;
+import com.keycloak.event.delivery.ErrorCategory;
+import org.junit.jupiter.api.Test;
+
+/** Tests for the DeliveryTrace class. */
+public class DeliveryTraceTest {
+
+  private static final String TRACE_ID = "4bf92f3577b34da6a3ce929d0e0e4736";
+  private static final String TRACEPARENT = "00-" + TRACE_ID + "-00f067aa0ba902b7-01";
+
+  @Test
+  public void testOpenAndClose() {
+    DeliveryTask task = new DeliveryTask("USER_EVENT", "LOGIN", "{}");
+
+    try (DeliveryTrace trace = DeliveryTrace.open(task)) {
+      assertSame(trace, DeliveryTrace.current());
+    }
+
+    assertNull(DeliveryTrace.current());
+  }
+
+  @Test
+  public void testNestedTracesRestoreOuter() {
+    DeliveryTask task = new DeliveryTask("USER_EVENT", "LOGIN", "{}");
+
+    try (DeliveryTrace outer = DeliveryTrace.open(task)) {
+      try (DeliveryTrace inner = DeliveryTrace.open(task)) {
+        assertSame(inner, DeliveryTrace.current());
+      }
+      assertSame(outer, DeliveryTrace.current());
+    }
+  }
+
+  @Test
+  public void testEachAttemptIsAChildSpan() {
+    DeliveryTask task =
+        DeliveryTask.builder()
+            .eventType("USER_EVENT")
+            .type("LOGIN")
+            .realmId("realm")
+            .userId("user")
+            .payload("{}")
+            .build()
+            .withTrace(TraceContext.parse(TRACEPARENT, "vendor=1"));
+
+    try (DeliveryTrace trace = DeliveryTrace.open(task)) {
+      trace.begin();
+      String first = trace.traceparent();
+      trace.begin();
+      String second = trace.traceparent();
+
+      assertTrue(first.startsWith("00-" + TRACE_ID + "-"));
+      assertTrue(first.endsWith("-01"));
+      assertNotEquals(first, second);
+      assertEquals("vendor=1", trace.tracestate());
+    }
+  }
+
+  @Test
+  public void testUntracedTaskHasNoHeaders() {
+    try (DeliveryTrace trace = DeliveryTrace.open(new DeliveryTask("USER_EVENT", "LOGIN", "{}"))) {
+      trace.begin();
+
+      assertNull(trace.traceparent());
+      assertNull(trace.tracestate());
+    }
+  }
+
+  @Test
+  public void testEndBuildsSpan() {
+    DeliveryTask task =
+        DeliveryTask.builder()
+            .eventType("USER_EVENT")
+            .type("LOGIN")
+            .realmId("realm")
+            .userId("user")
+            .payload("{}")
+            .build()
+            .withTrace(TraceContext.parse(TRACEPARENT, null));
+    task.setSerializationNanos(1234);
+
+    try (DeliveryTrace trace = DeliveryTrace.open(task)) {
+      trace.begin();
+      trace.firstByte();
+      trace.status(202);
+      DeliverySpan span = trace.end("http://a", ErrorCategory.NONE);
+
+      assertEquals(TRACE_ID, span.getTraceId());
+      assertEquals("00f067aa0ba902b7", span.getParentSpanId());
+      assertEquals(trace.traceparent().substring(36, 52), span.getSpanId());
+      assertEquals("http://a", span.getEndpoint());
+      assertEquals("LOGIN", span.getType());
+      assertEquals("realm", span.getRealmId());
+      assertEquals(1234, span.getSerializationNanos());
+      assertEquals(202, span.getStatus());
+      assertTrue(span.getFirstByteNanos() >= 0);
+      assertTrue(span.getTotalNanos() >= span.getFirstByteNanos());
+      assertTrue(span.getQueueWaitNanos() >= 0);
+    }
+  }
+
+  @Test
+  public void testEndWithoutResponse() {
+    try (DeliveryTrace trace = DeliveryTrace.open(new DeliveryTask("USER_EVENT", "LOGIN", "{}"))) {
+      trace.begin();
+      DeliverySpan span = trace.end("http://a", ErrorCategory.CONNECT);
+
+      assertNull(span.getTraceId());
+      assertEquals(-1, span.getFirstByteNanos());
+      assertEquals(ErrorCategory.CONNECT, span.getCategory());
+    }
+  }
+}
@@ -0,0 +1,96 @@
+package com.keycloak.event.trace;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import jakarta.ws.rs.core.HttpHeaders;
+import org.junit.jupiter.api.Test;
+import org.keycloak.models.KeycloakContext;
+import org.keycloak.models.KeycloakSession;
+
+/** Tests for the TraceContext class. */
+public class TraceContextTest {
+
+  private static final String TRACE_ID = "4bf92f3577b34da6a3ce929d0e0e4736";
+  private static final String PARENT_ID = "00f067aa0ba902b7";
+  private static final String TRACEPARENT = "00-" + TRACE_ID + "-" + PARENT_ID + "-01";
+
+  @Test
+  public void testParseValidHeaders() {
+    TraceContext context = TraceContext.parse(TRACEPARENT, "congo=t61rcWkgMzE");
+
+    assertEquals(TRACE_ID, context.getTraceId());
+    assertEquals(PARENT_ID, context.getParentId());
+    assertEquals("01", context.getFlags());
+    assertEquals("congo=t61rcWkgMzE", context.getTraceState());
+  }
+
+  @Test
+  public void testParseRejectsInvalidTraceparent() {
+    assertNull(TraceContext.parse(null, null));
+    assertNull(TraceContext.parse("", null));
+    assertNull(TraceContext.parse(TRACEPARENT.toUpperCase(), null));
+    assertNull(TraceContext.parse("ff" + TRACEPARENT.substring(2), null));
+    assertNull(TraceContext.parse(TRACEPARENT + "-00", null));
+    assertNull(TraceContext.parse("00-" + "0".repeat(32) + "-" + PARENT_ID + "-01", null));
+    assertNull(TraceContext.parse("00-" + TRACE_ID + "-" + "0".repeat(16) + "-01", null));
+    assertNull(TraceContext.parse("00-" + TRACE_ID + "-" + PARENT_ID + "-0g", null));
+    assertNull(TraceContext.parse("00_" + TRACE_ID + "-" + PARENT_ID + "-01", null));
+  }
+
+  @Test
+  public void testParseAcceptsLaterVersionsWithExtraFields() {
+    TraceContext context =
+        TraceContext.parse("01-" + TRACE_ID + "-" + PARENT_ID + "-01-extra", null);
+
+    assertEquals(TRACE_ID, context.getTraceId());
+  }
+
+  @Test
+  public void testParseDropsBlankOrOversizedTracestate() {
+    assertNull(TraceContext.parse(TRACEPARENT, " ").getTraceState());
+    assertNull(
+        TraceContext.parse(TRACEPARENT, "a=" + "b".repeat(TraceContext.MAX_TRACESTATE_LENGTH))
+            .getTraceState());
+  }
+
+  @Test
+  public void testTraceparentOfChildSpan() {
+    TraceContext context = TraceContext.parse(TRACEPARENT, null);
+
+    assertEquals(
+        "00-" + TRACE_ID + "-b7ad6b7169203331-01", context.traceparent("b7ad6b7169203331"));
+  }
+
+  @Test
+  public void testNewSpanId() {
+    String spanId = TraceContext.newSpanId();
+
+    assertEquals(16, spanId.length());
+    assertTrue(spanId.matches("[0-9a-f]{16}"));
+    assertNotEquals("0".repeat(16), spanId);
+  }
+
+  @Test
+  public void testCurrentReadsRequestHeaders() {
+    KeycloakSession session = mock(KeycloakSession.class);
+    KeycloakContext context = mock(KeycloakContext.class);
+    HttpHeaders headers = mock(HttpHeaders.class);
+    when(session.getContext()).thenReturn(context);
+    when(context.getRequestHeaders()).thenReturn(headers);
+    when(headers.getHeaderString(TraceContext.TRACEPARENT)).thenReturn(TRACEPARENT);
+
+    assertEquals(TRACE_ID, TraceContext.current(session).getTraceId());
+  }
+
+  @Test
+  public void testCurrentWithoutRequest() {
+    KeycloakSession session = mock(KeycloakSession.class);
+    KeycloakContext context = mock(KeycloakContext.class);
+    when(session.getContext()).thenReturn(context);
+    when(context.getRequestHeaders()).thenThrow(new IllegalStateException("No request"));
+
+    assertNull(TraceContext.current(session));
+    assertNull(TraceContext.current(mock(KeycloakSession.class)));
+  }
+}
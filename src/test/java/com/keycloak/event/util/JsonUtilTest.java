@@ -77,6 +77,11 @@ public class JsonUtilTest {
     assertEquals(42, root.get("value").asInt());
   }
 
+  @Test
+  public void testPrimeSerializers() {
+    assertTrue(JsonUtil.primeSerializers() >= 0);
+  }
+
   /** Simple test class for JSON serialization */
   private static class TestObject {
     private final String name;
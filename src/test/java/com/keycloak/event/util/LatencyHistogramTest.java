@@ -0,0 +1,67 @@
+package com.keycloak.event.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+/** Tests for the LatencyHistogram class. */
+public class LatencyHistogramTest {
+
+  @Test
+  public void testEmptyHistogram() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(0, histogram.count());
+    assertEquals(0, histogram.percentile(99));
+    assertEquals(0, histogram.mean());
+  }
+
+  @Test
+  public void testPercentilesWithinRelativeError() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (long i = 1; i <= 100_000; i++) {
+      histogram.record(i * 1000);
+    }
+
+    assertEquals(100_000, histogram.count());
+    assertEquals(100_000_000, histogram.max());
+    assertWithin(50_000_000, histogram.percentile(50));
+    assertWithin(99_000_000, histogram.percentile(99));
+    assertWithin(99_900_000, histogram.percentile(99.9));
+    assertWithin(50_000_500, (long) histogram.mean());
+  }
+
+  @Test
+  public void testSmallValuesAreExact() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(3);
+    histogram.record(-5);
+
+    assertEquals(0, histogram.percentile(50));
+    assertEquals(3, histogram.percentile(100));
+  }
+
+  @Test
+  public void testIndexRoundTrip() {
+    long[] values = {0, 31, 32, 33, 1000, 123_456_789, Long.MAX_VALUE};
+    for (long value : values) {
+      int index = LatencyHistogram.indexOf(value);
+      long midpoint = LatencyHistogram.midpointOf(index);
+      assertEquals(index, LatencyHistogram.indexOf(midpoint), "value " + value);
+    }
+  }
+
+  @Test
+  public void testReset() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(42);
+    histogram.reset();
+    assertEquals(0, histogram.count());
+    assertEquals(0, histogram.max());
+  }
+
+  private static void assertWithin(long expected, long actual) {
+    assertTrue(
+        Math.abs(actual - expected) <= expected * 0.04,
+        () -> "expected ~" + expected + " but was " + actual);
+  }
+}
@@ -0,0 +1,75 @@
+package com.keycloak.event.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+/** Tests for the LogLimiter class. */
+public class LogLimiterTest {
+
+  private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  @Test
+  public void testFirstMessageIsLogged() {
+    LogLimiter limiter = new LogLimiter(1000);
+
+    assertEquals(0, limiter.admit("a", 0));
+  }
+
+  @Test
+  public void testRepeatsWithinIntervalAreSuppressed() {
+    LogLimiter limiter = new LogLimiter(1000);
+
+    limiter.admit("a", 0);
+
+    assertEquals(-1, limiter.admit("a", SECOND / 2));
+    assertEquals(-1, limiter.admit("a", SECOND - 1));
+  }
+
+  @Test
+  public void testNextMessageAfterIntervalCarriesSuppressedCount() {
+    LogLimiter limiter = new LogLimiter(1000);
+    limiter.admit("a", 0);
+    limiter.admit("a", 1);
+    limiter.admit("a", 2);
+
+    assertEquals(2, limiter.admit("a", SECOND));
+    assertEquals(-1, limiter.admit("a", SECOND + 1));
+    assertEquals(1, limiter.admit("a", 2 * SECOND));
+  }
+
+  @Test
+  public void testKeysAreLimitedIndependently() {
+    LogLimiter limiter = new LogLimiter(1000);
+    limiter.admit("a", 0);
+
+    assertEquals(0, limiter.admit("b", 1));
+    assertEquals(-1, limiter.admit("a", 2));
+  }
+
+  @Test
+  public void testZeroIntervalLogsEverything() {
+    LogLimiter limiter = new LogLimiter(0);
+
+    assertEquals(0, limiter.admit("a", 0));
+    assertEquals(0, limiter.admit("a", 0));
+  }
+
+  @Test
+  public void testKeyCountIsBounded() {
+    LogLimiter limiter = new LogLimiter(1000);
+    for (int i = 0; i <= LogLimiter.MAX_KEYS; i++) {
+      limiter.admit("key-" + i, 0);
+    }
+
+    // The table was cleared, so an old key is new again
+    assertEquals(0, limiter.admit("key-0", 1));
+  }
+
+  @Test
+  public void testRepeatsDescription() {
+    assertEquals("", LogLimiter.repeats(0));
+    assertEquals(" (repeated 3 more time(s))", LogLimiter.repeats(3));
+  }
+}
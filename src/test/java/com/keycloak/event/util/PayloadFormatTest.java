@@ -0,0 +1,59 @@
+package com.keycloak.event.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+
+/** Tests for the PayloadFormat class. */
+public class PayloadFormatTest {
+
+  private static final String PAYLOAD =
+      "{\"eventType\":\"USER_EVENT\",\"event\":{\"type\":\"LOGIN\",\"time\":1700000000000,"
+          + "\"details\":{\"username\":\"alice\"},\"error\":null}}";
+
+  @Test
+  public void testFromString() {
+    assertEquals(PayloadFormat.JSON, PayloadFormat.fromString(null));
+    assertEquals(PayloadFormat.JSON, PayloadFormat.fromString(" "));
+    assertEquals(PayloadFormat.SMILE, PayloadFormat.fromString("smile"));
+    assertEquals(PayloadFormat.CBOR, PayloadFormat.fromString(" CBOR "));
+    assertThrows(IllegalArgumentException.class, () -> PayloadFormat.fromString("xml"));
+  }
+
+  @Test
+  public void testJsonIsPassedThrough() throws Exception {
+    assertArrayEquals(PAYLOAD.getBytes(StandardCharsets.UTF_8), PayloadFormat.JSON.encode(PAYLOAD));
+  }
+
+  @Test
+  public void testBinaryFormatsRoundTrip() throws Exception {
+    JsonNode expected = new ObjectMapper().readTree(PAYLOAD);
+    for (PayloadFormat format : new PayloadFormat[] {PayloadFormat.SMILE, PayloadFormat.CBOR}) {
+      byte[] encoded = format.encode(PAYLOAD);
+
+      assertEquals(expected, format.getMapper().readTree(encoded), format.name());
+      assertTrue(encoded.length < PAYLOAD.length(), format.name());
+    }
+  }
+
+  @Test
+  public void testDirectAndTranscodedEncodingsMatch() throws Exception {
+    JsonNode tree = new ObjectMapper().readTree(PAYLOAD);
+    for (PayloadFormat format : PayloadFormat.values()) {
+      assertEquals(
+          format.getMapper().readTree(format.getMapper().writeValueAsBytes(tree)),
+          format.getMapper().readTree(format.encode(PAYLOAD)),
+          format.name());
+    }
+  }
+
+  @Test
+  public void testContentTypes() {
+    assertEquals("application/json", PayloadFormat.JSON.getContentType());
+    assertEquals("application/x-jackson-smile", PayloadFormat.SMILE.getContentType());
+    assertEquals("application/cbor", PayloadFormat.CBOR.getContentType());
+  }
+}
@@ -0,0 +1,138 @@
+package com.keycloak.event.watchdog;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.keycloak.event.config.WebhookConfig;
+import com.keycloak.event.delivery.PriorityClasses;
+import java.util.Set;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/** Tests for the LatencyWatchdog class. */
+public class LatencyWatchdogTest {
+
+  private static final long BUDGET_NANOS = 1_000_000;
+
+  /** Long enough that the watchdog thread never evaluates during a test */
+  private static final long WINDOW_MILLIS = 3_600_000;
+
+  private LatencyWatchdog watchdog;
+
+  @AfterEach
+  public void tearDown() {
+    if (watchdog != null) {
+      watchdog.close();
+    }
+    System.clearProperty(WebhookConfig.LATENCY_BUDGET_US);
+  }
+
+  @Test
+  public void testEscalatesOneLevelPerWindowOverBudget() {
+    watchdog = newWatchdog(0.1);
+
+    assertEquals(DegradationLevel.NORMAL, watchdog.getLevel());
+    assertTrue(watchdog.mayWait());
+    assertFalse(watchdog.isDeferring());
+
+    recordWindow(BUDGET_NANOS * 2);
+    assertEquals(DegradationLevel.DEFER, watchdog.evaluate());
+    assertTrue(watchdog.isDeferring());
+    recordWindow(BUDGET_NANOS * 2);
+    assertEquals(DegradationLevel.SAMPLE, watchdog.evaluate());
+    recordWindow(BUDGET_NANOS * 2);
+    assertEquals(DegradationLevel.DIVERT, watchdog.evaluate());
+    assertFalse(watchdog.mayWait());
+    recordWindow(BUDGET_NANOS * 2);
+    assertEquals(DegradationLevel.DIVERT, watchdog.evaluate());
+  }
+
+  @Test
+  public void testSparseWindowDoesNotEscalate() {
+    watchdog = newWatchdog(0.1);
+    for (int i = 0; i < LatencyWatchdog.MIN_SAMPLES - 1; i++) {
+      watchdog.record(BUDGET_NANOS * 10);
+    }
+
+    assertEquals(DegradationLevel.NORMAL, watchdog.evaluate());
+  }
+
+  @Test
+  public void testRecoversAfterConsecutiveWindowsWithHeadroom() {
+    watchdog = newWatchdog(0.1);
+    recordWindow(BUDGET_NANOS * 2);
+    watchdog.evaluate();
+    recordWindow(BUDGET_NANOS * 2);
+    assertEquals(DegradationLevel.SAMPLE, watchdog.evaluate());
+
+    // Just under the budget is not enough headroom and restarts the recovery count
+    recordWindow(BUDGET_NANOS / 10);
+    watchdog.evaluate();
+    recordWindow(BUDGET_NANOS / 10);
+    watchdog.evaluate();
+    recordWindow(BUDGET_NANOS * 8 / 10);
+    assertEquals(DegradationLevel.SAMPLE, watchdog.evaluate());
+
+    for (int i = 1; i < LatencyWatchdog.RECOVERY_WINDOWS; i++) {
+      recordWindow(BUDGET_NANOS / 10);
+      assertEquals(DegradationLevel.SAMPLE, watchdog.evaluate());
+    }
+    recordWindow(BUDGET_NANOS / 10);
+    assertEquals(DegradationLevel.DEFER, watchdog.evaluate());
+
+    // Idle windows count as headroom
+    for (int i = 1; i < LatencyWatchdog.RECOVERY_WINDOWS; i++) {
+      watchdog.evaluate();
+    }
+    assertEquals(DegradationLevel.NORMAL, watchdog.evaluate());
+  }
+
+  @Test
+  public void testSamplesOnlyLowPriorityTypes() {
+    watchdog = newWatchdog(0);
+    assertTrue(watchdog.admit("REFRESH_TOKEN"));
+
+    recordWindow(BUDGET_NANOS * 2);
+    watchdog.evaluate();
+    recordWindow(BUDGET_NANOS * 2);
+    assertEquals(DegradationLevel.SAMPLE, watchdog.evaluate());
+
+    assertFalse(watchdog.admit("REFRESH_TOKEN"));
+    assertFalse(watchdog.admit("REFRESH_TOKEN"));
+    assertTrue(watchdog.admit("LOGIN_ERROR"));
+    assertEquals(2, watchdog.getSampledOut());
+  }
+
+  @Test
+  public void testFromConfig() {
+    assertNull(LatencyWatchdog.fromConfig(PriorityClasses.single()));
+
+    System.setProperty(WebhookConfig.LATENCY_BUDGET_US, "500");
+    watchdog =
+        LatencyWatchdog.fromConfig(
+            PriorityClasses.parse("critical:4=LOGIN_ERROR;default:2;bulk:1=REFRESH_TOKEN"));
+
+    assertNotNull(watchdog);
+    assertEquals(500_000, watchdog.getBudgetNanos());
+    assertEquals(WebhookConfig.DEFAULT_LATENCY_PERCENTILE, watchdog.getPercentile());
+    assertEquals(Set.of("REFRESH_TOKEN"), watchdog.getSampledTypes());
+  }
+
+  @Test
+  public void testFromConfigDoesNotSampleDefaultClass() {
+    System.setProperty(WebhookConfig.LATENCY_BUDGET_US, "500");
+    watchdog = LatencyWatchdog.fromConfig(PriorityClasses.parse("critical:4=LOGIN_ERROR"));
+
+    assertTrue(watchdog.getSampledTypes().isEmpty());
+  }
+
+  private LatencyWatchdog newWatchdog(double sampleRate) {
+    return new LatencyWatchdog(
+        BUDGET_NANOS, 99, WINDOW_MILLIS, sampleRate, Set.of("REFRESH_TOKEN", "CODE_TO_TOKEN"));
+  }
+
+  private void recordWindow(long nanos) {
+    for (int i = 0; i < LatencyWatchdog.MIN_SAMPLES * 2; i++) {
+      watchdog.record(nanos);
+    }
+  }
+}